@@ -0,0 +1,154 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpV4MessageBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.core.message;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.jagornet.dhcp.core.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.core.option.v4.DhcpV4ClientIdOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4DomainNameOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4DomainServersOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4LeaseTimeOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4ParamRequestOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4RequestedIpAddressOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4RoutersOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4ServerIdOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4SubnetMaskOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+
+/**
+ * JMH benchmark of the decoding of a relayed DHCPv4 REQUEST, reading
+ * the fields and options used by the REQUEST processor, and of the
+ * encoding of a typical ACK.
+ * Run with: dhcp-benchmarks/bin/benchmarks DhcpV4MessageBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DhcpV4MessageBenchmark
+{
+	private static final byte[] MAC = new byte[] { 
+			(byte)0xde, (byte)0xbb, (byte)0x1e, (byte)0xde, (byte)0xbb, (byte)0x1e };
+	
+	private InetSocketAddress localAddr;
+	private InetSocketAddress remoteAddr;
+	private ByteBuffer requestBuf;
+	private DhcpV4Message ackMsg;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		localAddr = new InetSocketAddress(InetAddress.getByName("10.0.0.10"),
+				DhcpConstants.V4_SERVER_PORT);
+		remoteAddr = new InetSocketAddress(InetAddress.getByName("10.0.0.1"),
+				DhcpConstants.V4_SERVER_PORT);
+		
+		DhcpV4Message requestMsg = new DhcpV4Message(remoteAddr, localAddr);
+		requestMsg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		requestMsg.setHtype((short)1);
+		requestMsg.setHlen((short)MAC.length);
+		requestMsg.setHops((short)1);
+		requestMsg.setTransactionId(0xfedcba98L);
+		requestMsg.setGiAddr(remoteAddr.getAddress());
+		requestMsg.setChAddr(MAC);
+		requestMsg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_REQUEST);
+		BaseOpaqueData clientId = new BaseOpaqueData();
+		clientId.setHex(new byte[] { 1, MAC[0], MAC[1], MAC[2], MAC[3], MAC[4], MAC[5] });
+		requestMsg.putDhcpOption(new DhcpV4ClientIdOption(clientId));
+		requestMsg.putDhcpOption(new DhcpV4RequestedIpAddressOption("10.0.1.1"));
+		requestMsg.putDhcpOption(new DhcpV4ServerIdOption("10.0.0.10"));
+		requestMsg.putDhcpOption(new DhcpV4HostnameOption("host1"));
+		requestMsg.putDhcpOption(new DhcpV4ParamRequestOption(
+				Arrays.asList((short)1, (short)3, (short)6, (short)15, (short)51)));
+		requestBuf = requestMsg.encode();
+		
+		ackMsg = new DhcpV4Message(localAddr, remoteAddr);
+		ackMsg.setOp((short)DhcpConstants.V4_OP_REPLY);
+		ackMsg.setHtype((short)1);
+		ackMsg.setHlen((short)MAC.length);
+		ackMsg.setTransactionId(0xfedcba98L);
+		ackMsg.setYiAddr(InetAddress.getByName("10.0.1.1"));
+		ackMsg.setGiAddr(remoteAddr.getAddress());
+		ackMsg.setChAddr(MAC);
+		ackMsg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_ACK);
+		ackMsg.putDhcpOption(new DhcpV4ServerIdOption("10.0.0.10"));
+		ackMsg.putDhcpOption(new DhcpV4LeaseTimeOption(3600));
+		ackMsg.putDhcpOption(new DhcpV4SubnetMaskOption("255.255.0.0"));
+		ackMsg.putDhcpOption(new DhcpV4RoutersOption(Arrays.asList("10.0.0.1")));
+		ackMsg.putDhcpOption(new DhcpV4DomainServersOption(
+				Arrays.asList("10.0.0.10", "10.0.0.11")));
+		ackMsg.putDhcpOption(new DhcpV4DomainNameOption("bench.com."));
+	}
+	
+	@Benchmark
+	public void decodeRequest(Blackhole bh) throws Exception
+	{
+		DhcpV4Message msg = DhcpV4Message.decode(requestBuf.duplicate(), localAddr, remoteAddr);
+		bh.consume(msg.getMessageType());
+		bh.consume(msg.getChAddr());
+		bh.consume(msg.getGiAddr());
+		bh.consume(msg.getCiAddr());
+		bh.consume(msg.getDhcpV4ServerIdOption());
+		bh.consume(msg.getDhcpOption(DhcpConstants.V4OPTION_REQUESTED_IP));
+		bh.consume(msg.getDhcpOption(DhcpConstants.V4OPTION_CLIENT_ID));
+	}
+	
+	@Benchmark
+	public ByteBuffer encodeAck() throws Exception
+	{
+		return ackMsg.encode();
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(DhcpV4MessageBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpV6MessageBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.core.message;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.jagornet.dhcp.core.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ClientIdOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6DnsServersOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ElapsedTimeOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6IaAddrOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6IaNaOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6OptionRequestOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6RelayOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ServerIdOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+
+/**
+ * JMH benchmark of the decoding of a relayed DHCPv6 SOLICIT, reading
+ * the options used by the SOLICIT processor, and of the encoding of
+ * a typical REPLY with one IA_NA address.
+ * Run with: dhcp-benchmarks/bin/benchmarks DhcpV6MessageBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DhcpV6MessageBenchmark
+{
+	private InetSocketAddress localAddr;
+	private InetSocketAddress relayAddr;
+	private ByteBuffer relayBuf;
+	private DhcpV6Message replyMsg;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		localAddr = new InetSocketAddress(InetAddress.getByName("2001:db8::10"),
+				DhcpConstants.V6_SERVER_PORT);
+		relayAddr = new InetSocketAddress(InetAddress.getByName("2001:db8:1::1"),
+				DhcpConstants.V6_SERVER_PORT);
+		InetSocketAddress clientAddr = 
+				new InetSocketAddress(InetAddress.getByName("fe80::1"),
+						DhcpConstants.V6_CLIENT_PORT);
+		
+		BaseOpaqueData duid = new BaseOpaqueData();
+		duid.setHex(new byte[] { 0, 3, 0, 1, 
+				(byte)0xde, (byte)0xbb, (byte)0x1e, (byte)0xde, (byte)0xbb, (byte)0x1e });
+		
+		DhcpV6Message solicitMsg = new DhcpV6Message(localAddr, clientAddr);
+		solicitMsg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_SOLICIT);
+		solicitMsg.setTransactionId(0x123456);
+		solicitMsg.putDhcpOption(new DhcpV6ClientIdOption(duid));
+		solicitMsg.putDhcpOption(new DhcpV6ElapsedTimeOption(0));
+		solicitMsg.putDhcpOption(new DhcpV6OptionRequestOption(
+				Arrays.asList(DhcpConstants.V6OPTION_DNS_SERVERS,
+							  DhcpConstants.V6OPTION_DOMAIN_SEARCH_LIST)));
+		solicitMsg.addIaNaOption(new DhcpV6IaNaOption(1, 0, 0));
+		
+		DhcpV6RelayMessage relayMsg = new DhcpV6RelayMessage(localAddr, relayAddr);
+		relayMsg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_RELAY_FORW);
+		relayMsg.setHopCount((short)0);
+		relayMsg.setLinkAddress(relayAddr.getAddress());
+		relayMsg.setPeerAddress(clientAddr.getAddress());
+		DhcpV6RelayOption relayOption = new DhcpV6RelayOption();
+		relayOption.setDhcpMessage(solicitMsg);
+		relayMsg.putDhcpOption(relayOption);
+		relayMsg.setRelayOption(relayOption);
+		relayBuf = relayMsg.encode();
+		
+		BaseOpaqueData serverDuid = new BaseOpaqueData();
+		serverDuid.setHex(new byte[] { (byte)0xab, (byte)0xcd, (byte)0xef, 
+				0x01, 0x23, 0x45, 0x67, (byte)0x89 });
+		replyMsg = new DhcpV6Message(localAddr, clientAddr);
+		replyMsg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_REPLY);
+		replyMsg.setTransactionId(0x123456);
+		replyMsg.putDhcpOption(new DhcpV6ServerIdOption(serverDuid));
+		replyMsg.putDhcpOption(new DhcpV6ClientIdOption(duid));
+		replyMsg.putDhcpOption(new DhcpV6DnsServersOption(
+				Arrays.asList("2001:db8::53", "2001:db8::54")));
+		DhcpV6IaNaOption iaNaOption = new DhcpV6IaNaOption(1, 1800, 2880);
+		iaNaOption.getIaAddrOptions().add(
+				new DhcpV6IaAddrOption("2001:db8:1::100", 3600, 7200));
+		replyMsg.addIaNaOption(iaNaOption);
+	}
+	
+	@Benchmark
+	public void decodeRelayedSolicit(Blackhole bh) throws Exception
+	{
+		DhcpV6Message msg = DhcpV6Message.decode(relayBuf.duplicate(), localAddr, relayAddr);
+		DhcpV6Message solicitMsg = ((DhcpV6RelayMessage)msg).getRelayOption().getDhcpMessage();
+		bh.consume(solicitMsg.getMessageType());
+		bh.consume(solicitMsg.getDhcpClientIdOption());
+		bh.consume(solicitMsg.getDhcpOption(DhcpConstants.V6OPTION_ORO));
+		bh.consume(solicitMsg.getIaNaOptions());
+	}
+	
+	@Benchmark
+	public ByteBuffer encodeReply() throws Exception
+	{
+		return replyMsg.encode();
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(DhcpV6MessageBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
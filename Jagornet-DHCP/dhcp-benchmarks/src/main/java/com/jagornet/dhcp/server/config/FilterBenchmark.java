@@ -0,0 +1,144 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file FilterBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.jagornet.dhcp.core.message.DhcpV4Message;
+import com.jagornet.dhcp.core.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4VendorClassOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+import com.jagornet.dhcp.server.config.xml.ClientClassExpression;
+import com.jagornet.dhcp.server.config.xml.Filter;
+import com.jagornet.dhcp.server.config.xml.FilterExpression;
+import com.jagornet.dhcp.server.config.xml.FilterExpressionsType;
+import com.jagornet.dhcp.server.config.xml.OpaqueData;
+import com.jagornet.dhcp.server.config.xml.Operator;
+import com.jagornet.dhcp.server.config.xml.OptionExpression;
+import com.jagornet.dhcp.server.config.xml.StringOptionType;
+import com.jagornet.dhcp.server.config.xml.V4VendorClassOption;
+
+/**
+ * JMH benchmark of the evaluation of a filter with a hostname regular
+ * expression and a vendor class prefix, for a message which matches both
+ * expressions and for one which fails on the last expression.  The
+ * filter is evaluated as the request processors do, through the compiled
+ * filter cache of the DhcpServerConfiguration.
+ * Run with: dhcp-benchmarks/bin/benchmarks FilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark
+{
+	private Filter filter;
+	private DhcpV4Message matchingMsg;
+	private DhcpV4Message nonMatchingMsg;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		StringOptionType stringOption = new StringOptionType();
+		stringOption.setString("host-[0-9]+");
+		OptionExpression optexpr = new OptionExpression();
+		optexpr.setCode(DhcpConstants.V4OPTION_HOSTNAME);
+		optexpr.setV4(true);
+		optexpr.setStringOption(stringOption);
+		optexpr.setOperator(Operator.REG_EXP);
+		FilterExpression hostnameExpr = new FilterExpression();
+		hostnameExpr.setOptionExpression(optexpr);
+		
+		OpaqueData opaque = new OpaqueData();
+		opaque.setAsciiValue("MSFT");
+		V4VendorClassOption vcOption = new V4VendorClassOption();
+		vcOption.setOpaqueData(opaque);
+		ClientClassExpression ccexpr = new ClientClassExpression();
+		ccexpr.setV4VendorClassOption(vcOption);
+		ccexpr.setOperator(Operator.STARTS_WITH);
+		FilterExpression vendorClassExpr = new FilterExpression();
+		vendorClassExpr.setClientClassExpression(ccexpr);
+		
+		FilterExpressionsType filterExprs = new FilterExpressionsType();
+		filterExprs.getFilterExpressionList().add(hostnameExpr);
+		filterExprs.getFilterExpressionList().add(vendorClassExpr);
+		filter = new Filter();
+		filter.setName("benchmark");
+		filter.setFilterExpressions(filterExprs);
+		
+		matchingMsg = buildMessage("host-42", "MSFT 5.0");
+		nonMatchingMsg = buildMessage("host-42", "PXEClient");
+	}
+	
+	private static DhcpV4Message buildMessage(String hostname, String vendorClass)
+	{
+		DhcpV4Message msg = new DhcpV4Message(
+				new InetSocketAddress(DhcpConstants.V4_SERVER_PORT),
+				new InetSocketAddress(DhcpConstants.V4_CLIENT_PORT));
+		msg.putDhcpOption(new DhcpV4HostnameOption(hostname));
+		BaseOpaqueData opaque = new BaseOpaqueData();
+		opaque.setAscii(vendorClass);
+		msg.putDhcpOption(new DhcpV4VendorClassOption(opaque));
+		return msg;
+	}
+	
+	@Benchmark
+	public boolean matching()
+	{
+		return DhcpServerConfiguration.msgMatchesFilter(matchingMsg, filter);
+	}
+	
+	@Benchmark
+	public boolean nonMatching()
+	{
+		return DhcpServerConfiguration.msgMatchesFilter(nonMatchingMsg, filter);
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(FilterBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file FindDhcpLinkBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.jagornet.dhcp.core.util.DhcpConstants;
+import com.jagornet.dhcp.server.config.xml.DhcpServerConfig;
+import com.jagornet.dhcp.server.config.xml.Link;
+import com.jagornet.dhcp.server.config.xml.LinksType;
+import com.jagornet.dhcp.server.config.xml.OpaqueData;
+import com.jagornet.dhcp.server.config.xml.V4ServerIdOption;
+import com.jagornet.dhcp.server.config.xml.V6ServerIdOption;
+
+/**
+ * JMH benchmark of DhcpServerConfiguration.findDhcpLink for a configuration
+ * of the given number of IPv4 /24 links, looking up a client address in
+ * each of the links in turn, both as a relayed request, by the relay's
+ * address, and as a local request, by the server's address.
+ * Run with: dhcp-benchmarks/bin/benchmarks FindDhcpLinkBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindDhcpLinkBenchmark
+{
+	@Param({ "10", "1000" })
+	public int linkCount;
+	
+	private DhcpServerConfiguration config;
+	private Inet4Address[] addrs;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		DhcpServerConfig jaxbConfig = new DhcpServerConfig();
+		V4ServerIdOption v4ServerId = new V4ServerIdOption();
+		v4ServerId.setIpAddress("10.0.0.10");
+		jaxbConfig.setV4ServerIdOption(v4ServerId);
+		V6ServerIdOption v6ServerId = new V6ServerIdOption();
+		OpaqueData opaque = new OpaqueData();
+		opaque.setHexValue(new byte[] { (byte)0xab, (byte)0xcd, (byte)0xef, 0x01 });
+		v6ServerId.setOpaqueData(opaque);
+		jaxbConfig.setV6ServerIdOption(v6ServerId);
+		
+		LinksType links = new LinksType();
+		addrs = new Inet4Address[linkCount];
+		for (int i=0; i<linkCount; i++) {
+			String subnet = "10." + (i / 256) + "." + (i % 256) + ".";
+			Link link = new Link();
+			link.setName("Link " + i);
+			link.setAddress(subnet + "0/24");
+			links.getLinkList().add(link);
+			addrs[i] = (Inet4Address) InetAddress.getByName(subnet + "1");
+		}
+		jaxbConfig.setLinks(links);
+		
+		config = DhcpServerConfiguration.getInstance();
+		config.init(jaxbConfig);
+	}
+	
+	@Benchmark
+	public DhcpLink relayed()
+	{
+		Inet4Address addr = addrs[next++ % addrs.length];
+		return config.findDhcpLink(addr, addr);
+	}
+	
+	@Benchmark
+	public DhcpLink local()
+	{
+		Inet4Address addr = addrs[next++ % addrs.length];
+		return config.findDhcpLink(addr, (Inet4Address) DhcpConstants.ZEROADDR_V4);
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(FindDhcpLinkBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
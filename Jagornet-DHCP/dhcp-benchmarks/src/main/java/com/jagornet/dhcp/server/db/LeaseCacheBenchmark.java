@@ -0,0 +1,133 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LeaseCacheBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.db;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the LeaseCache for a working set of leases which is
+ * twice the size of the cache, so that about half of the lookups miss
+ * and every put of an uncached lease evicts another, single threaded
+ * and with four threads sharing the cache.
+ * Run with: dhcp-benchmarks/bin/benchmarks LeaseCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeaseCacheBenchmark
+{
+	@Param({ "10000" })
+	public int cacheSize;
+	
+	private LeaseCache cache;
+	private DhcpLease[] leases;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		cache = new LeaseCache(cacheSize);
+		leases = new DhcpLease[2 * cacheSize];
+		long now = System.currentTimeMillis();
+		for (int i=0; i<leases.length; i++) {
+			DhcpLease lease = new DhcpLease();
+			lease.setIpAddress(InetAddress.getByAddress(new byte[] { 
+					10, (byte)(i >> 16), (byte)(i >> 8), (byte)i }));
+			lease.setDuid(new byte[] { 0, 1, (byte)(i >> 8), (byte)i });
+			lease.setIatype(IdentityAssoc.V4_TYPE);
+			lease.setState(IaAddress.LEASED);
+			lease.setStartTime(new Date(now));
+			lease.setPreferredEndTime(new Date(now + 3600000));
+			lease.setValidEndTime(new Date(now + 3600000));
+			leases[i] = lease;
+			cache.putLease(lease);
+		}
+	}
+	
+	private DhcpLease randomLease()
+	{
+		return leases[ThreadLocalRandom.current().nextInt(leases.length)];
+	}
+	
+	@Benchmark
+	public DhcpLease get()
+	{
+		return cache.getLease(randomLease().getIpAddress());
+	}
+	
+	@Benchmark
+	public DhcpLease getOrPut()
+	{
+		DhcpLease lease = randomLease();
+		DhcpLease cached = cache.getLease(lease.getIpAddress());
+		if (cached == null) {
+			cache.putLease(lease);
+		}
+		return cached;
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public DhcpLease getThreaded()
+	{
+		return get();
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public DhcpLease getOrPutThreaded()
+	{
+		return getOrPut();
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(LeaseCacheBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpV4DecodeBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.netty;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.jagornet.dhcp.core.message.DhcpV4Message;
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+
+/**
+ * JMH comparison of the eager and lazy decoding of a relayed DHCPv4
+ * DISCOVER.  Each operation decodes the packet and reads the header
+ * fields used by the DISCOVER processor, which are the client hardware
+ * address and the relay and client addresses.  Run with the GC profiler,
+ * as in main, to see the bytes allocated per decoded DISCOVER in the
+ * gc.alloc.rate.norm results.
+ * Run with: dhcp-benchmarks/bin/benchmarks DhcpV4DecodeBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DhcpV4DecodeBenchmark
+{
+	@Param({ "false", "true" })
+	public boolean lazy;
+	
+	private ByteBuffer packet;
+	private InetSocketAddress localAddr;
+	private InetSocketAddress remoteAddr;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		localAddr = new InetSocketAddress(DhcpConstants.V4_SERVER_PORT);
+		remoteAddr = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 
+										DhcpConstants.V4_SERVER_PORT);
+		DhcpV4Message msg = new DhcpV4Message(localAddr, remoteAddr);
+		msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		msg.setHtype((short)1);
+		msg.setHlen((short)6);
+		msg.setHops((short)1);
+		msg.setTransactionId(0x12345678L);
+		msg.setGiAddr(remoteAddr.getAddress());
+		msg.setChAddr(new byte[] { (byte)0xde, (byte)0xbb, (byte)0x1e, 
+								(byte)0xde, (byte)0xbb, (byte)0x1e });
+		msg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
+		msg.putDhcpOption(new DhcpV4HostnameOption("host1"));
+		packet = msg.encode();
+	}
+	
+	@Benchmark
+	public void decodeDiscover(Blackhole bh) throws Exception
+	{
+		DhcpV4Message msg = DhcpV4Message.decode(packet.duplicate(), localAddr, remoteAddr, lazy);
+		bh.consume(msg.getChAddr());
+		bh.consume(msg.getGiAddr());
+		bh.consume(msg.getCiAddr());
+		bh.consume(msg.getMessageType());
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(DhcpV4DecodeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpV4MessageHandlerBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.jagornet.dhcp.core.message.DhcpV4Message;
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4RequestedIpAddressOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4ServerIdOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+import com.jagornet.dhcp.server.JagornetDhcpServer;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.db.IaManager;
+import com.jagornet.dhcp.server.request.binding.BaseBindingManager;
+import com.jagornet.dhcp.server.request.binding.V4AddrBindingManager;
+
+/**
+ * JMH benchmark of DhcpV4MessageHandler.handleMessage, from the decoded
+ * request to the reply, with the leases in an in-memory H2 database,
+ * using the jdbc-h2-mem schema type of this module.  The discover
+ * benchmark repeats the DISCOVER of clients which already hold an offer,
+ * and the lease benchmark takes a new client through DISCOVER, REQUEST
+ * and RELEASE, so that the pool does not run out of addresses.
+ * Run with: dhcp-benchmarks/bin/benchmarks DhcpV4MessageHandlerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DhcpV4MessageHandlerBenchmark
+{
+	public static final String SCHEMA_TYPE = "jdbc-h2-mem";
+	public static final int SCHEMA_VERSION = 2;
+	public static final String CONFIG_FILENAME = "classpath:dhcpserver-benchmark.xml";
+	
+	@Param({ "1000" })
+	public int clientCount;
+	
+	private DhcpServerConfiguration config;
+	private ClassPathXmlApplicationContext ctx;
+	private InetAddress relayAddr;
+	private InetSocketAddress localSocketAddr;
+	private InetSocketAddress remoteSocketAddr;
+	private DhcpV4ServerIdOption serverIdOption;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		config = DhcpServerConfiguration.getInstance();
+		config.init(CONFIG_FILENAME);
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_TYTPE, SCHEMA_TYPE);
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_VERSION, 
+										Integer.toString(SCHEMA_VERSION));
+		ctx = new ClassPathXmlApplicationContext(
+				JagornetDhcpServer.getAppContextFiles(SCHEMA_TYPE, SCHEMA_VERSION));
+		
+		V4AddrBindingManager v4AddrBindingMgr = 
+				(V4AddrBindingManager) ctx.getBean("v4AddrBindingManager");
+		v4AddrBindingMgr.init();
+		config.setV4AddrBindingMgr(v4AddrBindingMgr);
+		config.setIaMgr((IaManager) ctx.getBean("iaManager"));
+		
+		relayAddr = InetAddress.getByName("10.0.0.1");
+		localSocketAddr = new InetSocketAddress(InetAddress.getByName("10.0.0.10"),
+				DhcpConstants.V4_SERVER_PORT);
+		remoteSocketAddr = new InetSocketAddress(relayAddr, DhcpConstants.V4_SERVER_PORT);
+		serverIdOption = config.getDhcpV4ServerIdOption();
+		
+		// give each client an offer for the discover benchmark
+		for (int i=0; i<clientCount; i++) {
+			handle(buildMessage(i, DhcpConstants.V4MESSAGE_TYPE_DISCOVER));
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		BaseBindingManager bindingMgr = (BaseBindingManager) config.getV4AddrBindingMgr();
+		if (bindingMgr != null) {
+			bindingMgr.close();
+		}
+		if (ctx != null) {
+			ctx.close();
+		}
+	}
+	
+	private DhcpV4Message buildMessage(int client, int msgType)
+	{
+		DhcpV4Message msg = new DhcpV4Message(localSocketAddr, remoteSocketAddr);
+		msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		msg.setHtype((short)1);
+		msg.setHlen((short)6);
+		msg.setHops((short)1);
+		msg.setTransactionId(client);
+		msg.setGiAddr(relayAddr);
+		msg.setChAddr(new byte[] { 0x02, 0, 0, 
+				(byte)(client >> 16), (byte)(client >> 8), (byte)client });
+		msg.setMessageType((short)msgType);
+		msg.putDhcpOption(new DhcpV4HostnameOption("host-" + client));
+		return msg;
+	}
+	
+	private DhcpV4Message handle(DhcpV4Message msg)
+	{
+		return DhcpV4MessageHandler.handleMessage(localSocketAddr.getAddress(), msg);
+	}
+	
+	@Benchmark
+	public DhcpV4Message discover()
+	{
+		next = (next + 1) % clientCount;
+		return handle(buildMessage(next, DhcpConstants.V4MESSAGE_TYPE_DISCOVER));
+	}
+	
+	@Benchmark
+	public DhcpV4Message discoverRequestRelease()
+	{
+		// clients after those given offers in setup
+		int client = clientCount + (next++ % clientCount);
+		DhcpV4Message offerMsg = 
+				handle(buildMessage(client, DhcpConstants.V4MESSAGE_TYPE_DISCOVER));
+		
+		DhcpV4Message requestMsg = buildMessage(client, DhcpConstants.V4MESSAGE_TYPE_REQUEST);
+		requestMsg.putDhcpOption(serverIdOption);
+		requestMsg.putDhcpOption(new DhcpV4RequestedIpAddressOption(
+				offerMsg.getYiAddr().getHostAddress()));
+		DhcpV4Message ackMsg = handle(requestMsg);
+		
+		DhcpV4Message releaseMsg = buildMessage(client, DhcpConstants.V4MESSAGE_TYPE_RELEASE);
+		releaseMsg.putDhcpOption(serverIdOption);
+		releaseMsg.setCiAddr(ackMsg.getYiAddr());
+		handle(releaseMsg);
+		return ackMsg;
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(DhcpV4MessageHandlerBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
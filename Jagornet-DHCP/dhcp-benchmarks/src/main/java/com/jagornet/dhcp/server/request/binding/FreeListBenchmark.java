@@ -0,0 +1,126 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file FreeListBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH comparison of the generic BigInteger FreeList and the V4FreeList
+ * for an IPv4 pool where the given number of leading addresses are
+ * already in use, which is the worst case for FreeList.getNextFree.
+ * Each operation allocates the next free address and frees it again,
+ * so the state of the list is the same for every invocation.
+ * Run with: dhcp-benchmarks/bin/benchmarks FreeListBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FreeListBenchmark
+{
+	@Param({ "1000", "60000" })
+	public int usedCount;
+	
+	private FreeList freeList;
+	private V4FreeList v4FreeList;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		InetAddress start = InetAddress.getByName("10.0.0.0");
+		InetAddress end = InetAddress.getByName("10.0.255.255");
+		freeList = new FreeList(new BigInteger(start.getAddress()), 
+								new BigInteger(end.getAddress()));
+		v4FreeList = new V4FreeList(start, end);
+		for (int i=0; i<usedCount; i++) {
+			freeList.getNextFree();
+			v4FreeList.getNextFree();
+		}
+	}
+	
+	@Benchmark
+	public BigInteger freeList()
+	{
+		BigInteger next = freeList.getNextFree();
+		freeList.setFree(next);
+		return next;
+	}
+	
+	@Benchmark
+	public long v4FreeList()
+	{
+		long next = v4FreeList.getNextFree();
+		v4FreeList.setFree(next);
+		return next;
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public BigInteger freeListThreaded()
+	{
+		BigInteger next = freeList.getNextFree();
+		if (next != null) {
+			freeList.setFree(next);
+		}
+		return next;
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public long v4FreeListThreaded()
+	{
+		long next = v4FreeList.getNextFree();
+		v4FreeList.setFree(next);
+		return next;
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(FreeListBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
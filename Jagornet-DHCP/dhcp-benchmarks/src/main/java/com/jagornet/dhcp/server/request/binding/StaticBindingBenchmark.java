@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file StaticBindingBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.jagornet.dhcp.server.config.xml.V4AddressBinding;
+import com.jagornet.dhcp.server.db.IdentityAssoc;
+
+/**
+ * Compare the linear search of the static bindings of a link,
+ * as done before the StaticBindingIndex, with the index lookup.
+ * Run with: dhcp-benchmarks/bin/benchmarks StaticBindingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticBindingBenchmark
+{
+	@Param({ "1000", "100000" })
+	public int bindingCount;
+	
+	private List<StaticBinding> bindings;
+	private StaticBindingIndex index;
+	private byte[][] macs;
+	
+	private static V4StaticAddressBinding v4Binding(byte[] chaddr, String ip)
+	{
+		V4AddressBinding binding = new V4AddressBinding();
+		binding.setChaddr(chaddr);
+		binding.setIpAddress(ip);
+		return new V4StaticAddressBinding(binding);
+	}
+	
+	private static byte[] mac(int i)
+	{
+		return new byte[] { 0, 0x11, (byte)(i >> 24), (byte)(i >> 16), (byte)(i >> 8), (byte)i };
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		bindings = new ArrayList<>(bindingCount);
+		macs = new byte[bindingCount][];
+		for (int i=0; i<bindingCount; i++) {
+			macs[i] = mac(i);
+			bindings.add(v4Binding(macs[i], 
+					"10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff)));
+		}
+		index = new StaticBindingIndex(bindings);
+	}
+	
+	@Benchmark
+	public StaticBinding linearSearch()
+	{
+		byte[] mac = macs[ThreadLocalRandom.current().nextInt(bindingCount)];
+		for (StaticBinding staticBinding : bindings) {
+			if (staticBinding.matches(mac, IdentityAssoc.V4_TYPE, 0, null)) {
+				return staticBinding;
+			}
+		}
+		return null;
+	}
+	
+	@Benchmark
+	public StaticBinding indexLookup()
+	{
+		byte[] mac = macs[ThreadLocalRandom.current().nextInt(bindingCount)];
+		return index.find(mac, IdentityAssoc.V4_TYPE, 0, null);
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(StaticBindingBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
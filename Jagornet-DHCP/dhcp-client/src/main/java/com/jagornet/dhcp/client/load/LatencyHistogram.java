@@ -0,0 +1,166 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LatencyHistogram.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.client.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Title: LatencyHistogram
+ * Description: A fixed-size, log-linear histogram of latencies which may be
+ * recorded concurrently from any number of threads without locking.  Values
+ * below 128 are counted exactly, and larger values are counted in buckets
+ * which are at most 1/64th of their value wide, so any reported percentile
+ * is within about 1.5% of the true value.  Values larger than the highest
+ * trackable value are counted as the highest trackable value.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class LatencyHistogram
+{
+	// the number of bits of each value which are kept exactly
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+	private final long highestTrackableValue;
+	private final AtomicLongArray counts;
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder totalValue = new LongAdder();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * Instantiates a new latency histogram.
+	 * 
+	 * @param highestTrackableValue the highest value to be tracked
+	 */
+	public LatencyHistogram(long highestTrackableValue)
+	{
+		if (highestTrackableValue < SUB_BUCKET_COUNT) {
+			throw new IllegalArgumentException("Highest trackable value must be at least " +
+												SUB_BUCKET_COUNT + ": " + highestTrackableValue);
+		}
+		this.highestTrackableValue = highestTrackableValue;
+		counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+	}
+
+	static int bucketIndex(long value)
+	{
+		if (value < SUB_BUCKET_COUNT) {
+			return (int)value;
+		}
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS + 1;
+		return (shift * SUB_BUCKET_HALF) + (int)(value >>> shift);
+	}
+
+	static long lowestValueAt(int index)
+	{
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index / SUB_BUCKET_HALF) - 1;
+		return (long)(index - (shift * SUB_BUCKET_HALF)) << shift;
+	}
+
+	static long highestValueAt(int index)
+	{
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index / SUB_BUCKET_HALF) - 1;
+		return lowestValueAt(index) + (1L << shift) - 1;
+	}
+
+	/**
+	 * Record a value.
+	 * 
+	 * @param value the value, negative values are recorded as zero
+	 */
+	public void recordValue(long value)
+	{
+		if (value < 0) {
+			value = 0;
+		}
+		else if (value > highestTrackableValue) {
+			value = highestTrackableValue;
+		}
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.increment();
+		totalValue.add(value);
+		maxValue.accumulateAndGet(value, Math::max);
+	}
+
+	public long getTotalCount()
+	{
+		return totalCount.sum();
+	}
+
+	public long getMaxValue()
+	{
+		return maxValue.get();
+	}
+
+	public double getMean()
+	{
+		long count = totalCount.sum();
+		return (count == 0) ? 0 : ((double)totalValue.sum() / count);
+	}
+
+	/**
+	 * Get the value at the given percentile, which is the highest value
+	 * equivalent to the recorded value at that percentile, but never more
+	 * than the maximum recorded value.
+	 * 
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the value at the percentile, or zero if there are no values
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long count = 0;
+		for (int i=0; i<counts.length(); i++) {
+			count += counts.get(i);
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long countAtPercentile = 
+				Math.max(1, (long)Math.ceil((Math.min(percentile, 100.0) / 100.0) * count));
+		long total = 0;
+		for (int i=0; i<counts.length(); i++) {
+			total += counts.get(i);
+			if (total >= countAtPercentile) {
+				return Math.min(highestValueAt(i), getMaxValue());
+			}
+		}
+		return getMaxValue();
+	}
+
+	public long getHighestTrackableValue()
+	{
+		return highestTrackableValue;
+	}
+}
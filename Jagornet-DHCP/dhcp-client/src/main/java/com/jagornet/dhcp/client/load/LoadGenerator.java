@@ -0,0 +1,788 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LoadGenerator.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.client.load;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+
+/**
+ * Title: LoadGenerator
+ * Description: The base class of the high-rate DHCP load generators.  Unlike
+ * the client simulators, which run a thread per client and pace requests by
+ * sleeping, the load generator is open-loop: transactions are started on a
+ * fixed schedule at the target rate, regardless of how quickly the server
+ * replies, and each transaction's latency is measured from the time it was
+ * scheduled to start, so a slow server cannot hide its latency by slowing
+ * down the load.  All messages are sent via unicast as if from one of a set
+ * of relay agents, and replies are handled directly on the Netty event loops.
+ * 
+ * @author A. Gregory Rabil
+ */
+public abstract class LoadGenerator
+{
+	private static Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+	/**
+	 * The kinds of transaction which the load generator runs.  A bind is
+	 * the full four message exchange which leases an address to a client,
+	 * and renew and release act on the address leased by an earlier bind.
+	 */
+	public enum Type { BIND, RENEW, RELEASE }
+
+	// track latencies up to one hour, in microseconds
+	private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+	private static final int SOCKET_BUFFER_SIZE = 4 * 1024 * 1024;
+	private static final long TIMEOUT_SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    protected Options options = new Options();
+    protected CommandLineParser parser = new BasicParser();
+
+    protected InetAddress serverAddr;
+    protected int serverPort;
+    protected InetAddress relayAddr;
+    protected int numRelays = 1;
+    protected int numClients = 1000;
+    protected int requestRate = 1000;
+    protected int duration = 10;
+    protected int replyTimeout = 2000;
+    protected int numSockets = 1;
+    protected int[] mix = new int[] { 100, 0, 0 };
+
+    protected InetSocketAddress server;
+    protected EventLoopGroup group;
+    protected List<Channel> channels = new ArrayList<Channel>();
+
+    protected final Queue<Client> unboundClients = new ConcurrentLinkedQueue<Client>();
+    protected final Queue<Client> boundClients = new ConcurrentLinkedQueue<Client>();
+    protected final Map<Long, Transaction> pending = new ConcurrentHashMap<Long, Transaction>();
+    private final AtomicLong nextXid = new AtomicLong(ThreadLocalRandom.current().nextInt());
+
+    protected final LatencyHistogram[] latencies = new LatencyHistogram[Type.values().length];
+    protected final LongAdder[] started = newCounters();
+    protected final LongAdder[] completed = newCounters();
+    protected final LongAdder[] failed = newCounters();
+    protected final LongAdder[] timeouts = newCounters();
+    protected final LongAdder skipped = new LongAdder();
+    protected final LongAdder unmatched = new LongAdder();
+    protected final LongAdder errors = new LongAdder();
+
+    /**
+     * A simulated client, which is always in exactly one of the unbound
+     * or bound queues, or is in a transaction which is in progress.
+     */
+    public static class Client
+    {
+    	protected final int id;
+    	protected final InetAddress relayAddr;
+    	protected boolean bound;
+    	
+    	public Client(int id, InetAddress relayAddr)
+    	{
+    		this.id = id;
+    		this.relayAddr = relayAddr;
+    	}
+    	
+    	public int getId() {
+    		return id;
+    	}
+    	
+    	public InetAddress getRelayAddr() {
+    		return relayAddr;
+    	}
+    	
+    	public boolean isBound() {
+    		return bound;
+    	}
+    }
+
+    /**
+     * A transaction in progress, keyed in the pending map by the
+     * transaction id of the message which is waiting for a reply.
+     */
+    public static class Transaction
+    {
+    	protected final Type type;
+    	protected final Client client;
+    	protected final long scheduledTime;
+    	protected long xid;
+    	protected int step;
+    	protected volatile long deadline;
+    	
+    	public Transaction(Type type, Client client, long scheduledTime)
+    	{
+    		this.type = type;
+    		this.client = client;
+    		this.scheduledTime = scheduledTime;
+    	}
+    	
+    	public Type getType() {
+    		return type;
+    	}
+    	
+    	public Client getClient() {
+    		return client;
+    	}
+    	
+    	public long getXid() {
+    		return xid;
+    	}
+    	
+    	public int getStep() {
+    		return step;
+    	}
+    }
+
+    public LoadGenerator(InetAddress defaultServerAddr, int defaultServerPort,
+    		InetAddress defaultRelayAddr)
+    {
+    	serverAddr = defaultServerAddr;
+    	serverPort = defaultServerPort;
+    	relayAddr = defaultRelayAddr;
+    	for (int i=0; i<latencies.length; i++) {
+    		latencies[i] = new LatencyHistogram(MAX_LATENCY_MICROS);
+    	}
+    }
+
+    private static LongAdder[] newCounters()
+    {
+    	LongAdder[] counters = new LongAdder[Type.values().length];
+    	for (int i=0; i<counters.length; i++) {
+    		counters[i] = new LongAdder();
+    	}
+    	return counters;
+    }
+
+    /**
+     * Get the name of the bind transaction, e.g. DORA or SARR,
+     * which is also the name of its weight in the mix option.
+     * 
+     * @return the bind name
+     */
+    protected abstract String getBindName();
+
+    /**
+     * Create a new simulated client.
+     * 
+     * @param id the client id, from one to the number of clients
+     * @param relayAddr the address of the relay agent for the client
+     * @return the new client
+     */
+    protected abstract Client newClient(int id, InetAddress relayAddr);
+
+    /**
+     * Build the first message of a new transaction.  The transaction id
+     * of the message must be the transaction id of the transaction.
+     * 
+     * @param tx the transaction
+     * @return the encoded message
+     * @throws IOException if the message cannot be encoded
+     */
+    protected abstract ByteBuffer buildFirstMessage(Transaction tx) throws IOException;
+
+    /**
+     * Check if the server replies to the first message of the given
+     * transaction type, for example the server never replies to a
+     * DHCPv4 RELEASE.
+     * 
+     * @param type the transaction type
+     * @return true if a reply is expected
+     */
+    protected abstract boolean expectsReply(Type type);
+
+    /**
+     * Handle a message received from the server.  Implementations decode
+     * the message, take its transaction from the pending map by transaction
+     * id, and either send the next message of the transaction or complete it.
+     * 
+     * @param channel the channel which received the message
+     * @param buf the received message
+     * @param sender the address of the server
+     * @throws IOException if the message cannot be decoded
+     */
+    protected abstract void messageReceived(Channel channel, ByteBuffer buf,
+    		InetSocketAddress sender) throws IOException;
+
+    /**
+     * Get the next transaction id, which implementations
+     * may mask to the size of the transaction id field.
+     * 
+     * @return the next transaction id
+     */
+    protected long nextTransactionId()
+    {
+    	return nextXid.incrementAndGet();
+    }
+
+	protected void setupOptions()
+	{
+        options.addOption(new Option("sa", "serveraddress", true,
+        							"Address of the DHCP server" +
+        							" [" + serverAddr.getHostAddress() + "]"));
+        options.addOption(new Option("sp", "serverport", true,
+        							"Server port number" +
+        							" [" + serverPort + "]"));
+        options.addOption(new Option("ra", "relayaddress", true,
+        							"Address of the first simulated relay agent" +
+        							" [" + relayAddr.getHostAddress() + "]"));
+        options.addOption(new Option("nr", "numrelays", true,
+        							"Number of simulated relay agents, at consecutive" +
+        							" addresses from the first relay address [" + numRelays + "]"));
+        options.addOption(new Option("n", "numclients", true,
+        							"Number of simulated clients, which is the most" +
+        							" transactions which can be in progress [" + numClients + "]"));
+        options.addOption(new Option("rr", "requestrate", true,
+        							"Target rate of transactions started per second" +
+        							" [" + requestRate + "]"));
+        options.addOption(new Option("d", "duration", true,
+        							"Duration of the test in seconds [" + duration + "]"));
+        options.addOption(new Option("to", "timeout", true,
+        							"Reply timeout in milliseconds [" + replyTimeout + "]"));
+        options.addOption(new Option("s", "sockets", true,
+        							"Number of sockets, each with its own I/O thread" +
+        							" [" + numSockets + "]"));
+        options.addOption(new Option("m", "mix", true,
+        							"Transaction mix weights, e.g. " + 
+        							getBindName().toLowerCase() + "=60,renew=30,release=10" +
+        							" [" + getBindName().toLowerCase() + "=100]"));
+        options.addOption(new Option("?", "help", false, "Show this help page."));
+	}
+
+	protected int parseIntegerOption(String opt, String str, int defval)
+	{
+    	try {
+    		int val = Integer.parseInt(str);
+    		if (val > 0) {
+    			return val;
+    		}
+    		System.err.println("Invalid " + opt + " '" + str + "' using default: " + defval);
+    	}
+    	catch (NumberFormatException ex) {
+    		System.err.println("Invalid " + opt + " '" + str +
+    							"' using default: " + defval +
+    							" Exception=" + ex);
+    	}
+    	return defval;
+	}
+
+	protected InetAddress parseIpAddressOption(String opt, String str, InetAddress defaddr)
+	{
+    	try {
+    		return InetAddress.getByName(str);
+    	}
+    	catch (UnknownHostException ex) {
+    		System.err.println("Invalid " + opt + " address: '" + str +
+    							"' using default: " + defaddr +
+    							" Exception=" + ex);
+    	}
+    	return defaddr;
+	}
+
+	/**
+	 * Parse the transaction mix, a comma separated list of name=weight.
+	 * 
+	 * @param str the mix option value
+	 * @return the weights indexed by transaction type, or null if invalid
+	 */
+	protected int[] parseMix(String str)
+	{
+		int[] weights = new int[Type.values().length];
+		for (String item : str.split(",")) {
+			String[] nv = item.trim().split("=");
+			if (nv.length != 2) {
+				return null;
+			}
+			Type type = null;
+			String name = nv[0].trim();
+			if (name.equalsIgnoreCase(getBindName()) || name.equalsIgnoreCase(Type.BIND.name())) {
+				type = Type.BIND;
+			}
+			else if (name.equalsIgnoreCase(Type.RENEW.name())) {
+				type = Type.RENEW;
+			}
+			else if (name.equalsIgnoreCase(Type.RELEASE.name())) {
+				type = Type.RELEASE;
+			}
+			else {
+				return null;
+			}
+			try {
+				weights[type.ordinal()] = Integer.parseInt(nv[1].trim());
+			}
+			catch (NumberFormatException ex) {
+				return null;
+			}
+			if (weights[type.ordinal()] < 0) {
+				return null;
+			}
+		}
+		if (weights[Type.BIND.ordinal()] <= 0) {
+			// nothing can be renewed or released until it is bound
+			return null;
+		}
+		return weights;
+	}
+
+    protected boolean parseOptions(String[] args)
+    {
+        try {
+            CommandLine cmd = parser.parse(options, args);
+            if (cmd.hasOption("?")) {
+                return false;
+            }
+            if (cmd.hasOption("sa")) {
+            	serverAddr = parseIpAddressOption("server", cmd.getOptionValue("sa"), serverAddr);
+            }
+            if (cmd.hasOption("sp")) {
+            	serverPort = parseIntegerOption("server port", cmd.getOptionValue("sp"), serverPort);
+            }
+            if (cmd.hasOption("ra")) {
+            	relayAddr = parseIpAddressOption("relay", cmd.getOptionValue("ra"), relayAddr);
+            }
+            if (cmd.hasOption("nr")) {
+            	numRelays = parseIntegerOption("num relays", cmd.getOptionValue("nr"), numRelays);
+            }
+            if (cmd.hasOption("n")) {
+            	numClients = parseIntegerOption("num clients", cmd.getOptionValue("n"), numClients);
+            }
+            if (cmd.hasOption("rr")) {
+            	requestRate = parseIntegerOption("request rate", cmd.getOptionValue("rr"), requestRate);
+            }
+            if (cmd.hasOption("d")) {
+            	duration = parseIntegerOption("duration", cmd.getOptionValue("d"), duration);
+            }
+            if (cmd.hasOption("to")) {
+            	replyTimeout = parseIntegerOption("timeout", cmd.getOptionValue("to"), replyTimeout);
+            }
+            if (cmd.hasOption("s")) {
+            	numSockets = parseIntegerOption("sockets", cmd.getOptionValue("s"), numSockets);
+            }
+            if (cmd.hasOption("m")) {
+            	mix = parseMix(cmd.getOptionValue("m"));
+            	if (mix == null) {
+            		System.err.println("Invalid mix '" + cmd.getOptionValue("m") + "': expected" +
+            				" name=weight[,name=weight...] where name is one of " + 
+            				getBindName().toLowerCase() + ", renew or release," +
+            				" with a positive " + getBindName().toLowerCase() + " weight");
+            		return false;
+            	}
+            }
+        }
+        catch (ParseException pe) {
+            System.err.println("Command line option parsing failure: " + pe);
+            return false;
+		}
+        return true;
+    }
+
+    /**
+     * Parse the command line and run the load, then print the report.
+     * 
+     * @param args the command line arguments
+     * @return true if the command line was valid and the load was run
+     * @throws Exception if the load generator fails
+     */
+    public boolean run(String[] args) throws Exception
+    {
+    	setupOptions();
+    	if (!parseOptions(args)) {
+    		new HelpFormatter().printHelp(this.getClass().getName(), options);
+    		return false;
+    	}
+    	try {
+    		open();
+    		runLoad();
+    	}
+    	finally {
+    		close();
+    	}
+    	report();
+    	return true;
+    }
+
+    protected void open() throws Exception
+    {
+    	server = new InetSocketAddress(serverAddr, serverPort);
+    	
+    	BigInteger firstRelay = new BigInteger(1, relayAddr.getAddress());
+    	int addrLength = relayAddr.getAddress().length;
+    	InetAddress[] relays = new InetAddress[numRelays];
+    	for (int i=0; i<numRelays; i++) {
+    		relays[i] = toInetAddress(firstRelay.add(BigInteger.valueOf(i)), addrLength);
+    	}
+    	for (int i=1; i<=numClients; i++) {
+    		unboundClients.add(newClient(i, relays[i % numRelays]));
+    	}
+    	
+    	Bootstrap bootstrap = new Bootstrap();
+    	String io = null;
+    	if (Epoll.isAvailable()) {
+    		bootstrap.channel(EpollDatagramChannel.class);
+    		group = new EpollEventLoopGroup(numSockets);
+    		io = "Epoll I/O";
+    	}
+    	else {
+    		bootstrap.channel(NioDatagramChannel.class);
+    		group = new NioEventLoopGroup(numSockets);
+    		io = "New I/O";
+    	}
+    	bootstrap.group(group);
+    	bootstrap.option(ChannelOption.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+    	bootstrap.option(ChannelOption.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+    	bootstrap.handler(new ChannelInitializer<DatagramChannel>() {
+			@Override
+			protected void initChannel(DatagramChannel channel) throws Exception {
+				channel.pipeline().addLast("handler", new LoadHandler());
+			}
+    	});
+    	for (int i=0; i<numSockets; i++) {
+    		// each socket is bound to its own ephemeral port, and the
+    		// server replies to the port from which the request was sent
+    		ChannelFuture future = bootstrap.bind(0).await();
+    		if (!future.isSuccess()) {
+    			throw new IOException("Failed to bind datagram channel", future.cause());
+    		}
+    		channels.add(future.channel());
+    	}
+    	log.info("Opened " + numSockets + " " + io + " datagram channel(s) for " +
+    			numClients + " clients via " + numRelays + " relays to server " + server);
+    }
+
+    protected static InetAddress toInetAddress(BigInteger value, int length) throws UnknownHostException
+    {
+    	byte[] bytes = value.toByteArray();
+    	byte[] addr = new byte[length];
+    	int n = Math.min(bytes.length, length);
+    	System.arraycopy(bytes, bytes.length - n, addr, length - n, n);
+    	return InetAddress.getByAddress(addr);
+    }
+
+    /**
+     * Start transactions on schedule for the duration of the test, then wait
+     * for the transactions in progress to complete or time out.
+     */
+    protected void runLoad()
+    {
+    	long intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestRate;
+    	long startTime = System.nanoTime();
+    	long endTime = startTime + TimeUnit.SECONDS.toNanos(duration);
+    	long nextSweep = startTime + TIMEOUT_SWEEP_NANOS;
+    	long nextReport = startTime + TimeUnit.SECONDS.toNanos(1);
+    	long numStarted = 0;
+    	long lastCompleted = 0;
+    	System.out.println("Running " + requestRate + " transactions/sec for " +
+    			duration + " seconds to " + server);
+    	long now = startTime;
+    	while (now < endTime) {
+    		// start every transaction which is due by now, each with
+    		// the time at which it should have started, so that any
+    		// lag in this loop is counted in the measured latency
+    		long due = Math.min((now - startTime) / intervalNanos + 1, 
+    							(endTime - startTime) / intervalNanos);
+    		if (numStarted < due) {
+	    		while (numStarted < due) {
+	    			startTransaction(startTime + (numStarted * intervalNanos), 
+	    					channels.get((int)(numStarted % channels.size())));
+	    			numStarted++;
+	    		}
+	    		for (Channel channel : channels) {
+	    			channel.flush();
+	    		}
+    		}
+    		if (now >= nextSweep) {
+    			expireTransactions(now);
+    			nextSweep = now + TIMEOUT_SWEEP_NANOS;
+    		}
+    		if (now >= nextReport) {
+    			long numCompleted = sum(completed);
+    			System.out.println(String.format("%4ds: started=%d completed=%d (%d/s)" +
+    					" failed=%d timeouts=%d skipped=%d pending=%d",
+    					TimeUnit.NANOSECONDS.toSeconds(now - startTime), 
+    					numStarted, numCompleted, numCompleted - lastCompleted,
+    					sum(failed), sum(timeouts), skipped.sum(), pending.size()));
+    			lastCompleted = numCompleted;
+    			nextReport += TimeUnit.SECONDS.toNanos(1);
+    		}
+    		LockSupport.parkNanos(Math.min(intervalNanos, 100000));
+    		now = System.nanoTime();
+    	}
+    	// drain the transactions which are still in progress
+    	long drainEnd = now + TimeUnit.MILLISECONDS.toNanos(replyTimeout);
+    	while (!pending.isEmpty() && (now <= drainEnd)) {
+			expireTransactions(now);
+    		LockSupport.parkNanos(TIMEOUT_SWEEP_NANOS);
+    		now = System.nanoTime();
+    	}
+    	expireTransactions(Long.MAX_VALUE);
+    }
+
+    private static long sum(LongAdder[] counters)
+    {
+    	long total = 0;
+    	for (LongAdder counter : counters) {
+    		total += counter.sum();
+    	}
+    	return total;
+    }
+
+    /**
+     * Choose the type of the next transaction by weight, then start it with
+     * a client in the right state.  If there is no such client, then a renew
+     * or release falls back to a bind, and if there is no unbound client
+     * either, the transaction is skipped, because every client is busy.
+     */
+    protected void startTransaction(long scheduledTime, Channel channel)
+    {
+    	Type type = chooseType();
+    	Client client = null;
+    	if (type != Type.BIND) {
+    		client = boundClients.poll();
+    		if (client == null) {
+    			type = Type.BIND;
+    		}
+    	}
+    	if (client == null) {
+    		client = unboundClients.poll();
+    		if (client == null) {
+    			skipped.increment();
+    			return;
+    		}
+    	}
+    	Transaction tx = new Transaction(type, client, scheduledTime);
+    	tx.xid = nextTransactionId();
+    	started[type.ordinal()].increment();
+    	try {
+    		send(channel, tx, buildFirstMessage(tx), expectsReply(type), false);
+    	}
+    	catch (IOException ex) {
+    		log.error("Failed to build message for client " + client.getId(), ex);
+    		errors.increment();
+    		complete(tx, false);
+    	}
+    }
+
+    private Type chooseType()
+    {
+    	int total = 0;
+    	for (int weight : mix) {
+    		total += weight;
+    	}
+    	int r = ThreadLocalRandom.current().nextInt(total);
+    	for (Type type : Type.values()) {
+    		r -= mix[type.ordinal()];
+    		if (r < 0) {
+    			return type;
+    		}
+    	}
+    	return Type.BIND;
+    }
+
+    /**
+     * Send the next message of a transaction.  The message is written but
+     * not flushed unless requested, because the caller flushes its channel
+     * after each batch of messages.
+     * 
+     * @param channel the channel on which to send the message
+     * @param tx the transaction
+     * @param buf the encoded message
+     * @param expectReply true to wait for a reply, false to complete the transaction
+     * @param flush true to flush the channel
+     */
+    protected void send(Channel channel, Transaction tx, ByteBuffer buf, 
+    		boolean expectReply, boolean flush)
+    {
+    	if (expectReply) {
+    		tx.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replyTimeout);
+    		pending.put(tx.xid, tx);
+    	}
+		channel.write(new DatagramPacket(Unpooled.wrappedBuffer(buf), server), 
+				channel.voidPromise());
+		if (flush) {
+			channel.flush();
+		}
+		if (!expectReply) {
+			complete(tx, true);
+		}
+    }
+
+    /**
+     * Complete a transaction, recording its latency if it succeeded,
+     * and return its client to the queue for the client's state.
+     * 
+     * @param tx the transaction
+     * @param success true if the server replied as expected
+     */
+    protected void complete(Transaction tx, boolean success)
+    {
+    	int type = tx.type.ordinal();
+    	if (success) {
+    		completed[type].increment();
+    		latencies[type].recordValue(
+    				TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - tx.scheduledTime));
+    	}
+    	else {
+    		failed[type].increment();
+    	}
+    	release(tx.client);
+    }
+
+    private void release(Client client)
+    {
+    	if (client.isBound()) {
+    		boundClients.add(client);
+    	}
+    	else {
+    		unboundClients.add(client);
+    	}
+    }
+
+    private void expireTransactions(long now)
+    {
+    	Iterator<Transaction> iter = pending.values().iterator();
+    	while (iter.hasNext()) {
+    		Transaction tx = iter.next();
+    		if ((tx.deadline - now) < 0) {
+    			// only one of the sweeper or the reply handler may take it
+    			if (pending.remove(tx.xid, tx)) {
+    				timeouts[tx.type.ordinal()].increment();
+    				release(tx.client);
+    			}
+    		}
+    	}
+    }
+
+    protected void close()
+    {
+    	for (Channel channel : channels) {
+    		channel.close().awaitUninterruptibly();
+    	}
+    	if (group != null) {
+    		group.shutdownGracefully(0, 1, TimeUnit.SECONDS).awaitUninterruptibly();
+    	}
+    }
+
+    protected void report()
+    {
+    	System.out.println();
+    	System.out.println(String.format("%-8s %10s %10s %8s %8s %10s %10s %10s %10s %10s %10s",
+    			"", "started", "completed", "failed", "timeouts",
+    			"mean(ms)", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)"));
+    	for (Type type : Type.values()) {
+    		int i = type.ordinal();
+    		LatencyHistogram h = latencies[i];
+    		System.out.println(String.format("%-8s %10d %10d %8d %8d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f",
+    				(type == Type.BIND) ? getBindName() : type.name(),
+    				started[i].sum(), completed[i].sum(), failed[i].sum(), timeouts[i].sum(),
+    				h.getMean() / 1000.0,
+    				h.getValueAtPercentile(50) / 1000.0,
+    				h.getValueAtPercentile(90) / 1000.0,
+    				h.getValueAtPercentile(99) / 1000.0,
+    				h.getValueAtPercentile(99.9) / 1000.0,
+    				h.getMaxValue() / 1000.0));
+    	}
+    	long numCompleted = sum(completed);
+    	System.out.println();
+    	System.out.println(String.format("Completed %d transactions in %d seconds (%.1f/s)," +
+    			" skipped=%d unmatched=%d errors=%d",
+    			numCompleted, duration, (double)numCompleted / duration,
+    			skipped.sum(), unmatched.sum(), errors.sum()));
+    	if (skipped.sum() > 0) {
+    		System.out.println("Transactions were skipped because every client was busy," +
+    				" increase the number of clients to reach the target rate");
+    	}
+    }
+
+    /**
+     * Handles the replies received on each channel on the channel's event
+     * loop, and flushes any messages sent in response once per read batch.
+     */
+    class LoadHandler extends SimpleChannelInboundHandler<DatagramPacket>
+    {
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+			try {
+				messageReceived(ctx.channel(), packet.content().nioBuffer(), packet.sender());
+			}
+			catch (IOException ex) {
+				log.warn("Failed to decode message from " + packet.sender() + ": " + ex);
+				errors.increment();
+			}
+		}
+
+		@Override
+		public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+			ctx.flush();
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			log.error("Exception caught: ", cause);
+			errors.increment();
+		}
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LoadGeneratorV4.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.client.load;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.core.message.DhcpV4Message;
+import com.jagornet.dhcp.core.option.v4.DhcpV4MsgTypeOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4RequestedIpAddressOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4ServerIdOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+
+import io.netty.channel.Channel;
+
+/**
+ * Title: LoadGeneratorV4
+ * Description: A high-rate DHCPv4 load generator, which runs a mix of
+ * DISCOVER/OFFER/REQUEST/ACK, renewing REQUEST/ACK and RELEASE transactions
+ * at a target rate, as if relayed from a set of relay agents (giaddrs).
+ * Run with, for example:
+ * 	java com.jagornet.dhcp.client.load.LoadGeneratorV4 -sa 127.0.0.1 -rr 20000 -n 50000 -nr 10 -m dora=60,renew=30,release=10
+ * 
+ * @author A. Gregory Rabil
+ */
+public class LoadGeneratorV4 extends LoadGenerator
+{
+	private static Logger log = LoggerFactory.getLogger(LoadGeneratorV4.class);
+
+	public LoadGeneratorV4() throws IOException
+	{
+		super(InetAddress.getLoopbackAddress(), DhcpConstants.V4_SERVER_PORT,
+				InetAddress.getByName("10.0.0.1"));
+	}
+
+	/**
+	 * A simulated DHCPv4 client, with a hardware address
+	 * derived from its id, and the address leased to it.
+	 */
+	static class ClientV4 extends Client
+	{
+		final byte[] chAddr;
+		InetAddress yiAddr;
+		DhcpV4ServerIdOption serverIdOption;
+		
+		ClientV4(int id, InetAddress relayAddr)
+		{
+			super(id, relayAddr);
+			chAddr = new byte[] { (byte)0xde, (byte)0xb1, 
+					(byte)(id >>> 24), (byte)(id >>> 16), (byte)(id >>> 8), (byte)id };
+		}
+	}
+
+	@Override
+	protected String getBindName()
+	{
+		return "DORA";
+	}
+
+	@Override
+	protected Client newClient(int id, InetAddress relayAddr)
+	{
+		return new ClientV4(id, relayAddr);
+	}
+
+	@Override
+	protected long nextTransactionId()
+	{
+		return super.nextTransactionId() & 0xffffffffL;
+	}
+
+	@Override
+	protected boolean expectsReply(Type type)
+	{
+		// the server does not reply to a RELEASE
+		return (type != Type.RELEASE);
+	}
+
+	@Override
+	protected ByteBuffer buildFirstMessage(Transaction tx) throws IOException
+	{
+		ClientV4 client = (ClientV4)tx.getClient();
+		switch (tx.getType()) {
+			case RENEW:
+				// a renewing client unicasts a REQUEST with ciaddr set,
+				// and without a requested address or server identifier
+				DhcpV4Message renewMsg = buildMessage(tx, client, DhcpConstants.V4MESSAGE_TYPE_REQUEST);
+				renewMsg.setCiAddr(client.yiAddr);
+				return renewMsg.encode();
+			case RELEASE:
+				DhcpV4Message releaseMsg = buildMessage(tx, client, DhcpConstants.V4MESSAGE_TYPE_RELEASE);
+				releaseMsg.setCiAddr(client.yiAddr);
+				releaseMsg.putDhcpOption(client.serverIdOption);
+				// nothing to wait for, so the address is released now
+				client.bound = false;
+				client.yiAddr = null;
+				return releaseMsg.encode();
+			default:
+				return buildMessage(tx, client, DhcpConstants.V4MESSAGE_TYPE_DISCOVER).encode();
+		}
+	}
+
+	private DhcpV4Message buildMessage(Transaction tx, ClientV4 client, int msgType)
+	{
+        DhcpV4Message msg = new DhcpV4Message(null, server);
+        msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+        msg.setTransactionId(tx.getXid());
+        msg.setHtype((short)1);	// ethernet
+        msg.setHlen((byte)6);
+        msg.setChAddr(client.chAddr);
+        msg.setGiAddr(client.getRelayAddr());	// look like a relay to the DHCP server
+        msg.putDhcpOption(new DhcpV4MsgTypeOption((short)msgType));
+        return msg;
+	}
+
+	@Override
+	protected void messageReceived(Channel channel, ByteBuffer buf, 
+			InetSocketAddress sender) throws IOException
+	{
+		DhcpV4Message msg = DhcpV4Message.decode(buf, 
+				(InetSocketAddress)channel.localAddress(), sender);
+		if (msg == null) {
+			errors.increment();
+			return;
+		}
+		// the decoded xid is sign extended, so mask it to match the pending key
+		Transaction tx = pending.remove(msg.getTransactionId() & 0xffffffffL);
+		if (tx == null) {
+			// a late reply to a transaction which timed out
+			unmatched.increment();
+			return;
+		}
+		ClientV4 client = (ClientV4)tx.getClient();
+		short msgType = msg.getMessageType();
+		if ((msgType == DhcpConstants.V4MESSAGE_TYPE_OFFER) &&
+				(tx.getType() == Type.BIND) && (tx.step == 0)) {
+			tx.step++;
+	        DhcpV4Message requestMsg = buildMessage(tx, client, DhcpConstants.V4MESSAGE_TYPE_REQUEST);
+	        requestMsg.putDhcpOption(
+	        		new DhcpV4RequestedIpAddressOption(msg.getYiAddr().getHostAddress()));
+	        // MUST include serverId option for selecting state
+	        requestMsg.putDhcpOption(msg.getDhcpV4ServerIdOption());
+	        // flushed by the handler when the read batch is complete
+	        send(channel, tx, requestMsg.encode(), true, false);
+		}
+		else if (msgType == DhcpConstants.V4MESSAGE_TYPE_ACK) {
+			client.yiAddr = msg.getYiAddr();
+			client.serverIdOption = msg.getDhcpV4ServerIdOption();
+			client.bound = true;
+			complete(tx, true);
+		}
+		else if (msgType == DhcpConstants.V4MESSAGE_TYPE_NAK) {
+			client.bound = false;
+			client.yiAddr = null;
+			complete(tx, false);
+		}
+		else {
+			log.warn("Unexpected message type " + msgType + " for " + tx.getType() +
+					" transaction of client " + client.getId());
+			complete(tx, false);
+		}
+	}
+
+    /**
+     * The main method.
+     * 
+     * @param args the arguments
+     */
+	public static void main(String[] args)
+	{
+		try {
+			new LoadGeneratorV4().run(args);
+		}
+		catch (Exception ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
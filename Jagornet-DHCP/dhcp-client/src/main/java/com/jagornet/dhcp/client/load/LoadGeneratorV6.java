@@ -0,0 +1,278 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LoadGeneratorV6.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.client.load;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.core.message.DhcpV6Message;
+import com.jagornet.dhcp.core.message.DhcpV6RelayMessage;
+import com.jagornet.dhcp.core.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ClientIdOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ElapsedTimeOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6IaNaOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6RelayOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ServerIdOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6StatusCodeOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+
+import io.netty.channel.Channel;
+
+/**
+ * Title: LoadGeneratorV6
+ * Description: A high-rate DHCPv6 load generator, which runs a mix of
+ * SOLICIT/ADVERTISE/REQUEST/REPLY, RENEW/REPLY and RELEASE/REPLY transactions
+ * at a target rate, each wrapped in a RELAY-FORW as if relayed from a set of
+ * relay agents (link-addresses).
+ * Run with, for example:
+ * 	java com.jagornet.dhcp.client.load.LoadGeneratorV6 -sa ::1 -rr 20000 -n 50000 -nr 10 -m sarr=60,renew=30,release=10
+ * 
+ * @author A. Gregory Rabil
+ */
+public class LoadGeneratorV6 extends LoadGenerator
+{
+	private static Logger log = LoggerFactory.getLogger(LoadGeneratorV6.class);
+
+	public LoadGeneratorV6() throws IOException
+	{
+		super(InetAddress.getByName("::1"), DhcpConstants.V6_SERVER_PORT,
+				InetAddress.getByName("2001:db8:1::1"));
+	}
+
+	/**
+	 * A simulated DHCPv6 client, with a DUID-LL and link-local
+	 * address derived from its id, and the IA_NA leased to it.
+	 */
+	static class ClientV6 extends Client
+	{
+		final DhcpV6ClientIdOption clientIdOption;
+		final InetAddress peerAddr;
+		DhcpV6IaNaOption iaNaOption;
+		DhcpV6ServerIdOption serverIdOption;
+		
+		ClientV6(int id, InetAddress relayAddr) throws IOException
+		{
+			super(id, relayAddr);
+			BaseOpaqueData duid = new BaseOpaqueData();
+			duid.setHex(new byte[] { 0, 3, 0, 1, (byte)0xde, (byte)0xb1, 
+					(byte)(id >>> 24), (byte)(id >>> 16), (byte)(id >>> 8), (byte)id });
+			clientIdOption = new DhcpV6ClientIdOption(duid);
+			byte[] addr = new byte[16];
+			addr[0] = (byte)0xfe;
+			addr[1] = (byte)0x80;
+			addr[12] = (byte)(id >>> 24);
+			addr[13] = (byte)(id >>> 16);
+			addr[14] = (byte)(id >>> 8);
+			addr[15] = (byte)id;
+			peerAddr = InetAddress.getByAddress(addr);
+		}
+	}
+
+	@Override
+	protected String getBindName()
+	{
+		return "SARR";
+	}
+
+	@Override
+	protected Client newClient(int id, InetAddress relayAddr)
+	{
+		try {
+			return new ClientV6(id, relayAddr);
+		}
+		catch (IOException ex) {
+			// can't happen, the link-local address is always 16 bytes
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	@Override
+	protected long nextTransactionId()
+	{
+		return super.nextTransactionId() & 0xffffffL;
+	}
+
+	@Override
+	protected boolean expectsReply(Type type)
+	{
+		return true;
+	}
+
+	@Override
+	protected ByteBuffer buildFirstMessage(Transaction tx) throws IOException
+	{
+		ClientV6 client = (ClientV6)tx.getClient();
+		switch (tx.getType()) {
+			case RENEW:
+				DhcpV6Message renewMsg = buildMessage(tx, client, DhcpConstants.V6MESSAGE_TYPE_RENEW);
+				renewMsg.putDhcpOption(client.serverIdOption);
+				renewMsg.addIaNaOption(client.iaNaOption);
+				return relay(client, renewMsg);
+			case RELEASE:
+				DhcpV6Message releaseMsg = buildMessage(tx, client, DhcpConstants.V6MESSAGE_TYPE_RELEASE);
+				releaseMsg.putDhcpOption(client.serverIdOption);
+				releaseMsg.addIaNaOption(client.iaNaOption);
+				return relay(client, releaseMsg);
+			default:
+				DhcpV6Message solicitMsg = buildMessage(tx, client, DhcpConstants.V6MESSAGE_TYPE_SOLICIT);
+				solicitMsg.addIaNaOption(new DhcpV6IaNaOption(1, 0, 0));
+				return relay(client, solicitMsg);
+		}
+	}
+
+	private DhcpV6Message buildMessage(Transaction tx, ClientV6 client, short msgType)
+	{
+		DhcpV6Message msg = new DhcpV6Message(null, server);
+		msg.setMessageType(msgType);
+		msg.setTransactionId((int)tx.getXid());
+		msg.putDhcpOption(client.clientIdOption);
+		msg.putDhcpOption(new DhcpV6ElapsedTimeOption(0));
+		return msg;
+	}
+
+	private ByteBuffer relay(ClientV6 client, DhcpV6Message msg) throws IOException
+	{
+		DhcpV6RelayMessage relayMsg = new DhcpV6RelayMessage(null, server);
+		relayMsg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_RELAY_FORW);
+		relayMsg.setHopCount((short)0);
+		relayMsg.setLinkAddress(client.getRelayAddr());	// look like a relay to the DHCP server
+		relayMsg.setPeerAddress(client.peerAddr);
+		DhcpV6RelayOption relayOption = new DhcpV6RelayOption();
+		relayOption.setDhcpMessage(msg);
+		relayMsg.putDhcpOption(relayOption);
+		relayMsg.setRelayOption(relayOption);
+		return relayMsg.encode();
+	}
+
+	/**
+	 * Get the IA_NA of a reply if the server leased an address in it.
+	 */
+	private static DhcpV6IaNaOption getLeasedIaNa(DhcpV6Message msg)
+	{
+		DhcpV6StatusCodeOption statusCodeOption = msg.getStatusCodeOption();
+		if ((statusCodeOption != null) && 
+				(statusCodeOption.getStatusCode() != DhcpConstants.V6STATUS_CODE_SUCCESS)) {
+			return null;
+		}
+		List<DhcpV6IaNaOption> iaNaOptions = msg.getIaNaOptions();
+		if ((iaNaOptions == null) || iaNaOptions.isEmpty()) {
+			return null;
+		}
+		DhcpV6IaNaOption iaNaOption = iaNaOptions.get(0);
+		statusCodeOption = iaNaOption.getStatusCodeOption();
+		if ((statusCodeOption != null) && 
+				(statusCodeOption.getStatusCode() != DhcpConstants.V6STATUS_CODE_SUCCESS)) {
+			return null;
+		}
+		if ((iaNaOption.getIaAddrOptions() == null) || iaNaOption.getIaAddrOptions().isEmpty()) {
+			return null;
+		}
+		return iaNaOption;
+	}
+
+	@Override
+	protected void messageReceived(Channel channel, ByteBuffer buf, 
+			InetSocketAddress sender) throws IOException
+	{
+		DhcpV6Message relayMsg = DhcpV6Message.decode(buf, 
+				(InetSocketAddress)channel.localAddress(), sender);
+		if (!(relayMsg instanceof DhcpV6RelayMessage) ||
+				(((DhcpV6RelayMessage)relayMsg).getRelayOption() == null)) {
+			errors.increment();
+			return;
+		}
+		DhcpV6Message msg = ((DhcpV6RelayMessage)relayMsg).getRelayOption().getDhcpMessage();
+		Transaction tx = pending.remove((long)msg.getTransactionId());
+		if (tx == null) {
+			// a late reply to a transaction which timed out
+			unmatched.increment();
+			return;
+		}
+		ClientV6 client = (ClientV6)tx.getClient();
+		short msgType = msg.getMessageType();
+		if ((msgType == DhcpConstants.V6MESSAGE_TYPE_ADVERTISE) &&
+				(tx.getType() == Type.BIND) && (tx.step == 0)) {
+			DhcpV6IaNaOption iaNaOption = getLeasedIaNa(msg);
+			if (iaNaOption == null) {
+				complete(tx, false);
+				return;
+			}
+			tx.step++;
+			DhcpV6Message requestMsg = buildMessage(tx, client, DhcpConstants.V6MESSAGE_TYPE_REQUEST);
+			requestMsg.putDhcpOption(msg.getDhcpServerIdOption());
+			requestMsg.addIaNaOption(iaNaOption);
+	        // flushed by the handler when the read batch is complete
+			send(channel, tx, relay(client, requestMsg), true, false);
+		}
+		else if (msgType == DhcpConstants.V6MESSAGE_TYPE_REPLY) {
+			if (tx.getType() == Type.RELEASE) {
+				client.bound = false;
+				client.iaNaOption = null;
+				complete(tx, true);
+				return;
+			}
+			DhcpV6IaNaOption iaNaOption = getLeasedIaNa(msg);
+			if (iaNaOption != null) {
+				client.iaNaOption = iaNaOption;
+				client.serverIdOption = msg.getDhcpServerIdOption();
+				client.bound = true;
+				complete(tx, true);
+			}
+			else {
+				client.bound = false;
+				client.iaNaOption = null;
+				complete(tx, false);
+			}
+		}
+		else {
+			log.warn("Unexpected message type " + msgType + " for " + tx.getType() +
+					" transaction of client " + client.getId());
+			complete(tx, false);
+		}
+	}
+
+    /**
+     * The main method.
+     * 
+     * @param args the arguments
+     */
+	public static void main(String[] args)
+	{
+		try {
+			new LoadGeneratorV6().run(args);
+		}
+		catch (Exception ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.jagornet.dhcp.client.load;
+
+import junit.framework.TestCase;
+
+public class TestLatencyHistogram extends TestCase
+{
+	public void testBucketBoundaries() throws Exception
+	{
+		for (long value : new long[] { 0, 1, 127, 128, 255, 256, 1000, 123456, 3600000000L }) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(LatencyHistogram.lowestValueAt(index) <= value);
+			assertTrue(LatencyHistogram.highestValueAt(index) >= value);
+		}
+		// buckets are contiguous
+		for (int i=1; i<1000; i++) {
+			assertEquals(LatencyHistogram.highestValueAt(i-1) + 1,
+					LatencyHistogram.lowestValueAt(i));
+		}
+	}
+
+	public void testPercentiles() throws Exception
+	{
+		LatencyHistogram h = new LatencyHistogram(1000000);
+		for (int i=1; i<=10000; i++) {
+			h.recordValue(i);
+		}
+		assertEquals(10000, h.getTotalCount());
+		assertEquals(10000, h.getMaxValue());
+		assertEquals(5000.5, h.getMean(), 0.001);
+		assertEquals(5000, h.getValueAtPercentile(50), 5000 / 64);
+		assertEquals(9900, h.getValueAtPercentile(99), 9900 / 64);
+		assertEquals(10000, h.getValueAtPercentile(100));
+		assertEquals(1, h.getValueAtPercentile(0));
+	}
+
+	public void testOutOfRangeValues() throws Exception
+	{
+		LatencyHistogram h = new LatencyHistogram(1000);
+		assertEquals(0, h.getValueAtPercentile(50));
+		h.recordValue(-5);
+		h.recordValue(5000);
+		assertEquals(2, h.getTotalCount());
+		assertEquals(1000, h.getMaxValue());
+		assertEquals(0, h.getValueAtPercentile(50));
+		assertEquals(1000, h.getValueAtPercentile(100));
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpOptionTable.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.core.message;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+
+/**
+ * Title: DhcpOptionTable
+ * Description: The options of a DHCP message, keyed by option code, without
+ * boxing the code for lookups by the int methods.  Options of a received
+ * message may be held undecoded, as the offset of the option in a copy of
+ * the packet's options, and are decoded when first used.  An option which
+ * fails to decode is logged and dropped from the table.  Iteration is in
+ * order of option code.  The table does not hold null options.
+ * 
+ * @author A. Gregory Rabil
+ */
+public abstract class DhcpOptionTable extends AbstractMap<Integer, DhcpOption>
+{
+	private static Logger log = LoggerFactory.getLogger(DhcpOptionTable.class);
+
+	// the options of a received message, for the undecoded options
+	protected byte[] raw;
+	
+	/**
+	 * Get the option with the given code, decoding it if necessary.
+	 * 
+	 * @param code the option code
+	 * @return the option, or null if there is none
+	 */
+	public abstract DhcpOption getOption(int code);
+	
+	/**
+	 * Check for the option with the given code, decoding it if necessary,
+	 * so that an option which fails to decode is dropped, and is not found
+	 * by this method either.
+	 * 
+	 * @param code the option code
+	 * @return true if there is an option with the given code
+	 */
+	public abstract boolean hasOption(int code);
+	
+	/**
+	 * Put the option with the given code, replacing any existing option.
+	 * 
+	 * @param code the option code
+	 * @param option the option, or null to remove any existing option
+	 * @return the previous option, or null if there was none
+	 */
+	public abstract DhcpOption putOption(int code, DhcpOption option);
+	
+	/**
+	 * @param code the option code
+	 * @return the removed option, or null if there was none
+	 */
+	public abstract DhcpOption removeOption(int code);
+	
+	/**
+	 * Set the copy of the received options which holds the undecoded options.
+	 * 
+	 * @param raw the options of the received message
+	 */
+	public void setRaw(byte[] raw)
+	{
+		this.raw = raw;
+	}
+	
+	/**
+	 * Put an undecoded option, replacing any existing option.
+	 * 
+	 * @param code the option code
+	 * @param offset the offset of the option length field in the raw options
+	 */
+	public abstract void putUndecoded(int code, int offset);
+	
+	/**
+	 * Get the number of options in the table, counting any undecoded
+	 * options without decoding them.  An undecoded option which later
+	 * fails to decode is dropped from the table, so the size can shrink
+	 * when the options are used.
+	 * 
+	 * @return the number of decoded and undecoded options
+	 */
+	@Override
+	public abstract int size();
+	
+	/**
+	 * @return the option codes in the table, in ascending order
+	 */
+	protected abstract int[] codes();
+	
+	/**
+	 * Create an empty option for the given code.
+	 * 
+	 * @param code the option code
+	 * @return the option, or null if the code is not an option
+	 */
+	protected abstract DhcpOption createOption(int code);
+	
+	/**
+	 * Decode an undecoded option.
+	 * 
+	 * @param code the option code
+	 * @param offset the offset of the option length field in the raw options
+	 * @return the option, or null if the option could not be decoded
+	 */
+	protected DhcpOption decodeOption(int code, int offset)
+	{
+		DhcpOption option = createOption(code);
+		if (option != null) {
+			try {
+				option.decode(ByteBuffer.wrap(raw, offset, raw.length - offset));
+			}
+			catch (Exception ex) {
+				if (log.isDebugEnabled())
+					log.debug("Failed to decode option code=" + code + ": " + ex);
+				option = null;
+			}
+		}
+		return option;
+	}
+
+	@Override
+	public DhcpOption get(Object key)
+	{
+		if (key instanceof Integer) {
+			return getOption((Integer)key);
+		}
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		if (key instanceof Integer) {
+			return hasOption((Integer)key);
+		}
+		return false;
+	}
+
+	@Override
+	public DhcpOption put(Integer key, DhcpOption value)
+	{
+		return putOption(key, value);
+	}
+
+	@Override
+	public DhcpOption remove(Object key)
+	{
+		if (key instanceof Integer) {
+			return removeOption((Integer)key);
+		}
+		return null;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, DhcpOption>> entrySet()
+	{
+		return new AbstractSet<Map.Entry<Integer, DhcpOption>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, DhcpOption>> iterator() {
+				return new EntryIterator(codes());
+			}
+			@Override
+			public int size() {
+				return DhcpOptionTable.this.size();
+			}
+		};
+	}
+	
+	/**
+	 * Iterates over the codes in the table when the iterator was created,
+	 * skipping any options which have since been removed or failed to decode.
+	 */
+	class EntryIterator implements Iterator<Map.Entry<Integer, DhcpOption>>
+	{
+		private final int[] codes;
+		private int next;
+		private int last = -1;
+		private DhcpOption nextOption;
+		
+		EntryIterator(int[] codes)
+		{
+			this.codes = codes;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while ((nextOption == null) && (next < codes.length)) {
+				nextOption = getOption(codes[next]);
+				if (nextOption == null) {
+					next++;
+				}
+			}
+			return (nextOption != null);
+		}
+
+		@Override
+		public Map.Entry<Integer, DhcpOption> next()
+		{
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<Integer, DhcpOption> entry = new OptionEntry(codes[next], nextOption);
+			last = codes[next++];
+			nextOption = null;
+			return entry;
+		}
+
+		@Override
+		public void remove()
+		{
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			removeOption(last);
+			last = -1;
+		}
+	}
+	
+	class OptionEntry extends AbstractMap.SimpleEntry<Integer, DhcpOption>
+	{
+		private static final long serialVersionUID = 1L;
+
+		OptionEntry(int code, DhcpOption option)
+		{
+			super(code, option);
+		}
+
+		@Override
+		public DhcpOption setValue(DhcpOption value)
+		{
+			putOption(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+}
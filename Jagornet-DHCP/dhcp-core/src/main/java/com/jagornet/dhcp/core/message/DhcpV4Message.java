@@ -28,17 +28,18 @@ package com.jagornet.dhcp.core.message;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jagornet.dhcp.core.option.base.BaseDhcpOption;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.v4.DhcpV4ClientIdOption;
 import com.jagornet.dhcp.core.option.v4.DhcpV4MsgTypeOption;
@@ -123,7 +124,35 @@ public class DhcpV4Message implements DhcpMessage
     protected String sName;
     protected String file;
     protected static byte[] magicCookie = new byte[] { (byte)99, (byte)130, (byte)83, (byte)99 };
-    protected Map<Integer, DhcpOption> dhcpOptions = new HashMap<Integer, DhcpOption>();
+    protected Map<Integer, DhcpOption> dhcpOptions = new DhcpV4OptionTable();
+    
+    // offsets of the fields in the fixed header
+    private static final int CIADDR_OFFSET = 12;
+    private static final int YIADDR_OFFSET = 16;
+    private static final int SIADDR_OFFSET = 20;
+    private static final int GIADDR_OFFSET = 24;
+    private static final int CHADDR_OFFSET = 28;
+    private static final int SNAME_OFFSET = 44;
+    private static final int FILE_OFFSET = 108;
+    private static final int HEADER_LENGTH = 236;
+    
+    // the header fields which may be decoded lazily
+    private static final int LAZY_CIADDR = 0x01;
+    private static final int LAZY_YIADDR = 0x02;
+    private static final int LAZY_SIADDR = 0x04;
+    private static final int LAZY_GIADDR = 0x08;
+    private static final int LAZY_CHADDR = 0x10;
+    private static final int LAZY_SNAME = 0x20;
+    private static final int LAZY_FILE = 0x40;
+    private static final int LAZY_ALL = 0x7f;
+    
+    // decode the header fields and options only when used
+    private boolean lazyDecode = true;
+    
+    // for a lazily decoded message, a copy of the fixed header, and
+    // the bits of the header fields which are not yet decoded from it
+    private byte[] header;
+    private int lazyFields;
 
     /**
      * Construct a DhcpMessage.
@@ -161,6 +190,7 @@ public class DhcpV4Message implements DhcpMessage
             log.debug("Encoding DhcpMessage for: " + 
             		Util.socketAddressAsString(remoteAddress));
         
+        decodeLazyFields();
         ByteBuffer buf = ByteBuffer.allocate(1024);
         buf.put((byte)op);
         buf.put((byte)htype);
@@ -209,7 +239,7 @@ public class DhcpV4Message implements DhcpMessage
         fileBuf.setLength(128-fileBuf.length());
         buf.put(fileBuf.toString().getBytes());
 
-        buf.put(encodeOptions());
+        encodeOptions(buf);
     	int msglen = buf.position();
         if (log.isDebugEnabled())
             log.debug("DHCPv4 Message is " + msglen + " bytes");
@@ -236,15 +266,27 @@ public class DhcpV4Message implements DhcpMessage
     protected ByteBuffer encodeOptions() throws IOException
     {
     	ByteBuffer buf = ByteBuffer.allocate(788); // 788 - 236 = 1020 (options)
+    	encodeOptions(buf);
+        return (ByteBuffer)buf.flip();
+    }
+
+    /**
+     * Encode the options of this DhcpMessage to wire format into the given
+     * buffer.  Pre-encoded options are copied from their templates.
+     * 
+     * @param buf	the ByteBuffer to put the encoded options into
+     * @throws IOException
+     */
+    protected void encodeOptions(ByteBuffer buf) throws IOException
+    {
         if (dhcpOptions != null) {
         	// magic cookie as per rfc1497
         	buf.put(magicCookie);
         	for (DhcpOption option : dhcpOptions.values()) {
-                 buf.put(option.encode());
+                 buf.put(BaseDhcpOption.encodeOption(option));
             }
         	buf.put((byte)DhcpConstants.V4OPTION_EOF);	// end option
         }
-        return (ByteBuffer)buf.flip();
     }
 
     /**
@@ -260,6 +302,25 @@ public class DhcpV4Message implements DhcpMessage
      */
 	public static DhcpV4Message decode(ByteBuffer buf, InetSocketAddress localAddr, InetSocketAddress remoteAddr)
 			throws IOException
+	{
+		return decode(buf, localAddr, remoteAddr, true);
+	}
+
+    /**
+     * Decode a packet received on the wire into a DhcpMessage object.
+     * 
+     * @param buf			ByteBuffer containing the packet to be decoded
+     * @param localAddr		InetSocketAddress on the local host on which
+     * 						packet was received
+     * @param remoteAddr	InetSocketAddress on the remote host from which
+     * 						the packet was received
+     * @param lazy			true to decode the address, server name and file fields
+     * 						of the header, and the options, only when used
+     * @return	a decoded DhcpMessage object, or null if the packet could not be decoded
+     * @throws IOException
+     */
+	public static DhcpV4Message decode(ByteBuffer buf, InetSocketAddress localAddr, 
+			InetSocketAddress remoteAddr, boolean lazy) throws IOException
 	{
 		DhcpV4Message dhcpMessage = null;		
 		if ((buf != null) && buf.hasRemaining()) {
@@ -290,6 +351,7 @@ public class DhcpV4Message implements DhcpMessage
             	// reset the buffer to point at the message type byte
             	// because the message decoder will expect it
             	buf.reset();
+            	dhcpMessage.setLazyDecode(lazy);
                 dhcpMessage.decode(buf);
             }
         }
@@ -319,66 +381,18 @@ public class DhcpV4Message implements DhcpMessage
         	// "magic cookie", and at least the message type option
         	// and the end option: 244 = 236 + 4 + 3 + 1
         	if (buf.limit() >= 244) {
-	        	op = buf.get();
-        		log.debug("op=" + op);
-	        	if (op != 1) {
-	        		// TODO
-	        	}
-        		htype = buf.get();
-        		if (log.isDebugEnabled())
-        			log.debug("htype=" + htype);
-      			hlen = buf.get();
-      			log.debug("hlen=" + hlen);
-      			hops = buf.get();
-      			if (log.isDebugEnabled())
-        			log.debug("hops=" + hops);
-      			transactionId = buf.getInt();
-      			if (log.isDebugEnabled())
-        			log.debug("xid=" + transactionId);
-      			secs = buf.getShort();
-      			if (log.isDebugEnabled())
-        			log.debug("secs=" + secs);
-      			flags = buf.getShort();
-      			if (log.isDebugEnabled())
-        			log.debug("flags=" + flags);
-      			byte[] ipbuf = new byte[4];
-      			buf.get(ipbuf);
-      			ciAddr = InetAddress.getByAddress(ipbuf);
-      			if (log.isDebugEnabled())
-        			log.debug("ciaddr=" + ciAddr.getHostAddress());
-      			buf.get(ipbuf);
-      			yiAddr = InetAddress.getByAddress(ipbuf);
-      			if (log.isDebugEnabled())
-        			log.debug("yiaddr=" + yiAddr.getHostAddress());
-      			buf.get(ipbuf);
-      			siAddr = InetAddress.getByAddress(ipbuf);
-      			if (log.isDebugEnabled())
-        			log.debug("siaddr=" + siAddr.getHostAddress());
-      			buf.get(ipbuf);
-      			giAddr = InetAddress.getByAddress(ipbuf);
-      			if (log.isDebugEnabled())
-        			log.debug("giaddr=" + giAddr.getHostAddress());
-      			byte[] chbuf = new byte[16];
-      			buf.get(chbuf);
-      			chAddr = Arrays.copyOf(chbuf, hlen);	// hlen defines len of chAddr
-      			if (log.isDebugEnabled())
-        			log.debug("chaddr=" + Util.toHexString(chAddr));
-      			byte[] sbuf = new byte[64];
-      			buf.get(sbuf);
-      			sName = new String(sbuf);
-      			if (log.isDebugEnabled())
-        			log.debug("sname=" + sName);
-      			byte[] fbuf = new byte[128];
-      			buf.get(fbuf);
-      			file = new String(fbuf);
-      			if (log.isDebugEnabled())
-        			log.debug("file=" + file);
-      			byte[] cookieBuf = new byte[4];
-      			buf.get(cookieBuf);
-      			if (!Arrays.equals(cookieBuf, magicCookie)) {
-                    String errmsg = "Failed to decode DHCPv4 message: invalid magic cookie";
-                    log.error(errmsg);
-                    throw new IOException(errmsg);
+        		if (lazyDecode) {
+        			decodeHeaderLazily(buf);
+        		}
+        		else {
+        			decodeHeader(buf);
+        		}
+      			for (int i=0; i<magicCookie.length; i++) {
+      				if (buf.get() != magicCookie[i]) {
+	                    String errmsg = "Failed to decode DHCPv4 message: invalid magic cookie";
+	                    log.error(errmsg);
+	                    throw new IOException(errmsg);
+      				}
       			}
       			decodeOptions(buf);
             }
@@ -399,6 +413,165 @@ public class DhcpV4Message implements DhcpMessage
         }
     }
     
+    /**
+     * Decode the fixed header of the message, up to the magic cookie.
+     * 
+     * @param buf	ByteBuffer positioned at the start of the message
+     * @throws IOException
+     */
+    protected void decodeHeader(ByteBuffer buf) throws IOException
+    {
+        lazyFields = 0;
+        op = buf.get();
+        if (log.isDebugEnabled())
+            log.debug("op=" + op);
+        if (op != 1) {
+            // TODO
+        }
+        htype = buf.get();
+        if (log.isDebugEnabled())
+            log.debug("htype=" + htype);
+        hlen = buf.get();
+        if (log.isDebugEnabled())
+            log.debug("hlen=" + hlen);
+        hops = buf.get();
+        if (log.isDebugEnabled())
+            log.debug("hops=" + hops);
+        transactionId = buf.getInt();
+        if (log.isDebugEnabled())
+            log.debug("xid=" + transactionId);
+        secs = buf.getShort();
+        if (log.isDebugEnabled())
+            log.debug("secs=" + secs);
+        flags = buf.getShort();
+        if (log.isDebugEnabled())
+            log.debug("flags=" + flags);
+        byte[] ipbuf = new byte[4];
+        buf.get(ipbuf);
+        ciAddr = InetAddress.getByAddress(ipbuf);
+        if (log.isDebugEnabled())
+            log.debug("ciaddr=" + ciAddr.getHostAddress());
+        buf.get(ipbuf);
+        yiAddr = InetAddress.getByAddress(ipbuf);
+        if (log.isDebugEnabled())
+            log.debug("yiaddr=" + yiAddr.getHostAddress());
+        buf.get(ipbuf);
+        siAddr = InetAddress.getByAddress(ipbuf);
+        if (log.isDebugEnabled())
+            log.debug("siaddr=" + siAddr.getHostAddress());
+        buf.get(ipbuf);
+        giAddr = InetAddress.getByAddress(ipbuf);
+        if (log.isDebugEnabled())
+            log.debug("giaddr=" + giAddr.getHostAddress());
+        byte[] chbuf = new byte[16];
+        buf.get(chbuf);
+        chAddr = Arrays.copyOf(chbuf, hlen);	// hlen defines len of chAddr
+        if (log.isDebugEnabled())
+            log.debug("chaddr=" + Util.toHexString(chAddr));
+        byte[] sbuf = new byte[64];
+        buf.get(sbuf);
+        sName = new String(sbuf);
+        if (log.isDebugEnabled())
+            log.debug("sname=" + sName);
+        byte[] fbuf = new byte[128];
+        buf.get(fbuf);
+        file = new String(fbuf);
+        if (log.isDebugEnabled())
+            log.debug("file=" + file);
+    }
+    
+    /**
+     * Decode the fixed header of the message, up to the magic cookie,
+     * without decoding the address, server name and file fields.  The
+     * header is copied, because the packet buffer may be reused after
+     * the message is decoded, and those fields are decoded from the
+     * copy when they are first used.  Most messages have no server
+     * name or file, and many have no client, server or relay address.
+     * 
+     * @param buf	ByteBuffer positioned at the start of the message
+     * @throws IOException
+     */
+    protected void decodeHeaderLazily(ByteBuffer buf) throws IOException
+    {
+    	header = new byte[HEADER_LENGTH];
+    	buf.get(header);
+    	// same sign handling as the ByteBuffer gets in decodeHeader
+    	op = header[0];
+    	htype = header[1];
+    	hlen = header[2];
+    	hops = header[3];
+    	transactionId = ((header[4] & 0xff) << 24) | ((header[5] & 0xff) << 16) |
+    					((header[6] & 0xff) << 8) | (header[7] & 0xff);
+    	secs = (short)(((header[8] & 0xff) << 8) | (header[9] & 0xff));
+    	flags = (short)(((header[10] & 0xff) << 8) | (header[11] & 0xff));
+    	if (hlen < 0) {
+            String errmsg = "Failed to decode DHCPv4 message: invalid hlen=" + hlen;
+            log.error(errmsg);
+            throw new IOException(errmsg);
+    	}
+    	lazyFields = LAZY_ALL;
+    	if (log.isDebugEnabled()) {
+    		log.debug("op=" + op + " htype=" + htype + " hlen=" + hlen + " hops=" + hops + 
+    				" xid=" + transactionId + " secs=" + secs + " flags=" + flags);
+    	}
+    }
+    
+    /**
+     * Decode any header fields which have not yet been decoded.
+     */
+    protected void decodeLazyFields()
+    {
+    	if (lazyFields != 0) {
+    		getCiAddr();
+    		getYiAddr();
+    		getSiAddr();
+    		getGiAddr();
+    		getChAddr();
+    		getsName();
+    		getFile();
+    	}
+    }
+    
+    private static InetAddress decodeAddress(byte[] buf, int offset)
+    {
+    	if ((buf[offset] | buf[offset+1] | buf[offset+2] | buf[offset+3]) == 0) {
+    		return DhcpConstants.ZEROADDR_V4;
+    	}
+    	try {
+    		return InetAddress.getByAddress(Arrays.copyOfRange(buf, offset, offset+4));
+    	}
+    	catch (UnknownHostException ex) {
+    		// not possible for a four byte address
+    		throw new IllegalStateException(ex);
+    	}
+    }
+    
+    private boolean isLazy(int field)
+    {
+    	if ((lazyFields & field) != 0) {
+    		lazyFields &= ~field;
+    		return true;
+    	}
+    	return false;
+    }
+    
+    /**
+     * Set whether this message is decoded lazily, which is the default.
+     * 
+     * @param lazy	true to decode the address, server name and file fields
+     * 				of the header, and the options, only when used,
+     * 				false to decode them all
+     */
+    public void setLazyDecode(boolean lazy)
+    {
+    	lazyDecode = lazy;
+    }
+    
+    public boolean isLazyDecode()
+    {
+    	return lazyDecode;
+    }
+    
     /**
      * Decode the options.
      * @param buf	ByteBuffer positioned at the start of the options in the packet
@@ -408,6 +581,9 @@ public class DhcpV4Message implements DhcpMessage
     protected Map<Integer, DhcpOption> decodeOptions(ByteBuffer buf) 
             throws IOException
     {
+    	if (lazyDecode && (dhcpOptions instanceof DhcpOptionTable)) {
+    		return decodeOptionsLazily(buf);
+    	}
         while (buf.hasRemaining()) {
             short code = Util.getUnsignedByte(buf);
             if (log.isDebugEnabled())
@@ -423,6 +599,39 @@ public class DhcpV4Message implements DhcpMessage
         }
         return dhcpOptions;
     }
+    
+    /**
+     * Find the options, and copy them from the packet, but decode each
+     * option only when it is first used.
+     * @param buf	ByteBuffer positioned at the start of the options in the packet
+     * @return	a Map of DhcpOptions keyed by the option code
+     * @throws IOException
+     */
+    protected Map<Integer, DhcpOption> decodeOptionsLazily(ByteBuffer buf)
+    		throws IOException
+    {
+    	DhcpOptionTable table = (DhcpOptionTable) dhcpOptions;
+    	byte[] raw = new byte[buf.remaining()];
+    	buf.get(raw);
+    	table.setRaw(raw);
+    	int offset = 0;
+    	while (offset < raw.length) {
+    		int code = raw[offset++] & 0xff;
+    		if (code == DhcpConstants.V4OPTION_EOF) {
+    			break;  // no more options, so we're done
+    		}
+    		if (offset >= raw.length) {
+    			throw new IOException("Truncated option code=" + code);
+    		}
+    		int len = raw[offset] & 0xff;
+    		if (offset + 1 + len > raw.length) {
+    			throw new IOException("Truncated option code=" + code + " len=" + len);
+    		}
+    		table.putUndecoded(code, offset);
+    		offset += 1 + len;
+    	}
+    	return dhcpOptions;
+    }
 
     /**
      * Return the length of this DhcpMessage in bytes.
@@ -472,6 +681,9 @@ public class DhcpV4Message implements DhcpMessage
 
     public boolean hasOption(int optionCode)
     {
+    	if (dhcpOptions instanceof DhcpOptionTable) {
+    		return ((DhcpOptionTable) dhcpOptions).hasOption(optionCode);
+    	}
         if(dhcpOptions.containsKey(optionCode)) {
             return true;
         }
@@ -480,6 +692,9 @@ public class DhcpV4Message implements DhcpMessage
 
     public DhcpOption getDhcpOption(int optionCode)
     {
+    	if (dhcpOptions instanceof DhcpOptionTable) {
+    		return ((DhcpOptionTable) dhcpOptions).getOption(optionCode);
+    	}
         return dhcpOptions.get(optionCode);
     }
     public void putDhcpOption(DhcpOption dhcpOption)
@@ -596,20 +811,37 @@ public class DhcpV4Message implements DhcpMessage
         sb.append(this.getSecs());
         sb.append(", flags=");
         sb.append(this.getFlags());
+        // the fields which are not yet decoded are formatted from the
+        // header, so that logging a message does not decode them all
         sb.append(", ciaddr=");
-        sb.append(this.getCiAddr().getHostAddress());
+        sb.append(addressString(LAZY_CIADDR, CIADDR_OFFSET, ciAddr));
         sb.append(", yiaddr=");
-        sb.append(this.getYiAddr().getHostAddress());
+        sb.append(addressString(LAZY_YIADDR, YIADDR_OFFSET, yiAddr));
         sb.append(", siaddr=");
-        sb.append(this.getSiAddr().getHostAddress());
+        sb.append(addressString(LAZY_SIADDR, SIADDR_OFFSET, siAddr));
         sb.append(", giaddr=");
-        sb.append(this.getGiAddr().getHostAddress());
+        sb.append(addressString(LAZY_GIADDR, GIADDR_OFFSET, giAddr));
         sb.append(", chaddr=");
-        sb.append(Util.toHexString(this.getChAddr()));
+        if ((lazyFields & LAZY_CHADDR) != 0) {
+        	sb.append(Util.toHexString(Arrays.copyOf(Arrays.copyOfRange(header, 
+        			CHADDR_OFFSET, CHADDR_OFFSET+16), hlen)));
+        }
+        else {
+        	sb.append(Util.toHexString(chAddr));
+        }
         sb.append(')');
         return sb.toString();
     }
     
+    private String addressString(int field, int offset, InetAddress addr)
+    {
+    	if ((lazyFields & field) != 0) {
+    		return (header[offset] & 0xff) + "." + (header[offset+1] & 0xff) + "." +
+    				(header[offset+2] & 0xff) + "." + (header[offset+3] & 0xff);
+    	}
+    	return addr.getHostAddress();
+    }
+    
     public String toStringWithOptions()
     {
         StringBuffer sb = new StringBuffer(this.toString());
@@ -680,59 +912,89 @@ public class DhcpV4Message implements DhcpMessage
 	}
 
 	public InetAddress getCiAddr() {
+		if (isLazy(LAZY_CIADDR)) {
+			ciAddr = decodeAddress(header, CIADDR_OFFSET);
+		}
 		return ciAddr;
 	}
 
 	public void setCiAddr(InetAddress ciAddr) {
 		this.ciAddr = ciAddr;
+		lazyFields &= ~LAZY_CIADDR;
 	}
 
 	public InetAddress getYiAddr() {
+		if (isLazy(LAZY_YIADDR)) {
+			yiAddr = decodeAddress(header, YIADDR_OFFSET);
+		}
 		return yiAddr;
 	}
 
 	public void setYiAddr(InetAddress yiAddr) {
 		this.yiAddr = yiAddr;
+		lazyFields &= ~LAZY_YIADDR;
 	}
 
 	public InetAddress getSiAddr() {
+		if (isLazy(LAZY_SIADDR)) {
+			siAddr = decodeAddress(header, SIADDR_OFFSET);
+		}
 		return siAddr;
 	}
 
 	public void setSiAddr(InetAddress siAddr) {
 		this.siAddr = siAddr;
+		lazyFields &= ~LAZY_SIADDR;
 	}
 
 	public InetAddress getGiAddr() {
+		if (isLazy(LAZY_GIADDR)) {
+			giAddr = decodeAddress(header, GIADDR_OFFSET);
+		}
 		return giAddr;
 	}
 
 	public void setGiAddr(InetAddress giAddr) {
 		this.giAddr = giAddr;
+		lazyFields &= ~LAZY_GIADDR;
 	}
 
 	public byte[] getChAddr() {
+		if (isLazy(LAZY_CHADDR)) {
+			// hlen defines len of chAddr
+			chAddr = Arrays.copyOf(Arrays.copyOfRange(header, CHADDR_OFFSET, 
+								CHADDR_OFFSET+16), hlen);
+		}
 		return chAddr;
 	}
 
 	public void setChAddr(byte[] chAddr) {
 		this.chAddr = chAddr;
+		lazyFields &= ~LAZY_CHADDR;
 	}
 
 	public String getsName() {
+		if (isLazy(LAZY_SNAME)) {
+			sName = new String(header, SNAME_OFFSET, 64);
+		}
 		return sName;
 	}
 
 	public void setsName(String sName) {
 		this.sName = sName;
+		lazyFields &= ~LAZY_SNAME;
 	}
 
 	public String getFile() {
+		if (isLazy(LAZY_FILE)) {
+			file = new String(header, FILE_OFFSET, 128);
+		}
 		return file;
 	}
 
 	public void setFile(String file) {
 		this.file = file;
+		lazyFields &= ~LAZY_FILE;
 	}
 	
 	public void setMessageType(short msgType) {
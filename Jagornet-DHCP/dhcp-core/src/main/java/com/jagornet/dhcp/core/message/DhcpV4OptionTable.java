@@ -0,0 +1,202 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpV4OptionTable.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.core.message;
+
+import java.util.Arrays;
+
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4OptionFactory;
+
+/**
+ * Title: DhcpV4OptionTable
+ * Description: The options of a DHCPv4 message, found through a slot
+ * for each of the 256 possible option codes.  Each slot holds the index
+ * of the option in small arrays of just the options in the message, so
+ * lookup is constant time without allocating room for every code.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class DhcpV4OptionTable extends DhcpOptionTable
+{
+	private static final int SLOTS = 256;
+	private static final int INITIAL_CAPACITY = 8;
+	
+	// index + 1 of the option with each code, or zero
+	private final char[] slots = new char[SLOTS];
+	private char[] codes = new char[INITIAL_CAPACITY];
+	private DhcpOption[] options = new DhcpOption[INITIAL_CAPACITY];
+	// offset of each undecoded option in the raw options, if its option is null
+	private int[] offsets = new int[INITIAL_CAPACITY];
+	private int size;
+	
+	private static void checkCode(int code)
+	{
+		if ((code < 0) || (code >= SLOTS)) {
+			throw new IllegalArgumentException("Invalid DHCPv4 option code: " + code);
+		}
+	}
+	
+	private int indexOf(int code)
+	{
+		if ((code < 0) || (code >= SLOTS)) {
+			return -1;
+		}
+		return slots[code] - 1;
+	}
+	
+	private DhcpOption optionAt(int i)
+	{
+		DhcpOption option = options[i];
+		if (option == null) {
+			option = decodeOption(codes[i], offsets[i]);
+			if (option != null) {
+				options[i] = option;
+			}
+			else {
+				removeAt(i);
+			}
+		}
+		return option;
+	}
+	
+	private void removeAt(int i)
+	{
+		slots[codes[i]] = 0;
+		int last = --size;
+		if (i != last) {
+			// move the last option into the hole
+			codes[i] = codes[last];
+			options[i] = options[last];
+			offsets[i] = offsets[last];
+			slots[codes[i]] = (char)(i + 1);
+		}
+		options[last] = null;
+	}
+	
+	private int slotFor(int code)
+	{
+		int i = indexOf(code);
+		if (i >= 0) {
+			return i;
+		}
+		if (size == codes.length) {
+			int capacity = codes.length * 2;
+			codes = Arrays.copyOf(codes, capacity);
+			options = Arrays.copyOf(options, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+		}
+		i = size++;
+		codes[i] = (char)code;
+		slots[code] = (char)(i + 1);
+		return i;
+	}
+
+	@Override
+	public DhcpOption getOption(int code)
+	{
+		int i = indexOf(code);
+		return (i >= 0) ? optionAt(i) : null;
+	}
+
+	@Override
+	public boolean hasOption(int code)
+	{
+		// decoded, so that an option which fails to decode is not found
+		int i = indexOf(code);
+		return (i >= 0) && (optionAt(i) != null);
+	}
+
+	@Override
+	public DhcpOption putOption(int code, DhcpOption option)
+	{
+		if (option == null) {
+			return removeOption(code);
+		}
+		checkCode(code);
+		DhcpOption old = getOption(code);
+		options[slotFor(code)] = option;
+		return old;
+	}
+
+	@Override
+	public DhcpOption removeOption(int code)
+	{
+		int i = indexOf(code);
+		if (i < 0) {
+			return null;
+		}
+		DhcpOption old = optionAt(i);
+		if (old != null) {
+			removeAt(indexOf(code));
+		}
+		return old;
+	}
+
+	@Override
+	public void putUndecoded(int code, int offset)
+	{
+		checkCode(code);
+		int i = slotFor(code);
+		options[i] = null;
+		offsets[i] = offset;
+	}
+
+	@Override
+	protected int[] codes()
+	{
+		int[] sorted = new int[size];
+		int n = 0;
+		for (int code=0; (code<SLOTS) && (n<size); code++) {
+			if (slots[code] != 0) {
+				sorted[n++] = code;
+			}
+		}
+		return sorted;
+	}
+
+	@Override
+	protected DhcpOption createOption(int code)
+	{
+		return DhcpV4OptionFactory.getDhcpOption(code);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public void clear()
+	{
+		for (int i=0; i<size; i++) {
+			slots[codes[i]] = 0;
+		}
+		Arrays.fill(options, 0, size, null);
+		raw = null;
+		size = 0;
+	}
+}
@@ -30,13 +30,13 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jagornet.dhcp.core.option.base.BaseDhcpOption;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6ClientIdOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6IaNaOption;
@@ -122,10 +122,13 @@ public class DhcpV6Message implements DhcpMessage
     
     protected short messageType = 0;	// need a short to hold unsigned byte
     protected int transactionId = 0;   	// we only use low order three bytes
-    protected Map<Integer, DhcpOption> dhcpOptions = new HashMap<Integer, DhcpOption>();
+    protected Map<Integer, DhcpOption> dhcpOptions = new DhcpV6OptionTable();
     protected List<DhcpV6IaNaOption> iaNaOptions = new ArrayList<DhcpV6IaNaOption>();
     protected List<DhcpV6IaTaOption> iaTaOptions = new ArrayList<DhcpV6IaTaOption>();
     protected List<DhcpV6IaPdOption> iaPdOptions = new ArrayList<DhcpV6IaPdOption>();
+    
+    // decode the options only when used
+    private boolean lazyDecode = true;
 
     /**
      * Construct a DhcpMessage.
@@ -176,7 +179,7 @@ public class DhcpV6Message implements DhcpMessage
         ByteBuffer buf = ByteBuffer.allocate(1024);
         buf.put((byte)messageType);
         buf.put(DhcpV6TransactionId.encode(transactionId));
-        buf.put(encodeOptions());
+        encodeOptions(buf);
         buf.flip();
         
         if (log.isDebugEnabled())
@@ -194,9 +197,22 @@ public class DhcpV6Message implements DhcpMessage
     protected ByteBuffer encodeOptions() throws IOException
     {
     	ByteBuffer buf = ByteBuffer.allocate(1020); // 1024 - 1(msgType) - 3(transId) = 1020 (options)
+    	encodeOptions(buf);
+        return (ByteBuffer)buf.flip();
+    }
+
+    /**
+     * Encode the options of this DhcpMessage to wire format into the given
+     * buffer.  Pre-encoded options are copied from their templates.
+     * 
+     * @param buf	the ByteBuffer to put the encoded options into
+     * @throws IOException
+     */
+    protected void encodeOptions(ByteBuffer buf) throws IOException
+    {
         if (dhcpOptions != null) {
             for (DhcpOption option : dhcpOptions.values()) {
-                 buf.put(option.encode());
+                 buf.put(BaseDhcpOption.encodeOption(option));
             }
         }
         if (iaNaOptions != null) {
@@ -214,7 +230,6 @@ public class DhcpV6Message implements DhcpMessage
 				buf.put(iaPdOption.encode());
 			}
         }
-        return (ByteBuffer)buf.flip();
     }
 
     /**
@@ -230,6 +245,24 @@ public class DhcpV6Message implements DhcpMessage
      */
 	public static DhcpV6Message decode(ByteBuffer buf, InetSocketAddress localAddr, InetSocketAddress remoteAddr)
 			throws IOException
+	{
+		return decode(buf, localAddr, remoteAddr, true);
+	}
+
+    /**
+     * Decode a packet received on the wire into a DhcpMessage object.
+     * 
+     * @param buf			ByteBuffer containing the packet to be decoded
+     * @param localAddr		InetSocketAddress on the local host on which
+     * 						packet was received
+     * @param remoteAddr	InetSocketAddress on the remote host from which
+     * 						the packet was received
+     * @param lazy			true to decode the options only when used
+     * @return	a decoded DhcpMessage object, or null if the packet could not be decoded
+     * @throws IOException
+     */
+	public static DhcpV6Message decode(ByteBuffer buf, InetSocketAddress localAddr, 
+			InetSocketAddress remoteAddr, boolean lazy) throws IOException
 	{
 		DhcpV6Message dhcpMessage = null;		
 		if ((buf != null) && buf.hasRemaining()) {
@@ -265,6 +298,7 @@ public class DhcpV6Message implements DhcpMessage
             	// reset the buffer to point at the message type byte
             	// because the message decoder will expect it
             	buf.reset();
+            	dhcpMessage.setLazyDecode(lazy);
                 dhcpMessage.decode(buf);
             }
         }
@@ -340,6 +374,22 @@ public class DhcpV6Message implements DhcpMessage
         }
     }
     
+    /**
+     * Set whether this message is decoded lazily, which is the default.
+     * 
+     * @param lazy	true to decode the options, including those of any
+     * 				relayed message, only when used, false to decode them all
+     */
+    public void setLazyDecode(boolean lazy)
+    {
+    	lazyDecode = lazy;
+    }
+    
+    public boolean isLazyDecode()
+    {
+    	return lazyDecode;
+    }
+    
     /**
      * Decode the options.
      * @param buf	ByteBuffer positioned at the start of the options in the packet
@@ -349,37 +399,98 @@ public class DhcpV6Message implements DhcpMessage
     protected Map<Integer, DhcpOption> decodeOptions(ByteBuffer buf) 
             throws IOException
     {
+    	if (lazyDecode && (dhcpOptions instanceof DhcpOptionTable)) {
+    		return decodeOptionsLazily(buf);
+    	}
         while (buf.hasRemaining()) {
             int code = Util.getUnsignedShort(buf);
             if (log.isDebugEnabled())
     			log.debug("Option code=" + code);
-            DhcpOption option = DhcpV6OptionFactory.getDhcpOption(code);
-            if (option != null) {
-            	if ((option instanceof DhcpV6RelayOption) &&
-            			(this instanceof DhcpV6RelayMessage)) {
-            		DhcpV6RelayOption relayOption = (DhcpV6RelayOption) option;
-            		relayOption.setRelayMessage((DhcpV6RelayMessage)this);
-            	}
-                option.decode(buf);
-                if (option instanceof DhcpV6IaNaOption) {
-                	iaNaOptions.add((DhcpV6IaNaOption)option);
-                }
-                else if (option instanceof DhcpV6IaTaOption) {
-                	iaTaOptions.add((DhcpV6IaTaOption)option);
-                }
-                else if (option instanceof DhcpV6IaPdOption) {
-                	iaPdOptions.add((DhcpV6IaPdOption)option);
-                } 
-                else {
-                	dhcpOptions.put(option.getCode(), option);
-                }
-            }
-            else {
+            if (!decodeOption(code, buf)) {
                 break;  // no more options, or one is malformed, so we're done
             }
         }
         return dhcpOptions;
     }
+    
+    /**
+     * Decode an option, and put it in the list of IA options,
+     * or in the option map.
+     * @param code	the option code
+     * @param buf	ByteBuffer positioned at the length of the option
+     * @return	false if the code is not an option
+     * @throws IOException
+     */
+    private boolean decodeOption(int code, ByteBuffer buf) throws IOException
+    {
+        DhcpOption option = DhcpV6OptionFactory.getDhcpOption(code);
+        if (option == null) {
+        	return false;
+        }
+    	if ((option instanceof DhcpV6RelayOption) &&
+    			(this instanceof DhcpV6RelayMessage)) {
+    		DhcpV6RelayOption relayOption = (DhcpV6RelayOption) option;
+    		relayOption.setRelayMessage((DhcpV6RelayMessage)this);
+    	}
+        option.decode(buf);
+        if (option instanceof DhcpV6IaNaOption) {
+        	iaNaOptions.add((DhcpV6IaNaOption)option);
+        }
+        else if (option instanceof DhcpV6IaTaOption) {
+        	iaTaOptions.add((DhcpV6IaTaOption)option);
+        }
+        else if (option instanceof DhcpV6IaPdOption) {
+        	iaPdOptions.add((DhcpV6IaPdOption)option);
+        } 
+        else {
+        	dhcpOptions.put(option.getCode(), option);
+        }
+        return true;
+    }
+    
+    /**
+     * Find the options, and copy them from the packet, but decode each
+     * option only when it is first used.  The IA options, which are
+     * kept in lists, and the relay message option, which must be
+     * decoded to find the relayed message, are decoded immediately.
+     * @param buf	ByteBuffer positioned at the start of the options in the packet
+     * @return	a Map of DhcpOptions keyed by the option code
+     * @throws IOException
+     */
+    protected Map<Integer, DhcpOption> decodeOptionsLazily(ByteBuffer buf)
+    		throws IOException
+    {
+    	DhcpOptionTable table = (DhcpOptionTable) dhcpOptions;
+    	byte[] raw = new byte[buf.remaining()];
+    	buf.get(raw);
+    	table.setRaw(raw);
+    	ByteBuffer rawBuf = ByteBuffer.wrap(raw);
+    	while (rawBuf.remaining() >= 4) {
+    		int code = Util.getUnsignedShort(rawBuf);
+    		int offset = rawBuf.position();
+    		int len = Util.getUnsignedShort(rawBuf);
+    		if (len > rawBuf.remaining()) {
+    			throw new IOException("Truncated option code=" + code + " len=" + len);
+    		}
+    		if ((code == DhcpConstants.V6OPTION_IA_NA) ||
+    				(code == DhcpConstants.V6OPTION_IA_TA) ||
+    				(code == DhcpConstants.V6OPTION_IA_PD) ||
+    				(code == DhcpConstants.V6OPTION_RELAY_MSG)) {
+    			rawBuf.position(offset);
+    			decodeOption(code, rawBuf);
+    			// the option's decode must not stray outside its length
+    			rawBuf.position(offset + 2 + len);
+    		}
+    		else {
+    			table.putUndecoded(code, offset);
+    			rawBuf.position(offset + 2 + len);
+    		}
+    	}
+    	if (rawBuf.hasRemaining()) {
+    		throw new IOException("Truncated option: " + rawBuf.remaining() + " bytes remaining");
+    	}
+    	return dhcpOptions;
+    }
 
     /**
      * Return the length of this DhcpMessage in bytes.
@@ -494,6 +605,9 @@ public class DhcpV6Message implements DhcpMessage
 
     public boolean hasOption(int optionCode)
     {
+    	if (dhcpOptions instanceof DhcpOptionTable) {
+    		return ((DhcpOptionTable) dhcpOptions).hasOption(optionCode);
+    	}
         if(dhcpOptions.containsKey(optionCode)) {
             return true;
         }
@@ -502,6 +616,9 @@ public class DhcpV6Message implements DhcpMessage
 
     public DhcpOption getDhcpOption(int optionCode)
     {
+    	if (dhcpOptions instanceof DhcpOptionTable) {
+    		return ((DhcpOptionTable) dhcpOptions).getOption(optionCode);
+    	}
         return dhcpOptions.get(optionCode);
     }
     public void putDhcpOption(DhcpOption dhcpOption)
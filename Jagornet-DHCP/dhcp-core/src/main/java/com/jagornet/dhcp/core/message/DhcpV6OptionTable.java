@@ -0,0 +1,187 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpV6OptionTable.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.core.message;
+
+import java.util.Arrays;
+
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6OptionFactory;
+
+/**
+ * Title: DhcpV6OptionTable
+ * Description: The options of a DHCPv6 message, in arrays sorted by option
+ * code.  DHCPv6 option codes are 16 bits, so a slot for every code is not
+ * practical, but a message has few options, so a binary search of a small
+ * sorted array is fast and compact.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class DhcpV6OptionTable extends DhcpOptionTable
+{
+	private static final int INITIAL_CAPACITY = 8;
+	
+	private int[] codes = new int[INITIAL_CAPACITY];
+	private DhcpOption[] options = new DhcpOption[INITIAL_CAPACITY];
+	// offset of each undecoded option in the raw options, if its option is null
+	private int[] offsets = new int[INITIAL_CAPACITY];
+	private int size;
+	
+	private int indexOf(int code)
+	{
+		return Arrays.binarySearch(codes, 0, size, code);
+	}
+	
+	private DhcpOption optionAt(int i)
+	{
+		DhcpOption option = options[i];
+		if (option == null) {
+			option = decodeOption(codes[i], offsets[i]);
+			if (option != null) {
+				options[i] = option;
+			}
+			else {
+				removeAt(i);
+			}
+		}
+		return option;
+	}
+	
+	private void removeAt(int i)
+	{
+		int n = size - i - 1;
+		System.arraycopy(codes, i+1, codes, i, n);
+		System.arraycopy(options, i+1, options, i, n);
+		System.arraycopy(offsets, i+1, offsets, i, n);
+		size--;
+		options[size] = null;
+	}
+	
+	private int insertAt(int i, int code)
+	{
+		if (size == codes.length) {
+			int capacity = codes.length * 2;
+			codes = Arrays.copyOf(codes, capacity);
+			options = Arrays.copyOf(options, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+		}
+		int n = size - i;
+		System.arraycopy(codes, i, codes, i+1, n);
+		System.arraycopy(options, i, options, i+1, n);
+		System.arraycopy(offsets, i, offsets, i+1, n);
+		codes[i] = code;
+		size++;
+		return i;
+	}
+	
+	private int slotFor(int code)
+	{
+		int i = indexOf(code);
+		return (i >= 0) ? i : insertAt(-(i + 1), code);
+	}
+
+	@Override
+	public DhcpOption getOption(int code)
+	{
+		int i = indexOf(code);
+		return (i >= 0) ? optionAt(i) : null;
+	}
+
+	@Override
+	public boolean hasOption(int code)
+	{
+		// decoded, so that an option which fails to decode is not found
+		int i = indexOf(code);
+		return (i >= 0) && (optionAt(i) != null);
+	}
+
+	@Override
+	public DhcpOption putOption(int code, DhcpOption option)
+	{
+		if (option == null) {
+			return removeOption(code);
+		}
+		int i = indexOf(code);
+		DhcpOption old = null;
+		if (i >= 0) {
+			old = optionAt(i);
+			// the index is unchanged, unless the old option was dropped
+			i = slotFor(code);
+		}
+		else {
+			i = insertAt(-(i + 1), code);
+		}
+		options[i] = option;
+		return old;
+	}
+
+	@Override
+	public DhcpOption removeOption(int code)
+	{
+		int i = indexOf(code);
+		if (i < 0) {
+			return null;
+		}
+		DhcpOption old = optionAt(i);
+		if (old != null) {
+			removeAt(i);
+		}
+		return old;
+	}
+
+	@Override
+	public void putUndecoded(int code, int offset)
+	{
+		int i = slotFor(code);
+		options[i] = null;
+		offsets[i] = offset;
+	}
+
+	@Override
+	protected int[] codes()
+	{
+		return Arrays.copyOf(codes, size);
+	}
+
+	@Override
+	protected DhcpOption createOption(int code)
+	{
+		return DhcpV6OptionFactory.getDhcpOption(code);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill(options, 0, size, null);
+		raw = null;
+		size = 0;
+	}
+}
@@ -164,7 +164,7 @@ public class DhcpV6RelayMessage extends DhcpV6Message
         buf.put((byte)hopCount);
         buf.put(linkAddress.getAddress());
         buf.put(peerAddress.getAddress());
-        buf.put(encodeOptions());
+        encodeOptions(buf);
         buf.flip();
         
         if (log.isDebugEnabled())
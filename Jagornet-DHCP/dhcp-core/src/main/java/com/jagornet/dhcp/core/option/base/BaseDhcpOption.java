@@ -28,6 +28,7 @@ package com.jagornet.dhcp.core.option.base;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +48,9 @@ public abstract class BaseDhcpOption implements DhcpOption
 	protected String name;
 	protected int code;
 	protected boolean v4;	// true only if DHCPv4 option
+	
+	/** the wire format of this option, if it has been pre-encoded */
+	private ByteBuffer encodedTemplate;
 
 	/**
      * Encode the DHCP option code and length fields of any DHCP option.
@@ -126,6 +130,7 @@ public abstract class BaseDhcpOption implements DhcpOption
 	
 	public void setCode(int code) {
 		this.code = code;
+		encodedTemplate = null;
 	}
 	
 	public int getCode() {
@@ -138,6 +143,71 @@ public abstract class BaseDhcpOption implements DhcpOption
 
 	public void setV4(boolean v4) {
 		this.v4 = v4;
+		encodedTemplate = null;
+	}
+	
+	/**
+	 * Encode this option once, and keep the wire format as a template which
+	 * the message encoders copy directly into the packet.  This is only for
+	 * options which are not modified afterwards, such as the options built
+	 * from the server configuration, because a template is not re-encoded
+	 * when the value of the option is changed.
+	 * 
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void preEncode() throws IOException
+	{
+		ByteBuffer buf = encode();
+		encodedTemplate = (buf != null) ? buf.asReadOnlyBuffer() : null;
+	}
+	
+	public boolean isPreEncoded() {
+		return (encodedTemplate != null);
+	}
+	
+	/**
+	 * Encode a DHCP option, using the pre-encoded template of the option if
+	 * it has one, otherwise encoding the option.
+	 * 
+	 * @param option the DHCP option
+	 * 
+	 * @return the ByteBuffer containing the encoded option, which must not be modified
+	 * 
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static ByteBuffer encodeOption(DhcpOption option) throws IOException
+	{
+		if (option instanceof BaseDhcpOption) {
+			ByteBuffer template = ((BaseDhcpOption)option).encodedTemplate;
+			if (template != null) {
+				return template.duplicate();
+			}
+		}
+		return option.encode();
+	}
+	
+	/**
+	 * Pre-encode each of the given options which supports it.  An option
+	 * which fails to encode is left to be encoded for each message, where
+	 * the failure will be reported in context.
+	 * 
+	 * @param options the DHCP options
+	 */
+	public static void preEncodeOptions(Collection<DhcpOption> options)
+	{
+		if (options != null) {
+			for (DhcpOption option : options) {
+				if (option instanceof BaseDhcpOption) {
+					try {
+						((BaseDhcpOption)option).preEncode();
+					}
+					catch (Exception ex) {
+						log.warn("Failed to pre-encode option: " + option.getName() +
+								": " + ex);
+					}
+				}
+			}
+		}
 	}
 	
 	private byte[] rawData;
@@ -110,7 +110,9 @@ public class DhcpV6RelayOption extends BaseDhcpOption
         // use the wrapped buffer which represents the contents of the message
         // contained within this relay option, but not any more, i.e. not beyond
         // what _this_ relay option reports its length to be
-        dhcpMessage = DhcpV6Message.decode(_buf, relayMsgLocalAddr, relayMsgRemoteAddr);
+        // the relayed message is decoded like the relay message
+        dhcpMessage = DhcpV6Message.decode(_buf, relayMsgLocalAddr, relayMsgRemoteAddr,
+        									relayMessage.isLazyDecode());
     }
 
     /**
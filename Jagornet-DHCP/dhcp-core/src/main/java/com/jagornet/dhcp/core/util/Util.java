@@ -55,6 +55,17 @@ public class Util
 
 	public static TimeZone GMT_TIMEZONE = TimeZone.getTimeZone("GMT");
     public static Calendar GMT_CALENDAR = Calendar.getInstance(GMT_TIMEZONE);
+    
+    /**
+     * Get a new GMT calendar.  JDBC drivers may modify the calendar
+     * passed to get/setTimestamp, so the shared GMT_CALENDAR must not
+     * be used by concurrent threads.
+     * 
+     * @return a new Calendar for the GMT timezone
+     */
+    public static Calendar gmtCalendar() {
+    	return Calendar.getInstance(GMT_TIMEZONE);
+    }
 	
     public static DateFormat GMT_DATEFORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 
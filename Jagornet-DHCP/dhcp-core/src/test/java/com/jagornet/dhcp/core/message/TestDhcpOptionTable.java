@@ -0,0 +1,168 @@
+package com.jagornet.dhcp.core.message;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.jagornet.dhcp.core.option.DhcpUnknownOption;
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4LeaseTimeOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ElapsedTimeOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6PreferenceOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+
+import junit.framework.TestCase;
+
+public class TestDhcpOptionTable extends TestCase
+{
+	public void testV4PutGetRemove() throws Exception
+	{
+		DhcpV4OptionTable table = new DhcpV4OptionTable();
+		DhcpV4LeaseTimeOption leaseTime = new DhcpV4LeaseTimeOption(3600);
+		assertNull(table.put(leaseTime.getCode(), leaseTime));
+		table.putOption(DhcpConstants.V4OPTION_HOSTNAME, new DhcpV4HostnameOption("host1"));
+		assertEquals(2, table.size());
+		assertSame(leaseTime, table.getOption(DhcpConstants.V4OPTION_LEASE_TIME));
+		assertSame(leaseTime, table.get(Integer.valueOf(DhcpConstants.V4OPTION_LEASE_TIME)));
+		assertTrue(table.containsKey(DhcpConstants.V4OPTION_HOSTNAME));
+		assertNull(table.getOption(300));
+		assertFalse(table.hasOption(-1));
+		
+		assertSame(leaseTime, table.remove(DhcpConstants.V4OPTION_LEASE_TIME));
+		assertEquals(1, table.size());
+		assertFalse(table.hasOption(DhcpConstants.V4OPTION_LEASE_TIME));
+		try {
+			table.putOption(256, leaseTime);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+	
+	public void testV6IterationInCodeOrder() throws Exception
+	{
+		DhcpV6OptionTable table = new DhcpV6OptionTable();
+		int[] codes = new int[] { 300, 7, 65535, 1, 25, 8, 16, 2, 9, 40, 100 };
+		for (int code : codes) {
+			table.putOption(code, new DhcpV6PreferenceOption((short)1));
+		}
+		assertEquals(codes.length, table.size());
+		int last = -1;
+		for (Map.Entry<Integer, DhcpOption> entry : table.entrySet()) {
+			assertTrue(entry.getKey() > last);
+			last = entry.getKey();
+		}
+		
+		Iterator<Integer> iter = table.keySet().iterator();
+		while (iter.hasNext()) {
+			if ((iter.next() % 2) == 0) {
+				iter.remove();
+			}
+		}
+		assertEquals(5, table.size());
+		assertFalse(table.hasOption(8));
+		assertTrue(table.hasOption(7));
+		assertTrue(table.hasOption(65535));
+	}
+	
+	public void testUndecodedOptions() throws Exception
+	{
+		// code 15, then elapsed time code 8 with length 2
+		byte[] raw = new byte[] { 0, 15, 0, 2, 0x12, 0x34, 0, 8, 0, 2, 0x00, 0x64 };
+		DhcpV6OptionTable table = new DhcpV6OptionTable();
+		table.setRaw(raw);
+		table.putUndecoded(15, 2);
+		table.putUndecoded(8, 8);
+		assertEquals(2, table.size());
+		assertTrue(table.hasOption(8));
+		DhcpV6ElapsedTimeOption elapsed = (DhcpV6ElapsedTimeOption) table.getOption(8);
+		assertEquals(100, elapsed.getUnsignedShort());
+		assertSame(elapsed, table.getOption(8));
+		
+		// replacing an undecoded option does not decode it
+		DhcpV6PreferenceOption pref = new DhcpV6PreferenceOption((short)5);
+		table.putOption(15, pref);
+		assertSame(pref, table.getOption(15));
+		assertEquals(2, table.size());
+	}
+	
+	/**
+	 * A table of an undecoded hostname option which fails
+	 * to decode, and an undecoded lease time option.
+	 */
+	private static DhcpV4OptionTable malformedHostnameTable()
+	{
+		byte[] raw = new byte[] { 12, 3, 'a', 'b', 'c', 51, 4, 0, 0, 0x0e, 0x10 };
+		DhcpV4OptionTable table = new DhcpV4OptionTable() {
+			@Override
+			protected DhcpOption createOption(int code) {
+				if (code == DhcpConstants.V4OPTION_HOSTNAME) {
+					return new DhcpUnknownOption() {
+						@Override
+						public void decode(ByteBuffer buf) throws IOException {
+							throw new IOException("malformed");
+						}
+					};
+				}
+				return super.createOption(code);
+			}
+		};
+		table.setRaw(raw);
+		table.putUndecoded(12, 1);
+		table.putUndecoded(51, 6);
+		return table;
+	}
+	
+	public void testMalformedOptionNotFound() throws Exception
+	{
+		DhcpV4OptionTable table = malformedHostnameTable();
+		// the malformed option is dropped when first checked for
+		assertFalse(table.hasOption(DhcpConstants.V4OPTION_HOSTNAME));
+		assertFalse(table.containsKey(DhcpConstants.V4OPTION_HOSTNAME));
+		assertNull(table.getOption(DhcpConstants.V4OPTION_HOSTNAME));
+		assertTrue(table.hasOption(DhcpConstants.V4OPTION_LEASE_TIME));
+		assertEquals(1, table.size());
+	}
+	
+	public void testMalformedOptionDropped() throws Exception
+	{
+		DhcpV4OptionTable table = malformedHostnameTable();
+		assertFalse(table.isEmpty());
+		// the undecoded options are counted without decoding them
+		assertEquals(2, table.size());
+		assertEquals(2, table.entrySet().size());
+		
+		// the malformed option is dropped when the options are used
+		List<DhcpOption> options = new ArrayList<DhcpOption>(table.values());
+		assertEquals(1, options.size());
+		assertEquals(3600, ((DhcpV4LeaseTimeOption)options.get(0)).getUnsignedInt());
+		assertEquals(1, table.size());
+		assertFalse(table.hasOption(DhcpConstants.V4OPTION_HOSTNAME));
+	}
+	
+	public void testV4MessageOptionsDecodedWhenUsed() throws Exception
+	{
+		DhcpV4Message msg = new DhcpV4Message(null, new InetSocketAddress(67));
+		msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		msg.setHlen((short)6);
+		msg.setChAddr(new byte[6]);
+		msg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
+		msg.putDhcpOption(new DhcpV4HostnameOption("host1"));
+		msg.putDhcpOption(new DhcpV4LeaseTimeOption(3600));
+		ByteBuffer buf = msg.encode();
+		
+		DhcpV4Message decoded = DhcpV4Message.decode(buf, null, new InetSocketAddress(68));
+		assertTrue(decoded.getDhcpOptionMap() instanceof DhcpV4OptionTable);
+		assertEquals(3, decoded.getDhcpOptionMap().size());
+		assertEquals("host1", ((DhcpV4HostnameOption)
+				decoded.getDhcpOption(DhcpConstants.V4OPTION_HOSTNAME)).getString());
+		assertEquals(DhcpConstants.V4MESSAGE_TYPE_DISCOVER, decoded.getMessageType());
+		assertEquals(msg.getDhcpOptionMap(), decoded.getDhcpOptionMap());
+	}
+}
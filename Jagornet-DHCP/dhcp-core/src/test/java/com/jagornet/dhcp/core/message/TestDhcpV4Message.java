@@ -0,0 +1,104 @@
+package com.jagornet.dhcp.core.message;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+
+import junit.framework.TestCase;
+
+public class TestDhcpV4Message extends TestCase
+{
+	private static final byte[] MAC = new byte[] { 
+			(byte)0xde, (byte)0xbb, (byte)0x1e, (byte)0xde, (byte)0xbb, (byte)0x1e };
+	
+	private ByteBuffer encodeDiscover(InetAddress giAddr) throws Exception
+	{
+		DhcpV4Message msg = new DhcpV4Message(null, new InetSocketAddress(67));
+		msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		msg.setHtype((short)1);
+		msg.setHlen((short)6);
+		msg.setTransactionId(0xfedcba98L);
+		msg.setFlags(0x8000);
+		msg.setGiAddr(giAddr);
+		msg.setChAddr(MAC);
+		msg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
+		msg.putDhcpOption(new DhcpV4HostnameOption("host1"));
+		return msg.encode();
+	}
+	
+	private DhcpV4Message decode(ByteBuffer buf, boolean lazy) throws Exception
+	{
+		return DhcpV4Message.decode(buf.duplicate(), null, new InetSocketAddress(68), lazy);
+	}
+	
+	public void testLazyDecodeMatchesEager() throws Exception
+	{
+		ByteBuffer buf = encodeDiscover(InetAddress.getByName("10.0.0.1"));
+		DhcpV4Message eager = decode(buf, false);
+		DhcpV4Message lazy = decode(buf, true);
+		
+		assertEquals(eager.getOp(), lazy.getOp());
+		assertEquals(eager.getHtype(), lazy.getHtype());
+		assertEquals(eager.getHlen(), lazy.getHlen());
+		assertEquals(eager.getHops(), lazy.getHops());
+		assertEquals(eager.getTransactionId(), lazy.getTransactionId());
+		assertEquals(eager.getSecs(), lazy.getSecs());
+		assertEquals(eager.getFlags(), lazy.getFlags());
+		assertEquals(eager.getCiAddr(), lazy.getCiAddr());
+		assertEquals(eager.getYiAddr(), lazy.getYiAddr());
+		assertEquals(eager.getSiAddr(), lazy.getSiAddr());
+		assertEquals(InetAddress.getByName("10.0.0.1"), lazy.getGiAddr());
+		assertEquals(eager.getGiAddr(), lazy.getGiAddr());
+		assertTrue(Arrays.equals(MAC, lazy.getChAddr()));
+		assertEquals(eager.getsName(), lazy.getsName());
+		assertEquals(eager.getFile(), lazy.getFile());
+		assertEquals(eager.getDhcpOptionMap(), lazy.getDhcpOptionMap());
+		assertEquals(eager.toString(), lazy.toString());
+		
+		// zero addresses are not allocated for each message
+		assertSame(DhcpConstants.ZEROADDR_V4, lazy.getCiAddr());
+		
+		// a lazily decoded message encodes the same as an eagerly decoded one
+		assertEquals(eager.encode(), lazy.encode());
+	}
+	
+	public void testToStringBeforeGet() throws Exception
+	{
+		ByteBuffer buf = encodeDiscover(InetAddress.getByName("10.0.0.1"));
+		DhcpV4Message eager = decode(buf, false);
+		DhcpV4Message lazy = decode(buf, true);
+		// the header fields are formatted without decoding them
+		assertEquals(eager.toString(), lazy.toString());
+		assertEquals(eager.getGiAddr(), lazy.getGiAddr());
+		assertTrue(Arrays.equals(MAC, lazy.getChAddr()));
+	}
+	
+	public void testSetBeforeGet() throws Exception
+	{
+		DhcpV4Message lazy = decode(encodeDiscover(DhcpConstants.ZEROADDR_V4), true);
+		InetAddress yiAddr = InetAddress.getByName("10.0.0.100");
+		lazy.setYiAddr(yiAddr);
+		lazy.setsName(null);
+		assertEquals(yiAddr, lazy.getYiAddr());
+		assertNull(lazy.getsName());
+		assertEquals(DhcpConstants.ZEROADDR_V4, lazy.getGiAddr());
+	}
+	
+	public void testInvalidHlen() throws Exception
+	{
+		ByteBuffer buf = encodeDiscover(DhcpConstants.ZEROADDR_V4);
+		buf.put(2, (byte)0xff);
+		try {
+			decode(buf, true);
+			fail("Expected IOException for invalid hlen");
+		}
+		catch (IOException ex) {
+			// expected
+		}
+	}
+}
@@ -29,6 +29,7 @@ import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.List;
 
+import com.jagornet.dhcp.core.option.base.BaseDhcpOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6DnsServersOption;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 
@@ -116,6 +117,26 @@ public class TestDhcpV6DnsServersOption extends TestCase
                      InetAddress.getByName(dnsServers.get(1)));
     }
     
+    /**
+     * Test pre-encoded template.
+     * 
+     * @throws Exception the exception
+     */
+    public void testPreEncode() throws Exception
+    {
+        DhcpV6DnsServersOption dso = new DhcpV6DnsServersOption();
+        dso.addIpAddress(dns1);    // 16 bytes
+        dso.addIpAddress(dns2);    // 16 bytes
+        assertFalse(dso.isPreEncoded());
+        dso.preEncode();
+        assertTrue(dso.isPreEncoded());
+        ByteBuffer bb = BaseDhcpOption.encodeOption(dso);
+        assertEquals(dso.encode(), bb);
+        // each copy has its own position
+        bb.get(new byte[bb.remaining()]);
+        assertEquals(dso.encode(), BaseDhcpOption.encodeOption(dso));
+    }
+    
     /**
      * Test to string.
      */
@@ -36,9 +36,9 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -84,7 +84,9 @@ import com.jagornet.dhcp.server.request.binding.V4AddrBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6NaAddrBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6PrefixBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6TaAddrBindingManager;
+import com.jagornet.dhcp.server.request.ddns.DdnsUpdateEngine;
 import com.jagornet.dhcp.server.rest.JerseyRestServer;
+import com.jagornet.dhcp.server.util.DhcpServerScheduler;
 import com.jagornet.dhcp.server.util.MtlsConfig;
 
 import io.grpc.Server;
@@ -222,7 +224,11 @@ public class JagornetDhcpServer
     	int schemaVersion = DhcpServerPolicies.globalPolicyAsInt(Property.DATABASE_SCHEMA_VERSION);
         String[] appContext = getAppContextFiles(schemaType, schemaVersion);     
         log.info("Loading application context: " + Arrays.toString(appContext));
-		context = new ClassPathXmlApplicationContext(appContext);
+		ClassPathXmlApplicationContext appCtx = new ClassPathXmlApplicationContext(appContext);
+		// close the context on shutdown, so that beans such as
+		// the lease manager can finish any pending database writes
+		appCtx.registerShutdownHook();
+		context = appCtx;
 		if (context == null) {
 			throw new IllegalStateException("Failed to initialize application context: " +
         			appContext);
@@ -466,13 +472,14 @@ public class JagornetDhcpServer
 		
 		log.info("Loading managers from context...");
 		
-		Map<String, List<? extends BindingPool>> bindingPoolMap = null;
+		// the pools of all binding managers, which may share link addresses
+		List<List<? extends BindingPool>> bindingPoolLists = null;
 		
 		boolean reconcile = DhcpServerPolicies.globalPolicyAsBoolean(
 				Property.BINDING_MANAGER_RECONCILE_POOLS_ON_STARTUP);
 
 		if (reconcile) {
-			bindingPoolMap = new HashMap<String, List<? extends BindingPool>>();
+			bindingPoolLists = new ArrayList<List<? extends BindingPool>>();
 		}
 		
 		//TODO: Check if binding manager init method can be
@@ -484,12 +491,15 @@ public class JagornetDhcpServer
 		if (v4AddrBindingMgr != null) {
 			try {
 				log.info("Initializing V4 Address Binding Manager");
+				long start = System.currentTimeMillis();
 				v4AddrBindingMgr.init();
+				log.info("Initialized V4 Address Binding Manager in " + 
+						(System.currentTimeMillis() - start) + "ms");
 				if (reconcile) {
 					Map<String, List<? extends BindingPool>> v4AddrPoolMap =
 							((BindingManager)v4AddrBindingMgr).getBindingPoolMap();
 					if (v4AddrPoolMap != null) {
-						bindingPoolMap.putAll(v4AddrPoolMap);
+						bindingPoolLists.addAll(v4AddrPoolMap.values());
 					}
 				}
 				serverConfig.setV4AddrBindingMgr(v4AddrBindingMgr);
@@ -508,12 +518,15 @@ public class JagornetDhcpServer
 		if (v6NaAddrBindingMgr != null) {
 			try {
 				log.info("Initializing V6 NA Address Binding Manager");
+				long start = System.currentTimeMillis();
 				v6NaAddrBindingMgr.init();
+				log.info("Initialized V6 NA Address Binding Manager in " + 
+						(System.currentTimeMillis() - start) + "ms");
 				if (reconcile) {
 					Map<String, List<? extends BindingPool>> v6NaAddrPoolMap =
 							((BindingManager)v6NaAddrBindingMgr).getBindingPoolMap();
 					if (v6NaAddrPoolMap != null) {
-						bindingPoolMap.putAll(v6NaAddrPoolMap);
+						bindingPoolLists.addAll(v6NaAddrPoolMap.values());
 					}
 				}
 				serverConfig.setV6NaAddrBindingMgr(v6NaAddrBindingMgr);
@@ -532,12 +545,15 @@ public class JagornetDhcpServer
 		if (v6TaAddrBindingMgr != null) {
 			try {
 				log.info("Initializing V6 TA Address Binding Manager");
+				long start = System.currentTimeMillis();
 				v6TaAddrBindingMgr.init();
+				log.info("Initialized V6 TA Address Binding Manager in " + 
+						(System.currentTimeMillis() - start) + "ms");
 				if (reconcile) {
 					Map<String, List<? extends BindingPool>> v6TaAddrPoolMap =
 							((BindingManager)v6TaAddrBindingMgr).getBindingPoolMap();
 					if (v6TaAddrPoolMap != null) {
-						bindingPoolMap.putAll(v6TaAddrPoolMap);
+						bindingPoolLists.addAll(v6TaAddrPoolMap.values());
 					}
 				}
 				serverConfig.setV6TaAddrBindingMgr(v6TaAddrBindingMgr);
@@ -556,12 +572,15 @@ public class JagornetDhcpServer
 		if (v6PrefixBindingMgr != null) {
 			try {
 				log.info("Initializing V6 Prefix Binding Manager");
+				long start = System.currentTimeMillis();
 				v6PrefixBindingMgr.init();
+				log.info("Initialized V6 Prefix Binding Manager in " + 
+						(System.currentTimeMillis() - start) + "ms");
 				if (reconcile) {
 					Map<String, List<? extends BindingPool>> v6PrefixPoolMap =
-							((BindingManager)v6NaAddrBindingMgr).getBindingPoolMap();
+							((BindingManager)v6PrefixBindingMgr).getBindingPoolMap();
 					if (v6PrefixPoolMap != null) {
-						bindingPoolMap.putAll(v6PrefixPoolMap);
+						bindingPoolLists.addAll(v6PrefixPoolMap.values());
 					}
 				}
 				serverConfig.setV6PrefixBindingMgr(v6PrefixBindingMgr);
@@ -589,13 +608,16 @@ public class JagornetDhcpServer
             	  if (v6PrefixBindingMgr != null) {
             		  ((BaseBindingManager) v6PrefixBindingMgr).close();
             	  }
+            	  DdnsUpdateEngine.shutdownInstance();
+            	  // after the binding managers have cancelled their reapers
+            	  DhcpServerScheduler.shutdownInstance();
                 }
             });
         
 		IaManager iaMgr = (IaManager) context.getBean("iaManager");		
 		if (iaMgr != null) {
 			if (reconcile) {
-				reconcilePools(iaMgr, bindingPoolMap);
+				reconcilePools(iaMgr, bindingPoolLists);
 			}
 			serverConfig.setIaMgr(iaMgr);
 		}
@@ -610,22 +632,25 @@ public class JagornetDhcpServer
      * Reconcile pools.  Delete any IaAddress objects not contained
      * within the given list of BindingPools.
      * 
-     * @param collection. the list of BindingPools
+     * @param bindingPoolLists the lists of BindingPools
      */
     protected void reconcilePools(IaManager iaMgr,
-    		Map<String, List<? extends BindingPool>> bindingPoolMap)
+    		Collection<List<? extends BindingPool>> bindingPoolLists)
     {
-    	if ((bindingPoolMap != null) && !bindingPoolMap.isEmpty()) {
+    	if ((bindingPoolLists != null) && !bindingPoolLists.isEmpty()) {
     		log.info("Reconciling leases for configured pool ranges");
     		List<Range> ranges = new ArrayList<Range>();
-    		for (List<? extends BindingPool> bpList : bindingPoolMap.values()) {
+    		for (List<? extends BindingPool> bpList : bindingPoolLists) {
     			for (BindingPool bp : bpList) {
 	    			Range range = new Range(bp.getStartAddress(), bp.getEndAddress());
 					ranges.add(range);
 					log.debug("Added pool range: " + range);
     			}
 			}
+    		long start = System.currentTimeMillis();
         	iaMgr.reconcileIaAddresses(ranges);
+    		log.info("Reconciled leases for " + ranges.size() + " pool ranges in " +
+    				(System.currentTimeMillis() - start) + "ms");
     	}
     }
 
@@ -0,0 +1,635 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file CompiledFilter.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.core.message.DhcpMessage;
+import com.jagornet.dhcp.core.option.base.BaseDomainNameListOption;
+import com.jagornet.dhcp.core.option.base.BaseDomainNameOption;
+import com.jagornet.dhcp.core.option.base.BaseEmptyOption;
+import com.jagornet.dhcp.core.option.base.BaseIpAddressListOption;
+import com.jagornet.dhcp.core.option.base.BaseIpAddressOption;
+import com.jagornet.dhcp.core.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.core.option.base.BaseOpaqueDataListOption;
+import com.jagornet.dhcp.core.option.base.BaseOpaqueDataOption;
+import com.jagornet.dhcp.core.option.base.BaseStringOption;
+import com.jagornet.dhcp.core.option.base.BaseUnsignedByteListOption;
+import com.jagornet.dhcp.core.option.base.BaseUnsignedByteOption;
+import com.jagornet.dhcp.core.option.base.BaseUnsignedIntOption;
+import com.jagornet.dhcp.core.option.base.BaseUnsignedShortListOption;
+import com.jagornet.dhcp.core.option.base.BaseUnsignedShortOption;
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4VendorClassOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6UserClassOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6VendorClassOption;
+import com.jagornet.dhcp.core.util.Util;
+import com.jagornet.dhcp.server.config.xml.ClientClassExpression;
+import com.jagornet.dhcp.server.config.xml.Filter;
+import com.jagornet.dhcp.server.config.xml.FilterExpression;
+import com.jagornet.dhcp.server.config.xml.FilterExpressionsType;
+import com.jagornet.dhcp.server.config.xml.OpaqueData;
+import com.jagornet.dhcp.server.config.xml.OpaqueDataListOptionType;
+import com.jagornet.dhcp.server.config.xml.OpaqueDataOptionType;
+import com.jagornet.dhcp.server.config.xml.Operator;
+import com.jagornet.dhcp.server.config.xml.OptionExpression;
+
+/**
+ * Title: CompiledFilter
+ * Description: An immutable, precompiled form of a configured filter.
+ * Each filter expression is compiled once into a predicate which holds
+ * the expression values in the form in which they are compared, such as
+ * precompiled regular expressions and decoded numeric values, so that
+ * matching a request does not walk the JAXB expression objects or
+ * recompile anything.  The option classes are mapped to a comparison
+ * kind once per class, rather than by an instanceof chain per request.
+ * The match results are the same as for the expression evaluation in
+ * DhcpServerConfiguration, except that errors in the expression values
+ * are logged once, when the filter is compiled, and the expression will
+ * not match.
+ *
+ * @author A. Gregory Rabil
+ */
+public class CompiledFilter
+{
+	private static Logger log = LoggerFactory.getLogger(CompiledFilter.class);
+	
+	/** the kinds of option value which can be compared */
+	enum OptionKind { EMPTY, DOMAIN_NAME, DOMAIN_NAME_LIST, IP_ADDRESS, IP_ADDRESS_LIST,
+		OPAQUE_DATA, OPAQUE_DATA_LIST, STRING, UBYTE, UBYTE_LIST, UINT, USHORT, USHORT_LIST,
+		UNKNOWN }
+	
+	/** the comparison kind of each option class, computed on first use */
+	private static final ClassValue<OptionKind> optionKinds = new ClassValue<OptionKind>() {
+		@Override
+		protected OptionKind computeValue(Class<?> type) {
+			return kindOf(type);
+		}
+	};
+	
+	private final Filter filter;
+	private final Predicate[] predicates;
+	
+	/**
+	 * Compile the given filter.
+	 * 
+	 * @param filter the configured filter
+	 */
+	public CompiledFilter(Filter filter)
+	{
+		this.filter = filter;
+		List<Predicate> predicateList = new ArrayList<Predicate>();
+		FilterExpressionsType filterExprs = filter.getFilterExpressions();
+		if ((filterExprs != null) && (filterExprs.getFilterExpressionList() != null)) {
+			for (FilterExpression expression : filterExprs.getFilterExpressionList()) {
+				Predicate predicate = null;
+				if (expression.getClientClassExpression() != null) {
+					predicate = compileClientClass(expression.getClientClassExpression());
+				}
+				else if (expression.getOptionExpression() != null) {
+					predicate = new OptionPredicate(expression.getOptionExpression());
+				}
+				else {
+					log.warn("Unsupported filter expression: " + expression);
+				}
+				if (predicate != null) {
+					predicateList.add(predicate);
+				}
+			}
+		}
+		predicates = predicateList.toArray(new Predicate[predicateList.size()]);
+	}
+	
+	public Filter getFilter() {
+		return filter;
+	}
+	
+	public int getPredicateCount() {
+		return predicates.length;
+	}
+
+	/**
+	 * Check if a request message matches this filter.  The message must
+	 * match all expressions of the filter, and a filter without any
+	 * expressions matches every message.
+	 * 
+	 * @param requestMsg the request message
+	 * 
+	 * @return true, if successful
+	 */
+	public boolean matches(DhcpMessage requestMsg)
+	{
+		for (Predicate predicate : predicates) {
+			if (!predicate.matches(requestMsg)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Compile a client class expression.  Unsupported client class
+	 * expressions always match, so no predicate is returned for them.
+	 * 
+	 * @param ccexpr the client class expression
+	 * @return the predicate, or null
+	 */
+	protected static Predicate compileClientClass(ClientClassExpression ccexpr)
+	{
+		final Operator op = ccexpr.getOperator();
+		if (ccexpr.getV6UserClassOption() != null) {
+			final int code = ccexpr.getV6UserClassOption().getCode();
+			final OpaqueListMatcher matcher = new OpaqueListMatcher(
+					ccexpr.getV6UserClassOption().getOpaqueDataList(), op);
+			return new Predicate() {
+				@Override
+				public boolean matches(DhcpMessage requestMsg) {
+					DhcpV6UserClassOption ucOption = (DhcpV6UserClassOption)
+							requestMsg.getDhcpOption(code);
+					return (ucOption != null) && matcher.matches(ucOption.getOpaqueDataList());
+				}
+			};
+		}
+		else if (ccexpr.getV6VendorClassOption() != null) {
+			final int code = ccexpr.getV6VendorClassOption().getCode();
+			final OpaqueListMatcher matcher = new OpaqueListMatcher(
+					ccexpr.getV6VendorClassOption().getOpaqueDataList(), op);
+			return new Predicate() {
+				@Override
+				public boolean matches(DhcpMessage requestMsg) {
+					DhcpV6VendorClassOption vcOption = (DhcpV6VendorClassOption)
+							requestMsg.getDhcpOption(code);
+					return (vcOption != null) && matcher.matches(vcOption.getOpaqueDataList());
+				}
+			};
+		}
+		else if (ccexpr.getV4VendorClassOption() != null) {
+			final int code = ccexpr.getV4VendorClassOption().getCode();
+			final OpaqueMatcher matcher = new OpaqueMatcher(
+					ccexpr.getV4VendorClassOption().getOpaqueData(), op);
+			return new Predicate() {
+				@Override
+				public boolean matches(DhcpMessage requestMsg) {
+					DhcpV4VendorClassOption vcOption = (DhcpV4VendorClassOption)
+							requestMsg.getDhcpOption(code);
+					if (vcOption == null) {
+						return false;
+					}
+					BaseOpaqueData baseOpaqueData = vcOption.getOpaqueData();
+					return (baseOpaqueData == null) || matcher.matches(baseOpaqueData);
+				}
+			};
+		}
+		log.warn("Unsupported client class expression: " + ccexpr);
+		return null;
+	}
+	
+	static OptionKind kindOf(Class<?> type)
+	{
+		// same order as the evaluation in DhcpServerConfiguration,
+		// in case an option class extends more than one base class
+		if (BaseEmptyOption.class.isAssignableFrom(type))
+			return OptionKind.EMPTY;
+		if (BaseDomainNameOption.class.isAssignableFrom(type))
+			return OptionKind.DOMAIN_NAME;
+		if (BaseDomainNameListOption.class.isAssignableFrom(type))
+			return OptionKind.DOMAIN_NAME_LIST;
+		if (BaseIpAddressOption.class.isAssignableFrom(type))
+			return OptionKind.IP_ADDRESS;
+		if (BaseIpAddressListOption.class.isAssignableFrom(type))
+			return OptionKind.IP_ADDRESS_LIST;
+		if (BaseOpaqueDataOption.class.isAssignableFrom(type))
+			return OptionKind.OPAQUE_DATA;
+		if (BaseOpaqueDataListOption.class.isAssignableFrom(type))
+			return OptionKind.OPAQUE_DATA_LIST;
+		if (BaseStringOption.class.isAssignableFrom(type))
+			return OptionKind.STRING;
+		if (BaseUnsignedByteOption.class.isAssignableFrom(type))
+			return OptionKind.UBYTE;
+		if (BaseUnsignedByteListOption.class.isAssignableFrom(type))
+			return OptionKind.UBYTE_LIST;
+		if (BaseUnsignedIntOption.class.isAssignableFrom(type))
+			return OptionKind.UINT;
+		if (BaseUnsignedShortOption.class.isAssignableFrom(type))
+			return OptionKind.USHORT;
+		if (BaseUnsignedShortListOption.class.isAssignableFrom(type))
+			return OptionKind.USHORT_LIST;
+		return OptionKind.UNKNOWN;
+	}
+	
+	/**
+	 * A compiled filter expression.
+	 */
+	interface Predicate
+	{
+		boolean matches(DhcpMessage requestMsg);
+	}
+	
+	/**
+	 * A compiled option expression.  Only the matcher for the value type
+	 * which is configured in the expression is built, and a null matcher
+	 * means that the option does not match.
+	 */
+	static class OptionPredicate implements Predicate
+	{
+		private final int code;
+		private final boolean v4;
+		private final StringMatcher domainName;
+		private final ListMatcher domainNameList;
+		private final StringMatcher ipAddress;
+		private final ListMatcher ipAddressList;
+		private final OpaqueMatcher opaqueData;
+		private final OpaqueListMatcher opaqueDataList;
+		private final StringMatcher string;
+		private final NumberMatcher unsignedByte;
+		private final ListMatcher unsignedByteList;
+		private final NumberMatcher unsignedInt;
+		private final NumberMatcher unsignedShort;
+		private final ListMatcher unsignedShortList;
+		// the opaque data value of the expression, decoded as a number
+		private final Long opaqueUnsignedInt;
+		private final Long opaqueUnsignedShort;
+		
+		OptionPredicate(OptionExpression expression)
+		{
+			code = expression.getCode();
+			v4 = expression.isV4();
+			Operator op = expression.getOperator();
+			domainName = (expression.getDomainNameOption() == null) ? null :
+				new StringMatcher(expression.getDomainNameOption().getDomainName(), op);
+			domainNameList = (expression.getDomainNameListOption() == null) ? null :
+				new ListMatcher(expression.getDomainNameListOption().getDomainNameList(), op);
+			ipAddress = (expression.getIpAddressOption() == null) ? null :
+				new StringMatcher(expression.getIpAddressOption().getIpAddress(), op);
+			ipAddressList = (expression.getIpAddressListOption() == null) ? null :
+				new ListMatcher(expression.getIpAddressListOption().getIpAddressList(), op);
+			OpaqueDataOptionType opaqueOption = expression.getOpaqueDataOption();
+			opaqueData = (opaqueOption == null) ? null :
+				new OpaqueMatcher(opaqueOption.getOpaqueData(), op);
+			OpaqueDataListOptionType opaqueListOption = expression.getOpaqueDataListOption();
+			opaqueDataList = (opaqueListOption == null) ? null :
+				new OpaqueListMatcher(opaqueListOption.getOpaqueDataList(), op);
+			string = (expression.getStringOption() == null) ? null :
+				new StringMatcher(expression.getStringOption().getString(), op);
+			unsignedByte = (expression.getUByteOption() == null) ? null :
+				new NumberMatcher(expression.getUByteOption().getUnsignedByte(), op);
+			unsignedByteList = (expression.getUByteListOption() == null) ? null :
+				new ListMatcher(expression.getUByteListOption().getUnsignedByteList(), op);
+			unsignedInt = (expression.getUIntOption() == null) ? null :
+				new NumberMatcher(expression.getUIntOption().getUnsignedInt(), op);
+			unsignedShort = (expression.getUShortOption() == null) ? null :
+				new NumberMatcher(expression.getUShortOption().getUnsignedShort(), op);
+			unsignedShortList = (expression.getUShortListOption() == null) ? null :
+				new ListMatcher(expression.getUShortListOption().getUnsignedShortList(), op);
+			OpaqueData opaque = (opaqueOption == null) ? null : opaqueOption.getOpaqueData();
+			opaqueUnsignedInt = decodeOpaqueNumber(opaque, 4);
+			opaqueUnsignedShort = decodeOpaqueNumber(opaque, 2);
+		}
+		
+		/**
+		 * Decode the value of opaque data as a number, which is
+		 * either the ASCII decimal value or the big-endian hex value.
+		 * Opaque data which is not a number is not an error here,
+		 * because it may be compared with an opaque data option.
+		 * 
+		 * @param opaque the opaque data
+		 * @param maxHexLen the maximum length of the hex value
+		 * @return the number, or null if the opaque data is not a number
+		 */
+		static Long decodeOpaqueNumber(OpaqueData opaque, int maxHexLen)
+		{
+			if (opaque == null) {
+				return null;
+			}
+			String ascii = opaque.getAsciiValue();
+			if (ascii != null) {
+				try {
+					return Long.parseLong(ascii);
+				}
+				catch (NumberFormatException ex) {
+					return null;
+				}
+			}
+			byte[] hex = opaque.getHexValue();
+			if ((hex != null) && (hex.length >= 1) && (hex.length <= maxHexLen)) {
+				return Long.valueOf(Util.toHexString(hex), 16);
+			}
+			return null;
+		}
+		
+		@Override
+		public boolean matches(DhcpMessage requestMsg)
+		{
+			DhcpOption option = requestMsg.getDhcpOption(code);
+			if ((option == null) || (option.isV4() != v4) || (option.getCode() != code)) {
+				return false;
+			}
+			switch (optionKinds.get(option.getClass())) {
+				case EMPTY:
+					return true;
+				case DOMAIN_NAME:
+					return (domainName != null) &&
+							domainName.matches(((BaseDomainNameOption)option).getDomainName());
+				case DOMAIN_NAME_LIST:
+					return (domainNameList != null) &&
+							domainNameList.matches(((BaseDomainNameListOption)option).getDomainNameList());
+				case IP_ADDRESS:
+					return (ipAddress != null) &&
+							ipAddress.matches(((BaseIpAddressOption)option).getIpAddress());
+				case IP_ADDRESS_LIST:
+					return (ipAddressList != null) &&
+							ipAddressList.matches(((BaseIpAddressListOption)option).getIpAddressList());
+				case OPAQUE_DATA:
+					return (opaqueData != null) &&
+							opaqueData.matches(((BaseOpaqueDataOption)option).getOpaqueData());
+				case OPAQUE_DATA_LIST:
+					return (opaqueDataList != null) &&
+							opaqueDataList.matches(((BaseOpaqueDataListOption)option).getOpaqueDataList());
+				case STRING:
+					return (string != null) &&
+							string.matches(((BaseStringOption)option).getString());
+				case UBYTE:
+					return (unsignedByte != null) &&
+							unsignedByte.matches(((BaseUnsignedByteOption)option).getUnsignedByte());
+				case UBYTE_LIST:
+					return (unsignedByteList != null) &&
+							unsignedByteList.matches(((BaseUnsignedByteListOption)option).getUnsignedByteList());
+				case UINT:
+					long uint = ((BaseUnsignedIntOption)option).getUnsignedInt();
+					if (unsignedInt != null) {
+						return unsignedInt.matches(uint);
+					}
+					return (opaqueUnsignedInt != null) && (uint == opaqueUnsignedInt);
+				case USHORT:
+					int ushort = ((BaseUnsignedShortOption)option).getUnsignedShort();
+					if (unsignedShort != null) {
+						return unsignedShort.matches(ushort);
+					}
+					return (opaqueUnsignedShort != null) && (ushort == opaqueUnsignedShort);
+				case USHORT_LIST:
+					return (unsignedShortList != null) &&
+							unsignedShortList.matches(((BaseUnsignedShortListOption)option).getUnsignedShortList());
+				default:
+					log.error("Unable to compare unknown option class: " +
+							option.getClass().getName());
+					return false;
+			}
+		}
+	}
+	
+	/**
+	 * Compile a regular expression, logging and returning null if it is invalid.
+	 */
+	static Pattern compilePattern(String regex)
+	{
+		try {
+			return Pattern.compile(regex);
+		}
+		catch (PatternSyntaxException ex) {
+			log.error("Invalid regular expression in filter: " + regex, ex);
+			return null;
+		}
+	}
+	
+	static class StringMatcher
+	{
+		private final String value;
+		private final Operator op;
+		private final Pattern pattern;
+		
+		StringMatcher(String value, Operator op)
+		{
+			this.value = value;
+			this.op = op;
+			if ((value != null) && Operator.REG_EXP.equals(op)) {
+				pattern = compilePattern(value);
+			}
+			else {
+				pattern = null;
+				if (!Operator.EQUALS.equals(op) && !Operator.STARTS_WITH.equals(op) &&
+						!Operator.ENDS_WITH.equals(op) && !Operator.CONTAINS.equals(op) &&
+						!Operator.REG_EXP.equals(op)) {
+					log.warn("Unsupported expression operator: " + op);
+				}
+			}
+		}
+		
+		boolean matches(String optString)
+		{
+			if ((optString == null) || (value == null)) {
+				return false;
+			}
+			switch (op) {
+				case EQUALS:
+					return optString.equals(value);
+				case STARTS_WITH:
+					return optString.startsWith(value);
+				case ENDS_WITH:
+					return optString.endsWith(value);
+				case CONTAINS:
+					return optString.contains(value);
+				case REG_EXP:
+					return (pattern != null) && pattern.matcher(optString).matches();
+				default:
+					return false;
+			}
+		}
+	}
+	
+	static class ListMatcher
+	{
+		private final List<?> values;
+		private final Operator op;
+		
+		ListMatcher(List<?> values, Operator op)
+		{
+			this.values = values;
+			this.op = op;
+			if (!Operator.EQUALS.equals(op) && !Operator.CONTAINS.equals(op)) {
+				log.warn("Unsupported expression operator: " + op);
+			}
+		}
+		
+		boolean matches(List<?> optList)
+		{
+			if (Operator.EQUALS.equals(op)) {
+				return optList.equals(values);
+			}
+			else if (Operator.CONTAINS.equals(op)) {
+				return optList.containsAll(values);
+			}
+			return false;
+		}
+	}
+	
+	static class NumberMatcher
+	{
+		private final long value;
+		private final Operator op;
+		
+		NumberMatcher(long value, Operator op)
+		{
+			this.value = value;
+			this.op = op;
+			if (!Operator.EQUALS.equals(op) && 
+					!Operator.LESS_THAN.equals(op) && !Operator.LESS_THAN_OR_EQUAL.equals(op) &&
+					!Operator.GREATER_THAN.equals(op) && !Operator.GREATER_THAN_OR_EQUAL.equals(op)) {
+				log.warn("Unsupported expression operator: " + op);
+			}
+		}
+		
+		boolean matches(long optNumber)
+		{
+			switch (op) {
+				case EQUALS:
+					return (optNumber == value);
+				case LESS_THAN:
+					return (optNumber < value);
+				case LESS_THAN_OR_EQUAL:
+					return (optNumber <= value);
+				case GREATER_THAN:
+					return (optNumber > value);
+				case GREATER_THAN_OR_EQUAL:
+					return (optNumber >= value);
+				default:
+					return false;
+			}
+		}
+	}
+	
+	static class OpaqueMatcher
+	{
+		private final String ascii;
+		private final byte[] hex;
+		private final Operator op;
+		private final Pattern pattern;
+		private final boolean configured;
+		
+		OpaqueMatcher(OpaqueData opaque, Operator op)
+		{
+			configured = (opaque != null);
+			ascii = configured ? opaque.getAsciiValue() : null;
+			hex = configured ? opaque.getHexValue() : null;
+			this.op = op;
+			pattern = ((ascii != null) && Operator.REG_EXP.equals(op)) ? compilePattern(ascii) : null;
+		}
+		
+		boolean matches(BaseOpaqueData opaque)
+		{
+			if (!configured || (opaque == null)) {
+				return false;
+			}
+			String myAscii = opaque.getAscii();
+			if ((ascii != null) && (myAscii != null)) {
+				switch (op) {
+					case EQUALS:
+						return myAscii.equalsIgnoreCase(ascii);
+					case STARTS_WITH:
+						return myAscii.startsWith(ascii);
+					case CONTAINS:
+						return myAscii.contains(ascii);
+					case ENDS_WITH:
+						return myAscii.endsWith(ascii);
+					case REG_EXP:
+						return (pattern != null) && pattern.matcher(myAscii).matches();
+					default:
+						log.error("Unsupported expression operator: " + op);
+						return false;
+				}
+			}
+			else if ((ascii == null) && (myAscii == null)) {
+				return OpaqueDataUtil.matchesHex(opaque.getHex(), hex, op);
+			}
+			return false;
+		}
+	}
+	
+	static class OpaqueListMatcher
+	{
+		private final BaseOpaqueData[] values;
+		private final Operator op;
+		
+		OpaqueListMatcher(List<OpaqueData> opaqueList, Operator op)
+		{
+			if (opaqueList != null) {
+				values = new BaseOpaqueData[opaqueList.size()];
+				for (int i=0; i<values.length; i++) {
+					values[i] = OpaqueDataUtil.toBaseOpaqueData(opaqueList.get(i));
+				}
+			}
+			else {
+				values = null;
+			}
+			this.op = op;
+			if (!Operator.EQUALS.equals(op) && !Operator.CONTAINS.equals(op)) {
+				log.warn("Unsupported expression operator: " + op);
+			}
+		}
+		
+		boolean matches(List<BaseOpaqueData> opaqueList)
+		{
+			if ((values == null) || (opaqueList == null)) {
+				return false;
+			}
+			if (Operator.EQUALS.equals(op)) {
+				if (values.length != opaqueList.size()) {
+					return false;
+				}
+				for (int i=0; i<values.length; i++) {
+					if (!OpaqueDataUtil.equals(values[i], opaqueList.get(i))) {
+						return false;
+					}
+				}
+				return true;
+			}
+			else if (Operator.CONTAINS.equals(op)) {
+				if (values.length > opaqueList.size()) {
+					return false;
+				}
+				for (BaseOpaqueData value : values) {
+					boolean found = false;
+					for (BaseOpaqueData opaque : opaqueList) {
+						if (OpaqueDataUtil.equals(value, opaque)) {
+							found = true;
+							break;
+						}
+					}
+					if (!found) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return false;
+		}
+	}
+}
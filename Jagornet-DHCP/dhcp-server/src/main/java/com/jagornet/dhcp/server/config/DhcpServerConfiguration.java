@@ -40,6 +40,7 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -68,78 +69,45 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.jagornet.dhcp.core.message.DhcpMessage;
 import com.jagornet.dhcp.core.message.DhcpV4Message;
 import com.jagornet.dhcp.core.message.DhcpV6Message;
-import com.jagornet.dhcp.core.option.base.BaseDomainNameListOption;
-import com.jagornet.dhcp.core.option.base.BaseDomainNameOption;
-import com.jagornet.dhcp.core.option.base.BaseEmptyOption;
-import com.jagornet.dhcp.core.option.base.BaseIpAddressListOption;
-import com.jagornet.dhcp.core.option.base.BaseIpAddressOption;
 import com.jagornet.dhcp.core.option.base.BaseOpaqueData;
-import com.jagornet.dhcp.core.option.base.BaseOpaqueDataListOption;
-import com.jagornet.dhcp.core.option.base.BaseOpaqueDataOption;
-import com.jagornet.dhcp.core.option.base.BaseStringOption;
-import com.jagornet.dhcp.core.option.base.BaseUnsignedByteListOption;
-import com.jagornet.dhcp.core.option.base.BaseUnsignedByteOption;
-import com.jagornet.dhcp.core.option.base.BaseUnsignedIntOption;
-import com.jagornet.dhcp.core.option.base.BaseUnsignedShortListOption;
-import com.jagornet.dhcp.core.option.base.BaseUnsignedShortOption;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.v4.DhcpV4ServerIdOption;
-import com.jagornet.dhcp.core.option.v4.DhcpV4VendorClassOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6ServerIdOption;
-import com.jagornet.dhcp.core.option.v6.DhcpV6UserClassOption;
-import com.jagornet.dhcp.core.option.v6.DhcpV6VendorClassOption;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Subnet;
 import com.jagornet.dhcp.core.util.Util;
 import com.jagornet.dhcp.server.JagornetDhcpServer;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
-import com.jagornet.dhcp.server.config.xml.ClientClassExpression;
 import com.jagornet.dhcp.server.config.xml.DhcpServerConfig;
-import com.jagornet.dhcp.server.config.xml.DomainNameListOptionType;
-import com.jagornet.dhcp.server.config.xml.DomainNameOptionType;
 import com.jagornet.dhcp.server.config.xml.Filter;
-import com.jagornet.dhcp.server.config.xml.FilterExpression;
-import com.jagornet.dhcp.server.config.xml.FilterExpressionsType;
 import com.jagornet.dhcp.server.config.xml.FiltersType;
-import com.jagornet.dhcp.server.config.xml.IpAddressListOptionType;
-import com.jagornet.dhcp.server.config.xml.IpAddressOptionType;
 import com.jagornet.dhcp.server.config.xml.Link;
 import com.jagornet.dhcp.server.config.xml.LinkFilter;
 import com.jagornet.dhcp.server.config.xml.LinkFiltersType;
 import com.jagornet.dhcp.server.config.xml.LinksType;
 import com.jagornet.dhcp.server.config.xml.OpaqueData;
-import com.jagornet.dhcp.server.config.xml.OpaqueDataListOptionType;
-import com.jagornet.dhcp.server.config.xml.OpaqueDataOptionType;
-import com.jagornet.dhcp.server.config.xml.Operator;
-import com.jagornet.dhcp.server.config.xml.OptionExpression;
 import com.jagornet.dhcp.server.config.xml.PoliciesType;
 import com.jagornet.dhcp.server.config.xml.Policy;
-import com.jagornet.dhcp.server.config.xml.StringOptionType;
-import com.jagornet.dhcp.server.config.xml.UnsignedByteListOptionType;
-import com.jagornet.dhcp.server.config.xml.UnsignedByteOptionType;
-import com.jagornet.dhcp.server.config.xml.UnsignedIntOptionType;
-import com.jagornet.dhcp.server.config.xml.UnsignedShortListOptionType;
-import com.jagornet.dhcp.server.config.xml.UnsignedShortOptionType;
 import com.jagornet.dhcp.server.config.xml.V4AddressBinding;
 import com.jagornet.dhcp.server.config.xml.V4AddressBindingsType;
 import com.jagornet.dhcp.server.config.xml.V4AddressPool;
 import com.jagornet.dhcp.server.config.xml.V4AddressPoolsType;
 import com.jagornet.dhcp.server.config.xml.V4ServerIdOption;
-import com.jagornet.dhcp.server.config.xml.V4VendorClassOption;
 import com.jagornet.dhcp.server.config.xml.V6AddressBinding;
 import com.jagornet.dhcp.server.config.xml.V6AddressBindingsType;
 import com.jagornet.dhcp.server.config.xml.V6AddressPool;
 import com.jagornet.dhcp.server.config.xml.V6AddressPoolsType;
+import com.jagornet.dhcp.server.config.xml.V6ConfigOptionsType;
 import com.jagornet.dhcp.server.config.xml.V6PrefixBinding;
 import com.jagornet.dhcp.server.config.xml.V6PrefixBindingsType;
 import com.jagornet.dhcp.server.config.xml.V6PrefixPool;
 import com.jagornet.dhcp.server.config.xml.V6PrefixPoolsType;
 import com.jagornet.dhcp.server.config.xml.V6ServerIdOption;
-import com.jagornet.dhcp.server.config.xml.V6UserClassOption;
-import com.jagornet.dhcp.server.config.xml.V6VendorClassOption;
 import com.jagornet.dhcp.server.db.IaManager;
+import com.jagornet.dhcp.server.request.binding.BindingManager;
 import com.jagornet.dhcp.server.request.binding.Range;
 import com.jagornet.dhcp.server.request.binding.V4AddrBindingManager;
+import com.jagornet.dhcp.server.request.binding.V4PingChecker;
 import com.jagornet.dhcp.server.request.binding.V6NaAddrBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6PrefixBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6TaAddrBindingManager;
@@ -158,7 +126,7 @@ public class DhcpServerConfiguration
 	private static Logger log = LoggerFactory.getLogger(DhcpServerConfiguration.class);
 
 	/** The INSTANCE. */
-	private static DhcpServerConfiguration INSTANCE;
+	private static volatile DhcpServerConfiguration INSTANCE;
 
 	private static String serverConfigFilename;
     
@@ -184,6 +152,21 @@ public class DhcpServerConfiguration
     
     private FiltersType globalFilters;
     
+    /** the option types of the effective options */
+    protected static final int OPTIONS_V6_MSG = 0;
+    protected static final int OPTIONS_V6_IA_NA = 1;
+    protected static final int OPTIONS_V6_NA_ADDR = 2;
+    protected static final int OPTIONS_V6_IA_TA = 3;
+    protected static final int OPTIONS_V6_TA_ADDR = 4;
+    protected static final int OPTIONS_V6_IA_PD = 5;
+    protected static final int OPTIONS_V6_PREFIX = 6;
+    protected static final int OPTIONS_V4_ADDR = 7;
+    
+    private final EffectiveOptionsCache effectiveOptionsCache = new EffectiveOptionsCache();
+    
+    /** the compiled filters of the configuration, keyed by the identity of the filter */
+    private volatile Map<Filter, CompiledFilter> compiledFilters = Collections.emptyMap();
+    
     private SortedMap<Subnet, DhcpLink> dhcpLinkMap;
     
     private V6NaAddrBindingManager v6NaAddrBindingMgr;
@@ -257,8 +240,10 @@ public class DhcpServerConfiguration
     	}
     	
     	initGlobals(jaxbServerConfig);
+    	compileFilters(jaxbServerConfig);
 
     	dhcpLinkMap = buildDhcpLinkMap(jaxbServerConfig.getLinks());
+    	clearEffectiveOptions();
     	
 		String haRolePolicy = DhcpServerPolicies.globalPolicy(Property.HA_ROLE);
 		if ((haRolePolicy != null) && !haRolePolicy.isEmpty()) {
@@ -354,7 +339,12 @@ public class DhcpServerConfiguration
     		log.info("DhcpServerConfig reloading...");
         	validateConfigPolicies(jaxbServerConfig);
     		initGlobals(jaxbServerConfig);
+    		compileFilters(jaxbServerConfig);
     		updateDhcpLinkMap(buildDhcpLinkMap(jaxbServerConfig.getLinks()));
+    		clearEffectiveOptions();
+    		reloadStaticBindings();
+    		// the ping check policies may have changed
+    		V4PingChecker.reset();
     		saveConfig(jaxbServerConfig);
     		this.jaxbServerConfig = jaxbServerConfig;
     		log.info("DhcpServerConfig reload complete.");
@@ -365,6 +355,21 @@ public class DhcpServerConfiguration
     	return this.jaxbServerConfig;
     }
     
+    /**
+     * Rebuild the static bindings of the binding managers from the updated link map.
+     * 
+     * @throws DhcpServerConfigException
+     */
+    protected void reloadStaticBindings() throws DhcpServerConfigException {
+    	Object[] bindingMgrs = new Object[] { v4AddrBindingMgr, 
+    			v6NaAddrBindingMgr, v6TaAddrBindingMgr, v6PrefixBindingMgr };
+    	for (Object bindingMgr : bindingMgrs) {
+    		if (bindingMgr instanceof BindingManager) {
+    			((BindingManager)bindingMgr).reloadStaticBindings();
+    		}
+    	}
+    }
+    
     public void updateDhcpLinkMap(SortedMap<Subnet, DhcpLink> newLinkMap) {
 		if (newLinkMap != null) {			
 			Iterator<Map.Entry<Subnet, DhcpLink>> mapIter = dhcpLinkMap.entrySet().iterator();
@@ -423,6 +428,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV6MsgConfigOptions(DhcpV6ConfigOptions globalV6MsgConfigOptions) {
 		this.globalV6MsgConfigOptions = globalV6MsgConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public DhcpV6ConfigOptions getGlobalV6IaNaConfigOptions() {
@@ -431,6 +437,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV6IaNaConfigOptions(DhcpV6ConfigOptions globalV6IaNaConfigOptions) {
 		this.globalV6IaNaConfigOptions = globalV6IaNaConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public DhcpV6ConfigOptions getGlobalV6NaAddrConfigOptions() {
@@ -439,6 +446,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV6NaAddrConfigOptions(DhcpV6ConfigOptions globalV6NaAddrConfigOptions) {
 		this.globalV6NaAddrConfigOptions = globalV6NaAddrConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public DhcpV6ConfigOptions getGlobalV6IaTaConfigOptions() {
@@ -447,6 +455,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV6IaTaConfigOptions(DhcpV6ConfigOptions globalV6IaTaConfigOptions) {
 		this.globalV6IaTaConfigOptions = globalV6IaTaConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public DhcpV6ConfigOptions getGlobalV6TaAddrConfigOptions() {
@@ -455,6 +464,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV6TaAddrConfigOptions(DhcpV6ConfigOptions globalV6TaAddrConfigOptions) {
 		this.globalV6TaAddrConfigOptions = globalV6TaAddrConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public DhcpV6ConfigOptions getGlobalV6IaPdConfigOptions() {
@@ -463,6 +473,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV6IaPdConfigOptions(DhcpV6ConfigOptions globalV6IaPdConfigOptions) {
 		this.globalV6IaPdConfigOptions = globalV6IaPdConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public DhcpV6ConfigOptions getGlobalV6PrefixConfigOptions() {
@@ -471,6 +482,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV6PrefixConfigOptions(DhcpV6ConfigOptions globalV6PrefixConfigOptions) {
 		this.globalV6PrefixConfigOptions = globalV6PrefixConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public DhcpV4ConfigOptions getGlobalV4ConfigOptions() {
@@ -479,6 +491,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalV4ConfigOptions(DhcpV4ConfigOptions globalV4ConfigOptions) {
 		this.globalV4ConfigOptions = globalV4ConfigOptions;
+		clearEffectiveOptions();
 	}
 
 	public FiltersType getGlobalFilters() {
@@ -487,6 +500,7 @@ public class DhcpServerConfiguration
 
 	public void setGlobalFilters(FiltersType globalFilters) {
 		this.globalFilters = globalFilters;
+		clearEffectiveOptions();
 	}
 
 /* 
@@ -1437,16 +1451,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectiveMsgOptions(DhcpV6Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<Integer, DhcpOption>();
-    	if (globalV6MsgConfigOptions != null) {
-    		optionMap.putAll(globalV6MsgConfigOptions.getDhcpOptionMap());
-    	}
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredMsgOptions(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_MSG, requestMsg, null, null);
     }
 
     /**
@@ -1460,40 +1465,14 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveMsgOptions(DhcpV6Message requestMsg, 
     													DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveMsgOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV6ConfigOptions configOptions = dhcpLink.getMsgConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredMsgOptions(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_MSG, requestMsg, dhcpLink, null);
     }
     
     public Map<Integer, DhcpOption> effectiveMsgOptions(DhcpV6Message requestMsg, 
     													DhcpLink dhcpLink,
     													DhcpV6OptionConfigObject configObj)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveMsgOptions(requestMsg, dhcpLink);
-    	if (configObj != null) {
-	    	DhcpV6ConfigOptions configOptions = configObj.getMsgConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredMsgOptions(requestMsg, configObj.getFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_MSG, requestMsg, dhcpLink, configObj);
     }
     
     /**
@@ -1505,17 +1484,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectiveIaNaOptions(DhcpV6Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<>();
-    	if (globalV6IaNaConfigOptions != null) {
-    		optionMap.putAll(globalV6IaNaConfigOptions.getDhcpOptionMap());
-    	}
-    	
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredIaNaOptions(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_NA, requestMsg, null, null);
     }
 
     /**
@@ -1529,40 +1498,14 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveIaNaOptions(DhcpV6Message requestMsg, 
     													 DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveIaNaOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV6ConfigOptions configOptions = dhcpLink.getIaNaConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredIaNaOptions(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_NA, requestMsg, dhcpLink, null);
     }
 
     public Map<Integer, DhcpOption> effectiveIaNaOptions(DhcpV6Message requestMsg,
 														 DhcpLink dhcpLink, 
 														 DhcpV6OptionConfigObject configObj)
 	{
-		Map<Integer, DhcpOption> optionMap = effectiveIaNaOptions(requestMsg, dhcpLink);
-		if (configObj != null) {
-			DhcpV6ConfigOptions configOptions = configObj.getIaConfigOptions();
-			if (configOptions != null) {
-				optionMap.putAll(configOptions.getDhcpOptionMap());
-			}
-			
-			Map<Integer, DhcpOption> filteredOptions = 
-					filteredIaNaOptions(requestMsg, configObj.getFilters());
-			if (filteredOptions != null) {
-				optionMap.putAll(filteredOptions);
-			}
-		}
-		return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_NA, requestMsg, dhcpLink, configObj);
 	}
     
     /**
@@ -1574,17 +1517,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectiveNaAddrOptions(DhcpV6Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<>();
-    	if (globalV6NaAddrConfigOptions != null) {
-    		optionMap.putAll(globalV6NaAddrConfigOptions.getDhcpOptionMap());
-    	}
-    	
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredNaAddrOptions(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_NA_ADDR, requestMsg, null, null);
     }
 
     /**
@@ -1598,20 +1531,7 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveNaAddrOptions(DhcpV6Message requestMsg,
     													   DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveNaAddrOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV6ConfigOptions configOptions = dhcpLink.getNaAddrConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredNaAddrOptions(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_NA_ADDR, requestMsg, dhcpLink, null);
     }
 
     /**
@@ -1624,23 +1544,10 @@ public class DhcpServerConfiguration
      * @return the map< integer, dhcp option>
      */
     public Map<Integer, DhcpOption> effectiveNaAddrOptions(DhcpV6Message requestMsg,
-    													   DhcpLink dhcpLink,
+    													   DhcpLink dhcpLink, 
     													   DhcpV6OptionConfigObject configObj)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveNaAddrOptions(requestMsg, dhcpLink);
-    	if (configObj != null) {
-	    	DhcpV6ConfigOptions configOptions = configObj.getAddrConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredNaAddrOptions(requestMsg, configObj.getFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_NA_ADDR, requestMsg, dhcpLink, configObj);
     }
     
     /**
@@ -1652,17 +1559,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectiveIaTaOptions(DhcpV6Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<>();
-    	if (globalV6IaTaConfigOptions != null) {
-    		optionMap.putAll(globalV6IaTaConfigOptions.getDhcpOptionMap());
-    	}
-    	
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredIaTaOptions(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_TA, requestMsg, null, null);
     }
 
     /**
@@ -1676,43 +1573,16 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveIaTaOptions(DhcpV6Message requestMsg,
     													 DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveIaTaOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV6ConfigOptions configOptions = dhcpLink.getIaTaConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredIaTaOptions(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_TA, requestMsg, dhcpLink, null);
     }
 
     public Map<Integer, DhcpOption> effectiveIaTaOptions(DhcpV6Message requestMsg,
 														 DhcpLink dhcpLink, 
 														 DhcpV6OptionConfigObject configObj)
 	{
-		Map<Integer, DhcpOption> optionMap = effectiveIaTaOptions(requestMsg, dhcpLink);
-		if (configObj != null) {
-			DhcpV6ConfigOptions configOptions = configObj.getIaConfigOptions();
-			if (configOptions != null) {
-				optionMap.putAll(configOptions.getDhcpOptionMap());
-			}
-			
-			Map<Integer, DhcpOption> filteredOptions = 
-					filteredIaTaOptions(requestMsg, configObj.getFilters());
-			if (filteredOptions != null) {
-				optionMap.putAll(filteredOptions);
-			}
-		}
-		return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_TA, requestMsg, dhcpLink, configObj);
 	}
     
-    
     /**
      * Effective ta addr options.
      * 
@@ -1722,17 +1592,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectiveTaAddrOptions(DhcpV6Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<>();
-    	if (globalV6TaAddrConfigOptions != null) {
-    		optionMap.putAll(globalV6TaAddrConfigOptions.getDhcpOptionMap());
-    	}
-    	
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredTaAddrOptions(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_TA_ADDR, requestMsg, null, null);
     }
 
     /**
@@ -1746,20 +1606,7 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveTaAddrOptions(DhcpV6Message requestMsg,
     													   DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveTaAddrOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV6ConfigOptions configOptions = dhcpLink.getTaAddrConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredTaAddrOptions(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_TA_ADDR, requestMsg, dhcpLink, null);
     }
 
     /**
@@ -1775,20 +1622,7 @@ public class DhcpServerConfiguration
     													   DhcpLink dhcpLink, 
     													   DhcpV6OptionConfigObject configObj)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveTaAddrOptions(requestMsg, dhcpLink);
-    	if (configObj != null)  {
-	    	DhcpV6ConfigOptions configOptions = configObj.getAddrConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredTaAddrOptions(requestMsg, configObj.getFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_TA_ADDR, requestMsg, dhcpLink, configObj);
     }
     
     /**
@@ -1800,17 +1634,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectiveIaPdOptions(DhcpV6Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<>();
-    	if (globalV6IaPdConfigOptions != null) {
-    		optionMap.putAll(globalV6IaPdConfigOptions.getDhcpOptionMap());
-    	}
-    	
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredIaPdOptions(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_PD, requestMsg, null, null);
     }
 
     /**
@@ -1824,40 +1648,14 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveIaPdOptions(DhcpV6Message requestMsg,
     													 DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveIaPdOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV6ConfigOptions configOptions = dhcpLink.getIaPdConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredIaPdOptions(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_PD, requestMsg, dhcpLink, null);
     }
 
     public Map<Integer, DhcpOption> effectiveIaPdOptions(DhcpV6Message requestMsg,
 														 DhcpLink dhcpLink, 
 														 DhcpV6OptionConfigObject configObj)
 	{
-		Map<Integer, DhcpOption> optionMap = effectiveIaPdOptions(requestMsg, dhcpLink);
-		if (configObj != null) {
-			DhcpV6ConfigOptions configOptions = configObj.getIaConfigOptions();
-			if (configOptions != null) {
-				optionMap.putAll(configOptions.getDhcpOptionMap());
-			}
-			
-			Map<Integer, DhcpOption> filteredOptions = 
-					filteredIaPdOptions(requestMsg, configObj.getFilters());
-			if (filteredOptions != null) {
-				optionMap.putAll(filteredOptions);
-			}
-		}
-		return optionMap;
+    	return effectiveOptions(OPTIONS_V6_IA_PD, requestMsg, dhcpLink, configObj);
 	}
     
     /**
@@ -1869,17 +1667,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectivePrefixOptions(DhcpV6Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<>();
-    	if (globalV6PrefixConfigOptions != null) {
-    		optionMap.putAll(globalV6PrefixConfigOptions.getDhcpOptionMap());
-    	}
-    	
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredPrefixOptions(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_PREFIX, requestMsg, null, null);
     }
 
     /**
@@ -1893,20 +1681,7 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectivePrefixOptions(DhcpV6Message requestMsg,
     													   DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectivePrefixOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV6ConfigOptions configOptions = dhcpLink.getPrefixConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredPrefixOptions(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_PREFIX, requestMsg, dhcpLink, null);
     }
 
     /**
@@ -1922,22 +1697,9 @@ public class DhcpServerConfiguration
     													   DhcpLink dhcpLink, 
     													   DhcpV6OptionConfigObject configObj)
     {
-    	Map<Integer, DhcpOption> optionMap = effectivePrefixOptions(requestMsg, dhcpLink);
-    	if (configObj != null) {
-	    	DhcpV6ConfigOptions configOptions = configObj.getAddrConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredPrefixOptions(requestMsg, configObj.getFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V6_PREFIX, requestMsg, dhcpLink, configObj);
     }
-    
+
     /**
      * Effective v4 addr options.
      * 
@@ -1947,17 +1709,7 @@ public class DhcpServerConfiguration
      */
     public Map<Integer, DhcpOption> effectiveV4AddrOptions(DhcpV4Message requestMsg)
     {
-    	Map<Integer, DhcpOption> optionMap = new TreeMap<>();
-    	if (globalV4ConfigOptions != null) {
-    		optionMap.putAll(globalV4ConfigOptions.getDhcpOptionMap());
-    	}
-    	
-    	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredV4Options(requestMsg, globalFilters);
-    	if (filteredOptions != null) {
-    		optionMap.putAll(filteredOptions);
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V4_ADDR, requestMsg, null, null);
     }
 
     /**
@@ -1971,20 +1723,7 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveV4AddrOptions(DhcpV4Message requestMsg,
     													   DhcpLink dhcpLink)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveV4AddrOptions(requestMsg);
-    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
-	    	DhcpV4ConfigOptions configOptions = dhcpLink.getV4ConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredV4Options(requestMsg, dhcpLink.getLink().getLinkFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
+    	return effectiveOptions(OPTIONS_V4_ADDR, requestMsg, dhcpLink, null);
     }
 
     /**
@@ -2000,873 +1739,289 @@ public class DhcpServerConfiguration
     													   DhcpLink dhcpLink, 
     													   DhcpV4OptionConfigObject configObj)
     {
-    	Map<Integer, DhcpOption> optionMap = effectiveV4AddrOptions(requestMsg, dhcpLink);
-    	if (configObj != null) {
-	    	DhcpV4ConfigOptions configOptions = configObj.getV4ConfigOptions();
-	    	if (configOptions != null) {
-	    		optionMap.putAll(configOptions.getDhcpOptionMap());
-	    	}
-	    	
-	    	Map<Integer, DhcpOption> filteredOptions = 
-	    		filteredV4Options(requestMsg, configObj.getFilters());
-	    	if (filteredOptions != null) {
-	    		optionMap.putAll(filteredOptions);
-	    	}
-    	}
-    	return optionMap;
-    }
-
-    /**
-     * Filtered msg options.
-     * 
-     * @param requestMsg the request msg
-     * @param filtersType the filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredMsgOptions(DhcpV6Message requestMsg, 
-    		FiltersType filtersType)
-    {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredMsgOptions(requestMsg, filters);
-    	}
-    	return null;
-    }
-
-    /**
-     * Filtered msg options.
-     * 
-     * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredMsgOptions(DhcpV6Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
-    {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredMsgOptions(requestMsg, filters);
-    	}
-    	return null;
-    }
-
-    /**
-     * Filtered msg options.
-     * 
-     * @param requestMsg the request msg
-     * @param filters the filters
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    private Map<Integer, DhcpOption> filteredMsgOptions(DhcpV6Message requestMsg,
-    		List<? extends Filter> filters)
-    {
-		if ((filters != null) && !filters.isEmpty()) {
-            for (Filter filter : filters) {
-            	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
-                	DhcpV6ConfigOptions filterConfigOptions = 
-                		new DhcpV6ConfigOptions(filter.getV6MsgConfigOptions());
-                	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-                	}
-            	}
-            }
-		}
-    	return null;
+    	return effectiveOptions(OPTIONS_V4_ADDR, requestMsg, dhcpLink, configObj);
     }
     
     /**
-     * Filtered ia na options.
+     * Get the effective options of the given type for a request.  The global,
+     * link and pool options are merged in that order, each followed by the
+     * options of the first filter at that level which the request matches.
+     * The merged map only depends on which filters matched, so it is built
+     * once for each combination and cached until the configuration is reloaded.
      * 
+     * @param type the option type
      * @param requestMsg the request msg
-     * @param filtersType the filters type
+     * @param dhcpLink the link, or null for the global options
+     * @param configObj the pool or binding, or null for the link options
      * 
-     * @return the map< integer, dhcp option>
+     * @return the immutable map< integer, dhcp option>
      */
-    protected Map<Integer, DhcpOption> filteredIaNaOptions(DhcpV6Message requestMsg,
-    		FiltersType filtersType)
+    protected Map<Integer, DhcpOption> effectiveOptions(int type, DhcpMessage requestMsg,
+    		DhcpLink dhcpLink, DhcpConfigObject configObj)
     {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredIaNaOptions(requestMsg, filters);
+    	long generation = effectiveOptionsCache.getGeneration();
+    	List<? extends Filter> globalFilterList = 
+    			(globalFilters != null) ? globalFilters.getFilterList() : null;
+    	List<? extends Filter> linkFilterList = null;
+    	if ((dhcpLink != null) && (dhcpLink.getLink() != null)) {
+    		LinkFiltersType linkFiltersType = dhcpLink.getLink().getLinkFilters();
+    		if (linkFiltersType != null) {
+    			linkFilterList = linkFiltersType.getLinkFilterList();
+    		}
     	}
-    	return null;
-    }
-
-    /**
-     * Filtered ia na options.
-     * 
-     * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredIaNaOptions(DhcpV6Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
-    {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredIaNaOptions(requestMsg, filters);
+    	else {
+    		dhcpLink = null;
     	}
-    	return null;
-    }
-
-	/**
-	 * Filtered ia na options.
-	 * 
-	 * @param requestMsg the request msg
-	 * @param filters the filters
-	 * 
-	 * @return the map< integer, dhcp option>
-	 */
-	private Map<Integer, DhcpOption> filteredIaNaOptions(DhcpV6Message requestMsg,
-			List<? extends Filter> filters)
-	{
-		if ((filters != null) && !filters.isEmpty()) {
-		    for (Filter filter : filters) {
-		    	if (msgMatchesFilter(requestMsg, filter)) {
-		            log.info("Request matches filter: " + filter.getName());
-		        	DhcpV6ConfigOptions filterConfigOptions = 
-		        		new DhcpV6ConfigOptions(filter.getV6IaNaConfigOptions());
-		        	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-		        	}
-		    	}
-		    }
-		}
-		return null;
-	}
-
-    /**
-     * Filtered na addr options.
-     * 
-     * @param requestMsg the request msg
-     * @param filtersType the filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredNaAddrOptions(DhcpV6Message requestMsg, 
-    		FiltersType filtersType)
-    {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredNaAddrOptions(requestMsg, filters);
+    	List<? extends Filter> configObjFilterList = null;
+    	if ((configObj != null) && (configObj.getFilters() != null)) {
+    		configObjFilterList = configObj.getFilters().getFilterList();
     	}
-    	return null;
-    }
-
-    /**
-     * Filtered na addr options.
-     * 
-     * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredNaAddrOptions(DhcpV6Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
-    {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredNaAddrOptions(requestMsg, filters);
+    	
+    	int globalMatch = firstMatchingFilter(requestMsg, globalFilterList);
+    	int linkMatch = firstMatchingFilter(requestMsg, linkFilterList);
+    	int configObjMatch = firstMatchingFilter(requestMsg, configObjFilterList);
+    	EffectiveOptionsCache.Key key = new EffectiveOptionsCache.Key(type, dhcpLink, configObj,
+    			globalMatch, linkMatch, configObjMatch);
+    	Map<Integer, DhcpOption> optionMap = effectiveOptionsCache.get(key);
+    	if (optionMap == null) {
+    		optionMap = new TreeMap<Integer, DhcpOption>();
+    		putAllOptions(optionMap, globalConfigOptions(type));
+    		putAllFilterOptions(optionMap, type, globalFilterList, globalMatch);
+    		if (dhcpLink != null) {
+    			putAllOptions(optionMap, linkConfigOptions(type, dhcpLink));
+    			putAllFilterOptions(optionMap, type, linkFilterList, linkMatch);
+    		}
+    		if (configObj != null) {
+    			putAllOptions(optionMap, configObjConfigOptions(type, configObj));
+    			putAllFilterOptions(optionMap, type, configObjFilterList, configObjMatch);
+    		}
+    		optionMap = effectiveOptionsCache.put(key, generation, 
+    				Collections.unmodifiableMap(optionMap));
     	}
-    	return null;
+    	return optionMap;
     }
-
+    
     /**
-     * Filtered na addr options.
+     * Find the first filter in the list which matches the request.
      * 
      * @param requestMsg the request msg
-     * @param filters the filters
+     * @param filters the filters, or null
      * 
-     * @return the map< integer, dhcp option>
+     * @return the position of the matching filter, or EffectiveOptionsCache.NO_MATCH
      */
-    private Map<Integer, DhcpOption> filteredNaAddrOptions(DhcpV6Message requestMsg,
-    		List<? extends Filter> filters)
+    protected static int firstMatchingFilter(DhcpMessage requestMsg, List<? extends Filter> filters)
     {
-		if ((filters != null) && !filters.isEmpty()) {
-            for (Filter filter : filters) {
+		if (filters != null) {
+			for (int i=0; i<filters.size(); i++) {
+				Filter filter = filters.get(i);
             	if (msgMatchesFilter(requestMsg, filter)) {
                     log.info("Request matches filter: " + filter.getName());
-                	DhcpV6ConfigOptions filterConfigOptions = 
-                		new DhcpV6ConfigOptions(filter.getV6NaAddrConfigOptions());
-                	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-                	}
+            		return i;
             	}
-            }
+			}
 		}
-		return null;
+		return EffectiveOptionsCache.NO_MATCH;
     }
     
-    /**
-     * Filtered ia ta options.
-     * 
-     * @param requestMsg the request msg
-     * @param filtersType the filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredIaTaOptions(DhcpV6Message requestMsg,
-    		FiltersType filtersType)
+    private static void putAllOptions(Map<Integer, DhcpOption> optionMap, Object configOptions)
     {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredIaTaOptions(requestMsg, filters);
+    	if (configOptions instanceof DhcpV6ConfigOptions) {
+    		optionMap.putAll(((DhcpV6ConfigOptions)configOptions).getDhcpOptionMap());
     	}
-    	return null;
-    }
-
-    /**
-     * Filtered ia ta options.
-     * 
-     * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredIaTaOptions(DhcpV6Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
-    {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredIaTaOptions(requestMsg, filters);
+    	else if (configOptions instanceof DhcpV4ConfigOptions) {
+    		optionMap.putAll(((DhcpV4ConfigOptions)configOptions).getDhcpOptionMap());
     	}
-    	return null;
     }
-
-	/**
-	 * Filtered ia ta options.
-	 * 
-	 * @param requestMsg the request msg
-	 * @param filters the filters
-	 * 
-	 * @return the map< integer, dhcp option>
-	 */
-	private Map<Integer, DhcpOption> filteredIaTaOptions(DhcpV6Message requestMsg,
-			List<? extends Filter> filters)
-	{
-		if ((filters != null) && !filters.isEmpty()) {
-		    for (Filter filter : filters) {
-		    	if (msgMatchesFilter(requestMsg, filter)) {
-		            log.info("Request matches filter: " + filter.getName());
-		        	DhcpV6ConfigOptions filterConfigOptions = 
-		        		new DhcpV6ConfigOptions(filter.getV6IaTaConfigOptions());
-		        	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-		        	}
-		    	}
-		    }
-		}
-		return null;
-	}
-
-    /**
-     * Filtered ta addr options.
-     * 
-     * @param requestMsg the request msg
-     * @param filtersType the filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredTaAddrOptions(DhcpV6Message requestMsg, 
-    		FiltersType filtersType)
+    
+    private static void putAllFilterOptions(Map<Integer, DhcpOption> optionMap, int type,
+    		List<? extends Filter> filters, int match)
     {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredTaAddrOptions(requestMsg, filters);
+    	if (match != EffectiveOptionsCache.NO_MATCH) {
+    		Filter filter = filters.get(match);
+    		if (type == OPTIONS_V4_ADDR) {
+    			putAllOptions(optionMap, new DhcpV4ConfigOptions(filter.getV4ConfigOptions()));
+    		}
+    		else {
+    			putAllOptions(optionMap, new DhcpV6ConfigOptions(filterConfigOptions(type, filter)));
+    		}
     	}
-    	return null;
     }
-
-    /**
-     * Filtered ta addr options.
-     * 
-     * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredTaAddrOptions(DhcpV6Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
+    
+    private Object globalConfigOptions(int type)
     {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredTaAddrOptions(requestMsg, filters);
+    	switch (type) {
+    		case OPTIONS_V6_MSG: return globalV6MsgConfigOptions;
+    		case OPTIONS_V6_IA_NA: return globalV6IaNaConfigOptions;
+    		case OPTIONS_V6_NA_ADDR: return globalV6NaAddrConfigOptions;
+    		case OPTIONS_V6_IA_TA: return globalV6IaTaConfigOptions;
+    		case OPTIONS_V6_TA_ADDR: return globalV6TaAddrConfigOptions;
+    		case OPTIONS_V6_IA_PD: return globalV6IaPdConfigOptions;
+    		case OPTIONS_V6_PREFIX: return globalV6PrefixConfigOptions;
+    		default: return globalV4ConfigOptions;
     	}
-    	return null;
-    }
-
-    /**
-     * Filtered ta addr options.
-     * 
-     * @param requestMsg the request msg
-     * @param filters the filters
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    private Map<Integer, DhcpOption> filteredTaAddrOptions(DhcpV6Message requestMsg,
-    		List<? extends Filter> filters)
-    {
-		if ((filters != null) && !filters.isEmpty()) {
-            for (Filter filter : filters) {
-            	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
-                	DhcpV6ConfigOptions filterConfigOptions = 
-                		new DhcpV6ConfigOptions(filter.getV6TaAddrConfigOptions());
-                	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-                	}
-            	}
-            }
-		}
-		return null;
     }
     
-    /**
-     * Filtered ia pd options.
-     * 
-     * @param requestMsg the request msg
-     * @param filtersType the filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredIaPdOptions(DhcpV6Message requestMsg,
-    		FiltersType filtersType)
+    private static Object linkConfigOptions(int type, DhcpLink dhcpLink)
     {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredIaPdOptions(requestMsg, filters);
+    	switch (type) {
+    		case OPTIONS_V6_MSG: return dhcpLink.getMsgConfigOptions();
+    		case OPTIONS_V6_IA_NA: return dhcpLink.getIaNaConfigOptions();
+    		case OPTIONS_V6_NA_ADDR: return dhcpLink.getNaAddrConfigOptions();
+    		case OPTIONS_V6_IA_TA: return dhcpLink.getIaTaConfigOptions();
+    		case OPTIONS_V6_TA_ADDR: return dhcpLink.getTaAddrConfigOptions();
+    		case OPTIONS_V6_IA_PD: return dhcpLink.getIaPdConfigOptions();
+    		case OPTIONS_V6_PREFIX: return dhcpLink.getPrefixConfigOptions();
+    		default: return dhcpLink.getV4ConfigOptions();
     	}
-    	return null;
     }
-
-    /**
-     * Filtered ia pd options.
-     * 
-     * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredIaPdOptions(DhcpV6Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
+    
+    private static Object configObjConfigOptions(int type, DhcpConfigObject configObj)
     {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredIaPdOptions(requestMsg, filters);
+    	if (configObj instanceof DhcpV6OptionConfigObject) {
+    		DhcpV6OptionConfigObject v6ConfigObj = (DhcpV6OptionConfigObject) configObj;
+	    	switch (type) {
+	    		case OPTIONS_V6_MSG: 
+	    			return v6ConfigObj.getMsgConfigOptions();
+	    		case OPTIONS_V6_IA_NA: 
+	    		case OPTIONS_V6_IA_TA: 
+	    		case OPTIONS_V6_IA_PD: 
+	    			return v6ConfigObj.getIaConfigOptions();
+	    		case OPTIONS_V6_NA_ADDR:
+	    		case OPTIONS_V6_TA_ADDR:
+	    		case OPTIONS_V6_PREFIX:
+	    			return v6ConfigObj.getAddrConfigOptions();
+	    		default:
+	    			return null;
+	    	}
     	}
-    	return null;
-    }
-
-	/**
-	 * Filtered ia pd options.
-	 * 
-	 * @param requestMsg the request msg
-	 * @param filters the filters
-	 * 
-	 * @return the map< integer, dhcp option>
-	 */
-	private Map<Integer, DhcpOption> filteredIaPdOptions(DhcpV6Message requestMsg,
-			List<? extends Filter> filters)
-	{
-		if ((filters != null) && !filters.isEmpty()) {
-		    for (Filter filter : filters) {
-		    	if (msgMatchesFilter(requestMsg, filter)) {
-		            log.info("Request matches filter: " + filter.getName());
-		        	DhcpV6ConfigOptions filterConfigOptions = 
-		        		new DhcpV6ConfigOptions(filter.getV6IaPdConfigOptions());
-		        	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-		        	}
-		    	}
-		    }
-		}
-		return null;
-	}
-
-    /**
-     * Filtered prefix options.
-     * 
-     * @param requestMsg the request msg
-     * @param filtersType the filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredPrefixOptions(DhcpV6Message requestMsg, 
-    		FiltersType filtersType)
-    {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredPrefixOptions(requestMsg, filters);
+    	else if ((configObj instanceof DhcpV4OptionConfigObject) && (type == OPTIONS_V4_ADDR)) {
+    		return ((DhcpV4OptionConfigObject) configObj).getV4ConfigOptions();
     	}
     	return null;
     }
-
-    /**
-     * Filtered prefix options.
-     * 
-     * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredPrefixOptions(DhcpV6Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
+    
+    private static V6ConfigOptionsType filterConfigOptions(int type, Filter filter)
     {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredPrefixOptions(requestMsg, filters);
+    	switch (type) {
+    		case OPTIONS_V6_MSG: return filter.getV6MsgConfigOptions();
+    		case OPTIONS_V6_IA_NA: return filter.getV6IaNaConfigOptions();
+    		case OPTIONS_V6_NA_ADDR: return filter.getV6NaAddrConfigOptions();
+    		case OPTIONS_V6_IA_TA: return filter.getV6IaTaConfigOptions();
+    		case OPTIONS_V6_TA_ADDR: return filter.getV6TaAddrConfigOptions();
+    		case OPTIONS_V6_IA_PD: return filter.getV6IaPdConfigOptions();
+    		default: return filter.getV6PrefixConfigOptions();
     	}
-    	return null;
     }
-
+    
     /**
-     * Filtered prefix options.
-     * 
-     * @param requestMsg the request msg
-     * @param filters the filters
-     * 
-     * @return the map< integer, dhcp option>
+     * Discard the cached effective options, which must be done
+     * after any change to the configured options or filters.
      */
-    private Map<Integer, DhcpOption> filteredPrefixOptions(DhcpV6Message requestMsg,
-    		List<? extends Filter> filters)
+    public void clearEffectiveOptions()
     {
-		if ((filters != null) && !filters.isEmpty()) {
-            for (Filter filter : filters) {
-            	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
-                	DhcpV6ConfigOptions filterConfigOptions = 
-                		new DhcpV6ConfigOptions(filter.getV6PrefixConfigOptions());
-                	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-                	}
-            	}
-            }
-		}
-		return null;
+    	effectiveOptionsCache.clear();
     }
-
-    /**
-     * Filtered v4 options.
-     * 
-     * @param requestMsg the request msg
-     * @param filtersType the filters type
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    protected Map<Integer, DhcpOption> filteredV4Options(DhcpV4Message requestMsg, 
-    		FiltersType filtersType)
-    {
-    	if (filtersType != null) {
-    		List<Filter> filters = filtersType.getFilterList();
-    		return filteredV4Options(requestMsg, filters);
-    	}
-    	return null;
+    
+    public EffectiveOptionsCache getEffectiveOptionsCache() {
+    	return effectiveOptionsCache;
     }
-
+    
     /**
-     * Filtered v4 options.
+     * Msg matches filter.
      * 
      * @param requestMsg the request msg
-     * @param linkFiltersType the link filters type
+     * @param filter the filter
      * 
-     * @return the map< integer, dhcp option>
+     * @return true, if successful
      */
-    protected Map<Integer, DhcpOption> filteredV4Options(DhcpV4Message requestMsg, 
-    		LinkFiltersType linkFiltersType)
+    public static boolean msgMatchesFilter(DhcpMessage requestMsg, Filter filter)
     {
-    	if (linkFiltersType != null) {
-    		List<LinkFilter> filters = linkFiltersType.getLinkFilterList();
-    		return filteredV4Options(requestMsg, filters);
+    	DhcpServerConfiguration config = INSTANCE;
+    	if (config == null) {
+    		config = getInstance();
     	}
-    	return null;
-    }
-
-    /**
-     * Filtered v4 options.
-     * 
-     * @param requestMsg the request msg
-     * @param filters the filters
-     * 
-     * @return the map< integer, dhcp option>
-     */
-    private Map<Integer, DhcpOption> filteredV4Options(DhcpV4Message requestMsg,
-    		List<? extends Filter> filters)
-    {
-		if ((filters != null) && !filters.isEmpty()) {
-            for (Filter filter : filters) {
-            	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
-                	DhcpV4ConfigOptions filterConfigOptions = 
-                		new DhcpV4ConfigOptions(filter.getV4ConfigOptions());
-                	if (filterConfigOptions != null) {
-		        		return filterConfigOptions.getDhcpOptionMap();
-                	}
-            	}
-            }
-		}
-		return null;
+    	return config.getCompiledFilter(filter).matches(requestMsg);
     }
     
     /**
-     * Msg matches filter.
+     * Get the compiled form of a filter.  The filters of the configuration
+     * are compiled when it is loaded, and any other filter is compiled
+     * on each use, without caching it.
      * 
-     * @param requestMsg the request msg
      * @param filter the filter
      * 
-     * @return true, if successful
+     * @return the compiled filter
      */
-    public static boolean msgMatchesFilter(DhcpMessage requestMsg, Filter filter)
+    public CompiledFilter getCompiledFilter(Filter filter)
     {
-        boolean matches = true;     // assume match
-    	FilterExpressionsType filterExprs = filter.getFilterExpressions();
-    	if (filterExprs != null) {
-        	List<FilterExpression> expressions = filterExprs.getFilterExpressionList();
-            if (expressions != null) {
-		        for (FilterExpression expression : expressions) {
-		        	if (expression.getClientClassExpression() != null) {
-		        		matches = msgMatchesClientClass(requestMsg, expression.getClientClassExpression());
-		        		if (!matches)
-		        			break;
-		        	}
-		        	else if (expression.getOptionExpression() != null) {
-		        		OptionExpression optexpr = expression.getOptionExpression();
-			            DhcpOption option = requestMsg.getDhcpOption(optexpr.getCode());
-			            if (option != null) {
-			                // found the filter option in the request,
-			                // so check if the expression matches
-			                if (!evaluateExpression(optexpr, option)) {
-			                    // it must match all expressions for the filter
-			                    // group (i.e. expressions are ANDed), so if
-			                    // just one doesn't match, then we're done
-			                    matches = false;
-			                    break;
-			                }
-			            }
-			            else {
-			                // if the expression option wasn't found in the
-			                // request message, then it can't match
-			                matches = false;
-			                break;
-			            }
-		        	}
-		        	else {
-		        		log.warn("Unsupported filter expression: " + expression);
-		        	}
-		        }
-            }
+    	CompiledFilter compiledFilter = compiledFilters.get(filter);
+    	if (compiledFilter == null) {
+    		compiledFilter = new CompiledFilter(filter);
     	}
-        return matches;
+    	return compiledFilter;
     }
     
     /**
-     * Evaluate expression.  Determine if an option matches based on an expression.
-     * 
-     * @param expression the option expression
-     * @param option the option to compare
+     * Compile the global, link, link filter and pool filters of the configuration,
+     * replacing the filters compiled for any previous configuration.
      * 
-     * @return true, if successful
+     * @param jaxbServerConfig the JAXB DhcpServerConfig object
      */
-    protected static boolean evaluateExpression(OptionExpression expression, DhcpOption option)
+    protected void compileFilters(DhcpServerConfig jaxbServerConfig)
+    {
+    	Map<Filter, CompiledFilter> newCompiledFilters = new IdentityHashMap<Filter, CompiledFilter>();
+    	compileFilters(jaxbServerConfig.getFilters(), newCompiledFilters);
+    	LinksType linksType = jaxbServerConfig.getLinks();
+    	if ((linksType != null) && (linksType.getLinkList() != null)) {
+    		for (Link link : linksType.getLinkList()) {
+    			compilePoolFilters(link.getV4AddrPools(), link.getV6NaAddrPools(),
+    					link.getV6TaAddrPools(), link.getV6PrefixPools(), newCompiledFilters);
+    			LinkFiltersType linkFiltersType = link.getLinkFilters();
+    			if ((linkFiltersType != null) && (linkFiltersType.getLinkFilterList() != null)) {
+    				for (LinkFilter linkFilter : linkFiltersType.getLinkFilterList()) {
+    					newCompiledFilters.put(linkFilter, new CompiledFilter(linkFilter));
+    	    			compilePoolFilters(linkFilter.getV4AddrPools(), linkFilter.getV6NaAddrPools(),
+    	    					linkFilter.getV6TaAddrPools(), linkFilter.getV6PrefixPools(), 
+    	    					newCompiledFilters);
+    				}
+    			}
+    		}
+    	}
+    	compiledFilters = newCompiledFilters;
+    	log.info("Compiled " + newCompiledFilters.size() + " filters");
+    }
+    
+    private static void compilePoolFilters(V4AddressPoolsType v4AddrPools, 
+    		V6AddressPoolsType v6NaAddrPools, V6AddressPoolsType v6TaAddrPools,
+    		V6PrefixPoolsType v6PrefixPools, Map<Filter, CompiledFilter> newCompiledFilters)
     {
-        if (option.isV4() == expression.isV4()) {
-        	if (option.getCode() == expression.getCode()) {
-        		if (option instanceof BaseEmptyOption) {
-        			return true;
-        		}
-        		else if (option instanceof BaseDomainNameOption) {
-        			String domainName = ((BaseDomainNameOption)option).getDomainName();
-        	        DomainNameOptionType exprOption = expression.getDomainNameOption();
-        	        if (exprOption != null) {
-        	            return compareStringOption(domainName, exprOption.getDomainName(),
-        	            		expression.getOperator());
-        	        }
-        		}
-        		else if (option instanceof BaseDomainNameListOption) {
-        			List<String> domainNameList = ((BaseDomainNameListOption)option).getDomainNameList();
-        	        DomainNameListOptionType exprOption = expression.getDomainNameListOption();
-        	        if (exprOption != null) {   	
-        	            return compareStringListOption(domainNameList, exprOption.getDomainNameList(),
-        	            		expression.getOperator());
-        	        }
-        		}
-        		else if (option instanceof BaseIpAddressOption) {
-        			String ipAddress = ((BaseIpAddressOption)option).getIpAddress();
-        	        IpAddressOptionType exprOption = expression.getIpAddressOption();
-        	        if (exprOption != null) {
-        	            return compareStringOption(ipAddress, exprOption.getIpAddress(),
-        	            		expression.getOperator());
-        	        }
-        		}
-        		else if (option instanceof BaseIpAddressListOption) {
-        			List<String> ipAddressList = ((BaseIpAddressListOption)option).getIpAddressList();
-        	        IpAddressListOptionType exprOption = expression.getIpAddressListOption();
-        	        if (exprOption != null) {
-        	            return compareStringListOption(ipAddressList, exprOption.getIpAddressList(),
-        	            		expression.getOperator());
-        	        }        			
-        		}
-        		else if (option instanceof BaseOpaqueDataOption) {
-        			com.jagornet.dhcp.core.option.base.BaseOpaqueData opaqueData = 
-        					((BaseOpaqueDataOption)option).getOpaqueData();
-        	        return OpaqueDataUtil.matches(expression, opaqueData);
-        		}
-        		else if (option instanceof BaseOpaqueDataListOption) {
-        			List<com.jagornet.dhcp.core.option.base.BaseOpaqueData> opaqueDataList =
-        					((BaseOpaqueDataListOption)option).getOpaqueDataList();
-        			OpaqueDataListOptionType exprOpaqueDataListOption = 
-        					expression.getOpaqueDataListOption();
-        			if (exprOpaqueDataListOption != null) {
-        	        	List<OpaqueData> exprOpaqueDataList = 
-        	        			exprOpaqueDataListOption.getOpaqueDataList();
-                    	return OpaqueDataUtil.matches(opaqueDataList, exprOpaqueDataList,
-                    			expression.getOperator());
-        				
-        			}
-        		}
-        		else if (option instanceof BaseStringOption) {
-        			String string = ((BaseStringOption)option).getString();
-        	        StringOptionType exprOption = expression.getStringOption();
-        	        if (exprOption != null) {
-        	            return compareStringOption(string, exprOption.getString(),
-        	            		expression.getOperator());
-        	        }
-        		}
-        		else if (option instanceof BaseUnsignedByteOption) {
-        			short unsignedByte = ((BaseUnsignedByteOption)option).getUnsignedByte();
-        	        UnsignedByteOptionType exprOption = expression.getUByteOption();
-        	        if (exprOption != null) {
-        	        	return compareNumberOption(unsignedByte, exprOption.getUnsignedByte(),
-        	        			expression.getOperator());
-        	        }
-        		}
-        		else if (option instanceof BaseUnsignedByteListOption) {
-        			List<Short> unsignedByteList =
-        					((BaseUnsignedByteListOption)option).getUnsignedByteList();
-        	        UnsignedByteListOptionType exprOption = expression.getUByteListOption();
-        	        if (exprOption != null) {
-        	            return compareNumberListOption(unsignedByteList, 
-        	            		exprOption.getUnsignedByteList(), expression.getOperator());
-        	        }
-        		}
-        		else if (option instanceof BaseUnsignedIntOption) {
-        			long unsignedInt = ((BaseUnsignedIntOption)option).getUnsignedInt();
-        	        UnsignedIntOptionType exprOption = expression.getUIntOption();
-        	        if (exprOption != null) {
-        	        	return compareNumberOption(unsignedInt, exprOption.getUnsignedInt(),
-        	        			expression.getOperator());
-        	        }
-        	        
-        	        // then see if we have an opaque option
-        	        OpaqueDataOptionType opaqueOption = expression.getOpaqueDataOption();
-        	        if (opaqueOption != null) {
-        		        OpaqueData opaque = opaqueOption.getOpaqueData();
-        		        if (opaque != null) {
-        		            String ascii = opaque.getAsciiValue();
-        		            if (ascii != null) {
-        		                try {
-        		                	// need a long to handle unsigned int
-        		                    if (unsignedInt == Long.parseLong(ascii)) {
-        		                        return true;
-        		                    }
-        		                }
-        		                catch (NumberFormatException ex) {
-        		                	log.error("Invalid unsigned byte ASCII value for OpaqueData: " + ascii, ex);
-        		                }
-        		            }
-        		            else {
-        		                byte[] hex = opaque.getHexValue();
-        		                if ( (hex != null) && 
-        		                     (hex.length >= 1) && (hex.length <= 4) ) {
-        		                	long hexLong = Long.valueOf(Util.toHexString(hex), 16);
-        		                    if (unsignedInt == hexLong) {
-        		                        return true;
-        		                    }
-        		                }
-        		            }
-        		        }
-        	        }
-        		}
-        		else if (option instanceof BaseUnsignedShortOption) {
-        			int unsignedShort = ((BaseUnsignedShortOption)option).getUnsignedShort();
-        	        UnsignedShortOptionType exprOption = expression.getUShortOption();
-        	        if (exprOption != null) {
-        	        	return compareNumberOption(unsignedShort, exprOption.getUnsignedShort(),
-        	        			expression.getOperator());
-        	        }
-        	        
-        	        // then see if we have an opaque option
-        	        OpaqueDataOptionType opaqueOption = expression.getOpaqueDataOption();
-        	        if (opaqueOption != null) {
-        		        OpaqueData opaque = opaqueOption.getOpaqueData();
-        		        if (opaque != null) {
-        		            String ascii = opaque.getAsciiValue();
-        		            if (ascii != null) {
-        		                try {
-        		                	// need an Integer to handle unsigned short
-        		                    if (unsignedShort == Integer.parseInt(ascii)) {
-        		                        return true;
-        		                    }
-        		                }
-        		                catch (NumberFormatException ex) { 
-        		                	log.error("Invalid unsigned short ASCII value for OpaqueData: " + ascii, ex);
-        		                }
-        		            }
-        		            else {
-        		                byte[] hex = opaque.getHexValue();
-        		                if ( (hex != null) && 
-        		                     (hex.length >= 1) && (hex.length <= 2) ) {
-        		                	int hexUnsignedShort = Integer.valueOf(Util.toHexString(hex), 16);
-        		                    if (unsignedShort == hexUnsignedShort) {
-        		                        return true;
-        		                    }
-        		                }
-        		            }
-        		        }
-        	        }
-        		}
-        		else if (option instanceof BaseUnsignedShortListOption) {
-        			List<Integer> unsignedShortList = 
-        					((BaseUnsignedShortListOption)option).getUnsignedShortList();
-        	        UnsignedShortListOptionType exprOption = expression.getUShortListOption();
-        	        if (exprOption != null) {
-        	            return compareNumberListOption(unsignedShortList, 
-        	            		exprOption.getUnsignedShortList(), expression.getOperator());
-        	        }
-        		}
-        		else {
-        			log.error("Unable to compare unknown option class: " +
-        						option.getClass().getName());
-        		}
-        	}
-        	
-        }
-        return false;
+    	if ((v4AddrPools != null) && (v4AddrPools.getPoolList() != null)) {
+    		for (V4AddressPool pool : v4AddrPools.getPoolList()) {
+    			compileFilters(pool.getFilters(), newCompiledFilters);
+    		}
+    	}
+    	for (V6AddressPoolsType v6AddrPools : new V6AddressPoolsType[] { v6NaAddrPools, v6TaAddrPools }) {
+	    	if ((v6AddrPools != null) && (v6AddrPools.getPoolList() != null)) {
+	    		for (V6AddressPool pool : v6AddrPools.getPoolList()) {
+	    			compileFilters(pool.getFilters(), newCompiledFilters);
+	    		}
+	    	}
+    	}
+    	if ((v6PrefixPools != null) && (v6PrefixPools.getPoolList() != null)) {
+    		for (V6PrefixPool pool : v6PrefixPools.getPoolList()) {
+    			compileFilters(pool.getFilters(), newCompiledFilters);
+    		}
+    	}
     }
-
-	private static boolean compareStringOption(String optString, String exprString, Operator op) {
-		if (op.equals(Operator.EQUALS)) {
-			return optString.equals(exprString);
-		}
-		else if (op.equals(Operator.STARTS_WITH)) {
-			return optString.startsWith(exprString);
-		}
-		else if (op.equals(Operator.ENDS_WITH)) {
-			return optString.endsWith(exprString);
-		}
-		else if (op.equals(Operator.CONTAINS)) {
-			return optString.contains(exprString);
-		}
-		else if (op.equals(Operator.REG_EXP)) {
-			return optString.matches(exprString);
-		}
-		else {
-			log.warn("Unsupported expression operator: " + op);
-		}
-		return false;
-	}
-
-	private static boolean compareStringListOption(List<String> optDomainNameList,
-			List<String> exprDomainNameList, Operator op) {
-		if (op.equals(Operator.EQUALS)) {
-			return optDomainNameList.equals(exprDomainNameList);
-		}
-		else if (op.equals(Operator.CONTAINS)) {
-			return optDomainNameList.containsAll(exprDomainNameList);
-		}
-		else {
-			log.warn("Unsupported expression operator: " + op);
-		}
-		return false;
-	}
-
-	private static boolean compareNumberOption(Number optNumber, Number exprNumber, Operator op) {
-		if (op.equals(Operator.EQUALS)) {
-			return (optNumber.longValue() == exprNumber.longValue());
-		}
-		else if (op.equals(Operator.LESS_THAN)) {
-			return (optNumber.longValue() < exprNumber.longValue());
-		}
-		else if (op.equals(Operator.LESS_THAN_OR_EQUAL)) {
-			return (optNumber.longValue() <= exprNumber.longValue());
-		}
-		else if (op.equals(Operator.GREATER_THAN)) {
-			return (optNumber.longValue() > exprNumber.longValue());
-		}
-		else if (op.equals(Operator.GREATER_THAN_OR_EQUAL)) {
-			return (optNumber.longValue() >= exprNumber.longValue());
-		}
-		else {
-			log.warn("Unsupported expression operator: " + op);
-		}
-		return false;
-	}
-
-	private static boolean compareNumberListOption(List<? extends Number> optNumberList, 
-			List<? extends Number> exprNumberList, Operator op) {
-		if (op.equals(Operator.EQUALS)) {
-			return optNumberList.equals(exprNumberList);
-		}
-		else if (op.equals(Operator.CONTAINS)) {
-			return optNumberList.containsAll(exprNumberList);
-		}
-		else {
-			log.warn("Unsupported expression operator: " + op);
-		}
-		return false;
-	}
     
-    protected static boolean msgMatchesClientClass(DhcpMessage requestMsg, 
-    		ClientClassExpression ccexpr)
+    private static void compileFilters(FiltersType filtersType, 
+    		Map<Filter, CompiledFilter> newCompiledFilters)
     {
-		if (ccexpr.getV6UserClassOption() != null) {
-			V6UserClassOption ccexprOption = ccexpr.getV6UserClassOption();
-			DhcpV6UserClassOption ucOption = (DhcpV6UserClassOption) 
-					requestMsg.getDhcpOption(ccexpr.getV6UserClassOption().getCode());
-			if (ucOption != null) {
-				return OpaqueDataUtil.matches(ucOption.getOpaqueDataList(), 
-						ccexprOption.getOpaqueDataList(), ccexpr.getOperator());
-			}
-			else {
-				return false;
-			}
-		}
-		else if (ccexpr.getV6VendorClassOption() != null) {
-			V6VendorClassOption ccexprOption = ccexpr.getV6VendorClassOption();
-			DhcpV6VendorClassOption vcOption = (DhcpV6VendorClassOption) 
-					requestMsg.getDhcpOption(ccexpr.getV6VendorClassOption().getCode());
-			if (vcOption != null) {
-				return OpaqueDataUtil.matches(vcOption.getOpaqueDataList(), 
-						ccexprOption.getOpaqueDataList(), ccexpr.getOperator());
-			}
-			else {
-				return false;
-			}
-		}
-		else if (ccexpr.getV4VendorClassOption() != null) {
-			V4VendorClassOption ccexprOption = ccexpr.getV4VendorClassOption();
-			DhcpV4VendorClassOption vcOption = (DhcpV4VendorClassOption) 
-					requestMsg.getDhcpOption(ccexpr.getV4VendorClassOption().getCode());
-			if (vcOption != null) {
-				com.jagornet.dhcp.core.option.base.BaseOpaqueData baseOpaqueData = 
-						vcOption.getOpaqueData();
-				if (baseOpaqueData != null) {
-					return OpaqueDataUtil.matches(baseOpaqueData, 
-							ccexprOption.getOpaqueData(), ccexpr.getOperator());
-				}
-			}
-			else {
-				return false;
-			}
-		}
-		else {
-			log.warn("Unsupported client class expression: " + ccexpr);
-		}
-		return true;
+    	if ((filtersType != null) && (filtersType.getFilterList() != null)) {
+    		for (Filter filter : filtersType.getFilterList()) {
+    			newCompiledFilters.put(filter, new CompiledFilter(filter));
+    		}
+    	}
     }
     
     public static <T> void xmlToJsonAndYaml(String xmlData, Class<T> xmlClass) {
@@ -78,12 +78,26 @@ public class DhcpServerPolicies
 		CHANNEL_THREADPOOL_SIZE("channel.threadPoolSize", "16"),
 		CHANNEL_READ_BUFFER_SIZE("channel.readBufferSize", "307200"),		// 300 bytes x 1K clients
 		CHANNEL_WRITE_BUFFER_SIZE("channel.writeBufferSize", "307200"),		// 300 bytes x 1K clients
+		CHANNEL_REUSEPORT_SOCKETS("channel.reusePortSockets", "1"),		// Linux epoll only
+		
+		SCHEDULER_TICK_DURATION("scheduler.tickDuration", "100"),	// millis
+		SCHEDULER_THREADS("scheduler.threads", "2"),
 		
 		DATABASE_SCHEMA_TYTPE("database.schemaType", "jdbc-h2"),	// h2 performs best
 		DATABASE_SCHEMA_VERSION("database.schemaVersion", "2"),
+		DATABASE_WRITE_BEHIND("database.writeBehind", FALSE),
+		DATABASE_WRITE_BEHIND_BATCH_SIZE("database.writeBehind.batchSize", "500"),
+		DATABASE_WRITE_BEHIND_MAX_LATENCY("database.writeBehind.maxLatency", "100"),	// millis
+		DATABASE_FILE_SYNC_WRITES("database.file.syncWrites", TRUE),
+		DATABASE_FILE_SYNC_INTERVAL("database.file.syncInterval", "1000"),	// millis
+		DATABASE_FILE_COMPACT_INTERVAL("database.file.compactInterval", "60000"),	// millis
+		DATABASE_MEMORY_SNAPSHOT_INTERVAL("database.memory.snapshotInterval", "60000"),	// millis
 		
 		DDNS_UPDATE("ddns.update", "none"),	// acceptable values: none, server, client, etc...
 		DDNS_SYNCHRONIZE("ddns.synchronize", FALSE),
+		DDNS_THREADS("ddns.threads", "4"),
+		DDNS_QUEUE_SIZE("ddns.queueSize", "10000"),
+		DDNS_BATCH_SIZE("ddns.batchSize", "32"),
 		DDNS_DOMAIN("ddns.domain", ""),
 		DDNS_TTL("ddns.ttl", "0.3"),	// 1/3 of the lifetime
 		DDNS_SERVER("ddns.server", ""),
@@ -104,7 +118,7 @@ public class DhcpServerPolicies
 		DDNS_REVERSE_ZONE_TSIG_ALGORITHM("ddns.reverse.zone.tsig.algorithm", ""),
 		DDNS_REVERSE_ZONE_TSIG_KEYDATA("ddns.reverse.zone.tsig.keyData", ""),
 		
-		DHCP_PROCESSOR_RECENT_MESSAGE_TIMER("dhcp.processor.recentMessageTimer", "5000"),
+		DHCP_PROCESSOR_RECENT_MESSAGE_TIMER("dhcp.processor.recentMessageTimer", "0"),	// millis, zero to disable
 		DHCP_IGNORE_LOOPBACK("dhcp.ignoreLoopback", TRUE),
 		DHCP_IGNORE_LINKLOCAL("dhcp.ignoreLinkLocal", TRUE),
 		DHCP_IGNORE_SELF_PACKETS("dhcp.ignoreSelfPackets", TRUE),
@@ -117,6 +131,9 @@ public class DhcpServerPolicies
 		V4_IGNORED_MACS("v4.ignoredMacAddrs", "000000000000, FFFFFFFFFFFF"),
 		V4_DEFAULT_LEASETIME("v4.defaultLeasetime", "3600"),
 		V4_PINGCHECK_TIMEOUT("v4.pingCheckTimeout", "0"),
+		V4_PINGCHECK_THREADS("v4.pingCheckThreads", "16"),
+		V4_PINGCHECK_MAX_PENDING("v4.pingCheckMaxPending", "1024"),
+		V4_PINGCHECK_CACHE_TIME("v4.pingCheckCacheTime", "10000"),	// millis
 
 		V6_IA_NA_T1("v6.iaNaT1", "0.5"),
 		V6_IA_NA_T2("v6.iaNaT2", "0.8"),
@@ -141,6 +158,11 @@ public class DhcpServerPolicies
 		HA_POLL_REPLY_TIMEOUT("ha.pollReplyTimeout", "1000"),	// milliseconds
 		HA_POLL_REPLY_FAILURE_COUNT("ha.pollReplyFailureCount", "5"),
 		HA_CONTROL_REQUEST_ALL_LEASES_ON_RESTART("ha.requestAllLeasesOnRestart", TRUE),
+		HA_UPDATE_WINDOW("ha.updateWindow", "1000"),	// for grpc, 0=unbatched, older peers are sent unbatched
+		HA_UPDATE_BATCH_SIZE("ha.updateBatchSize", "100"),	// for grpc
+		HA_UPDATE_TIMEOUT("ha.updateTimeout", "5000"),	// milliseconds, for grpc
+		HA_LINK_SYNC_THREADS("ha.linkSyncThreads", "4"),
+		HA_LINK_SYNC_BATCH_SIZE("ha.linkSyncBatchSize", "500"),
 		
 		REST_API_USERNAME("rest.api.username", JAGORNET),
 		REST_API_PASSWORD("rest.api.password", JAGORNET),
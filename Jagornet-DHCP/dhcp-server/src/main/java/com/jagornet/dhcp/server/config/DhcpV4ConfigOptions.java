@@ -28,6 +28,7 @@ package com.jagornet.dhcp.server.config;
 import java.util.Map;
 import java.util.TreeMap;
 
+import com.jagornet.dhcp.core.option.base.BaseDhcpOption;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.v4.DhcpV4BootFileNameOption;
 import com.jagornet.dhcp.core.option.v4.DhcpV4DomainNameOption;
@@ -195,6 +196,9 @@ public class DhcpV4ConfigOptions
 			optionMap.putAll(GenericOptionFactory.genericOptions(configOptions.getV4OtherOptions()));
 		}
 		
+		// configured options do not change, so encode them only once
+		BaseDhcpOption.preEncodeOptions(optionMap.values());
+		
 		return optionMap;
     }
 
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import com.jagornet.dhcp.core.option.base.BaseDhcpOption;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6BcmcsAddressesOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6BcmcsDomainNamesOption;
@@ -321,6 +322,9 @@ public class DhcpV6ConfigOptions
 			optionMap.putAll(GenericOptionFactory.genericOptions(configOptions.getV6OtherOptions()));
 		}
 		
+		// configured options do not change, so encode them only once
+		BaseDhcpOption.preEncodeOptions(optionMap.values());
+		
 		return optionMap;
     }
 
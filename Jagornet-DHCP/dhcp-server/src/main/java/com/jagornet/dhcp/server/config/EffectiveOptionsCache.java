@@ -0,0 +1,216 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file EffectiveOptionsCache.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+
+/**
+ * Title: EffectiveOptionsCache
+ * Description: A cache of the merged, immutable effective option maps of
+ * the configuration.  The effective options for a request depend only on
+ * the configuration, and on which of the global, link and pool filters
+ * the request matched, so the merged map is cached by the option type,
+ * the link and pool or binding objects, and the position of the first
+ * matching filter at each level.  The link and configuration objects are
+ * compared by identity.  Each entry is tagged with the generation of the
+ * cache when the lookup which built it started, and clearing the cache
+ * starts a new generation, so an entry built from an old configuration
+ * by a lookup which was in progress during a reload is never returned
+ * for the new configuration.
+ *
+ * @author A. Gregory Rabil
+ */
+public class EffectiveOptionsCache
+{
+	/** no filter matched at a level */
+	public static final int NO_MATCH = -1;
+	
+	private final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<Key, Entry>();
+	private volatile long generation;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	
+	/**
+	 * Get a cached option map.  An entry cached before the cache was
+	 * last cleared is not returned.
+	 * 
+	 * @param key the key
+	 * @return the cached option map, or null if not cached
+	 */
+	public Map<Integer, DhcpOption> get(Key key)
+	{
+		Entry entry = cache.get(key);
+		if ((entry != null) && (entry.generation == generation)) {
+			hits.increment();
+			return entry.optionMap;
+		}
+		misses.increment();
+		return null;
+	}
+	
+	/**
+	 * Cache an option map.  If the map has already been cached by another
+	 * thread, then the cached map is returned.  If the cache has been cleared
+	 * since the given generation, then the map was built from an old
+	 * configuration, and it is returned without being cached.
+	 * 
+	 * @param key the key
+	 * @param generation the generation of the cache, from getGeneration(),
+	 * 			before the configuration was read to build the option map
+	 * @param optionMap the immutable option map
+	 * @return the cached option map
+	 */
+	public Map<Integer, DhcpOption> put(Key key, long generation, 
+										Map<Integer, DhcpOption> optionMap)
+	{
+		if (generation != this.generation) {
+			return optionMap;
+		}
+		Entry entry = cache.compute(key, (k, cached) -> 
+				((cached != null) && (cached.generation >= generation)) ? 
+						cached : new Entry(generation, optionMap));
+		return entry.optionMap;
+	}
+	
+	/**
+	 * Discard all cached option maps, and start a new generation.
+	 */
+	public synchronized void clear()
+	{
+		// start the new generation first, so that any entry put
+		// by a lookup still in progress is ignored from now on
+		generation++;
+		cache.clear();
+	}
+	
+	public int size() {
+		return cache.size();
+	}
+	
+	public long getGeneration() {
+		return generation;
+	}
+	
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	@Override
+	public String toString() {
+		return "size=" + size() +
+				" generation=" + generation +
+				" hits=" + getHitCount() +
+				" misses=" + getMissCount();
+	}
+	
+	/**
+	 * A cached option map, and the generation of the cache it was built for.
+	 */
+	private static final class Entry
+	{
+		private final long generation;
+		private final Map<Integer, DhcpOption> optionMap;
+		
+		Entry(long generation, Map<Integer, DhcpOption> optionMap)
+		{
+			this.generation = generation;
+			this.optionMap = optionMap;
+		}
+	}
+	
+	/**
+	 * The key of a cached option map.
+	 */
+	public static final class Key
+	{
+		private final int type;
+		private final Object link;
+		private final Object configObj;
+		private final int globalMatch;
+		private final int linkMatch;
+		private final int configObjMatch;
+		private final int hash;
+		
+		/**
+		 * Create a key.
+		 * 
+		 * @param type the option type
+		 * @param link the link, or null
+		 * @param configObj the pool or binding, or null
+		 * @param globalMatch the position of the matching global filter, or NO_MATCH
+		 * @param linkMatch the position of the matching link filter, or NO_MATCH
+		 * @param configObjMatch the position of the matching pool filter, or NO_MATCH
+		 */
+		public Key(int type, Object link, Object configObj,
+				int globalMatch, int linkMatch, int configObjMatch)
+		{
+			this.type = type;
+			this.link = link;
+			this.configObj = configObj;
+			this.globalMatch = globalMatch;
+			this.linkMatch = linkMatch;
+			this.configObjMatch = configObjMatch;
+			int h = type;
+			h = 31 * h + System.identityHashCode(link);
+			h = 31 * h + System.identityHashCode(configObj);
+			h = 31 * h + globalMatch;
+			h = 31 * h + linkMatch;
+			h = 31 * h + configObjMatch;
+			hash = h;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key that = (Key) obj;
+			return (type == that.type) &&
+					(link == that.link) &&
+					(configObj == that.configObj) &&
+					(globalMatch == that.globalMatch) &&
+					(linkMatch == that.linkMatch) &&
+					(configObjMatch == that.configObjMatch);
+		}
+	}
+}
@@ -102,75 +102,89 @@ public class OpaqueDataUtil
                 }
             }
             else if ( (expAscii == null) && (myAscii == null) ) {
-                byte[] expHex = thatOpaqueData.getHexValue();
-                byte[] myHex = myBaseOpaqueData.getHex();
-                if ( (expHex != null) && (myHex != null) ) {
-                    if (op.equals(Operator.EQUALS)) {
-                    	return Arrays.equals(myHex, expHex);
-                    }
-                    else if (op.equals(Operator.STARTS_WITH)) {
-                        if (myHex.length >= expHex.length) {
-                            for (int i=0; i<expHex.length; i++) {
-                                if (myHex[i] != expHex[i]) {
-                                    return false;
-                                }
-                            }
-                            return true;    // if we get here, it matches
-                        }
-                        else {
-                            return false;   // exp length too long
+                return matchesHex(myBaseOpaqueData.getHex(), 
+                		thatOpaqueData.getHexValue(), op);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Matches hex.
+     * 
+     * @param myHex the hex value to compare
+     * @param expHex the hex value of the expression
+     * @param op the expression operator
+     * 
+     * @return true, if successful
+     */
+    public static boolean matchesHex(byte[] myHex, byte[] expHex, Operator op)
+    {
+        if ( (expHex != null) && (myHex != null) ) {
+            if (op.equals(Operator.EQUALS)) {
+            	return Arrays.equals(myHex, expHex);
+            }
+            else if (op.equals(Operator.STARTS_WITH)) {
+                if (myHex.length >= expHex.length) {
+                    for (int i=0; i<expHex.length; i++) {
+                        if (myHex[i] != expHex[i]) {
+                            return false;
                         }
                     }
-                    else if (op.equals(Operator.CONTAINS)) {
-                        if (myHex.length >= expHex.length) {
-                            int j=0;
-                            for (int i=0; i<myHex.length; i++) {
-                                if (myHex[i] == expHex[j]) {
-                                    // found a potential match
-                                    j++;
-                                    boolean matches = true;
-                                    for (int ii=i+1; ii<myHex.length; ii++) {
-                                        if (myHex[ii] != expHex[j++]) {
-                                            matches = false;
-                                            break;
-                                        }
-                                    }
-                                    if (matches) {
-                                        return true;
-                                    }
-                                    j=0;    // reset to start of exp
+                    return true;    // if we get here, it matches
+                }
+                else {
+                    return false;   // exp length too long
+                }
+            }
+            else if (op.equals(Operator.CONTAINS)) {
+                if (myHex.length >= expHex.length) {
+                    int j=0;
+                    for (int i=0; i<myHex.length; i++) {
+                        if (myHex[i] == expHex[j]) {
+                            // found a potential match
+                            j++;
+                            boolean matches = true;
+                            for (int ii=i+1; ii<myHex.length; ii++) {
+                                if (myHex[ii] != expHex[j++]) {
+                                    matches = false;
+                                    break;
                                 }
                             }
-                            return false;    // if we get here, it didn't match
-                        }
-                        else {
-                            return false;   // exp length too long
-                        }
-                    }
-                    else if (op.equals(Operator.ENDS_WITH)) {
-                        if (myHex.length >= expHex.length) {
-                            for (int i=myHex.length-1; 
-                                 i>=myHex.length-expHex.length; 
-                                 i--) {
-                                if (myHex[i] != expHex[i]) {
-                                    return false;
-                                }
+                            if (matches) {
+                                return true;
                             }
-                            return true;    // if we get here, it matches
-                        }
-                        else {
-                            return false;   // exp length too long
+                            j=0;    // reset to start of exp
                         }
                     }
-                    else if (op.equals(Operator.REG_EXP)) {
-                        log.error("Regular expression operator not valid for hex opaque opaqueData");
-                        return false;
-                    }
-                    else {
-                        log.error("Unsupported expression operator: " + op);
-                        return false;
+                    return false;    // if we get here, it didn't match
+                }
+                else {
+                    return false;   // exp length too long
+                }
+            }
+            else if (op.equals(Operator.ENDS_WITH)) {
+                if (myHex.length >= expHex.length) {
+                    for (int i=myHex.length-1; 
+                         i>=myHex.length-expHex.length; 
+                         i--) {
+                        if (myHex[i] != expHex[i]) {
+                            return false;
+                        }
                     }
+                    return true;    // if we get here, it matches
                 }
+                else {
+                    return false;   // exp length too long
+                }
+            }
+            else if (op.equals(Operator.REG_EXP)) {
+                log.error("Regular expression operator not valid for hex opaque opaqueData");
+                return false;
+            }
+            else {
+                log.error("Unsupported expression operator: " + op);
+                return false;
             }
         }
         return false;
@@ -75,6 +75,8 @@ public class DbSchemaManager
     public static final String APP_CONTEXT_MONGO_V2SCHEMA_FILENAME = "context_mongo_v2schema.xml";    
     public static final String SCHEMATYPE_FILE = "file";
     public static final String APP_CONTEXT_FILE_V2SCHEMA_FILENAME = "context_file_v2schema.xml";    
+    public static final String SCHEMATYPE_MEMORY = "memory";
+    public static final String APP_CONTEXT_MEMORY_V2SCHEMA_FILENAME = "context_memory_v2schema.xml";    
     
 
     public static final String DB_HOME = DhcpConstants.JAGORNET_DHCP_HOME != null ? 
@@ -133,6 +135,9 @@ public class DbSchemaManager
         else if (schemaType.equalsIgnoreCase(DbSchemaManager.SCHEMATYPE_FILE)) {
         	dbContexts.add(APP_CONTEXT_FILE_V2SCHEMA_FILENAME);
         }
+        else if (schemaType.equalsIgnoreCase(DbSchemaManager.SCHEMATYPE_MEMORY)) {
+        	dbContexts.add(APP_CONTEXT_MEMORY_V2SCHEMA_FILENAME);
+        }
         else {
         	throw new DhcpServerConfigException("Unsupported schema type: " + schemaType);
         }
@@ -531,7 +531,7 @@ public class DhcpLease implements Cloneable
 		clone.setHaPeerState(this.getHaPeerState());
 		clone.setStartTime(this.getStartTime());
 		clone.setPreferredEndTime(this.getPreferredEndTime());
-		clone.setValidEndTime(this.getPreferredEndTime());
+		clone.setValidEndTime(this.getValidEndTime());
 		clone.setDhcpOptions(this.getDhcpOptions());
 		clone.setIaDhcpOptions(this.getIaDhcpOptions());
 		clone.setIaAddrDhcpOptions(this.getIaAddrDhcpOptions());
@@ -0,0 +1,835 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file FileLeaseJournal.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Date;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Title: FileLeaseJournal
+ * Description: The append-only lease journal of the FileLeaseManager.
+ * Every change to a lease is appended as one record holding the complete
+ * new state of the lease, or the deletion of its IP address, so replaying
+ * the records in order rebuilds the leases.  Records are checksummed and
+ * aligned to fixed size slots, and are written to a memory-mapped journal
+ * file, which is grown one mapped chunk at a time.
+ * <p>
+ * Appended records are made durable by a committer thread, which forces
+ * the mapped journal to disk on behalf of all of the writers waiting at
+ * the time, so concurrent writers share one sync (group commit).
+ * <p>
+ * The journal files are numbered by generation.  Compaction starts a new
+ * generation, and then writes a snapshot of all leases for that generation,
+ * after which the files of older generations are deleted.  Recovery loads
+ * the newest snapshot, and replays the journals of the same or a newer
+ * generation, stopping at the first incomplete record of each journal.
+ *
+ * @author A. Gregory Rabil
+ */
+public class FileLeaseJournal
+{
+	private static Logger log = LoggerFactory.getLogger(FileLeaseJournal.class);
+
+	/**
+	 * Callback for the records read during recovery, in the order
+	 * that they were written.
+	 */
+	public interface RecoveryHandler
+	{
+		void putLease(DhcpLease lease);
+		void deleteLease(InetAddress inetAddr);
+	}
+
+	// each record starts on a slot boundary, and occupies whole slots
+	public static final int SLOT_SIZE = 128;
+	public static final int DEFAULT_MAP_SIZE = 16 * 1024 * 1024;
+
+	// record header: magic and type, payload length, payload checksum
+	static final int HEADER_SIZE = 12;
+	static final int RECORD_MAGIC = 0x4a4c0000;
+	static final int MAGIC_MASK = 0xffff0000;
+	static final byte TYPE_PUT = 1;
+	static final byte TYPE_DELETE = 2;
+
+	private static final long NULL_TIME = Long.MIN_VALUE;
+	private static final int SNAPSHOT_BUFFER_SIZE = 1024 * 1024;
+	private static final int READ_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	private static final String FILE_PREFIX = "dhcplease-";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final String SNAPSHOT_SUFFIX = ".snapshot";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File dir;
+	private final int mapSize;
+	private final boolean syncWrites;
+	private final long syncInterval;
+
+	// the state of the current journal, guarded by the append lock
+	private final ReentrantLock appendLock = new ReentrantLock();
+	private long generation = -1;
+	private FileChannel channel;
+	private MappedByteBuffer mapped;
+	private long mapOffset;
+	private long recordCount;
+	// the total number of bytes appended, across all generations
+	private volatile long appended;
+
+	// group commit, guarded by the commit lock
+	private final ReentrantLock commitLock = new ReentrantLock();
+	// signalled by writers to wake the committer
+	private final Condition commitNeeded = commitLock.newCondition();
+	// signalled by the committer to wake the writers
+	private final Condition commitDone = commitLock.newCondition();
+	// the number of appended bytes known to be on disk
+	private long committed;
+	private boolean commitRequested;
+	private volatile boolean closed;
+	private Thread committer;
+
+	private final LongAdder records = new LongAdder();
+	private final LongAdder syncs = new LongAdder();
+	private final LongAdder compactions = new LongAdder();
+
+	/**
+	 * Create a lease journal.
+	 *
+	 * @param dir the directory of the journal and snapshot files
+	 * @param mapSize the number of bytes to map, and grow the journal, at a time
+	 * @param syncWrites if true, writers wait for their records to be synced
+	 * @param syncInterval the maximum number of milliseconds between syncs
+	 */
+	public FileLeaseJournal(File dir, int mapSize, boolean syncWrites, long syncInterval)
+	{
+		this.dir = dir;
+		this.mapSize = Math.max(1, (mapSize + SLOT_SIZE - 1) / SLOT_SIZE) * SLOT_SIZE;
+		this.syncWrites = syncWrites;
+		this.syncInterval = Math.max(1, syncInterval);
+	}
+
+	/**
+	 * Read back the leases from the newest snapshot and the journals written
+	 * since, and then start a new journal generation for appending.
+	 *
+	 * @param handler the handler for the records read
+	 * @return the number of journal records replayed, excluding the snapshot
+	 * @throws IOException if the files could not be read, or the journal created
+	 */
+	public long recover(RecoveryHandler handler) throws IOException
+	{
+		FileUtils.forceMkdir(dir);
+		long snapshotGen = -1;
+		long maxGen = -1;
+		TreeSet<Long> journalGens = new TreeSet<Long>();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith(TEMP_SUFFIX)) {
+					// an incomplete snapshot
+					Files.deleteIfExists(file.toPath());
+					continue;
+				}
+				long gen = parseGeneration(name, SNAPSHOT_SUFFIX);
+				if (gen >= 0) {
+					snapshotGen = Math.max(snapshotGen, gen);
+				}
+				else {
+					gen = parseGeneration(name, JOURNAL_SUFFIX);
+					if (gen >= 0) {
+						journalGens.add(gen);
+					}
+				}
+				maxGen = Math.max(maxGen, gen);
+			}
+		}
+		if (snapshotGen >= 0) {
+			long n = readFile(snapshotFile(snapshotGen), handler);
+			log.info("Loaded " + n + " leases from snapshot generation " + snapshotGen);
+		}
+		long journalRecords = 0;
+		for (Long gen : journalGens.tailSet(snapshotGen)) {
+			long n = readFile(journalFile(gen), handler);
+			log.info("Replayed " + n + " records from journal generation " + gen);
+			journalRecords += n;
+		}
+		appendLock.lock();
+		try {
+			openJournal(maxGen + 1);
+		}
+		finally {
+			appendLock.unlock();
+		}
+		return journalRecords;
+	}
+
+	/**
+	 * Start the committer thread.
+	 */
+	public void start()
+	{
+		committer = new Thread(() -> runCommitter(), "LeaseJournalCommit");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	/**
+	 * Stop the committer thread, and sync and close the journal.
+	 */
+	public void close()
+	{
+		commitLock.lock();
+		try {
+			closed = true;
+			commitNeeded.signal();
+			commitDone.signalAll();
+		}
+		finally {
+			commitLock.unlock();
+		}
+		if (committer != null) {
+			try {
+				committer.join(syncInterval + 5000);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		appendLock.lock();
+		try {
+			closeJournal();
+		}
+		catch (IOException ex) {
+			log.error("Failed to close lease journal: " + ex);
+		}
+		finally {
+			appendLock.unlock();
+		}
+		log.info("Closed lease journal: " + this);
+	}
+
+	/**
+	 * Append a record to the journal.  The record is not necessarily on
+	 * disk until the returned position has been committed.
+	 *
+	 * @param record the record, as encoded by encodePut or encodeDelete
+	 * @return the position to commit for this record
+	 * @throws IOException if the journal could not be grown
+	 */
+	public long append(ByteBuffer record) throws IOException
+	{
+		appendLock.lock();
+		try {
+			if (mapped == null) {
+				throw new IOException("Lease journal is closed");
+			}
+			int length = record.remaining();
+			ByteBuffer src = record.duplicate();
+			while (src.hasRemaining()) {
+				if (!mapped.hasRemaining()) {
+					nextChunk();
+				}
+				int n = Math.min(src.remaining(), mapped.remaining());
+				ByteBuffer part = src.duplicate();
+				part.limit(part.position() + n);
+				mapped.put(part);
+				src.position(src.position() + n);
+			}
+			recordCount++;
+			records.increment();
+			appended += length;
+			return appended;
+		}
+		finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * Wait until the journal is synced up to the given position.  Returns
+	 * immediately unless the journal was created to sync writes.
+	 *
+	 * @param position the position returned by append
+	 */
+	public void commit(long position)
+	{
+		if (!syncWrites) {
+			return;
+		}
+		commitLock.lock();
+		try {
+			while ((committed < position) && !closed) {
+				if (!commitRequested) {
+					commitRequested = true;
+					commitNeeded.signal();
+				}
+				commitDone.await();
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+
+	/**
+	 * Sync everything appended so far to disk.
+	 */
+	public void sync()
+	{
+		MappedByteBuffer buf;
+		long position;
+		appendLock.lock();
+		try {
+			buf = mapped;
+			position = appended;
+		}
+		finally {
+			appendLock.unlock();
+		}
+		commitLock.lock();
+		try {
+			if (position <= committed) {
+				return;
+			}
+		}
+		finally {
+			commitLock.unlock();
+		}
+		if (buf != null) {
+			buf.force();
+			syncs.increment();
+		}
+		setCommitted(position);
+	}
+
+	/**
+	 * Start a new journal generation.  The current journal is synced and
+	 * closed, so a snapshot for the new generation replaces all of it.
+	 *
+	 * @return the new generation
+	 * @throws IOException if the new journal could not be created
+	 */
+	public long rotate() throws IOException
+	{
+		appendLock.lock();
+		try {
+			long gen = generation + 1;
+			closeJournal();
+			openJournal(gen);
+			return gen;
+		}
+		finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * Write the snapshot for a generation, and then delete the files of
+	 * all older generations.
+	 *
+	 * @param gen the generation returned by rotate
+	 * @param leases the state of all leases at the start of the generation
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public void writeSnapshot(long gen, Collection<DhcpLease> leases) throws IOException
+	{
+		writeLeaseFile(snapshotFile(gen), leases);
+		compactions.increment();
+		deleteGenerationsBefore(gen);
+		log.info("Wrote snapshot of " + leases.size() + " leases for generation " + gen);
+	}
+
+	/**
+	 * Write a file holding a put record for each of the given leases, which
+	 * can be read back by readFile.  The file is written to a temporary file
+	 * and renamed when complete, so that it is replaced only by a complete file.
+	 *
+	 * @param file the file to write
+	 * @param leases the leases to write
+	 * @throws IOException if the file could not be written
+	 */
+	public static void writeLeaseFile(File file, Collection<DhcpLease> leases) throws IOException
+	{
+		File temp = new File(file.getParentFile(), file.getName() + TEMP_SUFFIX);
+		try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buf = ByteBuffer.allocate(SNAPSHOT_BUFFER_SIZE);
+			for (DhcpLease lease : leases) {
+				ByteBuffer record = encodePut(lease);
+				if (record.remaining() > buf.remaining()) {
+					writeFully(out, buf);
+				}
+				if (record.remaining() > buf.remaining()) {
+					writeFully(out, record);
+				}
+				else {
+					buf.put(record);
+				}
+			}
+			writeFully(out, buf);
+			out.force(true);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(file.getParentFile());
+	}
+
+	public long getGeneration()
+	{
+		appendLock.lock();
+		try {
+			return generation;
+		}
+		finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of records in the current journal generation
+	 */
+	public long getRecordCount()
+	{
+		appendLock.lock();
+		try {
+			return recordCount;
+		}
+		finally {
+			appendLock.unlock();
+		}
+	}
+
+	public long getAppendCount()
+	{
+		return records.sum();
+	}
+
+	public long getSyncCount()
+	{
+		return syncs.sum();
+	}
+
+	public long getCompactionCount()
+	{
+		return compactions.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "dir=" + dir +
+				" generation=" + getGeneration() +
+				" journalRecords=" + getRecordCount() +
+				" appends=" + getAppendCount() +
+				" syncs=" + getSyncCount() +
+				" compactions=" + getCompactionCount();
+	}
+
+	private void runCommitter()
+	{
+		while (!closed) {
+			commitLock.lock();
+			try {
+				if (!commitRequested && !closed) {
+					commitNeeded.await(syncInterval, TimeUnit.MILLISECONDS);
+				}
+				// writers which arrive from now on request the next sync
+				commitRequested = false;
+			}
+			catch (InterruptedException ex) {
+				return;
+			}
+			finally {
+				commitLock.unlock();
+			}
+			try {
+				sync();
+			}
+			catch (Exception ex) {
+				log.error("Failed to sync lease journal: " + ex);
+			}
+		}
+	}
+
+	private void setCommitted(long position)
+	{
+		commitLock.lock();
+		try {
+			if (position > committed) {
+				committed = position;
+			}
+			commitDone.signalAll();
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+
+	// must hold the append lock
+	private void openJournal(long gen) throws IOException
+	{
+		channel = FileChannel.open(journalFile(gen).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		mapOffset = 0;
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, mapOffset, mapSize);
+		generation = gen;
+		recordCount = 0;
+		log.info("Opened lease journal generation " + gen);
+	}
+
+	// must hold the append lock
+	private void nextChunk() throws IOException
+	{
+		// sync the full chunk now, because the committer
+		// only syncs the chunk which is currently mapped
+		mapped.force();
+		syncs.increment();
+		mapOffset += mapSize;
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, mapOffset, mapSize);
+	}
+
+	// must hold the append lock
+	private void closeJournal() throws IOException
+	{
+		if (mapped != null) {
+			mapped.force();
+			syncs.increment();
+			mapped = null;
+		}
+		if (channel != null) {
+			try {
+				channel.force(true);
+			}
+			finally {
+				channel.close();
+				channel = null;
+			}
+		}
+		setCommitted(appended);
+	}
+
+	private void deleteGenerationsBefore(long gen) throws IOException
+	{
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				long fileGen = parseGeneration(name, SNAPSHOT_SUFFIX);
+				if (fileGen < 0) {
+					fileGen = parseGeneration(name, JOURNAL_SUFFIX);
+				}
+				if ((fileGen >= 0) && (fileGen < gen)) {
+					Files.deleteIfExists(file.toPath());
+				}
+			}
+		}
+	}
+
+	private static void syncDirectory(File dir)
+	{
+		// make the rename durable, where the platform allows it
+		try (FileChannel d = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+			d.force(true);
+		}
+		catch (IOException ex) {
+			log.debug("Unable to sync directory " + dir + ": " + ex);
+		}
+	}
+
+	File journalFile(long gen)
+	{
+		return new File(dir, FILE_PREFIX + gen + JOURNAL_SUFFIX);
+	}
+
+	File snapshotFile(long gen)
+	{
+		return new File(dir, FILE_PREFIX + gen + SNAPSHOT_SUFFIX);
+	}
+
+	private static long parseGeneration(String name, String suffix)
+	{
+		if (name.startsWith(FILE_PREFIX) && name.endsWith(suffix)) {
+			try {
+				return Long.parseLong(name.substring(FILE_PREFIX.length(),
+						name.length() - suffix.length()));
+			}
+			catch (NumberFormatException ex) {
+				// not one of ours
+			}
+		}
+		return -1;
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException
+	{
+		buf.flip();
+		while (buf.hasRemaining()) {
+			out.write(buf);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Read the records of a snapshot or journal file, up to the end of the
+	 * records or the first record which is incomplete.
+	 *
+	 * @return the number of records read
+	 */
+	static long readFile(File file, RecoveryHandler handler) throws IOException
+	{
+		return readFile(file, handler, READ_CHUNK_SIZE);
+	}
+
+	/**
+	 * Read the records of a file, mapping at most chunkSize bytes of the
+	 * file at a time, or a whole record if it is larger, so that files of
+	 * any size can be read.
+	 *
+	 * @return the number of records read
+	 */
+	static long readFile(File file, RecoveryHandler handler, int chunkSize) throws IOException
+	{
+		long n = 0;
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = in.size();
+			long pos = 0;
+			long mapOffset = 0;
+			MappedByteBuffer buf = null;
+			CRC32 crc = new CRC32();
+			while (size - pos >= HEADER_SIZE) {
+				if ((buf == null) || (pos + HEADER_SIZE > mapOffset + buf.limit())) {
+					mapOffset = pos;
+					buf = in.map(FileChannel.MapMode.READ_ONLY, mapOffset, 
+							Math.min(size - mapOffset, chunkSize));
+				}
+				buf.position((int)(pos - mapOffset));
+				int marker = buf.getInt();
+				if (marker == 0) {
+					// the unused end of the journal
+					break;
+				}
+				int length = buf.getInt();
+				int checksum = buf.getInt();
+				if (((marker & MAGIC_MASK) != RECORD_MAGIC) ||
+						(length < 0) || (length > size - pos - HEADER_SIZE)) {
+					log.warn("Ignoring invalid record at offset " + pos + " of " + file);
+					break;
+				}
+				if (length > buf.remaining()) {
+					// the record runs past the mapped chunk, so map from its start
+					mapOffset = pos;
+					buf = in.map(FileChannel.MapMode.READ_ONLY, mapOffset, 
+							Math.min(size - mapOffset, 
+									Math.max(chunkSize, (long)HEADER_SIZE + length)));
+					buf.position(HEADER_SIZE);
+				}
+				ByteBuffer payload = buf.slice();
+				payload.limit(length);
+				crc.reset();
+				crc.update(payload.duplicate());
+				if ((int)crc.getValue() != checksum) {
+					log.warn("Ignoring incomplete record at offset " + pos + " of " + file);
+					break;
+				}
+				byte type = (byte)marker;
+				if (type == TYPE_PUT) {
+					handler.putLease(decodeLease(payload));
+				}
+				else if (type == TYPE_DELETE) {
+					handler.deleteLease(decodeInetAddress(payload));
+				}
+				else {
+					log.warn("Ignoring record of unknown type=" + type +
+							" at offset " + pos + " of " + file);
+					break;
+				}
+				n++;
+				pos = Math.min(pos + recordSize(length), size);
+			}
+		}
+		return n;
+	}
+
+	static int recordSize(int length)
+	{
+		return ((HEADER_SIZE + length + SLOT_SIZE - 1) / SLOT_SIZE) * SLOT_SIZE;
+	}
+
+	/**
+	 * Encode the record for the new state of a lease.
+	 */
+	public static ByteBuffer encodePut(DhcpLease lease)
+	{
+		boolean v4 = (lease.getIatype() == IdentityAssoc.V4_TYPE);
+		byte[] ip = lease.getIpAddress().getAddress();
+		byte[] duid = lease.getDuid();
+		byte[] options = LeaseManager.encodeOptions(lease.getDhcpOptions(), v4);
+		byte[] iaOptions = LeaseManager.encodeOptions(lease.getIaDhcpOptions(), v4);
+		byte[] ipAddrOptions = LeaseManager.encodeOptions(lease.getIaAddrDhcpOptions(), v4);
+		int length = 1 + ip.length +
+				2 + ((duid != null) ? duid.length : 0) +
+				1 + 8 + 2 + 1 + 1 + 8 + 8 + 8 +
+				4 + ((options != null) ? options.length : 0) +
+				4 + ((iaOptions != null) ? iaOptions.length : 0) +
+				4 + ((ipAddrOptions != null) ? ipAddrOptions.length : 0);
+		ByteBuffer buf = newRecord(length);
+		buf.put((byte)ip.length);
+		buf.put(ip);
+		if (duid != null) {
+			buf.putShort((short)duid.length);
+			buf.put(duid);
+		}
+		else {
+			buf.putShort((short)-1);
+		}
+		buf.put(lease.getIatype());
+		buf.putLong(lease.getIaid());
+		buf.putShort(lease.getPrefixLength());
+		buf.put(lease.getState());
+		buf.put(lease.getHaPeerState());
+		buf.putLong(toTime(lease.getStartTime()));
+		buf.putLong(toTime(lease.getPreferredEndTime()));
+		buf.putLong(toTime(lease.getValidEndTime()));
+		putBytes(buf, options);
+		putBytes(buf, iaOptions);
+		putBytes(buf, ipAddrOptions);
+		return finishRecord(buf, TYPE_PUT, length);
+	}
+
+	/**
+	 * Encode the record for the deletion of the lease for an IP address.
+	 */
+	public static ByteBuffer encodeDelete(InetAddress inetAddr)
+	{
+		byte[] ip = inetAddr.getAddress();
+		int length = 1 + ip.length;
+		ByteBuffer buf = newRecord(length);
+		buf.put((byte)ip.length);
+		buf.put(ip);
+		return finishRecord(buf, TYPE_DELETE, length);
+	}
+
+	static DhcpLease decodeLease(ByteBuffer buf) throws IOException
+	{
+		DhcpLease lease = new DhcpLease();
+		lease.setIpAddress(decodeInetAddress(buf));
+		lease.setDuid(getBytes(buf, buf.getShort()));
+		lease.setIatype(buf.get());
+		lease.setIaid(buf.getLong());
+		lease.setPrefixLength(buf.getShort());
+		lease.setState(buf.get());
+		lease.setHaPeerState(buf.get());
+		lease.setStartTime(toDate(buf.getLong()));
+		lease.setPreferredEndTime(toDate(buf.getLong()));
+		lease.setValidEndTime(toDate(buf.getLong()));
+		boolean v4 = (lease.getIatype() == IdentityAssoc.V4_TYPE);
+		lease.setDhcpOptions(LeaseManager.decodeOptions("options",
+				getBytes(buf, buf.getInt()), v4));
+		lease.setIaDhcpOptions(LeaseManager.decodeOptions("ia_options",
+				getBytes(buf, buf.getInt()), v4));
+		lease.setIaAddrDhcpOptions(LeaseManager.decodeOptions("ipaddr_options",
+				getBytes(buf, buf.getInt()), v4));
+		return lease;
+	}
+
+	static InetAddress decodeInetAddress(ByteBuffer buf) throws IOException
+	{
+		byte[] ip = new byte[buf.get()];
+		buf.get(ip);
+		return InetAddress.getByAddress(ip);
+	}
+
+	private static ByteBuffer newRecord(int length)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(recordSize(length));
+		buf.position(HEADER_SIZE);
+		return buf;
+	}
+
+	private static ByteBuffer finishRecord(ByteBuffer buf, byte type, int length)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), HEADER_SIZE, length);
+		buf.putInt(0, RECORD_MAGIC | type);
+		buf.putInt(4, length);
+		buf.putInt(8, (int)crc.getValue());
+		buf.clear();
+		return buf;
+	}
+
+	private static void putBytes(ByteBuffer buf, byte[] bytes)
+	{
+		if (bytes != null) {
+			buf.putInt(bytes.length);
+			buf.put(bytes);
+		}
+		else {
+			buf.putInt(-1);
+		}
+	}
+
+	private static byte[] getBytes(ByteBuffer buf, int length)
+	{
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return bytes;
+	}
+
+	private static long toTime(Date date)
+	{
+		return (date != null) ? date.getTime() : NULL_TIME;
+	}
+
+	private static Date toDate(long time)
+	{
+		return (time != NULL_TIME) ? new Date(time) : null;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file FileLeaseManager.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+/**
+ * Title: FileLeaseManager
+ * Description: The LeaseManager for the "file" schema type, which keeps
+ * all leases in memory, like the MemoryLeaseManager, but makes every change
+ * durable in a FileLeaseJournal instead of a database.  Writers append to
+ * the journal while holding the write lock, which keeps the order of the
+ * journal the same as the order of the changes to the indexes, but wait for
+ * the journal sync outside of the lock, so that the writes of concurrent
+ * requests are synced together.
+ * <p>
+ * The journal is compacted periodically, once it holds more records than
+ * there are leases, by writing a snapshot of all leases.  At startup, the
+ * leases are loaded from the snapshot, and the journal is replayed.
+ *
+ * @author A. Gregory Rabil
+ */
+public class FileLeaseManager extends MemoryLeaseManager
+{
+	private static Logger log = LoggerFactory.getLogger(FileLeaseManager.class);
+
+	public static final String LEASE_DIR = DbSchemaManager.DB_HOME + "fileleases";
+
+	// don't bother compacting a journal smaller than this
+	private static final long MIN_COMPACT_RECORDS = 1024;
+
+	protected FileLeaseJournal journal;
+
+	private final ReentrantLock compactLock = new ReentrantLock();
+
+	// Spring bean destroy-method
+	@Override
+	public void close() {
+		super.close();
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+	}
+
+	@Override
+	protected String getDefaultLeaseDir() {
+		return LEASE_DIR;
+	}
+
+	@Override
+	protected long getSnapshotInterval() {
+		// the journal writes its own snapshots when compacted
+		return 0;
+	}
+
+	@Override
+	protected void recover() throws IOException {
+		journal = new FileLeaseJournal(leaseDir, FileLeaseJournal.DEFAULT_MAP_SIZE,
+				DhcpServerPolicies.globalPolicyAsBoolean(Property.DATABASE_FILE_SYNC_WRITES),
+				DhcpServerPolicies.globalPolicyAsLong(Property.DATABASE_FILE_SYNC_INTERVAL));
+		long replayed = journal.recover(new FileLeaseJournal.RecoveryHandler() {
+			@Override
+			public void putLease(DhcpLease lease) {
+				indexLease(lease);
+			}
+			@Override
+			public void deleteLease(InetAddress inetAddr) {
+				unindexLease(inetAddr);
+			}
+		});
+		journal.start();
+		if (replayed > 0) {
+			// start from a snapshot, so the next recovery is faster
+			compact();
+		}
+	}
+
+	@Override
+	protected void startMaintenance() {
+		long compactInterval = DhcpServerPolicies.
+				globalPolicyAsLong(Property.DATABASE_FILE_COMPACT_INTERVAL);
+		if (compactInterval > 0) {
+			schedule("LeaseCompactor", () -> compactQuietly(), compactInterval);
+		}
+	}
+
+	/**
+	 * Write a snapshot of all leases, which replaces the journal records
+	 * written so far.
+	 *
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public void compact() throws IOException {
+		compactLock.lock();
+		try {
+			long gen;
+			List<DhcpLease> snapshot;
+			writeLock.lock();
+			try {
+				gen = journal.rotate();
+				snapshot = getLeases();
+			}
+			finally {
+				writeLock.unlock();
+			}
+			journal.writeSnapshot(gen, snapshot);
+		}
+		finally {
+			compactLock.unlock();
+		}
+	}
+
+	/**
+	 * Compact the journal if it holds more records than there are leases.
+	 */
+	protected void compactQuietly() {
+		try {
+			long records = journal.getRecordCount();
+			int leaseCount = getLeaseCount();
+			if ((records >= MIN_COMPACT_RECORDS) && (records > leaseCount)) {
+				log.info("Compacting lease journal of " + records +
+						" records for " + leaseCount + " leases");
+				compact();
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("Lease journal: " + journal);
+			}
+		}
+		catch (Exception ex) {
+			// the journal is still complete, so just try again next time
+			log.error("Failed to compact lease journal: " + ex);
+		}
+	}
+
+	// for unit testing
+	public FileLeaseJournal getJournal() {
+		return journal;
+	}
+
+	@Override
+	protected long logPut(DhcpLease lease) {
+		return append(FileLeaseJournal.encodePut(lease));
+	}
+
+	@Override
+	protected long logDelete(InetAddress inetAddr) {
+		return append(FileLeaseJournal.encodeDelete(inetAddr));
+	}
+
+	@Override
+	protected void sync(long position) {
+		journal.commit(position);
+	}
+
+	// must hold the write lock
+	private long append(ByteBuffer record) {
+		try {
+			return journal.append(record);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to write lease journal", ex);
+		}
+	}
+}
@@ -1,9 +1,5 @@
 package com.jagornet.dhcp.server.db;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,20 +7,11 @@ public class IaCache {
 	
 	private static Logger log = LoggerFactory.getLogger(IaCache.class);
 
-	private Map<String, IdentityAssoc> cache;
+	private SegmentedLruCache<String, IdentityAssoc> cache;
 	
 	public IaCache(int cacheSize) {
 		log.info("Creating IA cache size=" + cacheSize);
-		cache = Collections.synchronizedMap(
-				new LinkedHashMap<String, IdentityAssoc>(16, 0.75f, true) {
-					private static final long serialVersionUID = 1L;
-					@Override
-				     protected boolean removeEldestEntry(
-				    		 Map.Entry<String, IdentityAssoc> eldest) {
-				        return (size() > cacheSize);
-				     }
-					
-				});
+		cache = new SegmentedLruCache<String, IdentityAssoc>(cacheSize);
 	}
 	
 	public void clear() {
@@ -45,4 +32,8 @@ public class IaCache {
 		String key = IdentityAssoc.keyToString(ia.getDuid(), ia.getIatype(), ia.getIaid());
 		cache.remove(key);
 	}
+	
+	public SegmentedLruCache<String, IdentityAssoc> getCache() {
+		return cache;
+	}
 }
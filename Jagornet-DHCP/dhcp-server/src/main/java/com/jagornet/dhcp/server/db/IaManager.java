@@ -202,6 +202,17 @@ public interface IaManager
 	 */
 	public List<InetAddress> findExistingIPs(final InetAddress startAddr, final InetAddress endAddr);
 
+	/**
+	 * Find existing IPs within an inclusive address range, in address order,
+	 * without building a list of all of them.
+	 * 
+	 * @param startAddr the start address of the range
+	 * @param endAddr the end address of the range
+	 * @param inetAddressCallbackHandler the handler called for each existing IP
+	 */
+	public void findExistingIPs(final InetAddress startAddr, final InetAddress endAddr,
+			InetAddressCallbackHandler inetAddressCallbackHandler);
+
 	/**
 	 * Find the unused IA Addresses within an inclusive address range.
 	 * 
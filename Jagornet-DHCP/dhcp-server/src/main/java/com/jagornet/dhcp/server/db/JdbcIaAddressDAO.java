@@ -89,13 +89,13 @@ public class JdbcIaAddressDAO extends JdbcDaoSupport implements IaAddressDAO
 						ps.setBytes(1, iaAddr.getIpAddress().getAddress());
 						java.sql.Timestamp sts = 
 							new java.sql.Timestamp(iaAddr.getStartTime().getTime());
-						ps.setTimestamp(2, sts, Util.GMT_CALENDAR);
+						ps.setTimestamp(2, sts, Util.gmtCalendar());
 						java.sql.Timestamp pts = 
 							new java.sql.Timestamp(iaAddr.getPreferredEndTime().getTime());
-						ps.setTimestamp(3, pts, Util.GMT_CALENDAR);
+						ps.setTimestamp(3, pts, Util.gmtCalendar());
 						java.sql.Timestamp vts = 
 							new java.sql.Timestamp(iaAddr.getValidEndTime().getTime());
-						ps.setTimestamp(4, vts, Util.GMT_CALENDAR);
+						ps.setTimestamp(4, vts, Util.gmtCalendar());
 						ps.setByte(5, iaAddr.getState());
 						ps.setLong(6, iaAddr.getIdentityAssocId());
 						return ps;
@@ -129,7 +129,7 @@ public class JdbcIaAddressDAO extends JdbcDaoSupport implements IaAddressDAO
 				Date start = iaAddr.getStartTime();
 				if (start != null) {
 					java.sql.Timestamp sts = new java.sql.Timestamp(start.getTime());
-					ps.setTimestamp(2, sts, Util.GMT_CALENDAR);
+					ps.setTimestamp(2, sts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(2, java.sql.Types.TIMESTAMP);
@@ -137,7 +137,7 @@ public class JdbcIaAddressDAO extends JdbcDaoSupport implements IaAddressDAO
 				Date preferred = iaAddr.getPreferredEndTime();
 				if (preferred != null) {
 					java.sql.Timestamp pts = new java.sql.Timestamp(preferred.getTime());
-					ps.setTimestamp(3, pts, Util.GMT_CALENDAR);
+					ps.setTimestamp(3, pts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(3, java.sql.Types.TIMESTAMP);
@@ -145,7 +145,7 @@ public class JdbcIaAddressDAO extends JdbcDaoSupport implements IaAddressDAO
 				Date valid = iaAddr.getValidEndTime();
 				if (valid != null) {
 					java.sql.Timestamp vts = new java.sql.Timestamp(valid.getTime());
-					ps.setTimestamp(4, vts, Util.GMT_CALENDAR);
+					ps.setTimestamp(4, vts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(4, java.sql.Types.TIMESTAMP);
@@ -278,7 +278,7 @@ public class JdbcIaAddressDAO extends JdbcDaoSupport implements IaAddressDAO
             		public void setValues(PreparedStatement ps) throws SQLException {
             			ps.setByte(1, iatype);
             			java.sql.Timestamp ts = new java.sql.Timestamp(new Date().getTime());
-            			ps.setTimestamp(2, ts, Util.GMT_CALENDAR);
+            			ps.setTimestamp(2, ts, Util.gmtCalendar());
             		}
                 },
                 new IaAddrRowMapper());
@@ -361,9 +361,9 @@ public class JdbcIaAddressDAO extends JdbcDaoSupport implements IaAddressDAO
         		// re-throw as SQLException
 				throw new SQLException("Unable to map ipaddress", e);
 			}
-			iaAddr.setStartTime(rs.getTimestamp("starttime", Util.GMT_CALENDAR));
-			iaAddr.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.GMT_CALENDAR));
-			iaAddr.setValidEndTime(rs.getTimestamp("validendtime", Util.GMT_CALENDAR));
+			iaAddr.setStartTime(rs.getTimestamp("starttime", Util.gmtCalendar()));
+			iaAddr.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.gmtCalendar()));
+			iaAddr.setValidEndTime(rs.getTimestamp("validendtime", Util.gmtCalendar()));
 			iaAddr.setState(rs.getByte("state"));
 			iaAddr.setIdentityAssocId(rs.getLong("identityassoc_id"));
             return iaAddr;
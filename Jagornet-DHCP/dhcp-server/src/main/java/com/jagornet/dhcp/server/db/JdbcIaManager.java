@@ -26,6 +26,7 @@
 package com.jagornet.dhcp.server.db;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -448,6 +449,22 @@ public class JdbcIaManager extends JdbcDaoSupport implements IaManager
 	public List<InetAddress> findExistingIPs(InetAddress startAddr, InetAddress endAddr) {
 		return iaAddrDao.findExistingIPs(startAddr, endAddr);
 	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findExistingIPs(java.net.InetAddress, java.net.InetAddress, com.jagornet.dhcp.server.db.InetAddressCallbackHandler)
+	 */
+	@Override
+	public void findExistingIPs(InetAddress startAddr, InetAddress endAddr,
+			InetAddressCallbackHandler inetAddressCallbackHandler) {
+		try {
+			for (InetAddress inetAddr : findExistingIPs(startAddr, endAddr)) {
+				inetAddressCallbackHandler.processInetAddress(inetAddr);
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Unable to process ipaddress", ex);
+		}
+	}
 	
 	/* (non-Javadoc)
 	 * @see com.jagornet.dhcpv6.db.IaManager#findUnusedIaAddresses(java.net.InetAddress, java.net.InetAddress)
@@ -515,7 +532,7 @@ public class JdbcIaManager extends JdbcDaoSupport implements IaManager
 							throws SQLException {
 						ps.setLong(1, id);
 						java.sql.Timestamp now = new java.sql.Timestamp((new Date()).getTime());
-						ps.setTimestamp(2, now, Util.GMT_CALENDAR);
+						ps.setTimestamp(2, now, Util.gmtCalendar());
 					}
 				});
 		
@@ -540,7 +557,7 @@ public class JdbcIaManager extends JdbcDaoSupport implements IaManager
 							throws SQLException {
 						ps.setLong(1, id);
 						java.sql.Timestamp now = new java.sql.Timestamp((new Date()).getTime());
-						ps.setTimestamp(2, now, Util.GMT_CALENDAR);
+						ps.setTimestamp(2, now, Util.gmtCalendar());
 					}
 				});
 		
@@ -560,8 +577,8 @@ public class JdbcIaManager extends JdbcDaoSupport implements IaManager
 					public void setValues(PreparedStatement ps)
 							throws SQLException {
 						java.sql.Timestamp now = new java.sql.Timestamp((new Date()).getTime());
-						ps.setTimestamp(1, now, Util.GMT_CALENDAR);
-						ps.setTimestamp(2, now, Util.GMT_CALENDAR);
+						ps.setTimestamp(1, now, Util.gmtCalendar());
+						ps.setTimestamp(2, now, Util.gmtCalendar());
 					}
 				});
 	}
@@ -90,13 +90,13 @@ public class JdbcIaPrefixDAO extends JdbcDaoSupport implements IaPrefixDAO
 						ps.setInt(2, iaPrefix.getPrefixLength());
 						java.sql.Timestamp sts = 
 							new java.sql.Timestamp(iaPrefix.getStartTime().getTime());
-						ps.setTimestamp(3, sts, Util.GMT_CALENDAR);
+						ps.setTimestamp(3, sts, Util.gmtCalendar());
 						java.sql.Timestamp pts = 
 							new java.sql.Timestamp(iaPrefix.getPreferredEndTime().getTime());
-						ps.setTimestamp(4, pts, Util.GMT_CALENDAR);
+						ps.setTimestamp(4, pts, Util.gmtCalendar());
 						java.sql.Timestamp vts = 
 							new java.sql.Timestamp(iaPrefix.getValidEndTime().getTime());
-						ps.setTimestamp(5, vts, Util.GMT_CALENDAR);
+						ps.setTimestamp(5, vts, Util.gmtCalendar());
 						ps.setByte(6, iaPrefix.getState());
 						ps.setLong(7, iaPrefix.getIdentityAssocId());
 						return ps;
@@ -132,7 +132,7 @@ public class JdbcIaPrefixDAO extends JdbcDaoSupport implements IaPrefixDAO
 				Date start = iaPrefix.getStartTime();
 				if (start != null) {
 					java.sql.Timestamp sts = new java.sql.Timestamp(start.getTime());
-					ps.setTimestamp(3, sts, Util.GMT_CALENDAR);
+					ps.setTimestamp(3, sts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(3, java.sql.Types.TIMESTAMP);
@@ -140,7 +140,7 @@ public class JdbcIaPrefixDAO extends JdbcDaoSupport implements IaPrefixDAO
 				Date preferred = iaPrefix.getPreferredEndTime();
 				if (preferred != null) {
 					java.sql.Timestamp pts = new java.sql.Timestamp(preferred.getTime());
-					ps.setTimestamp(4, pts, Util.GMT_CALENDAR);
+					ps.setTimestamp(4, pts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(4, java.sql.Types.TIMESTAMP);
@@ -148,7 +148,7 @@ public class JdbcIaPrefixDAO extends JdbcDaoSupport implements IaPrefixDAO
 				Date valid = iaPrefix.getValidEndTime();
 				if (valid != null) {
 					java.sql.Timestamp vts = new java.sql.Timestamp(valid.getTime());
-					ps.setTimestamp(5, vts, Util.GMT_CALENDAR);
+					ps.setTimestamp(5, vts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(5, java.sql.Types.TIMESTAMP);
@@ -282,7 +282,7 @@ public class JdbcIaPrefixDAO extends JdbcDaoSupport implements IaPrefixDAO
             		public void setValues(PreparedStatement ps) throws SQLException {
             			ps.setByte(1, IdentityAssoc.PD_TYPE);
             			java.sql.Timestamp ts = new java.sql.Timestamp(new Date().getTime());
-            			ps.setTimestamp(2, ts, Util.GMT_CALENDAR);
+            			ps.setTimestamp(2, ts, Util.gmtCalendar());
             		}
                 },
                 new IaPrefixRowMapper());
@@ -366,9 +366,9 @@ public class JdbcIaPrefixDAO extends JdbcDaoSupport implements IaPrefixDAO
 				throw new SQLException("Unable to map ipaddress", e);
 			}
 			iaPrefix.setPrefixLength(rs.getShort("prefixlength"));
-			iaPrefix.setStartTime(rs.getTimestamp("starttime", Util.GMT_CALENDAR));
-			iaPrefix.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.GMT_CALENDAR));
-			iaPrefix.setValidEndTime(rs.getTimestamp("validendtime", Util.GMT_CALENDAR));
+			iaPrefix.setStartTime(rs.getTimestamp("starttime", Util.gmtCalendar()));
+			iaPrefix.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.gmtCalendar()));
+			iaPrefix.setValidEndTime(rs.getTimestamp("validendtime", Util.gmtCalendar()));
 			iaPrefix.setState(rs.getByte("state"));
 			iaPrefix.setIdentityAssocId(rs.getLong("identityassoc_id"));
             return iaPrefix;
@@ -32,11 +32,19 @@ import java.net.UnknownHostException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import javax.sql.DataSource;
@@ -44,11 +52,15 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.util.Util;
@@ -60,6 +72,12 @@ import com.jagornet.dhcp.server.request.binding.Range;
  * The JdbcLeaseManager implementation class for the IaManager interface.
  * This is the main database access class for handling client bindings.
  * 
+ * With the write-behind journal, the writes return their outcome from the
+ * journal, or else from the lease cache, without a query.  If neither holds
+ * the address, an insert, update or delete of the whole lease returns 1, and
+ * the batch write replaces the stored lease, if any.  The updates of some
+ * fields of a lease which neither holds are made to the stored lease at once.
+ * 
  * @author A. Gregory Rabil
  */
 public class JdbcLeaseManager extends LeaseManager
@@ -68,11 +86,34 @@ public class JdbcLeaseManager extends LeaseManager
 	
 	protected DataSource dataSource;
 	protected JdbcTemplate jdbcTemplate;
+	protected TransactionTemplate transactionTemplate;
 	
 	protected static final String LIMIT_ONE_CLAUSE = 
 			DhcpServerPolicies.globalPolicy(Property.DATABASE_SCHEMA_TYTPE).equals("jdbc-derby") ?
 					" fetch first 1 rows only" : " limit 1";
 	
+	protected static final String INSERT_DHCPLEASE_SQL = "insert into dhcplease" +
+			" (ipaddress, duid, iatype, iaid, prefixlen, state, hapeerstate," +
+			" starttime, preferredendtime, validendtime," +
+			" options, ia_options, ipaddr_options)" +
+			" values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	// the number of addresses read, and at most deleted, at a time by reconcileLeases
+	protected static final int RECONCILE_PAGE_SIZE = 1000;
+	
+	// the number of times a query merged with the write-behind journal is run
+	// before it is run while no batch can be written, see queryWithPendingLeases
+	protected static final int PENDING_QUERY_ATTEMPTS = 3;
+	
+	// the order of the unused leases, oldest first, as by the findUnusedLeases query
+	protected static final Comparator<DhcpLease> UNUSED_ORDER = 
+			Comparator.comparing(DhcpLease::getState)
+				.thenComparing(DhcpLease::getValidEndTime,
+								Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparing(DhcpLease::getIpAddress, Util::compareInetAddrs);
+	
+	protected volatile JdbcLeaseWriteBehind writeBehind;
+	
 	public DataSource getDataSource() {
 		return dataSource;
 	}
@@ -97,6 +138,229 @@ public class JdbcLeaseManager extends LeaseManager
         else {
         	DbSchemaManager.validateSchema(dataSource, DbSchemaManager.SCHEMA_V2_FILENAME, 2);
         }
+        if (DhcpServerPolicies.globalPolicyAsBoolean(Property.DATABASE_WRITE_BEHIND)) {
+        	JdbcLeaseWriteBehind wb = new JdbcLeaseWriteBehind(this,
+        			DhcpServerPolicies.globalPolicyAsInt(Property.DATABASE_WRITE_BEHIND_BATCH_SIZE),
+        			DhcpServerPolicies.globalPolicyAsLong(Property.DATABASE_WRITE_BEHIND_MAX_LATENCY));
+        	wb.start();
+        	writeBehind = wb;
+        }
+        if (useLeaseCache()) {
+        	loadLeaseCache();
+        }
+	}
+	
+	/**
+	 * Load every lease into the lease cache, unless there are more
+	 * leases than the cache can hold.
+	 */
+	@Override
+	protected void loadLeaseCache() {
+		flushWriteBehind();
+		int maxSize = leaseCache.getCache().getMaxSize();
+		Integer cnt = getJdbcTemplate().queryForObject("select count(*) from dhcplease",
+														Integer.class);
+		if ((cnt == null) || (cnt > maxSize)) {
+			log.info("Not loading " + cnt + " dhcplease objects into lease cache size=" +
+					maxSize);
+			leaseCache.setComplete(false);
+			return;
+		}
+		final ResultSetExtractor<DhcpLease> rsExtractor = new DhcpLeaseResultSetExtractor();
+		getJdbcTemplate().query("select * from dhcplease", 
+				(RowCallbackHandler) rs -> leaseCache.putLease(rsExtractor.extractData(rs)));
+		leaseCache.setComplete(true);
+		log.info("Loaded " + cnt + " dhcplease objects into lease cache");
+	}
+	
+	// Spring bean destroy-method
+	public void close() {
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			// writes still go through the closed journal, which writes
+			// them immediately, so they are ordered after the drain
+			wb.close();
+		}
+	}
+	
+	/**
+	 * Write any leases pending in the write-behind journal, so that
+	 * a query of the database sees them.
+	 */
+	protected void flushWriteBehind() {
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if ((wb != null) && (wb.size() > 0)) {
+			wb.flush();
+		}
+	}
+	
+	/**
+	 * Write any leases pending in the write-behind journal for the
+	 * IP addresses in a range, so that a query of the range sees them.
+	 */
+	protected void flushWriteBehind(InetAddress startAddr, InetAddress endAddr) {
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if ((wb != null) && (wb.size() > 0)) {
+			wb.flush(startAddr, endAddr);
+		}
+	}
+	
+	/**
+	 * Find the lease for an IP address in the write-behind journal, or else
+	 * in the lease cache, to know whether the lease exists without a query.
+	 * 
+	 * @return the known state, which has a null lease if the lease is known
+	 * 			to be deleted, or null if the state is not known without a query
+	 */
+	protected JdbcLeaseWriteBehind.PendingLease findKnownLease(JdbcLeaseWriteBehind wb,
+															  InetAddress inetAddr) {
+		JdbcLeaseWriteBehind.PendingLease known = wb.getPending(inetAddr);
+		if ((known == null) && useLeaseCache()) {
+			DhcpLease lease = leaseCache.getLease(inetAddr);
+			if (lease != null) {
+				known = new JdbcLeaseWriteBehind.PendingLease(lease);
+			}
+		}
+		return known;
+	}
+	
+	/**
+	 * Change the lease for an IP address in the write-behind journal, if it
+	 * is pending there, or else a copy of the cached lease, if it is cached.
+	 * 
+	 * @param change the change to the lease
+	 * @return the number of leases changed, or -1 if the lease is not known
+	 * 			without a query, so the stored lease must be changed instead
+	 */
+	protected int updateKnownLease(JdbcLeaseWriteBehind wb, InetAddress inetAddr,
+								   Consumer<DhcpLease> change) {
+		JdbcLeaseWriteBehind.PendingLease updated = wb.updatePending(inetAddr, change);
+		if (updated != null) {
+			return (updated.getLease() != null) ? 1 : 0;
+		}
+		if (useLeaseCache()) {
+			DhcpLease lease = leaseCache.getLease(inetAddr);
+			if (lease != null) {
+				lease = lease.clone();
+				change.accept(lease);
+				wb.putLease(lease);
+				return 1;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Get the leases pending in the write-behind journal for the IP addresses
+	 * in a range, to be merged with the result of a query of the range.  The
+	 * pending leases must be taken before the query, because a pending lease
+	 * is only removed from the journal after it is written.
+	 * 
+	 * @return the pending leases, or null if none are pending in the range
+	 */
+	protected Map<InetAddress, JdbcLeaseWriteBehind.PendingLease> getPendingLeases(
+											InetAddress startAddr, InetAddress endAddr) {
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if ((wb != null) && (wb.size() > 0)) {
+			Map<InetAddress, JdbcLeaseWriteBehind.PendingLease> pendingLeases =
+					wb.getPendingSnapshot(startAddr, endAddr);
+			if (!pendingLeases.isEmpty()) {
+				return pendingLeases;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Replace the leases of a query result with any pending changes, and add
+	 * any pending leases which match the query.
+	 * 
+	 * @param leases the leases found by the query
+	 * @param pendingLeases the pending leases taken before the query
+	 * @param filter the query condition
+	 */
+	protected void mergePendingLeases(List<DhcpLease> leases,
+			Map<InetAddress, JdbcLeaseWriteBehind.PendingLease> pendingLeases,
+			Predicate<DhcpLease> filter) {
+		leases.removeIf(l -> pendingLeases.containsKey(l.getIpAddress()));
+		for (JdbcLeaseWriteBehind.PendingLease pending : pendingLeases.values()) {
+			DhcpLease lease = pending.getLease();
+			if ((lease != null) && filter.test(lease)) {
+				leases.add(lease.clone());
+			}
+		}
+	}
+	
+	/**
+	 * Run a query, and merge the leases pending in the write-behind journal
+	 * which match the query.  The matching pending leases are found by the
+	 * given function, so that the whole journal is never copied, and each
+	 * lease found by the query which has a pending change is replaced by
+	 * the pending lease, if it still matches, or else dropped.  A batch
+	 * written while the query runs may have been read from the database
+	 * before it was written, and then removed from the journal before it
+	 * was merged, so then the query is run again, and the last attempt
+	 * is run while no batch can be written.
+	 * 
+	 * @param query the query of the database
+	 * @param pendingMatches finds the pending leases which match the query
+	 * @param filter the query condition
+	 * @param order the order of the query result
+	 * @return the leases
+	 */
+	protected List<DhcpLease> queryWithPendingLeases(Supplier<List<DhcpLease>> query,
+			Function<JdbcLeaseWriteBehind, Map<InetAddress, DhcpLease>> pendingMatches,
+			Predicate<DhcpLease> filter, Comparator<DhcpLease> order) {
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if ((wb == null) || (wb.size() == 0)) {
+			return query.get();
+		}
+		for (int attempt = 1; attempt < PENDING_QUERY_ATTEMPTS; attempt++) {
+			long writeCount = wb.getWriteCount();
+			List<DhcpLease> leases = mergePendingLeases(wb, query.get(), 
+					pendingMatches.apply(wb), filter, order);
+			if (wb.getWriteCount() == writeCount) {
+				return leases;
+			}
+		}
+		return wb.queryWithoutWrites(() -> mergePendingLeases(wb, query.get(), 
+				pendingMatches.apply(wb), filter, order));
+	}
+	
+	private List<DhcpLease> mergePendingLeases(JdbcLeaseWriteBehind wb, List<DhcpLease> leases,
+			Map<InetAddress, DhcpLease> pendingMatches, Predicate<DhcpLease> filter,
+			Comparator<DhcpLease> order) {
+		boolean merged = !pendingMatches.isEmpty();
+		ListIterator<DhcpLease> iter = leases.listIterator();
+		while (iter.hasNext()) {
+			InetAddress inetAddr = iter.next().getIpAddress();
+			DhcpLease lease = pendingMatches.remove(inetAddr);
+			if (lease == null) {
+				JdbcLeaseWriteBehind.PendingLease pending = wb.getPending(inetAddr);
+				if (pending == null) {
+					continue;
+				}
+				// changed since the matches were found, or no longer matches
+				lease = pending.getLease();
+				if ((lease != null) && !filter.test(lease)) {
+					lease = null;
+				}
+			}
+			merged = true;
+			if (lease != null) {
+				iter.set(lease.clone());
+			}
+			else {
+				iter.remove();
+			}
+		}
+		for (DhcpLease lease : pendingMatches.values()) {
+			leases.add(lease.clone());
+		}
+		if (merged) {
+			leases.sort(order);
+		}
+		return leases;
 	}
 	
 	/**
@@ -106,59 +370,217 @@ public class JdbcLeaseManager extends LeaseManager
 	 */
 	public int insertDhcpLease(final DhcpLease lease)
 	{
-		int cnt = getJdbcTemplate().update("insert into dhcplease" +
-				" (ipaddress, duid, iatype, iaid, prefixlen, state, hapeerstate," +
-				" starttime, preferredendtime, validendtime," +
-				" options, ia_options, ipaddr_options)" +
-				" values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			JdbcLeaseWriteBehind.PendingLease known = findKnownLease(wb, lease.getIpAddress());
+			if ((known != null) && (known.getLease() != null)) {
+				// the same outcome as the primary key violation of the insert
+				throw new DuplicateKeyException("Lease exists for IP=" + 
+						lease.getIpAddress().getHostAddress());
+			}
+			wb.putLease(lease);
+			return 1;
+		}
+		int cnt = getJdbcTemplate().update(INSERT_DHCPLEASE_SQL,
 				new PreparedStatementSetter() {
 			@Override
 			public void setValues(PreparedStatement ps)
 					throws SQLException {
-				int i = 1;
-				ps.setBytes(i++, lease.getIpAddress().getAddress());
-				ps.setBytes(i++, lease.getDuid());
-				ps.setByte(i++, lease.getIatype());
-				ps.setLong(i++, lease.getIaid());
-				ps.setShort(i++, lease.getPrefixLength());
-				ps.setByte(i++, lease.getState());
-				ps.setByte(i++, lease.getHaPeerState());
-				if (lease.getStartTime() != null) {
-					java.sql.Timestamp sts = 
-							new java.sql.Timestamp(lease.getStartTime().getTime());
-					ps.setTimestamp(i++, sts, Util.GMT_CALENDAR);
-				}
-				else {
-					ps.setNull(i++, java.sql.Types.TIMESTAMP);
-				}
-				if (lease.getPreferredEndTime() != null) {
-					java.sql.Timestamp pts =
-							new java.sql.Timestamp(lease.getPreferredEndTime().getTime());
-					ps.setTimestamp(i++, pts, Util.GMT_CALENDAR);
-				}
-				else {
-					ps.setNull(i++, java.sql.Types.TIMESTAMP);
-				}
-				if (lease.getValidEndTime() != null) {
-					java.sql.Timestamp vts = 
-						new java.sql.Timestamp(lease.getValidEndTime().getTime());
-					ps.setTimestamp(i++, vts, Util.GMT_CALENDAR);
+				setInsertValues(ps, lease);
+			}
+		});
+		log.debug("Inserted " + cnt + " dhcplease objects");
+		return cnt;
+	}
+	
+	/**
+	 * Set the parameters of the insert statement for a lease.
+	 */
+	protected void setInsertValues(PreparedStatement ps, DhcpLease lease)
+			throws SQLException
+	{
+		int i = 1;
+		ps.setBytes(i++, lease.getIpAddress().getAddress());
+		ps.setBytes(i++, lease.getDuid());
+		ps.setByte(i++, lease.getIatype());
+		ps.setLong(i++, lease.getIaid());
+		ps.setShort(i++, lease.getPrefixLength());
+		ps.setByte(i++, lease.getState());
+		ps.setByte(i++, lease.getHaPeerState());
+		if (lease.getStartTime() != null) {
+			java.sql.Timestamp sts = 
+					new java.sql.Timestamp(lease.getStartTime().getTime());
+			ps.setTimestamp(i++, sts, Util.gmtCalendar());
+		}
+		else {
+			ps.setNull(i++, java.sql.Types.TIMESTAMP);
+		}
+		if (lease.getPreferredEndTime() != null) {
+			java.sql.Timestamp pts =
+					new java.sql.Timestamp(lease.getPreferredEndTime().getTime());
+			ps.setTimestamp(i++, pts, Util.gmtCalendar());
+		}
+		else {
+			ps.setNull(i++, java.sql.Types.TIMESTAMP);
+		}
+		if (lease.getValidEndTime() != null) {
+			java.sql.Timestamp vts = 
+				new java.sql.Timestamp(lease.getValidEndTime().getTime());
+			ps.setTimestamp(i++, vts, Util.gmtCalendar());
+		}
+		else {
+			ps.setNull(i++, java.sql.Types.TIMESTAMP);
+		}
+		ps.setBytes(i++, encodeOptions(lease.getDhcpOptions(),
+					(lease.getIatype() == IdentityAssoc.V4_TYPE)));
+		ps.setBytes(i++, encodeOptions(lease.getIaDhcpOptions(),
+					(lease.getIatype() == IdentityAssoc.V4_TYPE)));
+		ps.setBytes(i++, encodeOptions(lease.getIaAddrDhcpOptions(),
+					(lease.getIatype() == IdentityAssoc.V4_TYPE)));
+	}
+	
+	/**
+	 * Write a batch of leases from the write-behind journal.  All of the
+	 * given addresses are deleted, and the given leases inserted, so the
+	 * result is the same whether or not each lease already existed.
+	 * Must be called within a transaction.
+	 *
+	 * @param inetAddrs the addresses of all leases in the batch
+	 * @param leases the leases to insert, which excludes pending deletes
+	 */
+	protected void writeDhcpLeases(final List<InetAddress> inetAddrs,
+								   final List<DhcpLease> leases)
+	{
+		getJdbcTemplate().batchUpdate("delete from dhcplease where ipaddress=?",
+				new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				ps.setBytes(1, inetAddrs.get(i).getAddress());
+			}
+			@Override
+			public int getBatchSize() {
+				return inetAddrs.size();
+			}
+		});
+		if (!leases.isEmpty()) {
+			getJdbcTemplate().batchUpdate(INSERT_DHCPLEASE_SQL,
+					new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					setInsertValues(ps, leases.get(i));
 				}
-				else {
-					ps.setNull(i++, java.sql.Types.TIMESTAMP);
+				@Override
+				public int getBatchSize() {
+					return leases.size();
 				}
-				ps.setBytes(i++, encodeOptions(lease.getDhcpOptions(),
-							(lease.getIatype() == IdentityAssoc.V4_TYPE)));
-				ps.setBytes(i++, encodeOptions(lease.getIaDhcpOptions(),
-							(lease.getIatype() == IdentityAssoc.V4_TYPE)));
-				ps.setBytes(i++, encodeOptions(lease.getIaAddrDhcpOptions(),
-							(lease.getIatype() == IdentityAssoc.V4_TYPE)));
+			});
+		}
+	}
+	
+	/**
+	 * Store a batch of leases in one transaction, with one batched
+	 * delete and one batched insert, instead of a find and an insert
+	 * or update per lease.
+	 */
+	@Override
+	public int upsertDhcpLeases(final List<DhcpLease> leases)
+	{
+		if (leases.isEmpty()) {
+			return 0;
+		}
+		if (writeBehind != null) {
+			for (DhcpLease lease : leases) {
+				writeBehind.putLease(lease);
+				cacheDhcpLease(lease);
+			}
+			return leases.size();
+		}
+		final List<InetAddress> inetAddrs = new ArrayList<InetAddress>(leases.size());
+		for (DhcpLease lease : leases) {
+			inetAddrs.add(lease.getIpAddress());
+		}
+		getTransactionTemplate().executeWithoutResult(status -> 
+				writeDhcpLeases(inetAddrs, leases));
+		for (DhcpLease lease : leases) {
+			cacheDhcpLease(lease);
+		}
+		log.debug("Upserted " + leases.size() + " dhcplease objects");
+		return leases.size();
+	}
+	
+	/**
+	 * Mark a batch of leases as synced with one batched update.
+	 */
+	@Override
+	public int setLeasesSynced(final List<DhcpLease> leases)
+	{
+		if (leases.isEmpty()) {
+			return 0;
+		}
+		if (writeBehind != null) {
+			// the pending lease, if any, must be the one updated
+			return super.setLeasesSynced(leases);
+		}
+		int[] counts = getJdbcTemplate().batchUpdate("update dhcplease" +
+				" set hapeerstate=state" +
+				" where ipaddress=? and state=?",
+				new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				ps.setBytes(1, leases.get(i).getIpAddress().getAddress());
+				ps.setByte(2, leases.get(i).getState());
+			}
+			@Override
+			public int getBatchSize() {
+				return leases.size();
 			}
 		});
-		log.debug("Inserted " + cnt + " dhcplease objects");
+		int cnt = 0;
+		for (int i=0; i<counts.length; i++) {
+			// some drivers do not report the count of a batched statement
+			boolean synced = (counts[i] > 0) || (counts[i] == Statement.SUCCESS_NO_INFO);
+			if (synced) {
+				cnt++;
+			}
+			if (useLeaseCache()) {
+				syncCachedLease(leases.get(i), synced);
+			}
+		}
+		log.debug("Marked " + cnt + " dhcplease objects as synced");
 		return cnt;
 	}
 	
+	/**
+	 * Apply the result of marking a lease as synced to a copy of the cached
+	 * lease, if it is cached, or else evict the cached lease if it does not
+	 * agree with the result, because then the stored lease has changed.
+	 * 
+	 * @param lease the lease stored by the peer
+	 * @param synced true if the stored lease was marked as synced
+	 */
+	protected void syncCachedLease(DhcpLease lease, boolean synced) {
+		DhcpLease cached = leaseCache.getLease(lease.getIpAddress());
+		if (cached == null) {
+			return;
+		}
+		if (synced && (cached.getState() == lease.getState())) {
+			cached = cached.clone();
+			cached.setHaPeerState(cached.getState());
+			leaseCache.putLease(cached);
+		}
+		else if (synced || (cached.getState() == lease.getState())) {
+			leaseCache.removeLease(lease.getIpAddress());
+		}
+	}
+	
+	protected TransactionTemplate getTransactionTemplate() {
+		if (transactionTemplate == null) {
+			transactionTemplate = new TransactionTemplate(
+					new DataSourceTransactionManager(dataSource));
+		}
+		return transactionTemplate;
+	}
+	
 	/**
 	 * Update dhcp lease.
 	 *
@@ -166,6 +588,15 @@ public class JdbcLeaseManager extends LeaseManager
 	 */
 	public int updateDhcpLease(final DhcpLease lease)
 	{
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			JdbcLeaseWriteBehind.PendingLease known = findKnownLease(wb, lease.getIpAddress());
+			if ((known != null) && (known.getLease() == null)) {
+				return 0;
+			}
+			wb.putLease(lease);
+			return 1;
+		}
 		int cnt = getJdbcTemplate().update("update dhcplease" +
 				" set state=?," +
 				" hapeerstate=?," +
@@ -186,7 +617,7 @@ public class JdbcLeaseManager extends LeaseManager
 				if (lease.getStartTime() != null) {
 					java.sql.Timestamp sts = 
 							new java.sql.Timestamp(lease.getStartTime().getTime());
-					ps.setTimestamp(i++, sts, Util.GMT_CALENDAR);
+					ps.setTimestamp(i++, sts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(i++, java.sql.Types.TIMESTAMP);
@@ -194,7 +625,7 @@ public class JdbcLeaseManager extends LeaseManager
 				if (lease.getPreferredEndTime() != null) {
 					java.sql.Timestamp pts =
 							new java.sql.Timestamp(lease.getPreferredEndTime().getTime());
-					ps.setTimestamp(i++, pts, Util.GMT_CALENDAR);
+					ps.setTimestamp(i++, pts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(i++, java.sql.Types.TIMESTAMP);
@@ -202,7 +633,7 @@ public class JdbcLeaseManager extends LeaseManager
 				if (lease.getValidEndTime() != null) {
 					java.sql.Timestamp vts = 
 						new java.sql.Timestamp(lease.getValidEndTime().getTime());
-					ps.setTimestamp(i++, vts, Util.GMT_CALENDAR);
+					ps.setTimestamp(i++, vts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(i++, java.sql.Types.TIMESTAMP);
@@ -227,6 +658,15 @@ public class JdbcLeaseManager extends LeaseManager
 	 */
 	public int deleteDhcpLease(final DhcpLease lease)
 	{
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			JdbcLeaseWriteBehind.PendingLease known = findKnownLease(wb, lease.getIpAddress());
+			if ((known != null) && (known.getLease() == null)) {
+				return 0;
+			}
+			wb.deleteLease(lease.getIpAddress());
+			return 1;
+		}
 		int cnt = getJdbcTemplate().update("delete from dhcplease" +
 				" where ipaddress=?",
 				new PreparedStatementSetter() {
@@ -246,6 +686,13 @@ public class JdbcLeaseManager extends LeaseManager
 	public int updateIaOptions(final InetAddress inetAddr, 
 							   final Collection<DhcpOption> iaOptions)
 	{
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			int cnt = updateKnownLease(wb, inetAddr, lease -> lease.setIaDhcpOptions(iaOptions));
+			if (cnt >= 0) {
+				return cnt;
+			}
+		}
 		int cnt = getJdbcTemplate().update("update dhcplease" +
 				" set ia_options=?" +
 				" where ipaddress=?",
@@ -268,6 +715,14 @@ public class JdbcLeaseManager extends LeaseManager
 	public int updateIpAddrOptions(final InetAddress inetAddr,
 								   final Collection<DhcpOption> ipAddrOptions)
 	{
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			int cnt = updateKnownLease(wb, inetAddr, 
+					lease -> lease.setIaAddrDhcpOptions(ipAddrOptions));
+			if (cnt >= 0) {
+				return cnt;
+			}
+		}
 		int cnt = getJdbcTemplate().update("update dhcplease" +
 				" set ipaddr_options=?" +
 				" where ipaddress=?",
@@ -294,7 +749,7 @@ public class JdbcLeaseManager extends LeaseManager
 	 */
 	public List<DhcpLease> findDhcpLeasesForIA(final byte[] duid, final byte iatype, final long iaid)
 	{
-		return getJdbcTemplate().query(
+		return queryWithPendingLeases(() -> getJdbcTemplate().query(
                 "select * from dhcplease" +
                 " where duid = ?" +
                 " and iatype = ?" +
@@ -308,7 +763,11 @@ public class JdbcLeaseManager extends LeaseManager
             			ps.setLong(3, iaid);
             		}
             	},
-                new DhcpLeaseRowMapper());
+                new DhcpLeaseRowMapper()),
+				wb -> wb.getPendingLeases(duid, iatype, iaid),
+				lease -> ((lease.getIatype() == iatype) && (lease.getIaid() == iaid) &&
+							Arrays.equals(lease.getDuid(), duid)),
+				(l1, l2) -> Util.compareInetAddrs(l1.getIpAddress(), l2.getIpAddress()));
 	}
 
 	/**
@@ -319,6 +778,13 @@ public class JdbcLeaseManager extends LeaseManager
 	 */
 	public DhcpLease findDhcpLeaseForInetAddr(final InetAddress inetAddr)
 	{
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			JdbcLeaseWriteBehind.PendingLease pending = wb.getPending(inetAddr);
+			if (pending != null) {
+				return (pending.getLease() != null) ? pending.getLease().clone() : null;
+			}
+		}
         List<DhcpLease> leases = getJdbcTemplate().query(
                 "select * from dhcplease" +
                 " where ipaddress = ?",
@@ -348,6 +814,23 @@ public class JdbcLeaseManager extends LeaseManager
 							   final byte state, final byte haPeerState, final short prefixlen,
 							   final Date start, final Date preferred, final Date valid,
 							   Collection<DhcpOption> ipAddrOptions) {
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			int cnt = updateKnownLease(wb, inetAddr, lease -> {
+				lease.setState(state);
+				lease.setHaPeerState(haPeerState);
+				if (prefixlen > 0) {
+					lease.setPrefixLength(prefixlen);
+				}
+				lease.setStartTime(start);
+				lease.setPreferredEndTime(preferred);
+				lease.setValidEndTime(valid);
+				lease.setIaAddrDhcpOptions(ipAddrOptions);
+			});
+			if (cnt >= 0) {
+				return cnt;
+			}
+		}
 		int cnt = getJdbcTemplate().update("update dhcplease" +
 				" set state = ?," +
 				" hapeerstate = ?," +
@@ -368,21 +851,21 @@ public class JdbcLeaseManager extends LeaseManager
 				}
 				if (start != null) {
 					java.sql.Timestamp sts = new java.sql.Timestamp(start.getTime());
-					ps.setTimestamp(i++, sts, Util.GMT_CALENDAR);
+					ps.setTimestamp(i++, sts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(i++, java.sql.Types.TIMESTAMP);
 				}
 				if (preferred != null) {
 					java.sql.Timestamp pts = new java.sql.Timestamp(preferred.getTime());
-					ps.setTimestamp(i++, pts, Util.GMT_CALENDAR);
+					ps.setTimestamp(i++, pts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(i++, java.sql.Types.TIMESTAMP);
 				}
 				if (valid != null) {
 					java.sql.Timestamp vts = new java.sql.Timestamp(valid.getTime());
-					ps.setTimestamp(i++, vts, Util.GMT_CALENDAR);
+					ps.setTimestamp(i++, vts, Util.gmtCalendar());
 				}
 				else {
 					ps.setNull(i++, java.sql.Types.TIMESTAMP);
@@ -399,6 +882,17 @@ public class JdbcLeaseManager extends LeaseManager
 	@Override
 	public int deleteIpAddress(final InetAddress inetAddr)
 	{
+		JdbcLeaseWriteBehind wb = writeBehind;
+		if (wb != null) {
+			JdbcLeaseWriteBehind.PendingLease known = findKnownLease(wb, inetAddr);
+			if (known != null) {
+				if (known.getLease() == null) {
+					return 0;
+				}
+				wb.deleteLease(inetAddr);
+				return 1;
+			}
+		}
 		int cnt = getJdbcTemplate().update("delete from dhcplease" +
 				" where ipaddress = ?",
 				new PreparedStatementSetter() {
@@ -415,6 +909,7 @@ public class JdbcLeaseManager extends LeaseManager
 	public List<InetAddress> findExistingLeaseIPs(final InetAddress startAddr, 
 													final InetAddress endAddr)
 	{
+		flushWriteBehind(startAddr, endAddr);
         return getJdbcTemplate().query(
                 "select ipaddress from dhcplease" +
                 " where ipaddress >= ? and ipaddress <= ?" +
@@ -447,6 +942,7 @@ public class JdbcLeaseManager extends LeaseManager
 									 final InetAddress endAddr,
 									 InetAddressCallbackHandler inetAddressCallbackHandler)
 	{
+		flushWriteBehind(startAddr, endAddr);
         getJdbcTemplate().query(
                 "select ipaddress from dhcplease" +
                 " where ipaddress >= ? and ipaddress <= ?" +
@@ -479,6 +975,7 @@ public class JdbcLeaseManager extends LeaseManager
 								   final InetAddress endAddr,
 								   DhcpLeaseCallbackHandler dhcpLeaseCallbackHandler)
 	{
+		flushWriteBehind(startAddr, endAddr);
         getJdbcTemplate().query(
                 "select * from dhcplease" +
                 " where ipaddress >= ? and ipaddress <= ?" +
@@ -512,6 +1009,7 @@ public class JdbcLeaseManager extends LeaseManager
 								   final InetAddress endAddr,
 								   DhcpLeaseCallbackHandler dhcpLeaseCallbackHandler)
 	{
+		flushWriteBehind(startAddr, endAddr);
         getJdbcTemplate().query(
                 "select * from dhcplease" +
                 " where hapeerstate = " + IaAddress.UNKNOWN +
@@ -544,6 +1042,7 @@ public class JdbcLeaseManager extends LeaseManager
 	public Stream<DhcpLease> findExistingLeases(final InetAddress startAddr, 
 												final InetAddress endAddr) {
 
+		flushWriteBehind(startAddr, endAddr);
 		return getJdbcTemplate().queryForStream(
 			"select * from dhcplease" +
 			" where ipaddress >= ? and ipaddress <= ?" +
@@ -561,6 +1060,7 @@ public class JdbcLeaseManager extends LeaseManager
 
 	public Stream<DhcpLease> findUnsyncedLeases(final Inet4Address startAddr,
 												final Inet4Address endAddr) {
+		flushWriteBehind(startAddr, endAddr);
 		return getJdbcTemplate().queryForStream(
 			"select * from dhcplease" +
 			" where hapeerstate = " + IaAddress.UNKNOWN +
@@ -579,6 +1079,7 @@ public class JdbcLeaseManager extends LeaseManager
 	
 	@Override
 	public int setAllLeasesUnsynced() {
+		flushWriteBehind();
 		return getJdbcTemplate().update("update dhcplease" +
 								 		" set hapeerstate=" + IaAddress.UNKNOWN);
 	}
@@ -587,6 +1088,8 @@ public class JdbcLeaseManager extends LeaseManager
 	public List<DhcpLease> findUnusedLeases(final InetAddress startAddr, final InetAddress endAddr)
 	{
 		final long offerExpiration = new Date().getTime() - offerExpireMillis;
+		Map<InetAddress, JdbcLeaseWriteBehind.PendingLease> pendingLeases = 
+				getPendingLeases(startAddr, endAddr);
         List<DhcpLease> leases = getJdbcTemplate().query(
                 "select * from dhcplease" +
                 " where ((state=" + IaAddress.AVAILABLE + ")" +
@@ -598,12 +1101,17 @@ public class JdbcLeaseManager extends LeaseManager
 					@Override
 					public void setValues(PreparedStatement ps) throws SQLException {
 						java.sql.Timestamp ts = new java.sql.Timestamp(offerExpiration);
-						ps.setTimestamp(1, ts, Util.GMT_CALENDAR);
+						ps.setTimestamp(1, ts, Util.gmtCalendar());
 						ps.setBytes(2, startAddr.getAddress());
 						ps.setBytes(3, endAddr.getAddress());
 					}                	
                 },
                 new DhcpLeaseRowMapper());
+		if (pendingLeases != null) {
+			mergePendingLeases(leases, pendingLeases, 
+					lease -> lease.isAvailable(offerExpiration));
+			leases.sort(UNUSED_ORDER);
+		}
 		log.debug("Found " + leases.size() + " unused dhcplease objects");
 		return leases;
 	}
@@ -624,7 +1132,7 @@ public class JdbcLeaseManager extends LeaseManager
 					@Override
 					public void setValues(PreparedStatement ps) throws SQLException {
 						java.sql.Timestamp ts = new java.sql.Timestamp(offerExpiration);
-						ps.setTimestamp(1, ts, Util.GMT_CALENDAR);
+						ps.setTimestamp(1, ts, Util.gmtCalendar());
 						ps.setBytes(2, startAddr.getAddress());
 						ps.setBytes(3, endAddr.getAddress());
 					}                	
@@ -637,6 +1145,35 @@ public class JdbcLeaseManager extends LeaseManager
 	}
 	*/
 	public DhcpLease findUnusedLease(InetAddress startAddr, InetAddress endAddr) {
+		Map<InetAddress, JdbcLeaseWriteBehind.PendingLease> pendingLeases = 
+				getPendingLeases(startAddr, endAddr);
+		if (pendingLeases == null) {
+			return queryUnusedLease(startAddr, endAddr);
+		}
+		// prefer an address just made available, which is still pending,
+		// taking the oldest, in the same order as findUnusedLeases
+		DhcpLease oldest = null;
+		for (JdbcLeaseWriteBehind.PendingLease pending : pendingLeases.values()) {
+			DhcpLease lease = pending.getLease();
+			if ((lease != null) && (lease.getState() == IaAddress.AVAILABLE) &&
+					((oldest == null) || (UNUSED_ORDER.compare(lease, oldest) < 0))) {
+				oldest = lease;
+			}
+		}
+		if (oldest != null) {
+			return oldest.clone();
+		}
+		DhcpLease lease = queryUnusedLease(startAddr, endAddr);
+		if ((lease != null) && pendingLeases.containsKey(lease.getIpAddress())) {
+			// the stored lease has a pending change, so write
+			// the pending leases of the range and query again
+			flushWriteBehind(startAddr, endAddr);
+			lease = queryUnusedLease(startAddr, endAddr);
+		}
+		return lease;
+	}
+	
+	protected DhcpLease queryUnusedLease(InetAddress startAddr, InetAddress endAddr) {
         List<DhcpLease> leases = getJdbcTemplate().query(
                 "select * from dhcplease" +
                 " where state=" + IaAddress.AVAILABLE +
@@ -669,7 +1206,7 @@ public class JdbcLeaseManager extends LeaseManager
 					@Override
 					public void setValues(PreparedStatement ps) throws SQLException {
 						java.sql.Timestamp ts = new java.sql.Timestamp(offerExpiration);
-						ps.setTimestamp(1, ts, Util.GMT_CALENDAR);
+						ps.setTimestamp(1, ts, Util.gmtCalendar());
 						ps.setBytes(2, startAddr.getAddress());
 						ps.setBytes(3, endAddr.getAddress());
 					}                	
@@ -682,7 +1219,13 @@ public class JdbcLeaseManager extends LeaseManager
 	}
 	
 	public List<DhcpLease> findExpiredLeases(final byte iatype) {
-        return getJdbcTemplate().query(
+		final long now = new Date().getTime();
+		final Predicate<DhcpLease> expired = 
+				lease -> ((lease.getIatype() == iatype) &&
+							(lease.getState() == IaAddress.LEASED) &&
+							(lease.getValidEndTime() != null) &&
+							(lease.getValidEndTime().getTime() < now));
+		return queryWithPendingLeases(() -> getJdbcTemplate().query(
                 "select * from dhcplease" +
                 " where iatype = ?" +
                 " and state = " + IaAddress.LEASED +
@@ -692,31 +1235,83 @@ public class JdbcLeaseManager extends LeaseManager
             		@Override
             		public void setValues(PreparedStatement ps) throws SQLException {
             			ps.setByte(1, iatype);
-            			java.sql.Timestamp ts = new java.sql.Timestamp(new Date().getTime());
-            			ps.setTimestamp(2, ts, Util.GMT_CALENDAR);
+            			java.sql.Timestamp ts = new java.sql.Timestamp(now);
+            			ps.setTimestamp(2, ts, Util.gmtCalendar());
             		}
                 },
-                new DhcpLeaseRowMapper());
+                new DhcpLeaseRowMapper()),
+				wb -> wb.getPendingLeases(expired),
+				expired,
+				Comparator.comparing(DhcpLease::getValidEndTime));
 	}
 	
+	/**
+	 * Delete the leases for IPs outside all of the given ranges.  The leases
+	 * are scanned in address order, one page of addresses at a time, and the
+	 * addresses of each page which are not in any range are deleted in one
+	 * batch.  This replaces one delete statement with a "not between" clause
+	 * per range, which can be too large to parse for thousands of pools.
+	 */
 	@Override
 	public void reconcileLeases(final List<Range> ranges) {
-		// TODO: what if the query string is huge?
-		List<byte[]> args = new ArrayList<>();
-		StringBuilder query = new StringBuilder();
-		query.append("delete from dhcplease where ipaddress");
-		Iterator<Range> rangeIter = ranges.iterator();
-		while (rangeIter.hasNext()) {
-			Range range = rangeIter.next();
-			query.append(" not between ? and ?");
-			args.add(range.getStartAddress().getAddress());
-			args.add(range.getEndAddress().getAddress());
-			if (rangeIter.hasNext())
-				query.append(" and ipaddress");
-		}
-		int cnt = getJdbcTemplate().update(query.toString(), args.toArray());
-		log.info("Deleted " + cnt + " dhcplease objects by reconciling on configured pool ranges");		
-		
+		long start = System.currentTimeMillis();
+		RangeIndex rangeIndex = new RangeIndex(ranges);
+		flushWriteBehind();
+		JdbcTemplate pageTemplate = new JdbcTemplate(getDataSource());
+		pageTemplate.setMaxRows(RECONCILE_PAGE_SIZE);
+		final List<InetAddress> outOfRange = new ArrayList<>();
+		long scanned = 0;
+		int cnt = 0;
+		byte[] lastAddr = null;
+		while (true) {
+			List<byte[]> page;
+			if (lastAddr == null) {
+				page = pageTemplate.queryForList(
+						"select ipaddress from dhcplease order by ipaddress", byte[].class);
+			}
+			else {
+				page = pageTemplate.queryForList(
+						"select ipaddress from dhcplease where ipaddress > ? order by ipaddress",
+						byte[].class, lastAddr);
+			}
+			if (page.isEmpty()) {
+				break;
+			}
+			scanned += page.size();
+			outOfRange.clear();
+			for (byte[] addr : page) {
+				try {
+					InetAddress inetAddr = InetAddress.getByAddress(addr);
+					if (!rangeIndex.contains(inetAddr)) {
+						outOfRange.add(inetAddr);
+					}
+				}
+				catch (UnknownHostException ex) {
+					log.error("Invalid ipaddress in dhcplease: " + Util.toHexString(addr));
+				}
+			}
+			if (!outOfRange.isEmpty()) {
+				getJdbcTemplate().batchUpdate("delete from dhcplease where ipaddress=?",
+						new BatchPreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps, int i) throws SQLException {
+						ps.setBytes(1, outOfRange.get(i).getAddress());
+					}
+					@Override
+					public int getBatchSize() {
+						return outOfRange.size();
+					}
+				});
+				cnt += outOfRange.size();
+			}
+			if (page.size() < RECONCILE_PAGE_SIZE) {
+				break;
+			}
+			lastAddr = page.get(page.size() - 1);
+		}
+		log.info("Deleted " + cnt + " of " + scanned + 
+				" dhcplease objects by reconciling on " + ranges.size() + 
+				" configured pool ranges in " + (System.currentTimeMillis() - start) + "ms");
 	}
 
     /**
@@ -760,9 +1355,9 @@ public class JdbcLeaseManager extends LeaseManager
         	lease.setPrefixLength(rs.getShort("prefixlen"));
 			lease.setState(rs.getByte("state"));
 			lease.setHaPeerState(rs.getByte("hapeerstate"));
-			lease.setStartTime(rs.getTimestamp("starttime", Util.GMT_CALENDAR));
-			lease.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.GMT_CALENDAR));
-			lease.setValidEndTime(rs.getTimestamp("validendtime", Util.GMT_CALENDAR));
+			lease.setStartTime(rs.getTimestamp("starttime", Util.gmtCalendar()));
+			lease.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.gmtCalendar()));
+			lease.setValidEndTime(rs.getTimestamp("validendtime", Util.gmtCalendar()));
 			lease.setDhcpOptions(
 					decodeOptions("options", rs.getBytes("options"), 
 								(lease.getIatype() == IdentityAssoc.V4_TYPE)));
@@ -781,6 +1376,7 @@ public class JdbcLeaseManager extends LeaseManager
 	 */
     @Override
 	public int deleteAllLeases() {
+		flushWriteBehind();
 		int cnt = getJdbcTemplate().update("delete from dhcplease");
 		log.info("Deleted all " + cnt + " dhcpleases");
 		return cnt;
@@ -0,0 +1,604 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file JdbcLeaseWriteBehind.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.db;
+
+import java.net.InetAddress;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jagornet.dhcp.core.util.Util;
+
+/**
+ * Title: JdbcLeaseWriteBehind
+ * Description: The write-behind journal for the JdbcLeaseManager.  Lease
+ * writes are recorded in memory, coalesced so that only the latest state
+ * of each IP address is kept, and written to the database in batches by
+ * a dedicated writer thread.  A batch is written when the journal holds
+ * batchSize addresses, or after maxLatency milliseconds, whichever is
+ * first.  Because writes are coalesced per address, the journal can never
+ * hold more entries than there are addresses in the configured pools.
+ * The pending leases are also indexed by IA, so that a lookup of the
+ * leases of one IA only reads the pending leases of that IA.  If a batch
+ * fails, its leases are written one at a time, and a lease which still
+ * fails after MAX_WRITE_ATTEMPTS flushes is logged and dropped, so that
+ * one bad row cannot hold back the rest of the journal.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class JdbcLeaseWriteBehind
+{
+	private static Logger log = LoggerFactory.getLogger(JdbcLeaseWriteBehind.class);
+	
+	/**
+	 * The pending state of one IP address.  A null lease is a pending delete.
+	 */
+	public static class PendingLease
+	{
+		private final DhcpLease lease;
+		// only used by the flushing thread, while holding the flush lock
+		private int failures;
+		
+		PendingLease(DhcpLease lease) {
+			this.lease = lease;
+		}
+		
+		public DhcpLease getLease() {
+			return lease;
+		}
+	}
+
+	/**
+	 * The key of the pending leases of one IA.
+	 */
+	static class IaKey
+	{
+		private final byte[] duid;
+		private final byte iatype;
+		private final long iaid;
+		
+		IaKey(byte[] duid, byte iatype, long iaid) {
+			this.duid = duid;
+			this.iatype = iatype;
+			this.iaid = iaid;
+		}
+		
+		@Override
+		public int hashCode() {
+			return (31 * Arrays.hashCode(duid) + iatype) * 31 + Long.hashCode(iaid);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof IaKey)) {
+				return false;
+			}
+			IaKey that = (IaKey) obj;
+			return (iatype == that.iatype) && (iaid == that.iaid) &&
+					Arrays.equals(duid, that.duid);
+		}
+	}
+
+	// the number of flushes which may fail to write a lease before it is dropped
+	public static final int MAX_WRITE_ATTEMPTS = 3;
+
+	private final JdbcLeaseManager leaseManager;
+	private final TransactionTemplate txTemplate;
+	private final int batchSize;
+	private final long maxLatency;
+	private final ConcurrentHashMap<InetAddress, PendingLease> pending;
+	// the IP addresses of the pending leases of each IA, only
+	// changed while computing the pending entry of the address
+	private final ConcurrentHashMap<IaKey, Set<InetAddress>> iaIndex;
+	// the number of batches written, for readers to detect a batch
+	// which was written, and removed from the journal, during a query
+	private final AtomicLong writeCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private ScheduledExecutorService writer;
+	private volatile boolean closed;
+	
+	public JdbcLeaseWriteBehind(JdbcLeaseManager leaseManager, int batchSize, long maxLatency)
+	{
+		this.leaseManager = leaseManager;
+		this.txTemplate = new TransactionTemplate(
+				new DataSourceTransactionManager(leaseManager.getDataSource()));
+		this.batchSize = Math.max(1, batchSize);
+		this.maxLatency = Math.max(1, maxLatency);
+		this.pending = new ConcurrentHashMap<InetAddress, PendingLease>();
+		this.iaIndex = new ConcurrentHashMap<IaKey, Set<InetAddress>>();
+	}
+	
+	public void start()
+	{
+		log.info("Starting lease write-behind: batchSize=" + batchSize +
+				" maxLatency=" + maxLatency + "ms");
+		writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "LeaseWriteBehind");
+			t.setDaemon(true);
+			return t;
+		});
+		writer.scheduleWithFixedDelay(() -> flushQuietly(), 
+				maxLatency, maxLatency, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stop the writer thread and drain the journal.  Leases put after
+	 * the journal is closed are still recorded in the journal, but are then
+	 * written immediately by the caller, so that a write made during or after
+	 * the close can never be overwritten by an older pending write.
+	 */
+	public void close()
+	{
+		closed = true;
+		if (writer != null) {
+			writer.shutdown();
+			try {
+				writer.awaitTermination(maxLatency + 5000, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// each flush either writes or drops a failing lease, unless the
+		// database cannot be reached, so this only loops to retry failures
+		for (int attempt = 1; pending.size() > 0; attempt++) {
+			try {
+				flush();
+			}
+			catch (RuntimeException ex) {
+				if (attempt >= MAX_WRITE_ATTEMPTS) {
+					log.error("Failed to write " + pending.size() + 
+							" pending leases on close: " + ex);
+					break;
+				}
+				log.warn("Failed to write pending leases on close, retrying: " + ex);
+			}
+		}
+		log.info("Stopped lease write-behind");
+	}
+	
+	/**
+	 * Record the new state of a lease.  The lease is copied, so that later
+	 * changes made by reference are not written until put here again.
+	 * 
+	 * @param lease the lease to write
+	 */
+	public void putLease(DhcpLease lease)
+	{
+		final PendingLease pendingLease = new PendingLease(lease.clone());
+		pending.compute(lease.getIpAddress(), (inetAddr, old) -> {
+			unindex(inetAddr, old);
+			index(inetAddr, pendingLease);
+			return pendingLease;
+		});
+		flushIfClosedOrFull();
+	}
+	
+	/**
+	 * Record the deletion of the lease for an IP address.
+	 * 
+	 * @param inetAddr the IP address of the lease to delete
+	 */
+	public void deleteLease(InetAddress inetAddr)
+	{
+		final PendingLease pendingDelete = new PendingLease(null);
+		pending.compute(inetAddr, (addr, old) -> {
+			unindex(addr, old);
+			return pendingDelete;
+		});
+		flushIfClosedOrFull();
+	}
+	
+	/**
+	 * Change the pending lease of an IP address, if any, so that the change
+	 * is written with it.  Nothing is recorded if nothing is pending for the
+	 * address, or if the address has a pending delete.
+	 * 
+	 * @param inetAddr the IP address
+	 * @param change the change to a copy of the pending lease
+	 * @return the new pending state, which has a null lease if the address has
+	 * 			a pending delete, or null if nothing is pending for the address
+	 */
+	public PendingLease updatePending(InetAddress inetAddr, Consumer<DhcpLease> change)
+	{
+		PendingLease updated = pending.computeIfPresent(inetAddr, (addr, old) -> {
+			if (old.getLease() == null) {
+				return old;
+			}
+			DhcpLease lease = old.getLease().clone();
+			change.accept(lease);
+			PendingLease pendingLease = new PendingLease(lease);
+			unindex(addr, old);
+			index(addr, pendingLease);
+			return pendingLease;
+		});
+		if ((updated != null) && (updated.getLease() != null)) {
+			flushIfClosedOrFull();
+		}
+		return updated;
+	}
+	
+	/**
+	 * Get the pending state of an IP address.
+	 * 
+	 * @param inetAddr the IP address
+	 * @return the pending state, or null if nothing is pending for the address
+	 */
+	public PendingLease getPending(InetAddress inetAddr)
+	{
+		return pending.get(inetAddr);
+	}
+	
+	private void index(InetAddress inetAddr, PendingLease pendingLease)
+	{
+		DhcpLease lease = pendingLease.getLease();
+		if (lease != null) {
+			iaIndex.compute(new IaKey(lease.getDuid(), lease.getIatype(), lease.getIaid()),
+					(key, inetAddrs) -> {
+						if (inetAddrs == null) {
+							inetAddrs = ConcurrentHashMap.newKeySet();
+						}
+						inetAddrs.add(inetAddr);
+						return inetAddrs;
+					});
+		}
+	}
+	
+	private void unindex(InetAddress inetAddr, PendingLease pendingLease)
+	{
+		DhcpLease lease = (pendingLease != null) ? pendingLease.getLease() : null;
+		if (lease != null) {
+			iaIndex.computeIfPresent(new IaKey(lease.getDuid(), lease.getIatype(), lease.getIaid()),
+					(key, inetAddrs) -> {
+						inetAddrs.remove(inetAddr);
+						return inetAddrs.isEmpty() ? null : inetAddrs;
+					});
+		}
+	}
+	
+	/**
+	 * Get the pending leases of an IA, from the index of the pending leases.
+	 * 
+	 * @param duid the DUID of the IA
+	 * @param iatype the type of the IA
+	 * @param iaid the IAID of the IA
+	 * @return the pending leases of the IA, keyed by IP address
+	 */
+	public Map<InetAddress, DhcpLease> getPendingLeases(byte[] duid, byte iatype, long iaid)
+	{
+		Map<InetAddress, DhcpLease> leases = new HashMap<InetAddress, DhcpLease>();
+		Set<InetAddress> inetAddrs = iaIndex.get(new IaKey(duid, iatype, iaid));
+		if (inetAddrs != null) {
+			for (InetAddress inetAddr : inetAddrs) {
+				PendingLease pendingLease = pending.get(inetAddr);
+				// the lease may have moved to another IA since it was read from the index
+				DhcpLease lease = (pendingLease != null) ? pendingLease.getLease() : null;
+				if ((lease != null) && (lease.getIatype() == iatype) &&
+						(lease.getIaid() == iaid) && Arrays.equals(lease.getDuid(), duid)) {
+					leases.put(inetAddr, lease);
+				}
+			}
+		}
+		return leases;
+	}
+	
+	/**
+	 * Get the pending leases which match a condition, without copying
+	 * the pending leases which do not.
+	 * 
+	 * @param filter the condition
+	 * @return the pending leases which match, keyed by IP address
+	 */
+	public Map<InetAddress, DhcpLease> getPendingLeases(Predicate<DhcpLease> filter)
+	{
+		Map<InetAddress, DhcpLease> leases = new HashMap<InetAddress, DhcpLease>();
+		for (Map.Entry<InetAddress, PendingLease> entry : pending.entrySet()) {
+			DhcpLease lease = entry.getValue().getLease();
+			if ((lease != null) && filter.test(lease)) {
+				leases.put(entry.getKey(), lease);
+			}
+		}
+		return leases;
+	}
+	
+	/**
+	 * @return the number of leases dropped after MAX_WRITE_ATTEMPTS failed writes
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+	
+	/**
+	 * @return the number of batches written so far
+	 */
+	public long getWriteCount()
+	{
+		return writeCount.get();
+	}
+	
+	/**
+	 * Run a query while no batch is written, so that no pending lease
+	 * can be removed from the journal while the query runs.
+	 * 
+	 * @param query the query
+	 * @return the result of the query
+	 */
+	public <T> T queryWithoutWrites(Supplier<T> query)
+	{
+		flushLock.lock();
+		try {
+			return query.get();
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+	
+	/**
+	 * Get a copy of the pending states of the IP addresses in a range.
+	 * 
+	 * @param startAddr the first IP address of the range
+	 * @param endAddr the last IP address of the range
+	 * @return the pending states in the range, keyed by IP address
+	 */
+	public Map<InetAddress, PendingLease> getPendingSnapshot(InetAddress startAddr,
+															InetAddress endAddr)
+	{
+		Map<InetAddress, PendingLease> snapshot = new HashMap<InetAddress, PendingLease>();
+		for (Map.Entry<InetAddress, PendingLease> entry : pending.entrySet()) {
+			if (Util.inclusiveBetween(entry.getKey(), startAddr, endAddr)) {
+				snapshot.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return snapshot;
+	}
+	
+	public int size()
+	{
+		return pending.size();
+	}
+	
+	private void flushIfClosedOrFull()
+	{
+		if (closed) {
+			flush();
+		}
+		else if ((pending.size() >= batchSize) && flushRequested.compareAndSet(false, true)) {
+			try {
+				writer.execute(() -> {
+					flushRequested.set(false);
+					flushQuietly();
+				});
+			}
+			catch (RejectedExecutionException ex) {
+				// closing, pending leases are written by close(),
+				// or by the writing thread once closed
+				flushRequested.set(false);
+			}
+		}
+	}
+	
+	private void flushQuietly()
+	{
+		try {
+			flush();
+		}
+		catch (Exception ex) {
+			// the database could not be reached, so the leases
+			// stay pending, and will be retried on the next run
+			log.error("Failed to write pending leases: " + ex);
+		}
+	}
+	
+	/**
+	 * Write all leases pending at the time of the call.  Each batch is
+	 * written in one transaction, and the entries are only removed from
+	 * the journal once committed, so readers never see a gap between the
+	 * journal and the database.  An entry replaced while its batch was
+	 * being written stays in the journal for the next flush.
+	 * 
+	 * @throws RuntimeException if the database could not be reached,
+	 * 			in which case the unwritten leases stay pending
+	 */
+	public void flush()
+	{
+		flush(null, null);
+	}
+	
+	/**
+	 * Write the leases pending at the time of the call for the IP addresses
+	 * in a range, so that a query of the range in the database sees them.
+	 * 
+	 * @param startAddr the first IP address of the range, or null for all
+	 * @param endAddr the last IP address of the range, or null for all
+	 */
+	public void flush(InetAddress startAddr, InetAddress endAddr)
+	{
+		flushLock.lock();
+		try {
+			List<Map.Entry<InetAddress, PendingLease>> batch = 
+					new ArrayList<Map.Entry<InetAddress, PendingLease>>(batchSize);
+			for (Map.Entry<InetAddress, PendingLease> entry : pending.entrySet()) {
+				if ((startAddr != null) &&
+						!Util.inclusiveBetween(entry.getKey(), startAddr, endAddr)) {
+					continue;
+				}
+				batch.add(new SimpleImmutableEntry<InetAddress, PendingLease>(
+						entry.getKey(), entry.getValue()));
+				if (batch.size() >= batchSize) {
+					writeBatch(batch);
+					batch.clear();
+				}
+			}
+			if (!batch.isEmpty()) {
+				writeBatch(batch);
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+	
+	private void writeBatch(List<Map.Entry<InetAddress, PendingLease>> batch)
+	{
+		try {
+			writeEntries(batch);
+			return;
+		}
+		catch (RuntimeException ex) {
+			if (!isRowFailure(ex)) {
+				throw ex;
+			}
+			if (batch.size() == 1) {
+				writeFailed(batch.get(0), ex);
+				return;
+			}
+			log.warn("Failed to write batch of " + batch.size() + 
+					" pending leases, writing each lease: " + ex);
+		}
+		// find the leases which cannot be written, and write the rest
+		for (Map.Entry<InetAddress, PendingLease> entry : batch) {
+			try {
+				writeEntries(Collections.singletonList(entry));
+			}
+			catch (RuntimeException ex) {
+				writeFailed(entry, ex);
+			}
+		}
+	}
+	
+	private void writeEntries(List<Map.Entry<InetAddress, PendingLease>> batch)
+	{
+		final List<InetAddress> inetAddrs = new ArrayList<InetAddress>(batch.size());
+		final List<DhcpLease> leases = new ArrayList<DhcpLease>(batch.size());
+		for (Map.Entry<InetAddress, PendingLease> entry : batch) {
+			inetAddrs.add(entry.getKey());
+			if (entry.getValue().getLease() != null) {
+				leases.add(entry.getValue().getLease());
+			}
+		}
+		txTemplate.executeWithoutResult(status -> 
+				leaseManager.writeDhcpLeases(inetAddrs, leases));
+		// counted before the entries are removed, so that a reader which
+		// finds an entry removed also finds the count changed
+		writeCount.incrementAndGet();
+		for (Map.Entry<InetAddress, PendingLease> entry : batch) {
+			remove(entry);
+		}
+		log.debug("Wrote batch of " + batch.size() + " pending leases");
+	}
+	
+	/**
+	 * Handle the failure to write one lease.  If the database could not be
+	 * reached, the exception is thrown, and the lease stays pending.  Otherwise
+	 * the lease is dropped once it has failed on MAX_WRITE_ATTEMPTS flushes.
+	 */
+	private void writeFailed(Map.Entry<InetAddress, PendingLease> entry, RuntimeException ex)
+	{
+		if (!isRowFailure(ex)) {
+			throw ex;
+		}
+		PendingLease pendingLease = entry.getValue();
+		if (++pendingLease.failures < MAX_WRITE_ATTEMPTS) {
+			log.warn("Failed to write pending lease for IP=" + 
+					entry.getKey().getHostAddress() + ", attempt " +
+					pendingLease.failures + " of " + MAX_WRITE_ATTEMPTS + ": " + ex);
+			return;
+		}
+		if (remove(entry)) {
+			droppedCount.incrementAndGet();
+			log.error("Dropped pending " + 
+					((pendingLease.getLease() != null) ? 
+							"lease " + pendingLease.getLease() : "delete") +
+					" for IP=" + entry.getKey().getHostAddress() +
+					" after " + MAX_WRITE_ATTEMPTS + " failed writes", ex);
+		}
+	}
+	
+	/**
+	 * Remove a written entry from the journal, unless it was replaced.
+	 * 
+	 * @return true if the entry was removed
+	 */
+	private boolean remove(Map.Entry<InetAddress, PendingLease> entry)
+	{
+		final PendingLease written = entry.getValue();
+		final AtomicBoolean removed = new AtomicBoolean();
+		pending.computeIfPresent(entry.getKey(), (inetAddr, pendingLease) -> {
+			if (pendingLease != written) {
+				// replaced while the batch was written
+				return pendingLease;
+			}
+			unindex(inetAddr, pendingLease);
+			removed.set(true);
+			return null;
+		});
+		return removed.get();
+	}
+	
+	/**
+	 * Check if a write failed because of the leases written, rather than
+	 * because the database could not be reached, or a transient error.
+	 */
+	private static boolean isRowFailure(RuntimeException ex)
+	{
+		return !((ex instanceof TransactionException) ||
+				(ex instanceof DataAccessResourceFailureException) ||
+				(ex instanceof TransientDataAccessException) ||
+				(ex instanceof RecoverableDataAccessException));
+	}
+}
@@ -2,13 +2,8 @@ package com.jagornet.dhcp.server.db;
 
 import java.net.InetAddress;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,20 +12,15 @@ public class LeaseCache {
 	
 	private static Logger log = LoggerFactory.getLogger(LeaseCache.class);
 
-	private Map<InetAddress, DhcpLease> cache;
+	private SegmentedLruCache<InetAddress, DhcpLease> cache;
+	private LeaseExpiryIndex expiryIndex;
+	private volatile boolean complete;
+	private volatile long completeEvictions;
 	
 	public LeaseCache(int cacheSize) {
 		log.info("Creating Lease cache size=" + cacheSize);
-		cache = Collections.synchronizedMap(
-				new LinkedHashMap<InetAddress, DhcpLease>(16, 0.75f, true) {
-					private static final long serialVersionUID = 1L;
-					@Override
-				     protected boolean removeEldestEntry(
-				    		 Map.Entry<InetAddress, DhcpLease> eldest) {
-				        return (size() > cacheSize);
-				     }
-					
-				});
+		expiryIndex = new LeaseExpiryIndex();
+		cache = new SegmentedLruCache<InetAddress, DhcpLease>(cacheSize, expiryIndex);
 	}
 	
 	public void clear() {
@@ -53,14 +43,42 @@ public class LeaseCache {
 		return cache.values();
 	}
 	
+	/**
+	 * Get the cached leases of the given type which are in the LEASED
+	 * state and have passed their valid end time, oldest first.
+	 * A lease modified by reference must be put back into the cache
+	 * for the expiry index to see the change.
+	 * 
+	 * @param iatype the IA type
+	 * @return the list of expired leases
+	 */
 	public List<DhcpLease> expiredLeases(byte iatype) {
-		long now = new Date().getTime();
-		return cache.values().stream()
-			.filter(l -> 
-				(l.getIatype() == iatype) && 
-				(l.getState() != IaAddress.RESERVED) &&
-				(l.getValidEndTime().getTime() < now))
-			.sorted(Comparator.comparing(DhcpLease::getValidEndTime))
-			.collect(Collectors.toList());
+		return expiryIndex.expiredLeases(iatype, new Date().getTime());
+	}
+	
+	/**
+	 * Set whether the cache holds every stored lease, i.e. after all of
+	 * the stored leases have been loaded into the cache.
+	 * 
+	 * @param complete true if the cache holds every stored lease
+	 */
+	public void setComplete(boolean complete) {
+		completeEvictions = cache.getEvictionCount();
+		this.complete = complete;
+	}
+	
+	/**
+	 * Check if the cache holds every stored lease, so that the expiry
+	 * index can be trusted.  This is only true if the cache was loaded
+	 * with every lease, and no lease has been evicted since.
+	 * 
+	 * @return true if the cache holds every stored lease
+	 */
+	public boolean isComplete() {
+		return complete && (cache.getEvictionCount() == completeEvictions);
+	}
+	
+	public SegmentedLruCache<InetAddress, DhcpLease> getCache() {
+		return cache;
 	}
 }
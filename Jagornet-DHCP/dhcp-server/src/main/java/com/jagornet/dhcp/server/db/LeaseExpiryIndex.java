@@ -0,0 +1,127 @@
+package com.jagornet.dhcp.server.db;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.jagornet.dhcp.core.util.Util;
+
+/**
+ * Title: LeaseExpiryIndex
+ * Description: An index of leased leases ordered by valid end time, so that
+ * finding the expired leases only visits the leases which have actually
+ * expired, rather than scanning and sorting every lease on each reaper run.
+ * The index is kept in sync with the lease cache as a listener, and only
+ * holds leases in the LEASED state, because those are the only leases
+ * which the binding manager reapers act upon.
+ *
+ * @author A. Gregory Rabil
+ */
+public class LeaseExpiryIndex implements SegmentedLruCache.Listener<InetAddress, DhcpLease> {
+
+	// one ordered map for each IA type, V4_TYPE through PD_TYPE
+	private final ConcurrentSkipListMap<ExpiryKey, DhcpLease>[] indexes;
+	// the current key for each indexed address, for removal on update
+	private final ConcurrentHashMap<InetAddress, ExpiryKey> keys;
+
+	@SuppressWarnings("unchecked")
+	public LeaseExpiryIndex() {
+		indexes = new ConcurrentSkipListMap[IdentityAssoc.PD_TYPE + 1];
+		for (int i=0; i<indexes.length; i++) {
+			indexes[i] = new ConcurrentSkipListMap<ExpiryKey, DhcpLease>();
+		}
+		keys = new ConcurrentHashMap<InetAddress, ExpiryKey>();
+	}
+
+	@Override
+	public void added(InetAddress inetAddr, DhcpLease lease) {
+		byte iatype = lease.getIatype();
+		if ((lease.getState() == IaAddress.LEASED) &&
+				(lease.getValidEndTime() != null) &&
+				(iatype >= 0) && (iatype < indexes.length)) {
+			ExpiryKey key = new ExpiryKey(iatype,
+					lease.getValidEndTime().getTime(), inetAddr);
+			ExpiryKey oldKey = keys.put(inetAddr, key);
+			if (oldKey != null) {
+				indexes[oldKey.iatype].remove(oldKey);
+			}
+			indexes[iatype].put(key, lease);
+		}
+		else {
+			removed(inetAddr, lease);
+		}
+	}
+
+	@Override
+	public void removed(InetAddress inetAddr, DhcpLease lease) {
+		ExpiryKey oldKey = keys.remove(inetAddr);
+		if (oldKey != null) {
+			indexes[oldKey.iatype].remove(oldKey);
+		}
+	}
+
+	public void clear() {
+		keys.clear();
+		for (ConcurrentSkipListMap<ExpiryKey, DhcpLease> index : indexes) {
+			index.clear();
+		}
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Get the leased leases of the given type which expired before the
+	 * given time, in the order in which they expired.
+	 *
+	 * @param iatype the IA type
+	 * @param now the time in milliseconds
+	 * @return the list of expired leases, which may be empty
+	 */
+	public List<DhcpLease> expiredLeases(byte iatype, long now) {
+		List<DhcpLease> expired = new ArrayList<DhcpLease>();
+		if ((iatype >= 0) && (iatype < indexes.length)) {
+			for (DhcpLease lease : indexes[iatype]
+					.headMap(new ExpiryKey(iatype, now, null)).values()) {
+				// cached leases may be modified by reference,
+				// so check that this one is still expired
+				if ((lease.getState() == IaAddress.LEASED) &&
+						(lease.getValidEndTime() != null) &&
+						(lease.getValidEndTime().getTime() < now)) {
+					expired.add(lease);
+				}
+			}
+		}
+		return expired;
+	}
+
+	static class ExpiryKey implements Comparable<ExpiryKey> {
+		final byte iatype;
+		final long validEnd;
+		final InetAddress inetAddr;	// null sorts before any address
+
+		ExpiryKey(byte iatype, long validEnd, InetAddress inetAddr) {
+			this.iatype = iatype;
+			this.validEnd = validEnd;
+			this.inetAddr = inetAddr;
+		}
+
+		@Override
+		public int compareTo(ExpiryKey other) {
+			int c = Long.compare(validEnd, other.validEnd);
+			if (c != 0) {
+				return c;
+			}
+			if (inetAddr == null) {
+				return (other.inetAddr == null) ? 0 : -1;
+			}
+			if (other.inetAddr == null) {
+				return 1;
+			}
+			return Util.compareInetAddrs(inetAddr, other.inetAddr);
+		}
+	}
+}
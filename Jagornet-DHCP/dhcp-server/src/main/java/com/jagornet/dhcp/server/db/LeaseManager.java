@@ -39,6 +39,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -90,7 +91,15 @@ public abstract class LeaseManager implements IaManager {
 	public abstract void reconcileLeases(final List<Range> ranges);
 	public abstract int deleteAllLeases();
 	
+	// the most milliseconds between store queries for expired leases
+	// while the lease cache holds every lease, see findExpiredIAs
+	protected static final long EXPIRED_STORE_QUERY_PERIOD = 10 * 60 * 1000;
+	
 	protected long offerExpireMillis;
+	protected long expiredStoreQueryPeriod = EXPIRED_STORE_QUERY_PERIOD;
+	// when the store was last queried for expired leases of each IA type
+	protected final AtomicLongArray lastExpiredStoreQuery = 
+			new AtomicLongArray(IdentityAssoc.PD_TYPE + 1);
 	protected IaCache iaCache = null;
 	protected LeaseCache leaseCache = null;
 	
@@ -117,6 +126,16 @@ public abstract class LeaseManager implements IaManager {
 		return offerExpireMillis;
 	}
 	
+	// for unit testing
+	public IaCache getIaCache() {
+		return iaCache;
+	}
+	
+	// for unit testing
+	public LeaseCache getLeaseCache() {
+		return leaseCache;
+	}
+	
 	protected boolean useIaCache() {
 		return iaCache != null;
 	}
@@ -124,6 +143,94 @@ public abstract class LeaseManager implements IaManager {
 	protected boolean useLeaseCache() {
 		return leaseCache != null;
 	}
+	
+	/**
+	 * Load every stored lease into the lease cache, if it is large enough,
+	 * so that the expiry index of the cache can be trusted.  Subclasses
+	 * which can count and read all of their leases override this.
+	 */
+	protected void loadLeaseCache() {
+		// the cache only holds the leases used since startup
+	}
+	
+	/**
+	 * Update the lease cache, if any, for a lease which was written directly,
+	 * such as by the HA peer or the REST API, rather than through the IA
+	 * methods, which maintain the cache themselves.
+	 * 
+	 * @param lease the lease which was written
+	 */
+	public void cacheDhcpLease(DhcpLease lease) {
+		if (useLeaseCache()) {
+			leaseCache.putLease(lease);
+		}
+	}
+	
+	/**
+	 * Update the lease cache, if any, for a lease which was deleted directly.
+	 * 
+	 * @param inetAddr the IP address of the deleted lease
+	 */
+	public void uncacheDhcpLease(InetAddress inetAddr) {
+		if (useLeaseCache()) {
+			leaseCache.removeLease(inetAddr);
+		}
+	}
+
+	/**
+	 * Store a batch of leases, such as those received from the HA peer
+	 * during link sync.  Each lease is inserted if it does not exist,
+	 * or replaces the existing lease for the IP address.  Subclasses
+	 * override this to store the batch in fewer writes, and must keep
+	 * the lease cache, if any, current for each lease stored.
+	 *
+	 * @param leases the leases to store
+	 * @return the number of leases stored
+	 */
+	public int upsertDhcpLeases(final List<DhcpLease> leases) {
+		int cnt = 0;
+		for (DhcpLease lease : leases) {
+			int stored;
+			if (findDhcpLeaseForInetAddr(lease.getIpAddress()) == null) {
+				stored = insertDhcpLease(lease);
+			}
+			else {
+				stored = updateDhcpLease(lease);
+			}
+			if (stored == 1) {
+				cacheDhcpLease(lease);
+			}
+			cnt += stored;
+		}
+		return cnt;
+	}
+
+	/**
+	 * Mark a batch of leases as synced with the HA peer, by setting the
+	 * haPeerState to the state of the lease stored for each IP address.
+	 * A stored lease is only marked if its state is still the state of
+	 * the given lease, which is the state that the peer stored.
+	 *
+	 * @param leases the leases stored by the peer
+	 * @return the number of leases marked as synced
+	 */
+	public int setLeasesSynced(final List<DhcpLease> leases) {
+		int cnt = 0;
+		for (DhcpLease lease : leases) {
+			DhcpLease stored = findDhcpLeaseForInetAddr(lease.getIpAddress());
+			if ((stored != null) && (stored.getState() == lease.getState())) {
+				stored.setHaPeerState(stored.getState());
+				if (updateDhcpLease(stored) == 1) {
+					cacheDhcpLease(stored);
+					cnt++;
+				}
+				else {
+					uncacheDhcpLease(lease.getIpAddress());
+				}
+			}
+		}
+		return cnt;
+	}
 
 	@Override
 	public void createIA(IdentityAssoc ia, Collection<DhcpOption> dhcpOptions) {
@@ -276,14 +383,9 @@ public abstract class LeaseManager implements IaManager {
 	public List<IdentityAssoc> findExpiredIAs(byte iatype) {
 		List<IdentityAssoc> ias = null;
 		if (useLeaseCache()) {
-			// tempting to use parallelStream, but the thread overhead
-			// is not worth it with a cache size of only 1000 leases
-			ias = leaseCache.getAllLeases().stream()
-							.filter(l -> 
-									(l.getIatype() == iatype) && 
-									(l.getState() == IaAddress.LEASED) &&
-									(l.getValidEndTime().getTime() < new Date().getTime()))
-							.sorted(Comparator.comparing(DhcpLease::getValidEndTime))
+			// the cache keeps an index of leases by expiration time,
+			// so this only visits the leases which have expired
+			ias = leaseCache.expiredLeases(iatype).stream()
 							.map(LeaseManager::toIdentityAssoc)
 							.collect(Collectors.toList());
 			
@@ -298,11 +400,26 @@ public abstract class LeaseManager implements IaManager {
 				}
 			}
 		}
-		if ((ias == null) || ias.isEmpty()) {
+		// the store is queried if the cache may not hold every lease, and
+		// otherwise at least every expiredStoreQueryPeriod, because leases
+		// can be written to the store without passing through the cache
+		if ((ias == null) || 
+				(ias.isEmpty() && (!leaseCache.isComplete() || isExpiredStoreQueryDue(iatype)))) {
+			if ((iatype >= 0) && (iatype < lastExpiredStoreQuery.length())) {
+				lastExpiredStoreQuery.set(iatype, System.currentTimeMillis());
+			}
 			ias = toIdentityAssocs(findExpiredLeases(iatype));
 		}
 		return ias;
 	}
+	
+	private boolean isExpiredStoreQueryDue(byte iatype) {
+		if ((iatype < 0) || (iatype >= lastExpiredStoreQuery.length())) {
+			return true;
+		}
+		return (System.currentTimeMillis() - lastExpiredStoreQuery.get(iatype) >= 
+				expiredStoreQueryPeriod);
+	}
 
 	@Override
 	public void saveDhcpOption(IaAddress iaAddr, 
@@ -410,8 +527,9 @@ public abstract class LeaseManager implements IaManager {
 				lease.setStartTime(iaAddr.getStartTime());
 				lease.setPreferredEndTime(iaAddr.getPreferredEndTime());
 				lease.setValidEndTime(iaAddr.getValidEndTime());
-				// no need to put the object back in the cache
-				// because it was updated via reference from get
+				// the object was updated via reference from get, but
+				// put it back so the cache can reindex its expiration
+				leaseCache.putLease(lease);
 				IdentityAssoc ia = iaCache.getIA(lease.getDuid(),
 						lease.getIatype(), lease.getIaid());
 				if (ia != null) {
@@ -513,6 +631,13 @@ public abstract class LeaseManager implements IaManager {
 		return ips;
 	}
 
+	@Override
+	public void findExistingIPs(InetAddress startAddr, InetAddress endAddr,
+			InetAddressCallbackHandler inetAddressCallbackHandler) {
+		// the lease cache does not hold all leases, so always query the store
+		findExistingLeaseIPs(startAddr, endAddr, inetAddressCallbackHandler);
+	}
+
 	@Override
 	public List<IaAddress> findUnusedIaAddresses(InetAddress startAddr, InetAddress endAddr) {
 		List<IaAddress> iaAddresses = null;
@@ -660,18 +785,10 @@ public abstract class LeaseManager implements IaManager {
 	public void reconcileIaAddresses(List<Range> ranges) {
 		reconcileLeases(ranges);
 		if (useLeaseCache()) {
-// this method is invoked only during startup, so there is nothing in the cache!
-//			leaseCache.getAllLeases().stream()
-//				.filter(l -> {
-//					for (Range range : ranges) {
-//						if ((Util.compareInetAddrs(l.getIpAddress(), range.getStartAddress()) >= 0) &&
-//							(Util.compareInetAddrs(l.getIpAddress(), range.getEndAddress()) <= 0)) {
-//							return true;
-//						}
-//					}
-//					return false;
-//				})
-//				.collect(Collectors.toList());
+			// this method is invoked only during startup, so
+			// just reload the cache with the remaining leases
+			leaseCache.clear();
+			loadLeaseCache();
 		}
 	}
 
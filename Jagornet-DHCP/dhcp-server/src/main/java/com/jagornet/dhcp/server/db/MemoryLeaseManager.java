@@ -0,0 +1,717 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file MemoryLeaseManager.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+import com.jagornet.dhcp.core.util.Util;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.request.binding.Range;
+
+/**
+ * Title: MemoryLeaseManager
+ * Description: The LeaseManager for the "memory" schema type, which keeps
+ * all leases in memory only.  Leases are indexed by IP address in address
+ * order, for range queries, and by IA, leased leases are also indexed
+ * by expiration, and available leases by address.  Writers are serialized by one lock, and readers do not lock.
+ * <p>
+ * The stored leases are never modified, so each change stores a new copy,
+ * and the leases returned by queries are copies, as if read from a database.
+ * <p>
+ * Unless disabled, a snapshot of all leases is written to a file periodically,
+ * when leases have changed, and when the manager is closed.  The snapshot is
+ * loaded at startup, so only the changes made since the last snapshot are lost
+ * when the server is restarted.  Subclasses can make every change durable by
+ * overriding the logPut, logDelete and sync methods.
+ *
+ * @author A. Gregory Rabil
+ */
+public class MemoryLeaseManager extends LeaseManager
+{
+	private static Logger log = LoggerFactory.getLogger(MemoryLeaseManager.class);
+
+	public static final String LEASE_DIR = DbSchemaManager.DB_HOME + "memleases";
+	public static final String SNAPSHOT_FILENAME = "dhcpleases.snapshot";
+
+	protected static final Comparator<InetAddress> INETADDR_ORDER = Util::compareInetAddrs;
+
+	protected File leaseDir;
+
+	// serializes the changes to the indexes
+	protected final ReentrantLock writeLock = new ReentrantLock();
+	private final ConcurrentSkipListMap<InetAddress, DhcpLease> leases =
+			new ConcurrentSkipListMap<InetAddress, DhcpLease>(INETADDR_ORDER);
+	private final ConcurrentHashMap<String, Set<InetAddress>> iaLeases =
+			new ConcurrentHashMap<String, Set<InetAddress>>();
+	private final LeaseExpiryIndex expiryIndex = new LeaseExpiryIndex();
+	// the addresses of the available leases, for findUnusedLease
+	private final ConcurrentSkipListSet<InetAddress> availableLeases =
+			new ConcurrentSkipListSet<InetAddress>(INETADDR_ORDER);
+	private ScheduledExecutorService maintenance;
+
+	// the number of changes made, and the number in the last snapshot
+	private volatile long changes;
+	private long snapshotChanges;
+	private final ReentrantLock snapshotLock = new ReentrantLock();
+
+	public File getLeaseDir() {
+		return leaseDir;
+	}
+	public void setLeaseDir(File leaseDir) {
+		this.leaseDir = leaseDir;
+	}
+
+	// Spring bean init-method
+	public void init() throws Exception {
+		// allow init to be called again, which reloads the leases
+		close();
+		super.init();
+		// all leases are already in memory, so the
+		// caches would only hold more copies of them
+		iaCache = null;
+		leaseCache = null;
+		if (leaseDir == null) {
+			leaseDir = new File(getDefaultLeaseDir());
+		}
+		leases.clear();
+		iaLeases.clear();
+		expiryIndex.clear();
+		availableLeases.clear();
+		changes = 0;
+		snapshotChanges = 0;
+
+		long start = System.currentTimeMillis();
+		recover();
+		log.info("Recovered " + leases.size() + " leases from " + leaseDir +
+				" in " + (System.currentTimeMillis() - start) + "ms");
+		startMaintenance();
+	}
+
+	// Spring bean destroy-method
+	public void close() {
+		if (maintenance != null) {
+			maintenance.shutdownNow();
+			maintenance = null;
+		}
+		if (getSnapshotInterval() > 0) {
+			// keep the changes made since the last snapshot
+			snapshotQuietly();
+		}
+	}
+
+	protected String getDefaultLeaseDir() {
+		return LEASE_DIR;
+	}
+
+	/**
+	 * @return the number of milliseconds between snapshots, or zero if disabled
+	 */
+	protected long getSnapshotInterval() {
+		return DhcpServerPolicies.globalPolicyAsLong(Property.DATABASE_MEMORY_SNAPSHOT_INTERVAL);
+	}
+
+	/**
+	 * Load the leases stored at the last shutdown.  Called by init, with
+	 * the indexes empty.
+	 *
+	 * @throws IOException if the leases could not be read
+	 */
+	protected void recover() throws IOException {
+		File snapshot = new File(leaseDir, SNAPSHOT_FILENAME);
+		if ((getSnapshotInterval() > 0) && snapshot.exists()) {
+			FileLeaseJournal.readFile(snapshot, new FileLeaseJournal.RecoveryHandler() {
+				@Override
+				public void putLease(DhcpLease lease) {
+					indexLease(lease);
+				}
+				@Override
+				public void deleteLease(InetAddress inetAddr) {
+					unindexLease(inetAddr);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Start the background tasks.  Called by init, after recovery.
+	 */
+	protected void startMaintenance() {
+		long interval = getSnapshotInterval();
+		if (interval > 0) {
+			schedule("LeaseSnapshot", () -> snapshotQuietly(), interval);
+		}
+	}
+
+	/**
+	 * Run a task periodically on the background thread of this manager.
+	 * The thread is not a shared scheduler thread, because the tasks
+	 * write files, and can take a long time.
+	 */
+	protected void schedule(final String threadName, Runnable task, long interval) {
+		if (maintenance == null) {
+			maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, threadName);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		maintenance.scheduleWithFixedDelay(task, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Write a snapshot of all leases.
+	 *
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public void snapshot() throws IOException {
+		snapshotLock.lock();
+		try {
+			long snapshotted;
+			List<DhcpLease> snapshot;
+			writeLock.lock();
+			try {
+				snapshotted = changes;
+				snapshot = getLeases();
+			}
+			finally {
+				writeLock.unlock();
+			}
+			FileUtils.forceMkdir(leaseDir);
+			FileLeaseJournal.writeLeaseFile(new File(leaseDir, SNAPSHOT_FILENAME), snapshot);
+			snapshotChanges = snapshotted;
+			log.debug("Wrote snapshot of " + snapshot.size() + " leases");
+		}
+		finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	/**
+	 * Write a snapshot of all leases if they have changed since the last one.
+	 */
+	protected void snapshotQuietly() {
+		snapshotLock.lock();
+		try {
+			if (changes != snapshotChanges) {
+				snapshot();
+			}
+		}
+		catch (Exception ex) {
+			// the previous snapshot is still complete, so just try again next time
+			log.error("Failed to write lease snapshot: " + ex);
+		}
+		finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	/**
+	 * Record the new state of a lease.  Called with the write lock held,
+	 * before the lease is indexed.
+	 *
+	 * @return the position to pass to sync
+	 */
+	protected long logPut(DhcpLease lease) {
+		return ++changes;
+	}
+
+	/**
+	 * Record the deletion of the lease for an IP address.  Called with the
+	 * write lock held, before the lease is removed from the indexes.
+	 *
+	 * @return the position to pass to sync
+	 */
+	protected long logDelete(InetAddress inetAddr) {
+		return ++changes;
+	}
+
+	/**
+	 * Wait until the changes up to the given position are durable.  Called
+	 * after the write lock is released, so concurrent writers can sync together.
+	 */
+	protected void sync(long position) {
+		// nothing to do in memory
+	}
+
+	/**
+	 * @return copies of the references to all leases, in address order
+	 */
+	protected List<DhcpLease> getLeases() {
+		return new ArrayList<DhcpLease>(leases.values());
+	}
+
+	/**
+	 * @return the number of leases
+	 */
+	public int getLeaseCount() {
+		return leases.size();
+	}
+
+	private static String iaKey(DhcpLease lease) {
+		return IdentityAssoc.keyToString(lease.getDuid(), lease.getIatype(), lease.getIaid());
+	}
+
+	// must hold the write lock, or be recovering
+	protected void indexLease(DhcpLease lease) {
+		InetAddress inetAddr = lease.getIpAddress();
+		DhcpLease old = leases.put(inetAddr, lease);
+		String key = iaKey(lease);
+		if (old != null) {
+			String oldKey = iaKey(old);
+			if (!oldKey.equals(key)) {
+				removeIaLease(oldKey, inetAddr);
+			}
+		}
+		iaLeases.computeIfAbsent(key,
+				k -> new ConcurrentSkipListSet<InetAddress>(INETADDR_ORDER)).add(inetAddr);
+		expiryIndex.added(inetAddr, lease);
+		if (lease.getState() == IaAddress.AVAILABLE) {
+			availableLeases.add(inetAddr);
+		}
+		else if ((old != null) && (old.getState() == IaAddress.AVAILABLE)) {
+			availableLeases.remove(inetAddr);
+		}
+	}
+
+	// must hold the write lock, or be recovering
+	protected DhcpLease unindexLease(InetAddress inetAddr) {
+		DhcpLease old = leases.remove(inetAddr);
+		if (old != null) {
+			removeIaLease(iaKey(old), inetAddr);
+			expiryIndex.removed(inetAddr, old);
+			availableLeases.remove(inetAddr);
+		}
+		return old;
+	}
+
+	private void removeIaLease(String key, InetAddress inetAddr) {
+		Set<InetAddress> inetAddrs = iaLeases.get(key);
+		if (inetAddrs != null) {
+			inetAddrs.remove(inetAddr);
+			if (inetAddrs.isEmpty()) {
+				iaLeases.remove(key, inetAddrs);
+			}
+		}
+	}
+
+	/**
+	 * Store a copy of a lease, unless it must exist and does not.
+	 * A lease which must not exist, but does, is rejected like the
+	 * primary key violation of an insert into the database.
+	 */
+	protected int putLease(DhcpLease lease, boolean mustExist) {
+		DhcpLease copy = lease.clone();
+		long position;
+		writeLock.lock();
+		try {
+			boolean exists = leases.containsKey(copy.getIpAddress());
+			if (mustExist && !exists) {
+				return 0;
+			}
+			if (!mustExist && exists) {
+				throw new DuplicateKeyException("Lease exists for IP=" + 
+						copy.getIpAddress().getHostAddress());
+			}
+			position = logPut(copy);
+			indexLease(copy);
+		}
+		finally {
+			writeLock.unlock();
+		}
+		sync(position);
+		return 1;
+	}
+
+	/**
+	 * Store a modified copy of the lease for an IP address.
+	 */
+	protected int modifyLease(InetAddress inetAddr, Consumer<DhcpLease> modifier) {
+		long position;
+		writeLock.lock();
+		try {
+			DhcpLease lease = leases.get(inetAddr);
+			if (lease == null) {
+				return 0;
+			}
+			lease = lease.clone();
+			modifier.accept(lease);
+			position = logPut(lease);
+			indexLease(lease);
+		}
+		finally {
+			writeLock.unlock();
+		}
+		sync(position);
+		return 1;
+	}
+
+	@Override
+	public int insertDhcpLease(final DhcpLease lease) {
+		return putLease(lease, false);
+	}
+
+	@Override
+	public int updateDhcpLease(final DhcpLease lease) {
+		return putLease(lease, true);
+	}
+
+	@Override
+	public int deleteDhcpLease(final DhcpLease lease) {
+		return deleteIpAddress(lease.getIpAddress());
+	}
+
+	/**
+	 * Store a batch of leases under one hold of the write lock,
+	 * and sync the whole batch once.
+	 */
+	@Override
+	public int upsertDhcpLeases(final List<DhcpLease> dhcpLeases) {
+		if (dhcpLeases.isEmpty()) {
+			return 0;
+		}
+		long position = 0;
+		writeLock.lock();
+		try {
+			for (DhcpLease lease : dhcpLeases) {
+				DhcpLease copy = lease.clone();
+				position = logPut(copy);
+				indexLease(copy);
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		sync(position);
+		return dhcpLeases.size();
+	}
+
+	/**
+	 * Mark a batch of leases as synced under one hold of the write lock,
+	 * and sync the whole batch once.
+	 */
+	@Override
+	public int setLeasesSynced(final List<DhcpLease> dhcpLeases) {
+		int cnt = 0;
+		long position = -1;
+		writeLock.lock();
+		try {
+			for (DhcpLease lease : dhcpLeases) {
+				DhcpLease stored = leases.get(lease.getIpAddress());
+				if ((stored != null) && (stored.getState() == lease.getState())) {
+					cnt++;
+					if (stored.getHaPeerState() != stored.getState()) {
+						DhcpLease copy = stored.clone();
+						copy.setHaPeerState(copy.getState());
+						position = logPut(copy);
+						indexLease(copy);
+					}
+				}
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		if (position >= 0) {
+			sync(position);
+		}
+		return cnt;
+	}
+
+	@Override
+	public int updateIpAddress(final InetAddress inetAddr,
+							   final byte state, final byte haPeerState, final short prefixlen,
+							   final Date start, final Date preferred, final Date valid,
+							   final Collection<DhcpOption> ipAddrOptions) {
+		return modifyLease(inetAddr, lease -> {
+			lease.setState(state);
+			lease.setHaPeerState(haPeerState);
+			if (prefixlen > 0) {
+				lease.setPrefixLength(prefixlen);
+			}
+			lease.setStartTime(start);
+			lease.setPreferredEndTime(preferred);
+			lease.setValidEndTime(valid);
+			lease.setIaAddrDhcpOptions(ipAddrOptions);
+		});
+	}
+
+	@Override
+	public int deleteIpAddress(final InetAddress inetAddr) {
+		long position;
+		writeLock.lock();
+		try {
+			if (!leases.containsKey(inetAddr)) {
+				return 0;
+			}
+			position = logDelete(inetAddr);
+			unindexLease(inetAddr);
+		}
+		finally {
+			writeLock.unlock();
+		}
+		sync(position);
+		return 1;
+	}
+
+	@Override
+	public int updateIaOptions(final InetAddress inetAddr,
+							   final Collection<DhcpOption> iaOptions) {
+		return modifyLease(inetAddr, lease -> lease.setIaDhcpOptions(iaOptions));
+	}
+
+	@Override
+	public int updateIpAddrOptions(final InetAddress inetAddr,
+								   final Collection<DhcpOption> ipAddrOptions) {
+		return modifyLease(inetAddr, lease -> lease.setIaAddrDhcpOptions(ipAddrOptions));
+	}
+
+	@Override
+	public List<DhcpLease> findDhcpLeasesForIA(final byte[] duid,
+											   final byte iatype, final long iaid) {
+		List<DhcpLease> iaLeaseList = new ArrayList<DhcpLease>();
+		Set<InetAddress> inetAddrs =
+				iaLeases.get(IdentityAssoc.keyToString(duid, iatype, iaid));
+		if (inetAddrs != null) {
+			for (InetAddress inetAddr : inetAddrs) {
+				DhcpLease lease = leases.get(inetAddr);
+				// check the lease, which may have changed since the lookup
+				if ((lease != null) && (lease.getIatype() == iatype) &&
+						(lease.getIaid() == iaid) && Arrays.equals(lease.getDuid(), duid)) {
+					iaLeaseList.add(lease.clone());
+				}
+			}
+		}
+		return iaLeaseList;
+	}
+
+	@Override
+	public DhcpLease findDhcpLeaseForInetAddr(final InetAddress inetAddr) {
+		DhcpLease lease = leases.get(inetAddr);
+		return (lease != null) ? lease.clone() : null;
+	}
+
+	private ConcurrentNavigableMap<InetAddress, DhcpLease> range(InetAddress startAddr,
+																 InetAddress endAddr) {
+		if (Util.compareInetAddrs(startAddr, endAddr) > 0) {
+			return new ConcurrentSkipListMap<InetAddress, DhcpLease>(INETADDR_ORDER);
+		}
+		return leases.subMap(startAddr, true, endAddr, true);
+	}
+
+	@Override
+	public List<InetAddress> findExistingLeaseIPs(final InetAddress startAddr,
+												  final InetAddress endAddr) {
+		return new ArrayList<InetAddress>(range(startAddr, endAddr).keySet());
+	}
+
+	@Override
+	public void findExistingLeaseIPs(final InetAddress startAddr,
+									 final InetAddress endAddr,
+									 InetAddressCallbackHandler inetAddressCallbackHandler) {
+		try {
+			for (InetAddress inetAddr : range(startAddr, endAddr).keySet()) {
+				inetAddressCallbackHandler.processInetAddress(inetAddr);
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Unable to process ipaddress", ex);
+		}
+	}
+
+	@Override
+	public void findExistingLeases(final InetAddress startAddr,
+								   final InetAddress endAddr,
+								   DhcpLeaseCallbackHandler dhcpLeaseCallbackHandler) {
+		processLeases(startAddr, endAddr, false, dhcpLeaseCallbackHandler);
+	}
+
+	@Override
+	public void findUnsyncedLeases(final InetAddress startAddr,
+								   final InetAddress endAddr,
+								   DhcpLeaseCallbackHandler dhcpLeaseCallbackHandler) {
+		processLeases(startAddr, endAddr, true, dhcpLeaseCallbackHandler);
+	}
+
+	private void processLeases(InetAddress startAddr, InetAddress endAddr, boolean unsyncedOnly,
+							   DhcpLeaseCallbackHandler dhcpLeaseCallbackHandler) {
+		try {
+			for (DhcpLease lease : range(startAddr, endAddr).values()) {
+				if (!unsyncedOnly || (lease.getHaPeerState() == IaAddress.UNKNOWN)) {
+					dhcpLeaseCallbackHandler.processDhcpLease(lease.clone());
+				}
+			}
+		}
+		catch (ProcessLeaseException ex) {
+			throw new IllegalStateException("Unable to process dhcplease", ex);
+		}
+	}
+
+	@Override
+	public int setAllLeasesUnsynced() {
+		int cnt = 0;
+		long position = 0;
+		writeLock.lock();
+		try {
+			for (DhcpLease lease : leases.values()) {
+				if (lease.getHaPeerState() != IaAddress.UNKNOWN) {
+					DhcpLease copy = lease.clone();
+					copy.setHaPeerState(IaAddress.UNKNOWN);
+					position = logPut(copy);
+					indexLease(copy);
+				}
+				cnt++;
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		sync(position);
+		return cnt;
+	}
+
+	@Override
+	public List<DhcpLease> findUnusedLeases(final InetAddress startAddr, final InetAddress endAddr) {
+		final long offerExpiration = new Date().getTime() - offerExpireMillis;
+		List<DhcpLease> unused = new ArrayList<DhcpLease>();
+		for (DhcpLease lease : range(startAddr, endAddr).values()) {
+			if (isUnused(lease, offerExpiration)) {
+				unused.add(lease.clone());
+			}
+		}
+		// same order as the jdbc query: state, validendtime, ipaddress
+		unused.sort(Comparator.comparingInt((DhcpLease l) -> l.getState())
+				.thenComparing(DhcpLease::getValidEndTime,
+						Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparing(DhcpLease::getIpAddress, INETADDR_ORDER));
+		log.debug("Found " + unused.size() + " unused dhcplease objects");
+		return unused;
+	}
+
+	private static boolean isUnused(DhcpLease lease, long offerExpiration) {
+		return (lease.getState() == IaAddress.AVAILABLE) ||
+				((lease.getState() == IaAddress.OFFERED) &&
+				 (lease.getStartTime() != null) &&
+				 (lease.getStartTime().getTime() <= offerExpiration));
+	}
+
+	/**
+	 * Find the first available lease in the range, like the jdbc query,
+	 * which does not find expired offers, from the available leases only.
+	 */
+	@Override
+	public DhcpLease findUnusedLease(final InetAddress startAddr, final InetAddress endAddr) {
+		InetAddress inetAddr = availableLeases.ceiling(startAddr);
+		while ((inetAddr != null) && (Util.compareInetAddrs(inetAddr, endAddr) <= 0)) {
+			DhcpLease lease = leases.get(inetAddr);
+			// unless changed since it was found
+			if ((lease != null) && (lease.getState() == IaAddress.AVAILABLE)) {
+				return lease.clone();
+			}
+			inetAddr = availableLeases.higher(inetAddr);
+		}
+		return null;
+	}
+
+	@Override
+	public List<DhcpLease> findExpiredLeases(final byte iatype) {
+		List<DhcpLease> expired = expiryIndex.expiredLeases(iatype, new Date().getTime());
+		for (int i=0; i<expired.size(); i++) {
+			expired.set(i, expired.get(i).clone());
+		}
+		return expired;
+	}
+
+	@Override
+	public void reconcileLeases(final List<Range> ranges) {
+		RangeIndex rangeIndex = new RangeIndex(ranges);
+		int cnt = 0;
+		long position = 0;
+		writeLock.lock();
+		try {
+			for (InetAddress inetAddr : leases.keySet()) {
+				if (!rangeIndex.contains(inetAddr)) {
+					position = logDelete(inetAddr);
+					unindexLease(inetAddr);
+					cnt++;
+				}
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		sync(position);
+		log.info("Deleted " + cnt + " dhcplease objects by reconciling on configured pool ranges");
+	}
+
+	/**
+	 * For unit tests only
+	 */
+	@Override
+	public int deleteAllLeases() {
+		int cnt = 0;
+		long position = 0;
+		writeLock.lock();
+		try {
+			for (InetAddress inetAddr : leases.keySet()) {
+				position = logDelete(inetAddr);
+				unindexLease(inetAddr);
+				cnt++;
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		sync(position);
+		log.info("Deleted all " + cnt + " dhcpleases");
+		return cnt;
+	}
+}
@@ -0,0 +1,66 @@
+package com.jagornet.dhcp.server.db;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jagornet.dhcp.core.util.Util;
+import com.jagornet.dhcp.server.request.binding.Range;
+
+/**
+ * Title: RangeIndex
+ * Description: The given ranges, sorted and merged, for checking if an
+ * address is in any of them by binary search, rather than by checking
+ * each range, when reconciling the leases with the configured pools.
+ *
+ * @author A. Gregory Rabil
+ */
+class RangeIndex
+{
+	private final InetAddress[] starts;
+	private final InetAddress[] ends;
+	
+	public RangeIndex(List<Range> ranges)
+	{
+		List<Range> sorted = new ArrayList<>(ranges);
+		sorted.sort((r1, r2) -> 
+			Util.compareInetAddrs(r1.getStartAddress(), r2.getStartAddress()));
+		List<InetAddress> startList = new ArrayList<>();
+		List<InetAddress> endList = new ArrayList<>();
+		for (Range range : sorted) {
+			int last = endList.size() - 1;
+			if ((last >= 0) && 
+					(Util.compareInetAddrs(range.getStartAddress(), endList.get(last)) <= 0)) {
+				// overlaps the previous range, so merge them
+				if (Util.compareInetAddrs(range.getEndAddress(), endList.get(last)) > 0) {
+					endList.set(last, range.getEndAddress());
+				}
+			}
+			else {
+				startList.add(range.getStartAddress());
+				endList.add(range.getEndAddress());
+			}
+		}
+		starts = startList.toArray(new InetAddress[startList.size()]);
+		ends = endList.toArray(new InetAddress[endList.size()]);
+	}
+	
+	public boolean contains(InetAddress inetAddr)
+	{
+		int low = 0;
+		int high = starts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (Util.compareInetAddrs(inetAddr, starts[mid]) < 0) {
+				high = mid - 1;
+			}
+			else if (Util.compareInetAddrs(inetAddr, ends[mid]) > 0) {
+				low = mid + 1;
+			}
+			else {
+				return true;
+			}
+		}
+		return false;
+	}
+}
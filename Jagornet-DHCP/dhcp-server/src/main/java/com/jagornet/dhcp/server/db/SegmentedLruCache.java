@@ -0,0 +1,236 @@
+package com.jagornet.dhcp.server.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Title: SegmentedLruCache
+ * Description: A size-bounded LRU cache which is split into independently
+ * locked segments, selected by key hash, so that concurrent readers and
+ * writers of different keys do not contend on a single monitor.  Each
+ * segment is an access-ordered LinkedHashMap which evicts its own eldest
+ * entry, so eviction is LRU per segment and approximately LRU overall.
+ *
+ * @author A. Gregory Rabil
+ */
+public class SegmentedLruCache<K, V> {
+
+	// keep segments big enough that per-segment LRU is still meaningful
+	private static final int MIN_SEGMENT_SIZE = 16;
+
+	private final Segment<K, V>[] segments;
+	private final int segmentMask;
+	private final int maxSize;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Callback for entries added to or removed from the cache, including
+	 * evictions.  Called while holding the lock of the entry's segment,
+	 * so notifications for any one key arrive in the order the changes
+	 * were made.  Implementations must not call back into the cache.
+	 */
+	public interface Listener<K, V> {
+		void added(K key, V value);
+		void removed(K key, V value);
+	}
+
+	public SegmentedLruCache(int maxSize) {
+		this(maxSize, 4 * Runtime.getRuntime().availableProcessors(), null);
+	}
+
+	public SegmentedLruCache(int maxSize, Listener<K, V> listener) {
+		this(maxSize, 4 * Runtime.getRuntime().availableProcessors(), listener);
+	}
+
+	public SegmentedLruCache(int maxSize, int concurrencyLevel) {
+		this(maxSize, concurrencyLevel, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public SegmentedLruCache(int maxSize, int concurrencyLevel, Listener<K, V> listener) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		int n = Math.max(1, Math.min(concurrencyLevel, maxSize / MIN_SEGMENT_SIZE));
+		int numSegments = Integer.highestOneBit(n);
+		int segmentSize = (maxSize + numSegments - 1) / numSegments;
+		segments = new Segment[numSegments];
+		for (int i=0; i<numSegments; i++) {
+			segments[i] = new Segment<K, V>(segmentSize, evictions, listener);
+		}
+		segmentMask = numSegments - 1;
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & segmentMask];
+	}
+
+	public V get(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		V value;
+		segment.lock.lock();
+		try {
+			value = segment.map.get(key);
+		}
+		finally {
+			segment.lock.unlock();
+		}
+		if (value != null) {
+			hits.increment();
+		}
+		else {
+			misses.increment();
+		}
+		return value;
+	}
+
+	public V put(K key, V value) {
+		Segment<K, V> segment = segmentFor(key);
+		segment.lock.lock();
+		try {
+			V old = segment.map.put(key, value);
+			if (segment.listener != null) {
+				segment.listener.added(key, value);
+			}
+			return old;
+		}
+		finally {
+			segment.lock.unlock();
+		}
+	}
+
+	public V remove(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		segment.lock.lock();
+		try {
+			V old = segment.map.remove(key);
+			if ((old != null) && (segment.listener != null)) {
+				segment.listener.removed(key, old);
+			}
+			return old;
+		}
+		finally {
+			segment.lock.unlock();
+		}
+	}
+
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			segment.lock.lock();
+			try {
+				if (segment.listener != null) {
+					for (Map.Entry<K, V> entry : segment.map.entrySet()) {
+						segment.listener.removed(entry.getKey(), entry.getValue());
+					}
+				}
+				segment.map.clear();
+			}
+			finally {
+				segment.lock.unlock();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			segment.lock.lock();
+			try {
+				size += segment.map.size();
+			}
+			finally {
+				segment.lock.unlock();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Get a snapshot of the values in the cache.  The snapshot is copied
+	 * one segment at a time, so it is safe to stream over while other
+	 * threads continue to use the cache, but it is not an atomic view
+	 * of all segments.  Does not affect the LRU order.
+	 *
+	 * @return a copy of the cached values
+	 */
+	public Collection<V> values() {
+		// sized for the current entries, since the cache may be far from full
+		List<V> values = new ArrayList<V>(size());
+		for (Segment<K, V> segment : segments) {
+			segment.lock.lock();
+			try {
+				values.addAll(segment.map.values());
+			}
+			finally {
+				segment.lock.unlock();
+			}
+		}
+		return values;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size() +
+				" maxSize=" + maxSize +
+				" segments=" + segments.length +
+				" hits=" + getHitCount() +
+				" misses=" + getMissCount() +
+				" evictions=" + getEvictionCount();
+	}
+
+	private static class Segment<K, V> {
+		final ReentrantLock lock = new ReentrantLock();
+		final LinkedHashMap<K, V> map;
+		final Listener<K, V> listener;
+
+		Segment(final int segmentSize, final LongAdder evictions, 
+				final Listener<K, V> listener) {
+			this.listener = listener;
+			map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+					if (size() > segmentSize) {
+						evictions.increment();
+						if (listener != null) {
+							listener.removed(eldest.getKey(), eldest.getValue());
+						}
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+	}
+}
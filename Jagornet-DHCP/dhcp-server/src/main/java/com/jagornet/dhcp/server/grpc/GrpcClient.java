@@ -1,5 +1,7 @@
 package com.jagornet.dhcp.server.grpc;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,6 +91,44 @@ public class GrpcClient {
         asyncStub.updateLease(DhcpLeaseUtil.dhcpLeaseToGrpc(dhcpLease), responseObserver);
     }
 
+    /**
+     * Open a stream for sending batches of lease updates, which are
+     * acknowledged through the given observer.
+     * 
+     * @param responseObserver the observer of the acknowledgements
+     * @return the observer to send the update batches to
+     */
+    public StreamObserver<DhcpLeaseUpdateBatch> updateDhcpLeases(
+                                StreamObserver<DhcpLeaseAckBatch> responseObserver) {
+        log.debug("Invoking asyncStub: updateLeases");
+        return asyncStub.updateLeases(responseObserver);
+    }
+
+    /**
+     * Tell the peer that it can mark the given leases as synced,
+     * because they have been stored by this server.
+     * 
+     * @param dhcpLeases the stored leases
+     * @return the number of leases marked as synced by the peer, or -1 on failure
+     */
+    public int setDhcpLeasesSynced(List<DhcpLease> dhcpLeases) {
+        try {
+            DhcpLeasesSyncedRequest.Builder builder = DhcpLeasesSyncedRequest.newBuilder();
+            for (DhcpLease dhcpLease : dhcpLeases) {
+                builder.addLeases(DhcpLeaseSynced.newBuilder()
+                        .setIpAddress(ByteString.copyFrom(dhcpLease.getIpAddress().getAddress()))
+                        .setState(ByteString.copyFrom(new byte[] { dhcpLease.getState() })));
+            }
+            log.debug("Invoking blockingStub: setLeasesSynced");
+            DhcpLeasesSyncedResponse response = blockingStub.setLeasesSynced(builder.build());
+            return response.getCount();
+        }
+        catch (StatusRuntimeException ex) {
+            log.error("setLeasesSynced failed: " + ex + ": " + ex.getCause());
+            return -1;
+        }
+    }
+
     public void getDhcpLeases(byte[] startIp, byte[] endIp, boolean unsyncedLeasesOnly,
                                 StreamObserver<DhcpLeaseUpdate> responseObserver) {
                                     
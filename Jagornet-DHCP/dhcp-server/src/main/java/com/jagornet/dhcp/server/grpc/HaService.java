@@ -1,6 +1,8 @@
 package com.jagornet.dhcp.server.grpc;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,6 +68,67 @@ public class HaService extends HaServiceImplBase {
         }
     }
 
+    @Override
+    public StreamObserver<DhcpLeaseUpdateBatch> updateLeases(StreamObserver<DhcpLeaseAckBatch> responseObserver) {
+        // the requests of a stream are delivered one at a time, so
+        // the acks are sent in the same order as the updates
+        return new StreamObserver<DhcpLeaseUpdateBatch>() {
+            @Override
+            public void onNext(DhcpLeaseUpdateBatch batch) {
+                DhcpLeaseAckBatch.Builder acks = DhcpLeaseAckBatch.newBuilder();
+                for (SequencedDhcpLeaseUpdate update : batch.getUpdatesList()) {
+                    boolean success = false;
+                    try {
+                        DhcpLease dhcpLease = DhcpLeaseUtil.grpcToDhcpLease(update.getLease());
+                        log.debug("Update lease: " + dhcpLease);
+                        // this update is from the HA peer, so set the haPeerState=state
+                        dhcpLease.setHaPeerState(dhcpLease.getState());
+                        success = leasesService.createOrUpdateDhcpLease(dhcpLease);
+                    }
+                    catch (Exception ex) {
+                        log.error("Failed to update lease: " + ex);
+                    }
+                    acks.addAcks(DhcpLeaseAck.newBuilder()
+                                        .setSequence(update.getSequence())
+                                        .setSuccess(success));
+                }
+                responseObserver.onNext(acks.build());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.warn("Update leases stream failed: " + t);
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    public void setLeasesSynced(DhcpLeasesSyncedRequest request, 
+                                StreamObserver<DhcpLeasesSyncedResponse> responseObserver) {
+        try {
+            List<DhcpLease> dhcpLeases = new ArrayList<DhcpLease>(request.getLeasesCount());
+            for (DhcpLeaseSynced leaseSynced : request.getLeasesList()) {
+                DhcpLease dhcpLease = new DhcpLease();
+                dhcpLease.setIpAddress(InetAddress.getByAddress(leaseSynced.getIpAddress().toByteArray()));
+                dhcpLease.setState(leaseSynced.getState().byteAt(0));
+                dhcpLeases.add(dhcpLease);
+            }
+            int cnt = leasesService.setDhcpLeasesSynced(dhcpLeases);
+            log.debug("Set " + cnt + " of " + dhcpLeases.size() + " leases synced");
+            responseObserver.onNext(DhcpLeasesSyncedResponse.newBuilder().setCount(cnt).build());
+            responseObserver.onCompleted();
+        }
+        catch (Exception ex) {
+            log.error("Failed to set leases synced: " + ex);
+            responseObserver.onError(ex);
+        }
+    }
+
     @Override
     public void getLeases(DhcpLeasesRequest request, StreamObserver<DhcpLeaseUpdate> responseObserver) {
         try {
@@ -1,11 +1,14 @@
 package com.jagornet.dhcp.server.ha;
 
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.server.config.DhcpLink;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
 import com.jagornet.dhcp.server.db.DhcpLease;
 import com.jagornet.dhcp.server.db.DhcpLeaseUtil;
 import com.jagornet.dhcp.server.grpc.DhcpLeaseUpdate;
@@ -23,6 +26,8 @@ public class GrpcHaClient implements HaClient {
     private GrpcClient grpcClient;
 	// service for handling requests from backup
 	private DhcpLeasesService dhcpLeasesService;
+	// pipelined sender of batched lease updates, created on first use
+	private GrpcLeaseReplicator leaseReplicator;
 
     public GrpcHaClient(String haHost, int haPort, MtlsConfig mtlsConfig) throws HaException {
 
@@ -78,6 +83,59 @@ public class GrpcHaClient implements HaClient {
         HaDhcpLeaseUpdateObserver observer = new HaDhcpLeaseUpdateObserver(dhcpLease, expectedDhcpLease);
         grpcClient.updateDhcpLeaseAsync(expectedDhcpLease, observer);
     }
+
+    @Override
+    public boolean updateDhcpLeases(List<DhcpLease> dhcpLeases, boolean sync) {
+        GrpcLeaseReplicator replicator = getLeaseReplicator();
+        if (replicator == null) {
+            return false;
+        }
+        int cnt = replicator.updateDhcpLeases(dhcpLeases, sync);
+        if (replicator.isUnimplemented()) {
+            // the peer is an older release, so the caller
+            // sends the updates one at a time instead
+            return false;
+        }
+        if (log.isInfoEnabled()) {
+            log.info("HA (" + (sync ? "sync" : "async") + ") DhcpLease batch update:" +
+                    " leases=" + dhcpLeases.size() + 
+                    (sync ? " acked=" : " queued=") + cnt);
+        }
+        return true;
+    }
+
+    protected synchronized GrpcLeaseReplicator getLeaseReplicator() {
+        if ((leaseReplicator != null) && leaseReplicator.isUnimplemented()) {
+            if (!leaseReplicator.isClosed()) {
+                log.warn("HA peer does not support batched lease updates," +
+                        " sending lease updates one at a time");
+                leaseReplicator.close();
+            }
+            return null;
+        }
+        if (leaseReplicator == null) {
+            int window = DhcpServerPolicies.globalPolicyAsInt(Property.HA_UPDATE_WINDOW);
+            if (window <= 0) {
+                return null;
+            }
+            int batchSize = DhcpServerPolicies.globalPolicyAsInt(Property.HA_UPDATE_BATCH_SIZE);
+            long timeout = DhcpServerPolicies.globalPolicyAsLong(Property.HA_UPDATE_TIMEOUT);
+            leaseReplicator = new GrpcLeaseReplicator(grpcClient::updateDhcpLeases,
+                    dhcpLeases -> {
+                        // only the leases not changed since they were sent
+                        int cnt = dhcpLeasesService.setDhcpLeasesSynced(dhcpLeases);
+                        if (log.isDebugEnabled()) {
+                            log.debug("HA (batch) peer state updated: leases=" + 
+                                    dhcpLeases.size() + " synced=" + cnt);
+                        }
+                    },
+                    window, batchSize, timeout);
+            leaseReplicator.start();
+            log.info("Started HA lease replicator: window=" + window +
+                    " batchSize=" + batchSize + " timeout=" + timeout);
+        }
+        return leaseReplicator;
+    }
 	
 	public class HaDhcpLeaseUpdateObserver implements StreamObserver<DhcpLeaseUpdate> {
 		
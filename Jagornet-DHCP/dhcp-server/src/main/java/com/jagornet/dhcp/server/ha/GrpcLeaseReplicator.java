@@ -0,0 +1,471 @@
+package com.jagornet.dhcp.server.ha;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.db.DhcpLease;
+import com.jagornet.dhcp.server.db.DhcpLeaseUtil;
+import com.jagornet.dhcp.server.grpc.DhcpLeaseAck;
+import com.jagornet.dhcp.server.grpc.DhcpLeaseAckBatch;
+import com.jagornet.dhcp.server.grpc.DhcpLeaseUpdate;
+import com.jagornet.dhcp.server.grpc.DhcpLeaseUpdateBatch;
+import com.jagornet.dhcp.server.grpc.SequencedDhcpLeaseUpdate;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Sends lease updates to the HA peer over one updateLeases stream.
+ * Each update is given a sequence number, and the peer acknowledges each
+ * sequence number.  A sender thread sends the updates which are queued
+ * while it sends the previous batch together, so batches grow with the
+ * load without delaying any update.  At most a window of updates can be
+ * waiting for acknowledgement, so a slow peer slows down the callers
+ * instead of growing the queue without bound.
+ * <p>
+ * When the peer acknowledges updates, the haPeerState of each lease is
+ * set to its state, and the leases of each batch of acknowledgements are
+ * stored together by the peer state updater.  An update which
+ * fails, or is not sent, leaves the lease unsynced, for the next link sync.
+ * If the stream fails, the updates waiting for acknowledgement fail, and
+ * the next batch opens a new stream.  A stream on which the peer stops
+ * acknowledging updates for longer than the timeout is failed too, so that
+ * the updates release their window permits instead of filling the window.
+ * <p>
+ * A peer of an older release, which does not implement the updateLeases
+ * stream, fails the stream as UNIMPLEMENTED, which is remembered, so that
+ * the caller can send the updates one at a time instead.
+ */
+public class GrpcLeaseReplicator implements Runnable {
+
+	private static Logger log = LoggerFactory.getLogger(GrpcLeaseReplicator.class);
+
+	private final Function<StreamObserver<DhcpLeaseAckBatch>,
+							StreamObserver<DhcpLeaseUpdateBatch>> streamOpener;
+	private final Consumer<List<DhcpLease>> peerStateUpdater;
+	private final int batchSize;
+	private final long timeout;
+	private final Semaphore window;
+	private final BlockingQueue<PendingUpdate> queue = new LinkedBlockingQueue<>();
+	private final AtomicLong sequence = new AtomicLong();
+	// only used by the sender thread
+	private UpdateStream stream;
+	private volatile boolean closed;
+	private volatile boolean unimplemented;
+	private Thread sender;
+
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder acked = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	/**
+	 * Create a lease replicator.
+	 *
+	 * @param streamOpener opens an updateLeases stream, given the ack observer
+	 * @param peerStateUpdater stores the leases acknowledged together,
+	 * 			with their updated haPeerState
+	 * @param window the maximum number of updates waiting for acknowledgement
+	 * @param batchSize the maximum number of updates per batch
+	 * @param timeout the maximum number of milliseconds for a synchronous
+	 * 			update call, and to wait for the peer to acknowledge updates
+	 */
+	public GrpcLeaseReplicator(Function<StreamObserver<DhcpLeaseAckBatch>,
+										StreamObserver<DhcpLeaseUpdateBatch>> streamOpener,
+							   Consumer<List<DhcpLease>> peerStateUpdater,
+							   int window, int batchSize, long timeout) {
+		this.streamOpener = streamOpener;
+		this.peerStateUpdater = peerStateUpdater;
+		this.window = new Semaphore(Math.max(1, window));
+		this.batchSize = Math.max(1, batchSize);
+		this.timeout = timeout;
+	}
+
+	public synchronized void start() {
+		if (sender == null) {
+			sender = new Thread(this, "HA-LeaseReplicator");
+			sender.setDaemon(true);
+			sender.start();
+		}
+	}
+
+	public synchronized void close() {
+		closed = true;
+		if (sender != null) {
+			sender.interrupt();
+			sender = null;
+		}
+		PendingUpdate pending;
+		while ((pending = queue.poll()) != null) {
+			pending.complete(false);
+		}
+		log.info("Closed HA lease replicator: " + this);
+	}
+
+	/**
+	 * @return true if the peer does not implement the updateLeases stream
+	 */
+	public boolean isUnimplemented() {
+		return unimplemented;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Send updates for the given leases.  The haPeerState of each lease
+	 * is set when the peer acknowledges its update.
+	 *
+	 * @param dhcpLeases the leases to send
+	 * @param sync if true, wait for the acknowledgements, up to the timeout
+	 * @return the number of updates acknowledged, if sync, or else queued
+	 */
+	public int updateDhcpLeases(List<DhcpLease> dhcpLeases, boolean sync) {
+		CountDownLatch latch = sync ? new CountDownLatch(dhcpLeases.size()) : null;
+		List<PendingUpdate> pendings = new ArrayList<>(dhcpLeases.size());
+		// one deadline for the whole call, however many leases
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		try {
+			for (DhcpLease dhcpLease : dhcpLeases) {
+				if (closed || !window.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+					log.warn("HA lease update not sent, window full:" +
+							" IP=" + dhcpLease.getIpAddress().getHostAddress());
+					failed.increment();
+					if (latch != null) {
+						latch.countDown();
+					}
+					continue;
+				}
+				PendingUpdate pending = new PendingUpdate(sequence.incrementAndGet(),
+														  dhcpLease, latch);
+				pendings.add(pending);
+				queue.add(pending);
+			}
+			if (latch == null) {
+				return pendings.size();
+			}
+			if (!latch.await(remaining(deadline), TimeUnit.NANOSECONDS)) {
+				log.warn("Timed out waiting for HA lease update acknowledgements");
+				// fail the streams of the unacknowledged updates, which
+				// releases their permits, and the next batch opens a new stream
+				for (PendingUpdate pending : pendings) {
+					UpdateStream updateStream = pending.stream;
+					if (updateStream == null) {
+						// not sent yet, so don't send it after the caller gave up
+						queue.remove(pending);
+						pending.complete(false);
+					}
+					else if (updateStream.inFlight.containsKey(pending.sequence)) {
+						updateStream.fail(ackTimeout());
+					}
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		int cnt = 0;
+		for (PendingUpdate pending : pendings) {
+			if (pending.success) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	private static long remaining(long deadline) {
+		return Math.max(0, deadline - System.nanoTime());
+	}
+
+	private StatusRuntimeException ackTimeout() {
+		return Status.DEADLINE_EXCEEDED
+				.withDescription("No HA lease update acknowledgement in " + timeout + "ms")
+				.asRuntimeException();
+	}
+
+	@Override
+	public void run() {
+		List<PendingUpdate> batch = new ArrayList<>(batchSize);
+		while (!closed) {
+			PendingUpdate pending;
+			try {
+				// wake up at least every timeout to check for lost acks
+				pending = queue.poll(timeout, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException ex) {
+				break;
+			}
+			checkAckTimeout();
+			if (pending == null) {
+				continue;
+			}
+			batch.add(pending);
+			queue.drainTo(batch, batchSize - 1);
+			send(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Fail the current stream if the peer has not acknowledged
+	 * any of the updates waiting on it within the timeout.
+	 */
+	private void checkAckTimeout() {
+		UpdateStream updateStream = stream;
+		if ((updateStream != null) && !updateStream.closed && 
+				!updateStream.inFlight.isEmpty() &&
+				(System.nanoTime() - updateStream.lastProgress > 
+						TimeUnit.MILLISECONDS.toNanos(timeout))) {
+			log.warn("HA lease update acknowledgements timed out, resetting stream");
+			updateStream.fail(ackTimeout());
+		}
+	}
+
+	private void send(List<PendingUpdate> batch) {
+		DhcpLeaseUpdateBatch.Builder builder = DhcpLeaseUpdateBatch.newBuilder();
+		Iterator<PendingUpdate> iter = batch.iterator();
+		while (iter.hasNext()) {
+			PendingUpdate pending = iter.next();
+			if (pending.isCompleted()) {
+				// timed out by the caller before it was sent
+				iter.remove();
+				continue;
+			}
+			DhcpLeaseUpdate leaseUpdate = DhcpLeaseUtil.dhcpLeaseToGrpc(pending.dhcpLease);
+			if (leaseUpdate == null) {
+				// conversion failure is logged by DhcpLeaseUtil
+				iter.remove();
+				pending.complete(false);
+				continue;
+			}
+			builder.addUpdates(SequencedDhcpLeaseUpdate.newBuilder()
+									.setSequence(pending.sequence)
+									.setLease(leaseUpdate));
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		DhcpLeaseUpdateBatch request = builder.build();
+		UpdateStream updateStream = null;
+		try {
+			if ((stream == null) || stream.closed) {
+				stream = new UpdateStream();
+			}
+			updateStream = stream;
+			if (updateStream.inFlight.isEmpty()) {
+				// the ack timeout runs from the oldest unacknowledged batch
+				updateStream.lastProgress = System.nanoTime();
+			}
+			for (PendingUpdate pending : batch) {
+				pending.stream = updateStream;
+				updateStream.inFlight.put(pending.sequence, pending);
+			}
+			// the stream is not failed while the batch is written to it
+			synchronized (updateStream) {
+				if (updateStream.closed) {
+					// failed while adding, and may have missed some of the batch
+					updateStream.failAll();
+				}
+				else {
+					sent.add(batch.size());
+					batches.increment();
+					updateStream.requestObserver.onNext(request);
+				}
+			}
+		}
+		catch (Exception ex) {
+			log.error("Failed to send HA lease updates: " + ex);
+			if (updateStream != null) {
+				updateStream.fail(ex);
+			}
+			else {
+				for (PendingUpdate pending : batch) {
+					pending.complete(false);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "sent=" + sent.sum() +
+				" batches=" + batches.sum() +
+				" acked=" + acked.sum() +
+				" failed=" + failed.sum() +
+				" queued=" + queue.size();
+	}
+
+	/**
+	 * An update waiting to be acknowledged, which holds one window permit.
+	 */
+	private class PendingUpdate {
+		final long sequence;
+		final DhcpLease dhcpLease;
+		final CountDownLatch latch;
+		volatile boolean success;
+		// set once, so the window permit is released only once
+		final AtomicBoolean completed = new AtomicBoolean();
+		// the stream the update was sent on
+		volatile UpdateStream stream;
+
+		PendingUpdate(long sequence, DhcpLease dhcpLease, CountDownLatch latch) {
+			this.sequence = sequence;
+			this.dhcpLease = dhcpLease;
+			this.latch = latch;
+		}
+
+		boolean isCompleted() {
+			return completed.get();
+		}
+
+		void complete(boolean success) {
+			if (!completed.compareAndSet(false, true)) {
+				// already failed by a timeout, so the window permit is released
+				return;
+			}
+			if (success) {
+				// the HA peer state was stored for the ack batch
+				acked.increment();
+			}
+			else {
+				failed.increment();
+			}
+			this.success = success;
+			window.release();
+			if (latch != null) {
+				latch.countDown();
+			}
+		}
+	}
+
+	/**
+	 * One updateLeases stream, and the updates sent on it which are
+	 * waiting to be acknowledged.  The request observer is not thread-safe,
+	 * and is failed by the caller, sender and gRPC threads, so every call
+	 * to it, and the closed flag, is guarded by the lock on the stream.
+	 */
+	private class UpdateStream implements StreamObserver<DhcpLeaseAckBatch> {
+		final Map<Long, PendingUpdate> inFlight = new ConcurrentHashMap<>();
+		final StreamObserver<DhcpLeaseUpdateBatch> requestObserver;
+		// set while holding the lock, but read without it
+		volatile boolean closed;
+		// guarded by the lock
+		boolean requestFailed;
+		// when the peer last acknowledged an update, or the
+		// first update was sent while none were waiting
+		volatile long lastProgress = System.nanoTime();
+
+		UpdateStream() {
+			requestObserver = streamOpener.apply(this);
+		}
+
+		@Override
+		public void onNext(DhcpLeaseAckBatch ackBatch) {
+			lastProgress = System.nanoTime();
+			List<PendingUpdate> succeeded = new ArrayList<>(ackBatch.getAcksCount());
+			List<PendingUpdate> failures = new ArrayList<>();
+			List<DhcpLease> synced = new ArrayList<>(ackBatch.getAcksCount());
+			for (DhcpLeaseAck ack : ackBatch.getAcksList()) {
+				PendingUpdate pending = inFlight.remove(ack.getSequence());
+				if (pending != null) {
+					if (log.isDebugEnabled()) {
+						log.debug("HA lease update ack:" +
+								" IP=" + pending.dhcpLease.getIpAddress().getHostAddress() +
+								" success=" + ack.getSuccess());
+					}
+					if (!ack.getSuccess()) {
+						failures.add(pending);
+					}
+					else if (!pending.isCompleted()) {
+						// the update was stored by the peer,
+						// so update the HA peer state of the lease as synced
+						pending.dhcpLease.setHaPeerState(pending.dhcpLease.getState());
+						synced.add(pending.dhcpLease);
+						succeeded.add(pending);
+					}
+				}
+			}
+			if (!synced.isEmpty()) {
+				// store the peer state of the whole ack batch at once,
+				// before the callers waiting for the acks are released
+				try {
+					peerStateUpdater.accept(synced);
+				}
+				catch (Exception ex) {
+					log.error("HA peer state update failed: " + ex);
+				}
+			}
+			for (PendingUpdate pending : succeeded) {
+				pending.complete(true);
+			}
+			for (PendingUpdate pending : failures) {
+				pending.complete(false);
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			if (Status.fromThrowable(t).getCode() == Status.Code.UNIMPLEMENTED) {
+				log.warn("HA peer does not implement batched lease updates: " + t);
+				unimplemented = true;
+			}
+			else {
+				log.error("HA lease update stream failed: " + t);
+			}
+			fail(t);
+		}
+
+		@Override
+		public void onCompleted() {
+			log.info("HA lease update stream completed by peer");
+			synchronized (this) {
+				closed = true;
+			}
+			failAll();
+		}
+
+		void fail(Throwable t) {
+			synchronized (this) {
+				closed = true;
+				if (!requestFailed && (requestObserver != null)) {
+					requestFailed = true;
+					try {
+						requestObserver.onError(t);
+					}
+					catch (Exception ex) {
+						log.warn("Failed to reset HA lease update stream: " + ex);
+					}
+				}
+			}
+			failAll();
+		}
+
+		void failAll() {
+			// each pending update is removed, and completed, only once
+			for (Long seq : inFlight.keySet()) {
+				PendingUpdate pending = inFlight.remove(seq);
+				if (pending != null) {
+					pending.complete(false);
+				}
+			}
+		}
+	}
+}
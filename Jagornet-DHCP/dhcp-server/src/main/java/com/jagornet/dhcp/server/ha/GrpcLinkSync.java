@@ -1,7 +1,6 @@
 package com.jagornet.dhcp.server.ha;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import org.slf4j.Logger;
@@ -12,71 +11,60 @@ import com.jagornet.dhcp.server.db.DhcpLease;
 import com.jagornet.dhcp.server.db.DhcpLeaseUtil;
 import com.jagornet.dhcp.server.grpc.DhcpLeaseUpdate;
 import com.jagornet.dhcp.server.grpc.GrpcClient;
-import com.jagornet.dhcp.server.rest.api.DhcpLeasesService;
 
 import io.grpc.stub.StreamObserver;
 
-public class GrpcLinkSync implements Runnable {
+public class GrpcLinkSync extends HaLinkSync {
 
 	private static Logger log = LoggerFactory.getLogger(GrpcLinkSync.class);
 
-	// the DhcpLink to be synced
-	private DhcpLink dhcpLink;
-	// thread synchronization latch
-	private CountDownLatch linkSyncLatch;
 	// gRPC client for communicating to peer
 	private GrpcClient grpcClient;
-	private boolean unsyncedLeasesOnly;
-	// service for handling requests from peer
-	private DhcpLeasesService dhcpLeasesService;
-	private Instant startInstant;
+	// released when the lease stream from the peer is done, so that
+	// the sync executor thread is held until the link is synced
+	private CountDownLatch doneLatch = new CountDownLatch(1);
 
 	public GrpcLinkSync(DhcpLink dhcpLink,
 							CountDownLatch linkSyncLatch,
 							boolean unsyncedLeasesOnly,
 							GrpcClient grpcClient) {
 
-		this.dhcpLink = dhcpLink;
-		this.linkSyncLatch = linkSyncLatch;
-		this.unsyncedLeasesOnly = unsyncedLeasesOnly;
+		super(dhcpLink, linkSyncLatch, unsyncedLeasesOnly);
 		this.grpcClient = grpcClient;
-
-		dhcpLeasesService = new DhcpLeasesService();
 	}
-	
+
 	@Override
 	public void run() {
 		byte[] linkStartIp = dhcpLink.getSubnet().getSubnetAddress().getAddress();
 		byte[] linkEndIp = dhcpLink.getSubnet().getEndAddress().getAddress();
-		// set link syncing state now or in process method?
-		dhcpLink.setState(DhcpLink.State.SYNCING);
-		log.info("Starting lease sync for link: " + dhcpLink.getLinkAddress());
-		startInstant = Instant.now();
+		startSync();
 		HaDhcpLeaseUpdateObserver observer = new HaDhcpLeaseUpdateObserver();
 		grpcClient.getDhcpLeases(linkStartIp, linkEndIp, unsyncedLeasesOnly, observer);
+		try {
+			doneLatch.await();
+		}
+		catch (InterruptedException ex) {
+			log.error("Lease sync interrupted for link: " + dhcpLink.getLinkAddress());
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	protected int setPeerLeasesSynced(List<DhcpLease> dhcpLeases) {
+		return grpcClient.setDhcpLeasesSynced(dhcpLeases);
 	}
-	
+
 	public class HaDhcpLeaseUpdateObserver implements StreamObserver<DhcpLeaseUpdate> {
-		
+
         @Override
         public void onNext(DhcpLeaseUpdate value) {
 			if (log.isDebugEnabled()) {
 				log.debug("DhcpLease update onNext value: " + value);
 			}
-			else if (log.isInfoEnabled()) {
-				log.info("DhcpLase update onNext: IP= " + value.getIpAddress());
-			}
             DhcpLease dhcpLease = DhcpLeaseUtil.grpcToDhcpLease(value);
-			// mark this lease as 'synced'
-			dhcpLease.setHaPeerState(dhcpLease.getState());
-			if (dhcpLeasesService.createOrUpdateDhcpLease(dhcpLease)) {
-				// now tell the peer server we're in sync
-				grpcClient.updateDhcpLease(dhcpLease);
-			}
-			else {
-				// should be caught by onError anyway
-				log.warn("DhcpLease update failed");
-			}
+            if (dhcpLease != null) {
+            	leaseReceived(dhcpLease);
+            }
         }
 
         @Override
@@ -85,21 +73,14 @@ public class GrpcLinkSync implements Runnable {
 			if (t.getCause() != null) {
 				log.error("Cause: " + t.getCause());
 			}
-			Instant finish = Instant.now();
-			long timeElapsed = Duration.between(startInstant, finish).toMillis();
-			log.error("Failed lease sync for link: " + dhcpLink.getLinkAddress() + 
-						" timeElapsed=" + timeElapsed + "ms");
-			linkSyncLatch.countDown();
+			syncCompleted(false);
+			doneLatch.countDown();
 		}
 
         @Override
         public void onCompleted() {
-			Instant finish = Instant.now();
-			long timeElapsed = Duration.between(startInstant, finish).toMillis();
-			dhcpLink.setState(DhcpLink.State.OK);
-			log.info("Completed lease sync for link: " + dhcpLink.getLinkAddress() + 
-						" timeElapsed=" + timeElapsed + "ms");
-			linkSyncLatch.countDown();
+			syncCompleted(true);
+			doneLatch.countDown();
 		}
 	}
-}	
+}
@@ -4,6 +4,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -120,15 +121,15 @@ public class HaBackupFSM implements Runnable {
 										  getState().equals(State.BACKUP_INIT);
 			setState(State.BACKUP_SYNCING_FROM_PRIMARY);
 			Instant start = Instant.now();
+			// sync up to the configured number of links at a time
+			ExecutorService linkSyncExecutor = 
+					HaLinkSync.newLinkSyncExecutor("BackupLinkSyncFromPrimary", dhcpLinks.size());
 			// check the state of the primary
 			// set links unavailable
 			for (DhcpLink dhcpLink : dhcpLinks) {
 				dhcpLink.setState(DhcpLink.State.NOT_SYNCED);
-				Thread linkSyncThread = new Thread(
-						haClient.buildLinkSyncThread(dhcpLink, linkSyncLatch, unsyncedLeasesOnly), 
-						"BackupLinkSyncFromPrimary-" + dhcpLink.getLinkAddress()
-						);
-				linkSyncThread.start();
+				linkSyncExecutor.execute(
+						haClient.buildLinkSyncThread(dhcpLink, linkSyncLatch, unsyncedLeasesOnly));
 			}
 
 	    	try {
@@ -148,6 +149,9 @@ public class HaBackupFSM implements Runnable {
 				log.error("Link sync interrupted: ", e);
 				throw new HaException(e);
 			}
+	    	finally {
+	    		linkSyncExecutor.shutdown();
+	    	}
 		}
 		else {
 			log.error("No links to sync!");
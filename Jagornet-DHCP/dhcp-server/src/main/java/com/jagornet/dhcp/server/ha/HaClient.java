@@ -1,5 +1,6 @@
 package com.jagornet.dhcp.server.ha;
 
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import com.jagornet.dhcp.server.config.DhcpLink;
@@ -34,6 +35,19 @@ public interface HaClient {
     public void updateDhcpLeaseAsync(DhcpLease dhcpLease, 
                                      DhcpLease expectedDhcpLease);
 
+    /**
+     * Send updates for a list of leases to the peer, as one or more batches.
+     * The haPeerState of each lease is updated when the peer stores it.
+     * 
+     * @param dhcpLeases the leases to send
+     * @param sync if true, wait for the peer to store the leases
+     * @return false if this client does not batch updates, and the
+     *          leases must be sent one at a time with updateDhcpLease
+     */
+    public default boolean updateDhcpLeases(List<DhcpLease> dhcpLeases, boolean sync) {
+        return false;
+    }
+
     public Runnable buildLinkSyncThread(DhcpLink dhcpLink, 
                                         CountDownLatch linkSyncLatch, 
                                         boolean unsyncedLeasesOnly);
@@ -0,0 +1,195 @@
+package com.jagornet.dhcp.server.ha;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.config.DhcpLink;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.db.DhcpLease;
+import com.jagornet.dhcp.server.rest.api.DhcpLeasesService;
+
+/**
+ * The common behavior of syncing the leases of one link from the HA peer.
+ * The leases received from the peer are stored in batches, and after each
+ * batch is stored, the peer is told with one request that it can mark the
+ * leases of the batch as synced.  The progress and throughput of the sync
+ * are logged periodically, and when the sync of the link is done.
+ */
+public abstract class HaLinkSync implements Runnable {
+
+	private static Logger log = LoggerFactory.getLogger(HaLinkSync.class);
+
+	// milliseconds between progress log messages
+	protected static final long PROGRESS_INTERVAL = 10000;
+
+	// the DhcpLink to be synced
+	protected DhcpLink dhcpLink;
+	// thread synchronization latch
+	protected CountDownLatch linkSyncLatch;
+	protected boolean unsyncedLeasesOnly;
+	// service for handling requests from peer
+	protected DhcpLeasesService dhcpLeasesService;
+
+	private int batchSize;
+	private List<DhcpLease> batch;
+	private boolean failed;
+	private long received;
+	private long stored;
+	private long synced;
+	private long batches;
+	private Instant startInstant;
+	private Instant lastProgressInstant;
+
+	public HaLinkSync(DhcpLink dhcpLink,
+						CountDownLatch linkSyncLatch,
+						boolean unsyncedLeasesOnly) {
+
+		this.dhcpLink = dhcpLink;
+		this.linkSyncLatch = linkSyncLatch;
+		this.unsyncedLeasesOnly = unsyncedLeasesOnly;
+
+		dhcpLeasesService = new DhcpLeasesService();
+		batchSize = Math.max(1,
+				DhcpServerPolicies.globalPolicyAsInt(Property.HA_LINK_SYNC_BATCH_SIZE));
+		batch = new ArrayList<DhcpLease>(batchSize);
+	}
+
+	/**
+	 * Create the executor for syncing links, which syncs up to
+	 * the configured number of links at a time.
+	 *
+	 * @param threadNamePrefix the prefix of the names of the sync threads
+	 * @param links the number of links to be synced
+	 * @return the executor, which must be shutdown when the links are synced
+	 */
+	public static ExecutorService newLinkSyncExecutor(final String threadNamePrefix, int links) {
+		int threads = DhcpServerPolicies.globalPolicyAsInt(Property.HA_LINK_SYNC_THREADS);
+		threads = Math.max(1, Math.min(threads, links));
+		log.info("Syncing " + links + " links with " + threads + " threads");
+		final AtomicInteger threadCnt = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, threadNamePrefix + "-" + threadCnt.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Tell the peer that it can mark the given leases as synced.
+	 *
+	 * @param dhcpLeases the leases stored by this server
+	 * @return the number of leases marked as synced by the peer, or -1 on failure
+	 */
+	protected abstract int setPeerLeasesSynced(List<DhcpLease> dhcpLeases);
+
+	protected void startSync() {
+		// set link syncing state now or in process method?
+		dhcpLink.setState(DhcpLink.State.SYNCING);
+		log.info("Starting lease sync for link: " + dhcpLink.getLinkAddress());
+		startInstant = Instant.now();
+		lastProgressInstant = startInstant;
+	}
+
+	/**
+	 * Add a lease received from the peer to the current batch,
+	 * and store the batch if it is full.
+	 */
+	protected void leaseReceived(DhcpLease dhcpLease) {
+		if (failed) {
+			// the sync will be reported failed, so don't store any more
+			return;
+		}
+		received++;
+		// mark this lease as 'synced'
+		dhcpLease.setHaPeerState(dhcpLease.getState());
+		batch.add(dhcpLease);
+		if (batch.size() >= batchSize) {
+			storeBatch();
+		}
+	}
+
+	/**
+	 * Store the current batch, and tell the peer it can mark the batch synced.
+	 */
+	protected void storeBatch() {
+		if (batch.isEmpty() || failed) {
+			return;
+		}
+		try {
+			int cnt = dhcpLeasesService.createOrUpdateDhcpLeases(batch);
+			stored += cnt;
+			batches++;
+			if (cnt == batch.size()) {
+				// now tell the peer server we're in sync
+				int peerCnt = setPeerLeasesSynced(batch);
+				if (peerCnt >= 0) {
+					synced += peerCnt;
+				}
+				else {
+					log.warn("Failed to mark " + batch.size() +
+							" leases synced on peer for link: " + dhcpLink.getLinkAddress());
+				}
+			}
+			else {
+				// the peer will send the unsynced leases again at the next sync
+				log.warn("Stored only " + cnt + " of " + batch.size() +
+						" leases for link: " + dhcpLink.getLinkAddress());
+			}
+		}
+		catch (Exception ex) {
+			log.error("Failed to store leases for link: " + dhcpLink.getLinkAddress(), ex);
+			failed = true;
+		}
+		batch.clear();
+		Instant now = Instant.now();
+		if (Duration.between(lastProgressInstant, now).toMillis() >= PROGRESS_INTERVAL) {
+			lastProgressInstant = now;
+			log.info("Lease sync progress for link: " + dhcpLink.getLinkAddress() +
+					" " + getProgress(now));
+		}
+	}
+
+	/**
+	 * Store the last batch, if the sync succeeded, and then
+	 * set the state of the link and release the sync latch.
+	 *
+	 * @param success true if all of the leases were received from the peer
+	 */
+	protected void syncCompleted(boolean success) {
+		if (success) {
+			storeBatch();
+			success = !failed;
+		}
+		String progress = getProgress(Instant.now());
+		if (success) {
+			dhcpLink.setState(DhcpLink.State.OK);
+			log.info("Completed lease sync for link: " + dhcpLink.getLinkAddress() +
+					" " + progress);
+		}
+		else {
+			log.error("Failed lease sync for link: " + dhcpLink.getLinkAddress() +
+					" " + progress);
+		}
+		linkSyncLatch.countDown();
+	}
+
+	private String getProgress(Instant now) {
+		long timeElapsed = Duration.between(startInstant, now).toMillis();
+		return "received=" + received +
+				" stored=" + stored +
+				" synced=" + synced +
+				" batches=" + batches +
+				" timeElapsed=" + timeElapsed + "ms" +
+				" rate=" + (received * 1000 / Math.max(1, timeElapsed)) + "/s";
+	}
+}
@@ -2,10 +2,12 @@ package com.jagornet.dhcp.server.ha;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 
 import javax.ws.rs.client.InvocationCallback;
 
@@ -118,16 +120,16 @@ public class HaPrimaryFSM implements Runnable {
 	    										  false : true;
 			setState(State.PRIMARY_SYNCING_FROM_BACKUP);
 			Instant start = Instant.now();
+			// sync up to the configured number of links at a time
+			ExecutorService linkSyncExecutor = 
+					HaLinkSync.newLinkSyncExecutor("PrimaryLinkSyncFromBackup", dhcpLinks.size());
 			// check the state of the backup
 			// set links unavailable
 			for (DhcpLink dhcpLink : dhcpLinks) {
 				dhcpLink.setState(DhcpLink.State.NOT_SYNCED);
 
-				Thread linkSyncThread = new Thread(
-						haClient.buildLinkSyncThread(dhcpLink, linkSyncLatch, unsyncedLeasesOnly), 
-						"PrimaryLinkSyncFromBackup-" + dhcpLink.getLinkAddress()
-						);
-				linkSyncThread.start();
+				linkSyncExecutor.execute(
+						haClient.buildLinkSyncThread(dhcpLink, linkSyncLatch, unsyncedLeasesOnly));
 			}
 	    	try {
 // TODO
@@ -146,6 +148,9 @@ public class HaPrimaryFSM implements Runnable {
 				log.error("Link sync interrupted: ", e);
 				throw new HaException(e);
 			}
+	    	finally {
+	    		linkSyncExecutor.shutdown();
+	    	}
 		}
 		else {
 			log.error("No links to sync!");
@@ -211,49 +216,17 @@ public class HaPrimaryFSM implements Runnable {
 			}
 			else {
 				log.info("Sending binding updates to backup server");
-				//TODO: consider posting the whole binding rather than one DhcpLease
-				// at a time, even though Binding probably only contains one DhcpLease?
 //				Collection<com.jagornet.dhcp.server.db.DbDhcpOption> dhcpOptions = 
 //						BaseBindingManager.convertDhcpOptions(dhcpOptionMap);				
+				List<DhcpLease> dhcpLeases = new ArrayList<DhcpLease>();
 				for (Binding binding : bindings) {
-					List<DhcpLease> dhcpLeases = LeaseManager.toDhcpLeases(binding, dhcpOptionMap.values());
+					dhcpLeases.addAll(LeaseManager.toDhcpLeases(binding, dhcpOptionMap.values()));
+				}
+				// send all the leases together if the client batches
+				// updates, otherwise send them one at a time
+				if (!haClient.updateDhcpLeases(dhcpLeases, !asyncUpdate)) {
 					for (DhcpLease dhcpLease : dhcpLeases) {
-						// Expected response is that the haPeerState is
-						// set to the value of the state...
-						// TODO: consider an alternative, architected return value?
-						DhcpLease expectedDhcpLease = dhcpLease.clone();
-						expectedDhcpLease.setHaPeerState(expectedDhcpLease.getState());
-						if (!asyncUpdate) {
-							DhcpLease responseDhcpLease = haClient.updateDhcpLease(dhcpLease);
-							// debug detail handled in HaClient implementation
-							if (log.isInfoEnabled()) {
-								log.info("HA (sync) DhcpLease update:"+
-										" IP=" + dhcpLease.getIpAddress().getHostAddress());
-							}
-							if (expectedDhcpLease.equals(responseDhcpLease)) {
-								// if response matches what we sent, then success
-								// so update the HA peer state of the lease as synced
-								dhcpLease.setHaPeerState(dhcpLease.getState());
-								if (!dhcpLeasesService.updateDhcpLease(dhcpLease.getIpAddress(), dhcpLease)) {
-									log.error("HA (sync) peer state update failed");
-								}
-							}
-							else {
-								log.warn("HA (sync) DhcpLease update does not match:" +
-										System.lineSeparator() +
-										"expected: " + expectedDhcpLease +
-										System.lineSeparator() +
-										"response: " + responseDhcpLease);
-										// if the response doesn't match what we sent, then failure
-								// so update the HA peer state of the lease as unknown
-// not necessary, since we set haPeerState=UNKNOWN when creating/updating the lease
-//								dhcpLease.setHaPeerState(IaAddress.UNKNOWN);
-//								dhcpLeasesService.updateDhcpLease(dhcpLease.getIpAddress(), dhcpLease);
-							}
-						}
-						else { 
-							haClient.updateDhcpLeaseAsync(dhcpLease, expectedDhcpLease);
-						}
+						updateDhcpLease(dhcpLease);
 					}
 				}
 			}
@@ -263,6 +236,45 @@ public class HaPrimaryFSM implements Runnable {
 		}
 	}
 	
+	protected void updateDhcpLease(DhcpLease dhcpLease) {
+		// Expected response is that the haPeerState is
+		// set to the value of the state...
+		// TODO: consider an alternative, architected return value?
+		DhcpLease expectedDhcpLease = dhcpLease.clone();
+		expectedDhcpLease.setHaPeerState(expectedDhcpLease.getState());
+		if (!asyncUpdate) {
+			DhcpLease responseDhcpLease = haClient.updateDhcpLease(dhcpLease);
+			// debug detail handled in HaClient implementation
+			if (log.isInfoEnabled()) {
+				log.info("HA (sync) DhcpLease update:"+
+						" IP=" + dhcpLease.getIpAddress().getHostAddress());
+			}
+			if (expectedDhcpLease.equals(responseDhcpLease)) {
+				// if response matches what we sent, then success
+				// so update the HA peer state of the lease as synced
+				dhcpLease.setHaPeerState(dhcpLease.getState());
+				if (!dhcpLeasesService.updateDhcpLease(dhcpLease.getIpAddress(), dhcpLease)) {
+					log.error("HA (sync) peer state update failed");
+				}
+			}
+			else {
+				log.warn("HA (sync) DhcpLease update does not match:" +
+						System.lineSeparator() +
+						"expected: " + expectedDhcpLease +
+						System.lineSeparator() +
+						"response: " + responseDhcpLease);
+				// if the response doesn't match what we sent, then failure
+				// so update the HA peer state of the lease as unknown
+// not necessary, since we set haPeerState=UNKNOWN when creating/updating the lease
+//				dhcpLease.setHaPeerState(IaAddress.UNKNOWN);
+//				dhcpLeasesService.updateDhcpLease(dhcpLease.getIpAddress(), dhcpLease);
+			}
+		}
+		else { 
+			haClient.updateDhcpLeaseAsync(dhcpLease, expectedDhcpLease);
+		}
+	}
+	
 	@Deprecated // use HaDhcpLeaseCallback instead
 	public class HaDhcpLeaseCallbackString implements InvocationCallback<String> {
 		
@@ -3,9 +3,8 @@ package com.jagornet.dhcp.server.ha;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
@@ -19,23 +18,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jagornet.dhcp.server.config.DhcpLink;
 import com.jagornet.dhcp.server.db.DhcpLease;
 import com.jagornet.dhcp.server.rest.api.DhcpLeasesResource;
-import com.jagornet.dhcp.server.rest.api.DhcpLeasesService;
 import com.jagornet.dhcp.server.rest.api.JacksonObjectMapper;
 import com.jagornet.dhcp.server.rest.cli.JerseyRestClient;
 
-public class RestLinkSync implements Runnable {
+public class RestLinkSync extends HaLinkSync {
 
 	private static Logger log = LoggerFactory.getLogger(RestLinkSync.class);
 
-	// the DhcpLink to be synced
-	private DhcpLink dhcpLink;
-	// thread synchronization latch
-	private CountDownLatch linkSyncLatch;
 	// REST client for communicating to peer
 	private JerseyRestClient restClient;
-	// service for handling requests from peer
-	private DhcpLeasesService dhcpLeasesService;
-	private boolean unsyncedLeasesOnly;
 	private ObjectMapper objectMapper;
 	
 	public RestLinkSync(DhcpLink dhcpLink,
@@ -43,12 +34,9 @@ public class RestLinkSync implements Runnable {
 							boolean unsyncedLeasesOnly,
 							JerseyRestClient restClient) {
 
-		this.dhcpLink = dhcpLink;
-		this.linkSyncLatch = linkSyncLatch;
-		this.unsyncedLeasesOnly = unsyncedLeasesOnly;
+		super(dhcpLink, linkSyncLatch, unsyncedLeasesOnly);
 		this.restClient = restClient;
 
-		dhcpLeasesService = new DhcpLeasesService();
 		objectMapper = new JacksonObjectMapper().getJsonObjectMapper();
 	}
 	
@@ -69,24 +57,25 @@ public class RestLinkSync implements Runnable {
 			paramMap.put(DhcpLeasesResource.QUERYPARAM_HAUPDATE, 
 							DhcpLeasesResource.QUERYPARAM_HAUPDATE_ALL);
 		}
-		// set link syncing state now or in process method?
-		dhcpLink.setState(DhcpLink.State.SYNCING);
-		log.info("Starting lease sync for link: " + dhcpLink.getLinkAddress());
-		Instant start = Instant.now();
-		boolean syncOk = false;
-		syncOk = processJsonStream(paramMap);
-		Instant finish = Instant.now();
-	    long timeElapsed = Duration.between(start, finish).toMillis();
-		if (syncOk) {
-			dhcpLink.setState(DhcpLink.State.OK);
-			log.info("Completed lease sync for link: " + dhcpLink.getLinkAddress() + 
-					 " timeElapsed=" + timeElapsed + "ms");
+		startSync();
+		boolean syncOk = processJsonStream(paramMap);
+		syncCompleted(syncOk);
+	}
+	
+	@Override
+	protected int setPeerLeasesSynced(List<DhcpLease> dhcpLeases) {
+		String response = restClient.doPutDhcpLeases(
+				DhcpLeasesResource.PATH + DhcpLeasesResource.SYNCED, dhcpLeases);
+		if (response == null) {
+			return -1;
 		}
-		else {
-			log.error("Failed lease sync for link: " + dhcpLink.getLinkAddress() + 
-					  " timeElapsed=" + timeElapsed + "ms");
+		try {
+			return Integer.parseInt(response.trim());
+		}
+		catch (NumberFormatException ex) {
+			log.error("Unexpected response to mark leases synced: " + response);
+			return -1;
 		}
-		linkSyncLatch.countDown();
 	}
 	
 	private boolean processJsonStream(Map<String, Object> paramMap) {
@@ -99,20 +88,7 @@ public class RestLinkSync implements Runnable {
 				// Iterate through the objects of the array.
 				while (JsonToken.START_OBJECT.equals(parser.nextToken())) {
 					DhcpLease dhcpLease = parser.readValueAs(DhcpLease.class);
-					// mark this lease as 'synced'
-					dhcpLease.setHaPeerState(dhcpLease.getState());
-					if (dhcpLeasesService.createOrUpdateDhcpLease(dhcpLease)) {
-						// now tell the peer server we're in sync
-//							restClient.doPutString(
-//									DhcpLeasesResource.buildPutPath(
-//											dhcpLease.getIpAddress().getHostAddress()),
-//									DhcpLeaseJsonUtil.dhcpLeaseToJson(dhcpLease));
-						restClient.doPutDhcpLease(
-								DhcpLeasesResource.buildPutPath(
-										dhcpLease.getIpAddress().getHostAddress()),
-										dhcpLease);
-
-					}
+					leaseReceived(dhcpLease);
 				}
 			}
 			else {
@@ -37,29 +37,29 @@ import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Util;
 import com.jagornet.dhcp.server.JagornetDhcpServer;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
 
 /**
  * Title: DhcpV4ChannelDecoder
  * Description: The DHCPv4 message decoder used by the NETTY-based DHCPv4 server
- * when receiving packets.  This is the second handler in the inbound pipeline.
+ * when receiving packets.  This is the first handler in the inbound pipeline.
  * This class does the work of creating the request DhcpV4Message and then
- * sends it on to the channel handler, which is next in the pipeline. 
+ * sends it on to the channel handler, which is next in the pipeline.
+ * The remote sender is taken from each DatagramPacket, so this decoder holds
+ * no per-packet state and may be shared by any number of channels and threads.
  * 
  * @author A. Gregory Rabil
  */
 @ChannelHandler.Sharable
-public class DhcpV4ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
+public class DhcpV4ChannelDecoder extends MessageToMessageDecoder<DatagramPacket>
 {
     private static Logger log = LoggerFactory.getLogger(DhcpV4ChannelDecoder.class);
 
     protected InetSocketAddress localSocketAddress = null;
     
-    protected InetSocketAddress remoteSocketAddress = null;
-    
     protected boolean ignoreSelfPackets;
     protected NetworkInterface v4BroadcastNetIf;
     
@@ -74,6 +74,7 @@ public class DhcpV4ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
     public boolean acceptInboundMessage(Object obj) throws Exception {
     	boolean accept = super.acceptInboundMessage(obj);
     	if (accept) {
+    		InetSocketAddress remoteSocketAddress = ((DatagramPacket)obj).sender();
     	    // TODO: the DhcpV4UnicastChannelDecoder calls this superclass
     		// implementation, but maybe should just refactor appropriately
     		if (!(this instanceof DhcpV4UnicastChannelDecoder)) {
@@ -116,8 +117,8 @@ public class DhcpV4ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
     }
     
 	@Override
-	protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
-		// remoteSocketAddress is set by DhcpV4PacketDecoder.channelRead
+	protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> out) throws Exception {
+		InetSocketAddress remoteSocketAddress = packet.sender();
 		log.info("Decoding broadcast message:" +
 				 " local=" + Util.socketAddressAsString(localSocketAddress) + 
 				 " remote=" + Util.socketAddressAsString(remoteSocketAddress));
@@ -125,7 +126,7 @@ public class DhcpV4ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
 		// without additional allocations, so should not be necessary 
 		// to have a NettyDhcpV4Message.decode() for Netty's ByteBuf
         DhcpV4Message dhcpMessage = 
-        	DhcpV4Message.decode(buf.nioBuffer(), localSocketAddress, remoteSocketAddress);
+        	DhcpV4Message.decode(packet.content().nioBuffer(), localSocketAddress, remoteSocketAddress);
         log.info("Broadcast message decoded: msg=" + dhcpMessage);
 		// send the message to the next handler in the pipeline, which is
 		// the DhcpV4ChannelHandler
@@ -140,14 +141,6 @@ public class DhcpV4ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
 		this.localSocketAddress = localSocketAddress;
 	}
 
-	public InetSocketAddress getRemoteSocketAddress() {
-		return remoteSocketAddress;
-	}
-
-	public void setRemoteSocketAddress(InetSocketAddress remoteSocketAddress) {
-		this.remoteSocketAddress = remoteSocketAddress;
-	}
-
 	public boolean isIgnoreSelfPackets() {
 		return ignoreSelfPackets;
 	}
@@ -25,8 +25,10 @@
  */
 package com.jagornet.dhcp.server.netty;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +36,11 @@ import org.slf4j.LoggerFactory;
 import com.jagornet.dhcp.core.message.DhcpV4Message;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Util;
+import com.jagornet.dhcp.server.request.DhcpV4DiscoverProcessor;
 import com.jagornet.dhcp.server.request.DhcpV4MessageHandler;
+import com.jagornet.dhcp.server.request.DhcpV4MessageProcessor;
+import com.jagornet.dhcp.server.request.binding.Binding;
+import com.jagornet.dhcp.server.request.binding.V4PingChecker;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -71,46 +77,57 @@ public class DhcpV4ChannelHandler extends SimpleChannelInboundHandler<DhcpV4Mess
         if (log.isDebugEnabled()) {
         	log.debug("Received: " + msg.toStringWithOptions());
         }
-        else {
+        else if (log.isInfoEnabled()) {
         	log.info("Received: " + msg.toString());
         }
         
-        DhcpV4Message replyMessage = 
-        	DhcpV4MessageHandler.handleMessage(msg.getLocalAddress().getAddress(), msg);
+        DhcpV4MessageProcessor processor =
+        	DhcpV4MessageHandler.getMessageProcessor(msg.getLocalAddress().getAddress(), msg);
+        DhcpV4Message replyMessage = (processor != null) ? processor.processMessage() : null;
         
         if (replyMessage != null) {
-        	if ((replyMessage.getRemoteAddress().getAddress().equals(DhcpConstants.ZEROADDR_V4))) {
-    			if (log.isDebugEnabled()) {
-    				log.debug("Client request received from zero address," +
-    							" replying to broadcast address.");
-    			}
-    			replyMessage.setRemoteAddress(new InetSocketAddress(DhcpConstants.BROADCAST,
-    											replyMessage.getRemoteAddress().getPort()));
-    		}
-        	if (log.isDebugEnabled()) {
-        		log.debug("Sending: " + replyMessage.toStringWithOptions());
-        	}
-        	else {
-        		log.info("Sending: " + replyMessage.toString());
+        	if (processor instanceof DhcpV4DiscoverProcessor) {
+        		// only an address just allocated from a pool is ping checked,
+        		// not a static binding or the client's existing binding
+        		Binding binding = ((DhcpV4DiscoverProcessor)processor).getAllocatedBinding();
+        		V4PingChecker pingChecker = (binding != null) ? V4PingChecker.getInstance() : null;
+        		if (pingChecker != null) {
+        			InetAddress yiAddr = replyMessage.getYiAddr();
+        			CompletableFuture<Boolean> probe = pingChecker.probe(yiAddr);
+        			if (probe != null) {
+        				// send the offer when the probe completes, rather
+        				// than holding this thread for the ping timeout
+        				probe.whenComplete((reachable, ex) -> {
+        					if (ex != null) {
+        						// fail open, the offer is better than no reply
+        						log.error("Ping check failed for: " + yiAddr.getHostAddress(), ex);
+        						sendProbedReply(replyMessage);
+        					}
+        					else if (reachable) {
+        						// no reply, the client will discover again
+        						try {
+        							pingChecker.addressConflict(binding, yiAddr);
+        						}
+        						catch (Exception e) {
+        							log.error("Failed to handle address conflict for: " +
+        									yiAddr.getHostAddress(), e);
+        						}
+        						finally {
+        							releaseReply(replyMessage);
+        						}
+        					}
+        					else {
+        						sendProbedReply(replyMessage);
+        					}
+        				});
+        				return;
+        			}
+        			// the ping checker has already logged why
+        			log.warn("Sending offer without ping check: " + yiAddr.getHostAddress() +
+        					" (skipped=" + pingChecker.getSkippedCount() + ")");
+        		}
         	}
-			ChannelFuture future = outboundChannel.writeAndFlush(
-					new DefaultAddressedEnvelope<DhcpV4Message, SocketAddress>(
-							replyMessage, replyMessage.getRemoteAddress()));
-			future.addListener(new ChannelFutureListener() {
-				public void operationComplete(ChannelFuture future) {
-		        	if (log.isDebugEnabled()) {
-						log.debug("Channel: " +
-								Util.socketAddressAsString(
-										(InetSocketAddress)future.channel().localAddress()) +
-								" write/flush operation complete: success=" + future.isSuccess());
-		        	}
-					if (replyMessage instanceof NettyDhcpV4Message) {
-			        	// release message resources, which basically means 
-			        	// releasing the byte buffer back to the buffer pool
-			        	((NettyDhcpV4Message)replyMessage).release();
-					}
-				}
-			});
+        	sendReply(replyMessage);
         }
         else {
         	// don't log a warning for release, which has no reply message
@@ -119,5 +136,68 @@ public class DhcpV4ChannelHandler extends SimpleChannelInboundHandler<DhcpV4Mess
         	}
         }
 	}
+	
+	/**
+	 * Send a reply message on the outbound channel.
+	 * 
+	 * @param replyMessage the reply message
+	 */
+	protected void sendReply(final DhcpV4Message replyMessage)
+	{
+		if ((replyMessage.getRemoteAddress().getAddress().equals(DhcpConstants.ZEROADDR_V4))) {
+			if (log.isDebugEnabled()) {
+				log.debug("Client request received from zero address," +
+							" replying to broadcast address.");
+			}
+			replyMessage.setRemoteAddress(new InetSocketAddress(DhcpConstants.BROADCAST,
+											replyMessage.getRemoteAddress().getPort()));
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Sending: " + replyMessage.toStringWithOptions());
+		}
+		else {
+			log.info("Sending: " + replyMessage.toString());
+		}
+		ChannelFuture future = outboundChannel.writeAndFlush(
+				new DefaultAddressedEnvelope<DhcpV4Message, SocketAddress>(
+						replyMessage, replyMessage.getRemoteAddress()));
+		future.addListener(new ChannelFutureListener() {
+			public void operationComplete(ChannelFuture future) {
+				if (log.isDebugEnabled()) {
+					log.debug("Channel: " +
+							Util.socketAddressAsString(
+									(InetSocketAddress)future.channel().localAddress()) +
+							" write/flush operation complete: success=" + future.isSuccess());
+				}
+				releaseReply(replyMessage);
+			}
+		});
+	}
+	
+	/**
+	 * Send a reply message after a ping check, from the thread which
+	 * completed the probe, where an exception would otherwise be lost.
+	 * 
+	 * @param replyMessage the reply message
+	 */
+	protected void sendProbedReply(final DhcpV4Message replyMessage)
+	{
+		try {
+			sendReply(replyMessage);
+		}
+		catch (Exception ex) {
+			log.error("Failed to send reply after ping check", ex);
+			releaseReply(replyMessage);
+		}
+	}
+	
+	protected void releaseReply(DhcpV4Message replyMessage)
+	{
+		if (replyMessage instanceof NettyDhcpV4Message) {
+        	// release message resources, which basically means 
+        	// releasing the byte buffer back to the buffer pool
+        	((NettyDhcpV4Message)replyMessage).release();
+		}
+	}
     
 }
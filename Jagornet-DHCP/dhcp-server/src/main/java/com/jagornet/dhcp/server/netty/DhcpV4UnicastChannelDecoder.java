@@ -35,8 +35,8 @@ import com.jagornet.dhcp.core.message.DhcpV4Message;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Util;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
 
 /**
  * Title: DhcpV4UnicastChannelDecoder
@@ -61,6 +61,7 @@ public class DhcpV4UnicastChannelDecoder extends DhcpV4ChannelDecoder
 	public boolean acceptInboundMessage(Object obj) throws Exception {
 		boolean accept = super.acceptInboundMessage(obj);
 		if (accept) {
+			InetSocketAddress remoteSocketAddress = ((DatagramPacket)obj).sender();
 	    	if (remoteSocketAddress.getAddress().equals(DhcpConstants.ZEROADDR_V4)) {
 	        	// can't unicast to 0.0.0.0, so a broadcast channel is needed
 	        	// this is a workaround for Windows implementation which will
@@ -73,8 +74,8 @@ public class DhcpV4UnicastChannelDecoder extends DhcpV4ChannelDecoder
 	}
     
 	@Override
-	protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
-		// remoteSocketAddress is set by DhcpV4PacketDecoder.channelRead
+	protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> out) throws Exception {
+		InetSocketAddress remoteSocketAddress = packet.sender();
 		log.info("Decoding unicast message:" +
 				 " local=" + Util.socketAddressAsString(localSocketAddress) + 
 				 " remote=" + Util.socketAddressAsString(remoteSocketAddress));
@@ -82,7 +83,7 @@ public class DhcpV4UnicastChannelDecoder extends DhcpV4ChannelDecoder
 		// without additional allocations, so should not be necessary 
 		// to have a NettyDhcpV4Message.decode() for Netty's ByteBuf
         DhcpV4Message dhcpMessage = 
-        	DhcpV4Message.decode(buf.nioBuffer(), localSocketAddress, remoteSocketAddress);
+        	DhcpV4Message.decode(packet.content().nioBuffer(), localSocketAddress, remoteSocketAddress);
         // DHCP message received via unicast
         dhcpMessage.setUnicast(true);
         log.info("Unicast message decoded: msg=" + dhcpMessage);
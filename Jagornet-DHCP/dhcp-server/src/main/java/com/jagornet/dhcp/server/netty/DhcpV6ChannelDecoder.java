@@ -36,28 +36,28 @@ import com.jagornet.dhcp.core.message.DhcpV6Message;
 import com.jagornet.dhcp.core.util.Util;
 import com.jagornet.dhcp.server.JagornetDhcpServer;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
 
 /**
  * Description: The DHCPv6 message decoder used by the NETTY-based DHCPv6 server
- * when receiving packets.  This is the second handler in the inbound pipeline.
+ * when receiving packets.  This is the first handler in the inbound pipeline.
  * This class does the work of creating the request DhcpV6Message and then
- * sends it on to the channel handler, which is next in the pipeline. 
+ * sends it on to the channel handler, which is next in the pipeline.
+ * The remote sender is taken from each DatagramPacket, so this decoder holds
+ * no per-packet state and may be shared by any number of channels and threads.
  * 
  * @author A. Gregory Rabil
  */
 @ChannelHandler.Sharable
-public class DhcpV6ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
+public class DhcpV6ChannelDecoder extends MessageToMessageDecoder<DatagramPacket>
 {
     private static Logger log = LoggerFactory.getLogger(DhcpV6ChannelDecoder.class);
 
     protected InetSocketAddress localSocketAddress = null;
     
-    protected InetSocketAddress remoteSocketAddress = null;
-    
     protected boolean ignoreSelfPackets;
     
     public DhcpV6ChannelDecoder(InetSocketAddress localSocketAddress, boolean ignoreSelfPackets)
@@ -70,6 +70,7 @@ public class DhcpV6ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
     public boolean acceptInboundMessage(Object obj) throws Exception {
     	boolean accept = super.acceptInboundMessage(obj);
     	if (accept) {
+    		InetSocketAddress remoteSocketAddress = ((DatagramPacket)obj).sender();
     		InetAddress localAddr = localSocketAddress.getAddress();
     		InetAddress remoteAddr = remoteSocketAddress.getAddress();
     		if (localAddr.isLinkLocalAddress() !=  remoteAddr.isLinkLocalAddress()) {
@@ -94,7 +95,8 @@ public class DhcpV6ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
     }
     
 	@Override
-	protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
+	protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> out) throws Exception {
+		InetSocketAddress remoteSocketAddress = packet.sender();
 		log.info("Decoding multicast message:" +
 				 " local=" + Util.socketAddressAsString(localSocketAddress) + 
 				 " remote=" + Util.socketAddressAsString(remoteSocketAddress));
@@ -102,7 +104,7 @@ public class DhcpV6ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
 		// without additional allocations, so should not be necessary 
 		// to have a NettyDhcpV4Message.decode() for Netty's ByteBuf
         DhcpV6Message dhcpMessage = 
-        	DhcpV6Message.decode(buf.nioBuffer(), localSocketAddress, remoteSocketAddress);
+        	DhcpV6Message.decode(packet.content().nioBuffer(), localSocketAddress, remoteSocketAddress);
         log.info("Multicast message decoded: msg=" + dhcpMessage);
 		// send the message to the next handler in the pipeline, which is
 		// the DhcpV6ChannelHandler
@@ -117,14 +119,6 @@ public class DhcpV6ChannelDecoder extends MessageToMessageDecoder<ByteBuf>
 		this.localSocketAddress = localSocketAddress;
 	}
 
-	public InetSocketAddress getRemoteSocketAddress() {
-		return remoteSocketAddress;
-	}
-
-	public void setRemoteSocketAddress(InetSocketAddress remoteSocketAddress) {
-		this.remoteSocketAddress = remoteSocketAddress;
-	}
-
 	public boolean isIgnoreSelfPackets() {
 		return ignoreSelfPackets;
 	}
@@ -69,7 +69,7 @@ public class DhcpV6ChannelHandler extends SimpleChannelInboundHandler<DhcpV6Mess
         if (log.isDebugEnabled()) {
         	log.debug("Received: " + dhcpMessage.toStringWithOptions());
         }
-        else {
+        else if (log.isInfoEnabled()) {
         	log.info("Received: " + dhcpMessage.toString());
         }
         
@@ -34,8 +34,8 @@ import org.slf4j.LoggerFactory;
 import com.jagornet.dhcp.core.message.DhcpV6Message;
 import com.jagornet.dhcp.core.util.Util;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
 
 /**
  * Title: DhcpV6UnicastChannelDecoder
@@ -55,7 +55,8 @@ public class DhcpV6UnicastChannelDecoder extends DhcpV6ChannelDecoder
 	}
     
 	@Override
-	protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
+	protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> out) throws Exception {
+		InetSocketAddress remoteSocketAddress = packet.sender();
 		log.info("Decoding unicast message:" +
 				 " local=" + Util.socketAddressAsString(localSocketAddress) + 
 				 " remote=" + Util.socketAddressAsString(remoteSocketAddress));
@@ -63,7 +64,7 @@ public class DhcpV6UnicastChannelDecoder extends DhcpV6ChannelDecoder
 		// without additional allocations, so should not be necessary 
 		// to have a NettyDhcpV4Message.decode() for Netty's ByteBuf
         DhcpV6Message dhcpMessage = 
-        	DhcpV6Message.decode(buf.nioBuffer(), localSocketAddress, remoteSocketAddress);
+        	DhcpV6Message.decode(packet.content().nioBuffer(), localSocketAddress, remoteSocketAddress);
         // DHCP message received via unicast
         dhcpMessage.setUnicast(true);
         log.info("Unicast message decoded: msg=" + dhcpMessage);
@@ -60,6 +60,7 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollDatagramChannel;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.kqueue.KQueue;
@@ -149,11 +150,14 @@ public class NettyDhcpServer
         			DhcpServerPolicies.globalPolicyAsInt(Property.CHANNEL_READ_BUFFER_SIZE);
         	final int sendBufSize = 
         			DhcpServerPolicies.globalPolicyAsInt(Property.CHANNEL_WRITE_BUFFER_SIZE);
+        	final int reusePortSockets = 
+        			DhcpServerPolicies.globalPolicyAsInt(Property.CHANNEL_REUSEPORT_SOCKETS);
         	
         	log.info("Initializing channels:" + 
         			" corePoolSize=" + corePoolSize +
         			" receiveBufferSize=" + receiveBufSize +
-        			" sendBufferSize=" + sendBufSize);
+        			" sendBufferSize=" + sendBufSize +
+        			" reusePortSockets=" + reusePortSockets);
         	
         	//eventExecutorGroup = new DefaultEventExecutorGroup(corePoolSize);
         	// unordered avoids any bottlenecks from ordering, but adds some risk
@@ -165,14 +169,30 @@ public class NettyDhcpServer
 	        		// local address for packets received on this channel
 		            final InetSocketAddress sockAddr = new InetSocketAddress(addr, v4Port);
 		            checkSocket(sockAddr);
+		            // the decoder takes the remote sender from each datagram packet,
+		            // so one instance can be safely shared by all channel threads
+		            final DhcpV4ChannelDecoder v4UcastDecoder =
+		            		new DhcpV4UnicastChannelDecoder(sockAddr, ignoreSelfPackets);
 		            Bootstrap bootstrap = new Bootstrap();
 		            String io = null;
 	            	EventLoopGroup group = null;
+	            	int numSockets = 1;
 	            	if (Epoll.isAvailable()) {
 		            	// Use EpollDatagramChannels for IPv4 unicast addresses on Linux
 		            	bootstrap.channel(EpollDatagramChannel.class);
-	            		group = new EpollEventLoopGroup();
-	            		io = "Epoll I/O";
+		            	if (reusePortSockets > 1) {
+		            		// bind multiple sockets to the same address, each registered
+		            		// with its own event loop, and let the kernel load balance
+		            		// the received packets across the sockets
+		            		bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+		            		numSockets = reusePortSockets;
+		            		group = new EpollEventLoopGroup(numSockets);
+		            		io = "Epoll I/O (SO_REUSEPORT)";
+		            	}
+		            	else {
+		            		group = new EpollEventLoopGroup();
+		            		io = "Epoll I/O";
+		            	}
 	            	}
 	            	else if (KQueue.isAvailable()) {
 		            	// Use KQueueDatagramChannels for IPv4 unicast addresses on BSD
@@ -196,9 +216,7 @@ public class NettyDhcpServer
 						protected void initChannel(DatagramChannel channel) throws Exception {
 			        		ChannelPipeline pipeline = channel.pipeline();
 				            pipeline.addLast("logger", new LoggingHandler());
-				            pipeline.addLast("decoder",
-				            		new DhcpV4PacketDecoder(
-				            				new DhcpV4UnicastChannelDecoder(sockAddr, ignoreSelfPackets)));
+				            pipeline.addLast("decoder", v4UcastDecoder);
 				            pipeline.addLast("encoder",
 				            		new DhcpV4PacketEncoder(
 				            				new DhcpV4ChannelEncoder()));
@@ -207,16 +225,20 @@ public class NettyDhcpServer
 						}	        		
 	            	});
 
-		            log.info("Binding " + io + " datagram channel on IPv4 socket address: " + sockAddr);
-		            ChannelFuture future = bootstrap.bind(sockAddr);
-		            future.await();
-		            if (!future.isSuccess()) {
-		            	log.error("Failed to bind to IPv4 unicast channel: " + future.cause());
-		            	throw new IOException(future.cause());
+		            for (int i=0; i<numSockets; i++) {
+			            log.info("Binding " + io + " datagram channel on IPv4 socket address: " + sockAddr);
+			            ChannelFuture future = bootstrap.bind(sockAddr);
+			            future.await();
+			            if (!future.isSuccess()) {
+			            	log.error("Failed to bind to IPv4 unicast channel: " + future.cause());
+			            	throw new IOException(future.cause());
+			            }
+			            DatagramChannel channel = (DatagramChannel)future.channel();
+			            // the first socket bound to the address is used
+			            // for sending replies to broadcast requests
+			            v4UcastChannels.putIfAbsent(addr, channel);
+			            channels.add(channel);
 		            }
-		            DatagramChannel channel = (DatagramChannel)future.channel();
-		            v4UcastChannels.put(addr, channel);
-		            channels.add(channel);
 	        	}
         	}
         	
@@ -245,6 +267,8 @@ public class NettyDhcpServer
 		        		foundV4Addr = true;
 			            final InetSocketAddress sockAddr = new InetSocketAddress(addr, v4Port); 
 			            checkSocket(sockAddr);
+			            final DhcpV4ChannelDecoder v4BcastDecoder =
+			            		new DhcpV4ChannelDecoder(sockAddr, ignoreSelfPackets, v4NetIf);
 			            Bootstrap bootstrap = new Bootstrap();
 		            	bootstrap.channel(NioDatagramChannel.class);
 		            	bootstrap.group(new NioEventLoopGroup());
@@ -257,9 +281,7 @@ public class NettyDhcpServer
 							protected void initChannel(DatagramChannel channel) throws Exception {
 				        		ChannelPipeline pipeline = channel.pipeline();
 					            pipeline.addLast("logger", new LoggingHandler());
-					            pipeline.addLast("decoder",
-					            		new DhcpV4PacketDecoder(
-					            				new DhcpV4ChannelDecoder(sockAddr, ignoreSelfPackets, v4NetIf)));
+					            pipeline.addLast("decoder", v4BcastDecoder);
 					            pipeline.addLast("encoder",
 					            		new DhcpV4PacketEncoder(
 					            				new DhcpV4ChannelEncoder()));
@@ -293,14 +315,28 @@ public class NettyDhcpServer
 	        		// local address for packets received on this channel
 		            final InetSocketAddress sockAddr = new InetSocketAddress(addr, v6Port);
 		            checkSocket(sockAddr);
+		            final DhcpV6ChannelDecoder v6UcastDecoder =
+		            		new DhcpV6UnicastChannelDecoder(sockAddr, ignoreSelfPackets);
 	        		Bootstrap bootstrap = new Bootstrap();
 		            String io = null;
 	            	EventLoopGroup group = null;
+	            	int numSockets = 1;
 	            	if (Epoll.isAvailable()) {
 		            	// Use EpollDatagramChannels for IPv6 unicast addresses on Linux
 		            	bootstrap.channel(EpollDatagramChannel.class);
-	            		group = new EpollEventLoopGroup();
-	            		io = "Epoll I/O";
+		            	if (reusePortSockets > 1) {
+		            		// bind multiple sockets to the same address, each registered
+		            		// with its own event loop, and let the kernel load balance
+		            		// the received packets across the sockets
+		            		bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+		            		numSockets = reusePortSockets;
+		            		group = new EpollEventLoopGroup(numSockets);
+		            		io = "Epoll I/O (SO_REUSEPORT)";
+		            	}
+		            	else {
+		            		group = new EpollEventLoopGroup();
+		            		io = "Epoll I/O";
+		            	}
 	            	}
 	            	else if (KQueue.isAvailable()) {
 		            	// Use KQueueDatagramChannels for IPv6 unicast addresses on BSD
@@ -323,9 +359,7 @@ public class NettyDhcpServer
 						protected void initChannel(DatagramChannel channel) throws Exception {
 			        		ChannelPipeline pipeline = channel.pipeline();
 				            pipeline.addLast("logger", new LoggingHandler());
-				            pipeline.addLast("decoder", 
-				            		new DhcpV6PacketDecoder(
-				            				new DhcpV6UnicastChannelDecoder(sockAddr, ignoreSelfPackets)));
+				            pipeline.addLast("decoder", v6UcastDecoder);
 				            pipeline.addLast("encoder",
 				            		new DhcpV6PacketEncoder(
 				            				new DhcpV6ChannelEncoder()));
@@ -334,15 +368,17 @@ public class NettyDhcpServer
 						}
 	            	});
 		            
-		            log.info("Binding " + io + " datagram channel on IPv6 socket address: " + sockAddr);
-		            ChannelFuture future = bootstrap.bind(sockAddr);
-		            future.await();
-		            if (!future.isSuccess()) {
-		            	log.error("Failed to bind to IPv6 unicast channel: " + future.cause());
-		            	throw new IOException(future.cause());
+		            for (int i=0; i<numSockets; i++) {
+			            log.info("Binding " + io + " datagram channel on IPv6 socket address: " + sockAddr);
+			            ChannelFuture future = bootstrap.bind(sockAddr);
+			            future.await();
+			            if (!future.isSuccess()) {
+			            	log.error("Failed to bind to IPv6 unicast channel: " + future.cause());
+			            	throw new IOException(future.cause());
+			            }
+						DatagramChannel channel = (DatagramChannel)future.channel();
+						channels.add(channel);
 		            }
-					DatagramChannel channel = (DatagramChannel)future.channel();
-					channels.add(channel);
 	        	}
         	}
         	
@@ -358,6 +394,8 @@ public class NettyDhcpServer
 	        		// local address for packets received on this channel
 		            final InetSocketAddress sockAddr = new InetSocketAddress(addr, v6Port); 
 		            checkSocket(sockAddr);
+		            final DhcpV6ChannelDecoder v6McastDecoder =
+		            		new DhcpV6ChannelDecoder(sockAddr, ignoreSelfPackets);
 		            Bootstrap bootstrap = new Bootstrap();
 		        	// Use OioDatagramChannels for IPv6 multicast interfaces
 		            // Netty 3.5+ supports NIO UDP Multicast Channels
@@ -373,9 +411,7 @@ public class NettyDhcpServer
 						protected void initChannel(DatagramChannel channel) throws Exception {
 			        		ChannelPipeline pipeline = channel.pipeline();
 				            pipeline.addLast("logger", new LoggingHandler());
-				            pipeline.addLast("decoder", 
-				            		new DhcpV6PacketDecoder(
-				            				new DhcpV6ChannelDecoder(sockAddr, ignoreSelfPackets)));
+				            pipeline.addLast("decoder", v6McastDecoder);
 				            pipeline.addLast("encoder",
 				            		new DhcpV6PacketEncoder(
 				            				new DhcpV6ChannelEncoder()));
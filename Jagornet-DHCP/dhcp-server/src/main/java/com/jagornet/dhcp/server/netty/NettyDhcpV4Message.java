@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.core.message.DhcpV4Message;
+import com.jagornet.dhcp.core.option.base.BaseDhcpOption;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Util;
@@ -50,6 +51,7 @@ public class NettyDhcpV4Message extends DhcpV4Message {
             log.debug("Encoding DhcpMessage for: " + 
             		Util.socketAddressAsString(remoteAddress));
         
+        decodeLazyFields();
         messageByteBuf = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
         messageByteBuf.writeByte((byte)op);
         messageByteBuf.writeByte((byte)htype);
@@ -98,7 +100,8 @@ public class NettyDhcpV4Message extends DhcpV4Message {
         fileBuf.setLength(128-fileBuf.length());
         messageByteBuf.writeBytes(fileBuf.toString().getBytes());
 
-        messageByteBuf.writeBytes(encodeOptionsAsByteBuf());
+        // options are written in place, no separate options buffer
+        writeOptions(messageByteBuf);
     	int msglen = messageByteBuf.writerIndex();
         if (log.isDebugEnabled())
             log.debug("DHCPv4 Message is " + msglen + " bytes");
@@ -126,14 +129,26 @@ public class NettyDhcpV4Message extends DhcpV4Message {
     protected ByteBuf encodeOptionsAsByteBuf() throws IOException
     {
         optionsByteBuf = PooledByteBufAllocator.DEFAULT.directBuffer(788);	// 788 - 236 = 1020 (options)
+        writeOptions(optionsByteBuf);
+        return optionsByteBuf;
+    }
+
+    /**
+     * Write the options of this DhcpMessage in wire format to the given
+     * buffer.  Pre-encoded options are copied from their templates.
+     * 
+     * @param buf	the ByteBuf to write the encoded options to
+     * @throws IOException
+     */
+    protected void writeOptions(ByteBuf buf) throws IOException
+    {
         if (dhcpOptions != null) {
         	// magic cookie as per rfc1497
-        	optionsByteBuf.writeBytes(magicCookie);
+        	buf.writeBytes(magicCookie);
         	for (DhcpOption option : dhcpOptions.values()) {
-        		optionsByteBuf.writeBytes(option.encode());
+        		buf.writeBytes(BaseDhcpOption.encodeOption(option));
             }
-        	optionsByteBuf.writeByte((byte)DhcpConstants.V4OPTION_EOF);	// end option
+        	buf.writeByte((byte)DhcpConstants.V4OPTION_EOF);	// end option
         }
-        return optionsByteBuf;
     }
 }
@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.core.message.DhcpV6Message;
 import com.jagornet.dhcp.core.message.DhcpV6TransactionId;
+import com.jagornet.dhcp.core.option.base.BaseDhcpOption;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6IaNaOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6IaPdOption;
@@ -55,7 +56,8 @@ public class NettyDhcpV6Message extends DhcpV6Message {
         messageByteBuf = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
         messageByteBuf.writeByte((byte)messageType);
         messageByteBuf.writeBytes(DhcpV6TransactionId.encode(transactionId));
-        messageByteBuf.writeBytes(encodeOptions());
+        // options are written in place, no separate options buffer
+        writeOptions(messageByteBuf);
         // don't need to flip Netty ByteBuf
         // buf.flip();
         
@@ -74,26 +76,38 @@ public class NettyDhcpV6Message extends DhcpV6Message {
     protected ByteBuf encodeOptionsAsByteBuf() throws IOException
     {
         optionsByteBuf = PooledByteBufAllocator.DEFAULT.directBuffer(1020); // 1024 - 1(msgType) - 3(transId) = 1020 (options)
+        writeOptions(optionsByteBuf);
+        return optionsByteBuf;
+    }
+
+    /**
+     * Write the options of this DhcpMessage in wire format to the given
+     * buffer.  Pre-encoded options are copied from their templates.
+     * 
+     * @param buf	the ByteBuf to write the encoded options to
+     * @throws IOException
+     */
+    protected void writeOptions(ByteBuf buf) throws IOException
+    {
         if (dhcpOptions != null) {
             for (DhcpOption option : dhcpOptions.values()) {
-            	optionsByteBuf.writeBytes(option.encode());
+            	buf.writeBytes(BaseDhcpOption.encodeOption(option));
             }
         }
         if (iaNaOptions != null) {
         	for (DhcpV6IaNaOption iaNaOption : iaNaOptions) {
-        		optionsByteBuf.writeBytes(iaNaOption.encode());
+        		buf.writeBytes(iaNaOption.encode());
 			}
         }
         if (iaTaOptions != null) {
         	for (DhcpV6IaTaOption iaTaOption : iaTaOptions) {
-        		optionsByteBuf.writeBytes(iaTaOption.encode());
+        		buf.writeBytes(iaTaOption.encode());
 			}
         }
         if (iaPdOptions != null) {
         	for (DhcpV6IaPdOption iaPdOption : iaPdOptions) {
-        		optionsByteBuf.writeBytes(iaPdOption.encode());
+        		buf.writeBytes(iaPdOption.encode());
 			}
         }
-        return optionsByteBuf;
     }
 }
@@ -31,14 +31,9 @@ import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -91,9 +86,8 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
     protected final InetAddress clientLinkAddress;
     protected DhcpLink clientLink;
     protected List<Binding> bindings = new ArrayList<>();
-    protected static Set<DhcpV4Message> recentMsgs = 
-    	Collections.synchronizedSet(new HashSet<DhcpV4Message>());
-    protected static Timer recentMsgPruner = new Timer("RecentMsgPruner");
+    protected static DuplicateRequestFilter recentMsgs = 
+    	DuplicateRequestFilter.getInstance();
     protected HaPrimaryFSM haPrimaryFSM;
     protected HaBackupFSM haBackupFSM; 
     
@@ -286,24 +280,19 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
 			return false;
 		}
 
-/* TODO: check if this DOS mitigation is useful
- * 
-		boolean isNew = recentMsgs.add(requestMsg);
-		if (!isNew) {
-			if (log.isDebugEnabled())
-				log.debug("Dropping recent message");
-			return false;	// don't process
-		}
-
-		if (log.isDebugEnabled())
-			log.debug("Processing new message");
-		
-		long timer = DhcpServerPolicies.effectivePolicyAsLong(clientLink.getLink(),
+		long window = DhcpServerPolicies.effectivePolicyAsLong(clientLink.getLink(),
 				Property.DHCP_PROCESSOR_RECENT_MESSAGE_TIMER);
-		if (timer > 0) {
-			recentMsgPruner.schedule(new RecentMsgTimerTask(requestMsg), timer);
+		if (window > 0) {
+			long fingerprint = DuplicateRequestFilter.fingerprint(4, 
+					requestMsg.getClientId(), requestMsg.getTransactionId(),
+					requestMsg.getMessageType());
+			if (recentMsgs.isDuplicate(fingerprint, window)) {
+				if (log.isDebugEnabled())
+					log.debug("Dropping recent message");
+				return false;	// don't process
+			}
 		}
-*/    	
+    	
     	return true;	// ok to process
     }
     
@@ -324,11 +313,6 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
 		//TODO consider the implications of always removing the
 		//     recently processed message b/c we could just keep
 		//     getting blasted by an attempted DOS attack?
-// Exactly!?... the comment above says it all
-//    		if (recentMsgs.remove(requestMsg)) {
-//    			if (log.isDebugEnabled())
-//    				log.debug("Removed recent message: " + requestMsg.toString());
-//    		}
     	return true;
     }
 
@@ -571,36 +555,4 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
     	}
     	return false;
     }
-		
-    /**
-     * The Class RecentMsgTimerTask.
-     */
-    class RecentMsgTimerTask extends TimerTask
-    {
-    	
-	    /** The dhcp msg. */
-	    private DhcpV4Message dhcpMsg;
-    	
-    	/**
-	     * Instantiates a new recent msg timer task.
-	     * 
-	     * @param dhcpMsg the dhcp msg
-	     */
-	    public RecentMsgTimerTask(DhcpV4Message dhcpMsg)
-    	{
-    		this.dhcpMsg = dhcpMsg;
-    	}
-    	
-    	/* (non-Javadoc)
-	     * @see java.util.TimerTask#run()
-	     */
-	    @Override
-    	public void run() {
-			if (recentMsgs.remove(dhcpMsg)) {
-    			if (log.isDebugEnabled())
-    				log.debug("Pruned recent message: " + dhcpMsg.toString());
-			}
-    	}
-
-    } 
 }
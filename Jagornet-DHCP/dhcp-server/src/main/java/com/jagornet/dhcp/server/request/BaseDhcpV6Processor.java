@@ -30,14 +30,9 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +40,7 @@ import org.slf4j.LoggerFactory;
 import com.jagornet.dhcp.core.message.DhcpV6Message;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6ClientFqdnOption;
+import com.jagornet.dhcp.core.option.v6.DhcpV6ClientIdOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6IaAddrOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6IaNaOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6IaPdOption;
@@ -96,9 +92,8 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
     protected final InetAddress clientLinkAddress;
     protected DhcpLink clientLink;
     protected List<Binding> bindings = new ArrayList<>();
-    protected static Set<DhcpV6Message> recentMsgs = 
-    	Collections.synchronizedSet(new HashSet<DhcpV6Message>());
-    protected static Timer recentMsgPruner = new Timer("RecentMsgPruner");
+    protected static DuplicateRequestFilter recentMsgs = 
+    	DuplicateRequestFilter.getInstance();
     protected HaPrimaryFSM haPrimaryFSM;
     protected HaBackupFSM haBackupFSM; 
     
@@ -248,24 +243,20 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 			return false;
 		}
 
-		/* TODO: check if this DOS mitigation is useful
- * 
-		boolean isNew = recentMsgs.add(requestMsg);
-		if (!isNew) {
-			if (log.isDebugEnabled())
-				log.debug("Dropping recent message");
-			return false;	// don't process
-		}
-
-		if (log.isDebugEnabled())
-			log.debug("Processing new message");
-		
-		long timer = DhcpServerPolicies.effectivePolicyAsLong(clientLink.getLink(),
+		long window = DhcpServerPolicies.effectivePolicyAsLong(clientLink.getLink(),
 				Property.DHCP_PROCESSOR_RECENT_MESSAGE_TIMER);
-		if (timer > 0) {
-			recentMsgPruner.schedule(new RecentMsgTimerTask(requestMsg), timer);
+		if (window > 0) {
+			DhcpV6ClientIdOption clientIdOption = requestMsg.getDhcpClientIdOption();
+			long fingerprint = DuplicateRequestFilter.fingerprint(6, 
+					(clientIdOption != null) ? clientIdOption.getDuid() : null,
+					requestMsg.getTransactionId(), requestMsg.getMessageType());
+			if (recentMsgs.isDuplicate(fingerprint, window)) {
+				if (log.isDebugEnabled())
+					log.debug("Dropping recent message");
+				return false;	// don't process
+			}
 		}
-*/    	
+    	
     	return true;	// ok to process
     }
     
@@ -286,11 +277,6 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 		//TODO consider the implications of always removing the
 		//     recently processed message b/c we could just keep
 		//     getting blasted by an attempted DOS attack?
-// Exactly!?... the comment above says it all
-//    		if (recentMsgs.remove(requestMsg)) {
-//    			if (log.isDebugEnabled())
-//    				log.debug("Removed recent message: " + requestMsg.toString());
-//    		}
     	return true;
     }
 	
@@ -1087,36 +1073,4 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 		}
 		return onLink;
 	}
-	
-    /**
-     * The Class RecentMsgTimerTask.
-     */
-    class RecentMsgTimerTask extends TimerTask
-    {
-    	
-	    /** The dhcp msg. */
-	    private DhcpV6Message dhcpMsg;
-    	
-    	/**
-	     * Instantiates a new recent msg timer task.
-	     * 
-	     * @param dhcpMsg the dhcp msg
-	     */
-	    public RecentMsgTimerTask(DhcpV6Message dhcpMsg)
-    	{
-    		this.dhcpMsg = dhcpMsg;
-    	}
-    	
-    	/* (non-Javadoc)
-	     * @see java.util.TimerTask#run()
-	     */
-	    @Override
-    	public void run() {
-			if (recentMsgs.remove(dhcpMsg)) {
-    			if (log.isDebugEnabled())
-    				log.debug("Pruned recent message: " + dhcpMsg.toString());
-			}
-    	}
-
-    } 
 }
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.core.message.DhcpV4Message;
+import com.jagornet.dhcp.core.option.v4.DhcpV4RequestedIpAddressOption;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Util;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
@@ -52,6 +53,10 @@ public class DhcpV4DiscoverProcessor extends BaseDhcpV4Processor
 	
 	/** The log. */
 	private static Logger log = LoggerFactory.getLogger(DhcpV4DiscoverProcessor.class);
+	
+	// the new binding for an address just allocated from a pool, which is
+	// the only kind of offer that is ping checked for an address conflict
+	private Binding allocatedBinding;
     
     /**
      * Construct an DhcpV4DiscoverProcessor processor.
@@ -112,6 +117,10 @@ public class DhcpV4DiscoverProcessor extends BaseDhcpV4Processor
 				// no current binding for this MAC, create a new one
 				binding = bindingMgr.createDiscoverBinding(clientLink, 
 						clientId, requestMsg, state);
+				if ((binding != null) && (binding.getState() != IaAddress.RESERVED) &&
+						!isRequestedAddress(binding)) {
+					allocatedBinding = binding;
+				}
 			}
 			else {
 				binding = bindingMgr.updateBinding(binding, clientLink, 
@@ -155,6 +164,42 @@ public class DhcpV4DiscoverProcessor extends BaseDhcpV4Processor
 		return sendReply;
     }
 	
+	/**
+	 * Checks if the address of the binding is the address requested by the
+	 * client, which is likely the client's previous address, and so the
+	 * client itself may answer a ping check for it.
+	 * 
+	 * @param binding the binding
+	 * 
+	 * @return true, if the client requested the address of the binding
+	 */
+	private boolean isRequestedAddress(Binding binding)
+	{
+		DhcpV4RequestedIpAddressOption reqIpOption = (DhcpV4RequestedIpAddressOption)
+			requestMsg.getDhcpOption(DhcpConstants.V4OPTION_REQUESTED_IP);
+		if ((reqIpOption != null) && (binding.getIaAddresses() != null)) {
+			for (IaAddress iaAddr : binding.getIaAddresses()) {
+				if (iaAddr.getIpAddress().getHostAddress().equals(reqIpOption.getIpAddress())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the binding created for an address newly allocated from a pool
+	 * by this Discover, which is not a static binding, and not an existing
+	 * binding of the client.
+	 * 
+	 * @return the new binding, or null if the offer is not for a newly
+	 * allocated address
+	 */
+	public Binding getAllocatedBinding()
+	{
+		return allocatedBinding;
+	}
+	
 	/**
 	 * Checks if is rapid commit.
 	 * 
@@ -52,6 +52,27 @@ public class DhcpV4MessageHandler
     public static DhcpV4Message handleMessage(InetAddress localAddress, DhcpV4Message dhcpMessage)
     {
 		DhcpV4Message replyMessage = null;
+		DhcpV4MessageProcessor processor = getMessageProcessor(localAddress, dhcpMessage);
+		if (processor != null) {
+			replyMessage = processor.processMessage();
+		}
+		return replyMessage;
+    }
+    
+    /**
+     * Get the processor for a request message, so that the caller can
+     * process the message and then inspect the processor, e.g. to find
+     * the binding created for a Discover.
+     * 
+     * @param localAddress the local address the message was received on
+     * @param dhcpMessage the request message
+     * @return the processor for the message type, or null if the message
+     * is not a supported request
+     */
+    public static DhcpV4MessageProcessor getMessageProcessor(InetAddress localAddress,
+    															DhcpV4Message dhcpMessage)
+    {
+    	DhcpV4MessageProcessor processor = null;
     	if (dhcpMessage.getOp() == DhcpConstants.V4_OP_REQUEST) {
     		InetAddress linkAddress = null;
     		if (dhcpMessage.getGiAddr().equals(DhcpConstants.ZEROADDR_V4)) {
@@ -68,7 +89,6 @@ public class DhcpV4MessageHandler
     				dhcpMessage.getDhcpOption(DhcpConstants.V4OPTION_MESSAGE_TYPE);
     		if (msgTypeOption != null) {
     			short msgType = msgTypeOption.getUnsignedByte();
-    	    	DhcpV4MessageProcessor processor = null;
 	    		switch (msgType) {
 	    			case DhcpConstants.V4MESSAGE_TYPE_DISCOVER:
 	    				processor = new DhcpV4DiscoverProcessor(dhcpMessage, linkAddress);
@@ -89,10 +109,7 @@ public class DhcpV4MessageHandler
 	    	            log.error("Unknown message type.");
 	    	            break;
 	        	}
-	        	if (processor != null) {
-	        		replyMessage = processor.processMessage();
-	        	}
-	        	else {
+	        	if (processor == null) {
 	        		log.error("No processor found for message type: " + msgType);
 	        	}
     		}
@@ -103,7 +120,7 @@ public class DhcpV4MessageHandler
 	    else {
 	        log.error("Unsupported op code: " + dhcpMessage.getOp());
 	    }
-		return replyMessage;
+		return processor;
 	}
     
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DuplicateRequestFilter.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Title: DuplicateRequestFilter
+ * Description: Detects duplicate client requests received within a time
+ * window, so that retransmit storms and replays can be dropped before they
+ * are processed.  Requests are identified by a 64-bit fingerprint of the
+ * client identifier, transaction id and message type, which is stored in
+ * a fixed size table along with the time it was seen.  The table is split
+ * into small buckets of slots, each guarded by a lock stripe.  Entries are
+ * never removed; a slot whose entry is older than the window is simply
+ * reused, and when a bucket is full its oldest entry is replaced.  So the
+ * filter does no allocation or timer work per request, and its memory is
+ * bounded no matter how many requests arrive.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class DuplicateRequestFilter
+{
+	private static final int BUCKET_SIZE = 8;
+	private static final int LOCK_STRIPES = 64;
+	private static final int DEFAULT_CAPACITY = 64 * 1024;
+	
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final DuplicateRequestFilter instance = 
+			new DuplicateRequestFilter(DEFAULT_CAPACITY);
+	
+	private final long[] fingerprints;
+	private final long[] times;		// zero for an empty slot
+	private final Object[] locks;
+	private final int bucketMask;
+	
+	private final LongAdder acceptedCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+
+	/**
+	 * Get the filter shared by the DHCPv4 and DHCPv6 processors.
+	 * 
+	 * @return the shared filter
+	 */
+	public static DuplicateRequestFilter getInstance()
+	{
+		return instance;
+	}
+	
+	/**
+	 * Instantiates a new filter.
+	 * 
+	 * @param capacity the number of requests to remember, which is
+	 * rounded up to a power of two
+	 */
+	public DuplicateRequestFilter(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(capacity, BUCKET_SIZE) - 1) << 1;
+		fingerprints = new long[size];
+		times = new long[size];
+		locks = new Object[LOCK_STRIPES];
+		for (int i=0; i<locks.length; i++) {
+			locks[i] = new Object();
+		}
+		bucketMask = (size / BUCKET_SIZE) - 1;
+	}
+	
+	/**
+	 * Compute the fingerprint of a request.
+	 * 
+	 * @param ipVersion 4 or 6, so that DHCPv4 and DHCPv6 requests differ
+	 * @param clientId the client identifier, chaddr, or DUID, may be null
+	 * @param xid the transaction id
+	 * @param msgType the message type
+	 * @return the fingerprint
+	 */
+	public static long fingerprint(int ipVersion, byte[] clientId, long xid, int msgType)
+	{
+		long h = FNV_OFFSET ^ ipVersion;
+		if (clientId != null) {
+			for (byte b : clientId) {
+				h = (h ^ (b & 0xff)) * FNV_PRIME;
+			}
+		}
+		h = (h ^ xid) * FNV_PRIME;
+		h = (h ^ msgType) * FNV_PRIME;
+		// final mix, so that the low bits used for the bucket are well spread
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		return h;
+	}
+	
+	/**
+	 * Record a request, and test if the same request was recorded within
+	 * the given window.
+	 * 
+	 * @param fingerprint the fingerprint of the request
+	 * @param window the duplicate window, in milliseconds
+	 * @return true if the request is a duplicate, and should be dropped
+	 */
+	public boolean isDuplicate(long fingerprint, long window)
+	{
+		long now = System.currentTimeMillis();
+		int bucket = (int)fingerprint & bucketMask;
+		int start = bucket * BUCKET_SIZE;
+		synchronized (locks[bucket & (LOCK_STRIPES - 1)]) {
+			int slot = start;
+			long oldest = Long.MAX_VALUE;
+			for (int i=start; i<start+BUCKET_SIZE; i++) {
+				long time = times[i];
+				boolean live = (time != 0) && ((now - time) < window);
+				if (live && (fingerprints[i] == fingerprint)) {
+					droppedCount.increment();
+					return true;
+				}
+				if (!live) {
+					time = 0;	// reuse expired slots first
+				}
+				if (time < oldest) {
+					oldest = time;
+					slot = i;
+				}
+			}
+			fingerprints[slot] = fingerprint;
+			times[slot] = now;
+		}
+		acceptedCount.increment();
+		return false;
+	}
+	
+	public void clear()
+	{
+		for (int i=0; i<locks.length; i++) {
+			synchronized (locks[i]) {
+				for (int b=i; b<=bucketMask; b+=LOCK_STRIPES) {
+					for (int s=b*BUCKET_SIZE; s<(b+1)*BUCKET_SIZE; s++) {
+						times[s] = 0;
+					}
+				}
+			}
+		}
+	}
+	
+	public int getCapacity()
+	{
+		return times.length;
+	}
+	
+	public long getAcceptedCount()
+	{
+		return acceptedCount.sum();
+	}
+	
+	/**
+	 * @return the number of duplicate requests detected
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.sum();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "capacity=" + getCapacity() +
+				" accepted=" + getAcceptedCount() +
+				" dropped=" + getDroppedCount();
+	}
+}
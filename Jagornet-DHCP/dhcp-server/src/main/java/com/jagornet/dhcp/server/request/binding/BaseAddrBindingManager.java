@@ -28,8 +28,6 @@ package com.jagornet.dhcp.server.request.binding;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +37,7 @@ import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
 import com.jagornet.dhcp.server.db.IaAddress;
 import com.jagornet.dhcp.server.db.IdentityAssoc;
+import com.jagornet.dhcp.server.util.DhcpServerScheduler;
 
 /**
  * The Class BaseAddressBindingManager.
@@ -64,14 +63,17 @@ public abstract class BaseAddrBindingManager extends BaseBindingManager
 		long reaperRunPeriod =
 			DhcpServerPolicies.globalPolicyAsLong(Property.BINDING_MANAGER_REAPER_RUN_PERIOD);
 
-		reaper = new Timer("BindingReaper-" + IdentityAssoc.iaTypeToString(getIaType()));
-		reaper.schedule(new ReaperTimerTask(), reaperStartupDelay, reaperRunPeriod);
+		reaper = DhcpServerScheduler.getInstance().scheduleWithFixedDelay(
+				"BindingReaper-" + IdentityAssoc.iaTypeToString(getIaType()),
+				new ReaperTimerTask(), reaperStartupDelay, reaperRunPeriod);
 	}
 	
 	protected void stopReaper()
 	{
-		reaper.cancel();
-		reaper.purge();
+		if (reaper != null) {
+			reaper.cancel();
+			reaper = null;
+		}
 	}
     
     /**
@@ -241,16 +243,24 @@ public abstract class BaseAddrBindingManager extends BaseBindingManager
 	/**
 	 * The Class ReaperTimerTask.
 	 */
-	class ReaperTimerTask extends TimerTask
+	class ReaperTimerTask implements Runnable
 	{		
 		/* (non-Javadoc)
-		 * @see java.util.TimerTask#run()
+		 * @see java.lang.Runnable#run()
 		 */
 		@Override
 		public void run() {
 			log.debug("Looking for expired addresses of type: " +
 					IdentityAssoc.iaTypeToString(getIaType()) + "...");
 			expireAddresses();
+			if (log.isDebugEnabled()) {
+				String stats = getReuseLockStats();
+				if (!stats.isEmpty()) {
+					log.debug("Pool reuse locks of type " +
+							IdentityAssoc.iaTypeToString(getIaType()) + ":" +
+							Util.LINE_SEPARATOR + stats);
+				}
+			}
 			
 			/*
 			 * Confirmed via below that DhcpLeasesResource.ipstream does not leak file descriptors
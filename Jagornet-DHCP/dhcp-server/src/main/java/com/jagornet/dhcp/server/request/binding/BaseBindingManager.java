@@ -33,12 +33,11 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.Timer;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +45,7 @@ import org.slf4j.LoggerFactory;
 import com.jagornet.dhcp.core.message.DhcpMessage;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Subnet;
+import com.jagornet.dhcp.core.util.Util;
 import com.jagornet.dhcp.server.config.DhcpConfigObject;
 import com.jagornet.dhcp.server.config.DhcpLink;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
@@ -56,6 +56,7 @@ import com.jagornet.dhcp.server.db.DbDhcpOption;
 import com.jagornet.dhcp.server.db.IaAddress;
 import com.jagornet.dhcp.server.db.IaManager;
 import com.jagornet.dhcp.server.db.IdentityAssoc;
+import com.jagornet.dhcp.server.util.DhcpServerScheduler.ScheduledTask;
 
 /**
  * The Class BaseBindingManager.
@@ -77,18 +78,21 @@ public abstract class BaseBindingManager implements BindingManager
      */
     protected Map<String, List<? extends BindingPool>> bindingPoolMap;
     
+    /**
+     * The index of the address ranges of all the binding pools in the
+     * bindingPoolMap, for finding the pool of an address on any link.
+     */
+    protected volatile BindingPoolIndex bindingPoolIndex;
+    
     /**
      * The map of static bindings for this manager.  The key is the link address
      * and the value is the list of configured StaticBindings for the link. 
      */
     protected Map<String, List<? extends StaticBinding>> staticBindingMap;
+    protected volatile Map<String, StaticBindingIndex> staticBindingIndexMap;
 
-	/** The reaper thread for cleaning expired bindings. */
-	protected Timer reaper;
-	
-	/** The lock for access to the reuseAvailableAddress method */
-	// the ReentrantLock class is better than synchronized
-	private final ReentrantLock lock = new ReentrantLock();
+	/** The reaper task for cleaning expired bindings. */
+	protected ScheduledTask reaper;
 	
 	/**
 	 * Initialize the manager.  Read the configuration and build
@@ -111,6 +115,8 @@ public abstract class BaseBindingManager implements BindingManager
      * Initialize the pool map.  Read through the link map from the server's
      * configuration and build the pool map keyed by link address with a
      * value of the list of (na/ta/v4 address or prefix) bindings for the link.
+     * The address range index of the pools is rebuilt from the new pool map,
+     * and then the existing leases are marked used in their pools.
      * 
      * @throws DhcpServerConfigException the exception
      */
@@ -118,6 +124,7 @@ public abstract class BaseBindingManager implements BindingManager
     {
 		SortedMap<Subnet, DhcpLink> linkMap = serverConfig.getLinkMap();
 		if ((linkMap != null) && !linkMap.isEmpty()) {
+			long start = System.currentTimeMillis();
     		bindingPoolMap = new HashMap<>();
 			for (DhcpLink dhcpLink : linkMap.values()) {
 				List<? extends BindingPool> bindingPools = buildBindingPools(dhcpLink.getLink());
@@ -125,12 +132,44 @@ public abstract class BaseBindingManager implements BindingManager
 					bindingPoolMap.put(dhcpLink.getLinkAddress(), bindingPools);
 				}
 			}
+			bindingPoolIndex = new BindingPoolIndex(bindingPoolMap.values());
+			log.info("Built binding pool index: size=" + bindingPoolIndex.size() +
+					" in " + (System.currentTimeMillis() - start) + "ms");
+			initUsedAddresses();
 		}
 		else {
 			log.error("LinkMap is null for DhcpServerConfiguration");
 		}
     }
 
+    /**
+     * Mark the addresses of the existing leases as used in their binding pools.
+     * The leases are read in one ordered scan of the range spanning all of the
+     * pools, instead of one query per pool, and each address is routed to
+     * its pools by the binding pool index.  Addresses between the pools are
+     * skipped.  The bindings are not checked for expiration, which is left
+     * to the reaper.
+     */
+    protected void initUsedAddresses()
+    {
+    	final BindingPoolIndex index = bindingPoolIndex;
+    	if ((iaMgr == null) || (index == null) || (index.size() == 0)) {
+    		return;
+    	}
+		long start = System.currentTimeMillis();
+		final long[] counts = new long[2];	// existing, used
+		iaMgr.findExistingIPs(index.getStartAddress(), index.getEndAddress(),
+				inetAddr -> {
+					counts[0]++;
+					if (index.forEachBindingPool(inetAddr, bp -> bp.setUsed(inetAddr)) > 0) {
+						counts[1]++;
+					}
+				});
+		log.info("Marked " + counts[1] + " of " + counts[0] + 
+				" existing addresses used in " + index.size() + " binding pools in " +
+				(System.currentTimeMillis() - start) + "ms");
+    }
+
     public Map<String, List<? extends BindingPool>> getBindingPoolMap() {
     	return bindingPoolMap;
     }
@@ -152,7 +191,8 @@ public abstract class BaseBindingManager implements BindingManager
      * Initialize the static bindings.  Read through the link map from the server's
      * configuration and build the binding map keyed by link address with a
      * value of the list of (na/ta/v4 address or prefix) bindings for the link.
-     * 
+     * The client identifier index of the static bindings of each link is
+     * rebuilt from the new binding map.
      * 
      * @throws DhcpServerConfigException the exception
      */
@@ -160,15 +200,34 @@ public abstract class BaseBindingManager implements BindingManager
     {
 		SortedMap<Subnet, DhcpLink> linkMap = serverConfig.getLinkMap();
 		if (linkMap != null) {
-    		staticBindingMap = new HashMap<>();
+			Map<String, List<? extends StaticBinding>> bindingMap = new HashMap<>();
+			Map<String, StaticBindingIndex> indexMap = new HashMap<>();
 			for (DhcpLink dhcpLink : linkMap.values()) {
 				List<? extends StaticBinding> staticBindings = buildStaticBindings(dhcpLink.getLink());
 				if ((staticBindings != null) && !staticBindings.isEmpty()) {
-					staticBindingMap.put(dhcpLink.getLinkAddress(), staticBindings);
+					bindingMap.put(dhcpLink.getLinkAddress(), staticBindings);
+					StaticBindingIndex index = new StaticBindingIndex(staticBindings);
+					indexMap.put(dhcpLink.getLinkAddress(), index);
+					log.info("Built static binding index for link: " + 
+							dhcpLink.getLinkAddress() + " size=" + index.size() +
+							" unkeyed=" + index.getUnkeyedCount());
 				}
 			}
+			staticBindingMap = bindingMap;
+			staticBindingIndexMap = indexMap;
 		}
     }
+    
+    /**
+     * Rebuild the static bindings, and their index, from the
+     * server's current link map, i.e. after a configuration reload.
+     * 
+     * @throws DhcpServerConfigException the exception
+     */
+    public void reloadStaticBindings() throws DhcpServerConfigException
+    {
+    	initStaticBindings();
+    }
 
     public Map<String, List<? extends StaticBinding>> getStaticBindingMap() {
     	return staticBindingMap;
@@ -188,7 +247,7 @@ public abstract class BaseBindingManager implements BindingManager
 
 
 	/**
-	 * Start a reaper thread to check for expired bindings.
+	 * Start a reaper task to check for expired bindings.
 	 */
 	protected abstract void startReaper();
 	protected abstract void stopReaper();
@@ -234,8 +293,8 @@ public abstract class BaseBindingManager implements BindingManager
 	}
     
 	/**
-	 * Find binding pool for the given IP address.  Search through all
-	 * the pools on all links to find the IP's binding pool.
+	 * Find binding pool for the given IP address.  Search the address
+	 * range index of the pools on all links to find the IP's binding pool.
 	 * 
 	 * @param inetAddr the IP address
 	 * 
@@ -243,18 +302,14 @@ public abstract class BaseBindingManager implements BindingManager
 	 */
 	protected BindingPool findBindingPool(InetAddress inetAddr)
 	{
-		Collection<List<? extends BindingPool>> allPools = bindingPoolMap.values();
-		//TODO: find a more efficient way to search the pools
-		if ((allPools != null) && !allPools.isEmpty()) {
-			for (List<? extends BindingPool> bps : allPools) {
-				for (BindingPool bindingPool : bps) {
-					if (bindingPool.contains(inetAddr)) {
-						log.info("Found binding pool for address=" + 
-								inetAddr.getHostAddress() +
-								": " + bindingPool);
-						return bindingPool;
-					}
-				}
+		BindingPoolIndex index = bindingPoolIndex;
+		if (index != null) {
+			BindingPool bindingPool = index.findBindingPool(inetAddr);
+			if (bindingPool != null) {
+				log.info("Found binding pool for address=" + 
+						inetAddr.getHostAddress() +
+						": " + bindingPool);
+				return bindingPool;
 			}
 		}
 		return null;
@@ -348,11 +403,12 @@ public abstract class BaseBindingManager implements BindingManager
 			DhcpMessage requestMsg)
 	{
 		try {
-			List<? extends StaticBinding> staticBindings = 
-				staticBindingMap.get(clientLink.getAddress());
-			if ((staticBindings != null) && !staticBindings.isEmpty()) {
-				for (StaticBinding staticBinding : staticBindings) {
-					if (staticBinding.matches(duid, iatype, iaid, requestMsg)) {
+			Map<String, StaticBindingIndex> indexMap = staticBindingIndexMap;
+			if (indexMap != null) {
+				StaticBindingIndex index = indexMap.get(clientLink.getAddress());
+				if (index != null) {
+					StaticBinding staticBinding = index.find(duid, iatype, iaid, requestMsg);
+					if (staticBinding != null) {
 						log.info("Found static binding: " + staticBinding);
 						return staticBinding;
 					}
@@ -792,13 +848,18 @@ public abstract class BaseBindingManager implements BindingManager
 	/**
 	 * Find an address that can be reused.  This method is invoked only
 	 * when no "virgin" leases can be found for a new client request.
+	 * The search is guarded by the pool's reuse lock, which is shared
+	 * only by the pools whose ranges overlap, so two pools can not reuse
+	 * the same address, and requests for an exhausted pool do not wait
+	 * on requests for any other range.
 	 * 
 	 * @param bp the binding pool
 	 * @return the oldest available address, if any
 	 */
 	protected InetAddress reuseAvailableAddress(BindingPool bp)
 	{
-		lock.lock();
+		BindingPoolLock reuseLock = bp.getReuseLock();
+		reuseLock.lock();
 		try {
 /*
 			if (log.isDebugEnabled())
@@ -844,11 +905,95 @@ public abstract class BaseBindingManager implements BindingManager
 			}
 		}
 		finally {
-			lock.unlock();
+			reuseLock.unlock();
 		}
 		return null;
 	}
 	
+	/**
+	 * Get the reuse locks of the binding pools of this manager, each
+	 * with the pools which share it, because pools with overlapping
+	 * ranges share one lock.
+	 * 
+	 * @return the pools of each lock, in the order first found
+	 */
+	protected Map<BindingPoolLock, List<BindingPool>> getReuseLocks()
+	{
+		Map<BindingPoolLock, List<BindingPool>> reuseLocks = new LinkedHashMap<>();
+		if (bindingPoolMap != null) {
+			for (List<? extends BindingPool> pools : bindingPoolMap.values()) {
+				for (BindingPool bp : pools) {
+					reuseLocks.computeIfAbsent(bp.getReuseLock(), 
+							k -> new ArrayList<BindingPool>()).add(bp);
+				}
+			}
+		}
+		return reuseLocks;
+	}
+	
+	/**
+	 * Get the total number of times that a request waited
+	 * for the reuse lock of any binding pool of this manager.
+	 * 
+	 * @return the contended count
+	 */
+	public long getReuseLockContendedCount()
+	{
+		long count = 0;
+		for (BindingPoolLock reuseLock : getReuseLocks().keySet()) {
+			count += reuseLock.getContendedCount();
+		}
+		return count;
+	}
+	
+	/**
+	 * Get the total time that requests waited for the reuse
+	 * lock of any binding pool of this manager.
+	 * 
+	 * @return the wait time in nanoseconds
+	 */
+	public long getReuseLockWaitNanos()
+	{
+		long nanos = 0;
+		for (BindingPoolLock reuseLock : getReuseLocks().keySet()) {
+			nanos += reuseLock.getWaitNanos();
+		}
+		return nanos;
+	}
+	
+	/**
+	 * Get the reuse lock metrics of each binding pool of this
+	 * manager which has had to search for an address to reuse.
+	 * A lock shared by pools with overlapping ranges is shown
+	 * once, for the first of its pools.
+	 * 
+	 * @return one line per lock, or an empty string
+	 */
+	public String getReuseLockStats()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<BindingPoolLock, List<BindingPool>> entry : getReuseLocks().entrySet()) {
+			BindingPoolLock reuseLock = entry.getKey();
+			if (reuseLock.getLockCount() > 0) {
+				BindingPool bp = entry.getValue().get(0);
+				if (sb.length() > 0) {
+					sb.append(Util.LINE_SEPARATOR);
+				}
+				sb.append(bp.getStartAddress().getHostAddress())
+					.append('-')
+					.append(bp.getEndAddress().getHostAddress());
+				if (entry.getValue().size() > 1) {
+					sb.append(" (shared by ")
+						.append(entry.getValue().size())
+						.append(" pools)");
+				}
+				sb.append(": ")
+					.append(reuseLock.toString());
+			}
+		}
+		return sb.toString();
+	}
+	
 	/**
 	 * Create a Binding given an IdentityAssoc loaded from the database.
 	 * 
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.jagornet.dhcp.core.message.DhcpMessage;
+import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.config.xml.Link;
 
 public interface BindingManager 
@@ -37,4 +38,5 @@ public interface BindingManager
 	public Map<String, List<? extends StaticBinding>> getStaticBindingMap();
 	public StaticBinding findStaticBinding(Link clientLink, byte[] duid, byte iatype, long iaid,
 			DhcpMessage requestMsg);
+	public void reloadStaticBindings() throws DhcpServerConfigException;
 }
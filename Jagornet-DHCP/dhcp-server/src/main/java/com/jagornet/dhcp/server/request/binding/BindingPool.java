@@ -47,4 +47,6 @@ public interface BindingPool extends DhcpConfigObject
 	public boolean contains(InetAddress addr);
 	public LinkFilter getLinkFilter();
 	public BigInteger getSize();
+	public BindingPoolLock getReuseLock();
+	public void setReuseLock(BindingPoolLock reuseLock);
 }
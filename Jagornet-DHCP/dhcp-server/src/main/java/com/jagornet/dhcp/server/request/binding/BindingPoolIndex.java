@@ -0,0 +1,249 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file BindingPoolIndex.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The Class BindingPoolIndex.  An immutable index of the address ranges
+ * of all the BindingPools of a binding manager, across all links, which
+ * is used to find the pool for a given address in O(log n) time.
+ * The pools are sorted by start address, and each position also records
+ * the highest end address of the pools up to and including it, so that
+ * overlapping ranges, e.g. filtered pools sharing a range, are still found.
+ * When more than one pool contains an address, the pool which is first
+ * in configuration order is found, as by a linear search of the pools.
+ * Pools whose ranges overlap are given one shared reuse lock, so that
+ * two pools can not both reuse the same address from their common range.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class BindingPoolIndex
+{
+	protected BindingPool[] pools;
+	protected byte[][] starts;
+	protected byte[][] ends;
+	/** the highest end address of pools[0] through pools[i] */
+	protected byte[][] maxEnds;
+	/** the position of pools[i] in the configuration order */
+	protected int[] order;
+	
+	/**
+	 * Build the index for the given lists of binding pools.
+	 * 
+	 * @param bindingPoolLists the lists of binding pools, 
+	 * 			i.e. the values of a binding pool map
+	 */
+	public BindingPoolIndex(Collection<List<? extends BindingPool>> bindingPoolLists)
+	{
+		final List<BindingPool> poolList = new ArrayList<>();
+		if (bindingPoolLists != null) {
+			for (List<? extends BindingPool> bps : bindingPoolLists) {
+				poolList.addAll(bps);
+			}
+		}
+		int size = poolList.size();
+		Integer[] sorted = new Integer[size];
+		for (int i=0; i<size; i++) {
+			sorted[i] = i;
+		}
+		// stable, so pools with the same start address stay in configuration order
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return compareAddrs(poolList.get(i1).getStartAddress().getAddress(), 
+									poolList.get(i2).getStartAddress().getAddress());
+			}
+		});
+		pools = new BindingPool[size];
+		order = new int[size];
+		starts = new byte[size][];
+		ends = new byte[size][];
+		maxEnds = new byte[size][];
+		for (int i=0; i<size; i++) {
+			order[i] = sorted[i];
+			pools[i] = poolList.get(sorted[i]);
+			starts[i] = pools[i].getStartAddress().getAddress();
+			ends[i] = pools[i].getEndAddress().getAddress();
+			if ((i == 0) || (compareAddrs(ends[i], maxEnds[i-1]) > 0)) {
+				maxEnds[i] = ends[i];
+			}
+			else {
+				maxEnds[i] = maxEnds[i-1];
+			}
+		}
+		shareReuseLocks();
+	}
+	
+	/**
+	 * Give each group of pools with overlapping ranges the reuse lock
+	 * of the first pool of the group, in start address order.  A pool
+	 * which overlaps no other pool keeps its own lock.
+	 */
+	protected void shareReuseLocks()
+	{
+		BindingPoolLock groupLock = null;
+		for (int i=0; i<pools.length; i++) {
+			if ((i == 0) || (compareAddrs(starts[i], maxEnds[i-1]) > 0)) {
+				// starts after every earlier pool ends, so a new group
+				groupLock = pools[i].getReuseLock();
+			}
+			else if (pools[i].getReuseLock() != groupLock) {
+				pools[i].setReuseLock(groupLock);
+			}
+		}
+	}
+	
+	/**
+	 * Find the binding pool which contains the given IP address.  If pool
+	 * ranges overlap, the first of the pools in configuration order is found.
+	 * 
+	 * @param inetAddr the IP address
+	 * @return the binding pool, or null if no pool contains the address
+	 */
+	public BindingPool findBindingPool(InetAddress inetAddr)
+	{
+		byte[] addr = inetAddr.getAddress();
+		int found = -1;
+		// walk back while an earlier pool could still extend past the address,
+		// which is only more than one step when pool ranges overlap
+		for (int i=lastStartingAtOrBefore(addr); 
+				(i >= 0) && (compareAddrs(maxEnds[i], addr) >= 0); i--) {
+			if ((compareAddrs(ends[i], addr) >= 0) && 
+					((found < 0) || (order[i] < order[found]))) {
+				found = i;
+			}
+		}
+		return (found >= 0) ? pools[found] : null;
+	}
+	
+	/**
+	 * Binary search for the last pool that starts at or before the address.
+	 * 
+	 * @return the index of the pool, or -1 if none
+	 */
+	protected int lastStartingAtOrBefore(byte[] addr)
+	{
+		int low = 0;
+		int high = pools.length - 1;
+		int ndx = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (compareAddrs(starts[mid], addr) <= 0) {
+				ndx = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return ndx;
+	}
+	
+	/**
+	 * Call the consumer with each binding pool which contains the given
+	 * IP address.  There is more than one only if pool ranges overlap.
+	 * 
+	 * @param inetAddr the IP address
+	 * @param consumer the consumer of the binding pools
+	 * @return the number of binding pools found
+	 */
+	public int forEachBindingPool(InetAddress inetAddr, Consumer<BindingPool> consumer)
+	{
+		byte[] addr = inetAddr.getAddress();
+		int found = 0;
+		for (int i=lastStartingAtOrBefore(addr); 
+				(i >= 0) && (compareAddrs(maxEnds[i], addr) >= 0); i--) {
+			if (compareAddrs(ends[i], addr) >= 0) {
+				consumer.accept(pools[i]);
+				found++;
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Get the lowest start address of the binding pools in the index.
+	 * 
+	 * @return the start address, or null if the index is empty
+	 */
+	public InetAddress getStartAddress()
+	{
+		return (pools.length > 0) ? pools[0].getStartAddress() : null;
+	}
+	
+	/**
+	 * Get the highest end address of the binding pools in the index.
+	 * 
+	 * @return the end address, or null if the index is empty
+	 */
+	public InetAddress getEndAddress()
+	{
+		InetAddress endAddr = null;
+		for (BindingPool pool : pools) {
+			if ((endAddr == null) || 
+					(compareAddrs(pool.getEndAddress().getAddress(), endAddr.getAddress()) > 0)) {
+				endAddr = pool.getEndAddress();
+			}
+		}
+		return endAddr;
+	}
+	
+	/**
+	 * Get the number of binding pools in the index.
+	 * 
+	 * @return the size of the index
+	 */
+	public int size()
+	{
+		return pools.length;
+	}
+	
+	/**
+	 * Compare IP addresses in byte array form, with the same ordering
+	 * as Util.compareInetAddrs, i.e. IPv4 addresses before IPv6.
+	 */
+	protected static int compareAddrs(byte[] ba1, byte[] ba2)
+	{
+		if (ba1.length != ba2.length) {
+			return (ba1.length < ba2.length) ? -1 : 1;
+		}
+		for (int i=0; i<ba1.length; i++) {
+			int b1 = ba1[i] & 0xff;
+			int b2 = ba2[i] & 0xff;
+			if (b1 != b2) {
+				return (b1 < b2) ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+}
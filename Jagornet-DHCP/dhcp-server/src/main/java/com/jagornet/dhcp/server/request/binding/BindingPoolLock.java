@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file BindingPoolLock.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Title: BindingPoolLock
+ * Description: The lock held while searching a binding pool for an address
+ * to reuse, which is a database query, so that only requests for the same
+ * pool, or for pools with overlapping ranges, wait for each other.  The lock records how often it was contended
+ * and how long threads waited for it, to show which pools are exhausted.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class BindingPoolLock
+{
+	// the ReentrantLock class is better than synchronized
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final LongAdder lockCount = new LongAdder();
+	private final LongAdder contendedCount = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public void lock()
+	{
+		if (!lock.tryLock()) {
+			long start = System.nanoTime();
+			lock.lock();
+			long wait = System.nanoTime() - start;
+			contendedCount.increment();
+			waitNanos.add(wait);
+			maxWaitNanos.accumulateAndGet(wait, Math::max);
+		}
+		lockCount.increment();
+	}
+
+	public void unlock()
+	{
+		lock.unlock();
+	}
+
+	public long getLockCount()
+	{
+		return lockCount.sum();
+	}
+
+	public long getContendedCount()
+	{
+		return contendedCount.sum();
+	}
+
+	public long getWaitNanos()
+	{
+		return waitNanos.sum();
+	}
+
+	public long getMaxWaitNanos()
+	{
+		return maxWaitNanos.get();
+	}
+
+	public int getQueueLength()
+	{
+		return lock.getQueueLength();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "locks=" + getLockCount() +
+				" contended=" + getContendedCount() +
+				" waitMs=" + TimeUnit.NANOSECONDS.toMillis(getWaitNanos()) +
+				" maxWaitMs=" + TimeUnit.NANOSECONDS.toMillis(getMaxWaitNanos()) +
+				" queued=" + getQueueLength();
+	}
+}
@@ -37,6 +37,18 @@ public abstract class StaticBinding implements DhcpConfigObject
 	public abstract boolean matches(byte[] duid, byte iatype, long iaid,
 			DhcpMessage requestMsg);
 	
+	/**
+	 * Get the key of this binding in the StaticBindingIndex.  A binding
+	 * with a key can only match a request from a client with the same
+	 * identifier (chaddr or DUID).
+	 * 
+	 * @return the client identifier, or null if this binding must be
+	 * 			matched against every request
+	 */
+	public byte[] getIndexKey() {
+		return null;
+	}
+	
 	public abstract String getIpAddress();
 
 	public InetAddress getInetAddress() {
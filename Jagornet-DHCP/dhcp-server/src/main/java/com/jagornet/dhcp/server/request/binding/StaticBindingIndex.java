@@ -0,0 +1,145 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file StaticBindingIndex.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jagornet.dhcp.core.message.DhcpMessage;
+
+/**
+ * The Class StaticBindingIndex.  An immutable index of the static bindings
+ * of a link, keyed by the client identifier (chaddr or DUID) of each
+ * binding, so that finding the binding for a client does not call
+ * StaticBinding.matches on every binding of the link.  Bindings without
+ * an index key are kept in a fallback list, and are always matched against
+ * the full request.  Candidates are tried in configuration order, so the
+ * binding found is the same as for a linear search of the list.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class StaticBindingIndex
+{
+	private static final int[] NONE = new int[0];
+	
+	protected StaticBinding[] bindings;
+	/** the positions of the bindings for each index key */
+	protected Map<ByteBuffer, int[]> keyIndex;
+	/** the positions of the bindings which have no index key */
+	protected int[] unkeyed;
+	
+	/**
+	 * Build the index for the given list of static bindings.
+	 * 
+	 * @param staticBindings the static bindings of a link
+	 */
+	public StaticBindingIndex(List<? extends StaticBinding> staticBindings)
+	{
+		bindings = staticBindings.toArray(new StaticBinding[staticBindings.size()]);
+		Map<ByteBuffer, List<Integer>> keyLists = new HashMap<>();
+		List<Integer> unkeyedList = new ArrayList<>();
+		for (int i=0; i<bindings.length; i++) {
+			byte[] key = bindings[i].getIndexKey();
+			if (key != null) {
+				keyLists.computeIfAbsent(ByteBuffer.wrap(key), 
+						k -> new ArrayList<>()).add(i);
+			}
+			else {
+				unkeyedList.add(i);
+			}
+		}
+		keyIndex = new HashMap<>(keyLists.size() * 4 / 3 + 1);
+		for (Map.Entry<ByteBuffer, List<Integer>> entry : keyLists.entrySet()) {
+			keyIndex.put(entry.getKey(), toArray(entry.getValue()));
+		}
+		unkeyed = toArray(unkeyedList);
+	}
+	
+	private static int[] toArray(List<Integer> list)
+	{
+		if (list.isEmpty()) {
+			return NONE;
+		}
+		int[] array = new int[list.size()];
+		for (int i=0; i<array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+	
+	/**
+	 * Find the first static binding which matches the client request.
+	 * 
+	 * @param duid the DUID or client identifier of the client
+	 * @param iatype the IA type of the client request
+	 * @param iaid the IAID of the client request
+	 * @param requestMsg the client request message
+	 * @return the matching static binding, or null if none
+	 */
+	public StaticBinding find(byte[] duid, byte iatype, long iaid, DhcpMessage requestMsg)
+	{
+		int[] keyed = NONE;
+		if (duid != null) {
+			int[] positions = keyIndex.get(ByteBuffer.wrap(duid));
+			if (positions != null) {
+				keyed = positions;
+			}
+		}
+		// merge the keyed and unkeyed candidates in configuration order
+		int k = 0;
+		int u = 0;
+		while ((k < keyed.length) || (u < unkeyed.length)) {
+			int i;
+			if ((u >= unkeyed.length) || 
+					((k < keyed.length) && (keyed[k] < unkeyed[u]))) {
+				i = keyed[k++];
+			}
+			else {
+				i = unkeyed[u++];
+			}
+			if (bindings[i].matches(duid, iatype, iaid, requestMsg)) {
+				return bindings[i];
+			}
+		}
+		return null;
+	}
+	
+	public int size()
+	{
+		return bindings.length;
+	}
+	
+	/**
+	 * @return the number of bindings which are matched against every request
+	 */
+	public int getUnkeyedCount()
+	{
+		return unkeyed.length;
+	}
+}
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -179,15 +180,8 @@ public class V4AddrBindingManagerImpl
 		bp.setLeasetime(leasetime);
 		bp.setLinkFilter(linkFilter);
 		
-		List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
-		if ((usedIps != null) && !usedIps.isEmpty()) {
-			for (InetAddress ip : usedIps) {
-				//TODO: for the quickest startup?...
-				// set IP as used without checking if the binding has expired
-				// let the reaper thread deal with all binding cleanup activity
-				bp.setUsed(ip);
-			}
-		}
+		// the existing leases are marked used by initUsedAddresses, 
+		// in one scan for all pools
 		log.info("Built v4 address binding pool: " + bp.getStartAddress().getHostAddress() + "-" + 
 				bp.getEndAddress().getHostAddress() + " size=" + bp.getSize());
     	return bp;
@@ -451,7 +445,9 @@ public class V4AddrBindingManagerImpl
     		configOptionMap = requestedOptions(configOptionMap, requestMsg);
     	}
 		
-    	// may as well just set the DHCPv4 lease time option here as well
+    	// may as well just set the DHCPv4 lease time option here as well,
+		// in a copy of the effective options, which are shared and immutable
+		configOptionMap = new TreeMap<Integer, com.jagornet.dhcp.core.option.base.DhcpOption>(configOptionMap);
 		long preferred = bp.getPreferredLifetime();
 		DhcpV4LeaseTimeOption dhcpV4LeaseTimeOption = new DhcpV4LeaseTimeOption();
 		dhcpV4LeaseTimeOption.setUnsignedInt(preferred);
@@ -25,19 +25,15 @@
  */
 package com.jagornet.dhcp.server.request.binding;
 
-import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.core.util.Util;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
-import com.jagornet.dhcp.server.config.DhcpServerPolicies;
-import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
 import com.jagornet.dhcp.server.config.DhcpV4ConfigOptions;
 import com.jagornet.dhcp.server.config.DhcpV4OptionConfigObject;
 import com.jagornet.dhcp.server.config.xml.FiltersType;
@@ -57,12 +53,12 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	private static Logger log = LoggerFactory.getLogger(V4AddressBindingPool.class);
 
 	protected Range range;
-	protected FreeList freeList;
+	protected V4FreeList freeList;
 	protected long leasetime;
 	protected V4AddressPool pool;
 	protected DhcpV4ConfigOptions v4ConfigOptions;
 	protected LinkFilter linkFilter; 
-	protected Timer reaper;
+	protected BindingPoolLock reuseLock = new BindingPoolLock();
 	
 	/**
 	 * Instantiates a new binding pool.
@@ -81,10 +77,7 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 			log.error("Invalid AddressPool definition", ex);
 			throw new DhcpServerConfigException("Invalid AddressPool definition", ex);
 		} 
-		freeList = 
-			new FreeList(new BigInteger(range.getStartAddress().getAddress()),
-					new BigInteger(range.getEndAddress().getAddress()));
-		reaper = new Timer(pool.getRange()+"_Reaper");
+		freeList = new V4FreeList(range.getStartAddress(), range.getEndAddress());
 		v4ConfigOptions = new DhcpV4ConfigOptions(pool.getConfigOptions());
 	}
 	
@@ -106,26 +99,12 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	public InetAddress getNextAvailableAddress()
 	{
 		if (freeList != null) {
-			BigInteger next = freeList.getNextFree();
-			if (next != null) {
+			long next = freeList.getNextFree();
+			if (next != V4FreeList.NONE) {
 				try {
-					InetAddress ip = InetAddress.getByAddress(next.toByteArray());
-					int pingCheckTimeout = 
-						DhcpServerPolicies.globalPolicyAsInt(Property.V4_PINGCHECK_TIMEOUT);
-					if (pingCheckTimeout > 0) {
-						try {
-							if (ip.isReachable(pingCheckTimeout)) {
-								log.warn("Next free address answered ping check: " + 
-										ip.getHostAddress());
-								setUsed(ip);
-								return getNextAvailableAddress();	// try again
-							}
-						}
-						catch (IOException ex) {
-							log.error("Failed to perform v4 ping check: " + ex);
-						}
-					}
-					return ip;
+					// the ping check, if any, is done asynchronously
+					// by the V4PingChecker before the offer is sent
+					return V4FreeList.toInetAddress(next);
 				}
 				catch (UnknownHostException ex) {
 					log.error("Unable to build IPv4 address from next free: " + ex);
@@ -143,7 +122,7 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	public void setUsed(InetAddress addr)
 	{
 		if (contains(addr)) {
-			freeList.setUsed(new BigInteger(addr.getAddress()));
+			freeList.setUsed(V4FreeList.toLong(addr));
 		}
 	}
 	
@@ -155,7 +134,7 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	public void setFree(InetAddress addr)
 	{
 		if (contains(addr)) {
-			freeList.setFree(new BigInteger(addr.getAddress()));
+			freeList.setFree(V4FreeList.toLong(addr));
 		}
 	}
 	
@@ -343,4 +322,12 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	public BigInteger getSize() {
 		return range.size();
 	}
+
+	public BindingPoolLock getReuseLock() {
+		return reuseLock;
+	}
+
+	public void setReuseLock(BindingPoolLock reuseLock) {
+		this.reuseLock = reuseLock;
+	}
 }
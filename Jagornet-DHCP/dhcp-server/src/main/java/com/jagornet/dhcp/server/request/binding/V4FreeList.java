@@ -0,0 +1,274 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file V4FreeList.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.jagornet.dhcp.server.config.DhcpServerConfigException;
+
+/**
+ * The Class V4FreeList.  A specialized free list for IPv4 address pools,
+ * which tracks the used addresses by their unsigned 32-bit value offset
+ * from the start of the range, instead of using BigInteger arithmetic.
+ * The bits are kept in an array of atomic long words, which are updated
+ * via compare-and-set, so no locking is needed for concurrent allocation,
+ * and getting the next free address does not create any new objects.
+ * The search for the next free address begins at a cursor, which is the
+ * word where the last free address was found, and wraps around the range.
+ * The cursor is moved back whenever an address in a lower word is freed,
+ * so the lowest free address is still allocated first, as in FreeList.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class V4FreeList
+{
+	/** The value returned by getNextFree when no free address is available */
+	public static final long NONE = -1;
+	
+	protected long start;
+	protected long end;
+	protected int size;
+	
+	/** 
+	 * The bits for the offset of each address from the start of the range,
+	 * where bit n of word w represents the address at start + (w*64) + n
+	 */
+	protected AtomicLongArray words;
+	
+	/** The mask of valid bits in the last word */
+	protected long lastWordMask;
+	
+	/** The index of the word to begin the search for the next free address */
+	protected AtomicInteger cursor = new AtomicInteger();
+
+	/**
+	 * Instantiates a new IPv4 free list.
+	 * 
+	 * @param start the range start as an unsigned 32-bit value
+	 * @param end the range end as an unsigned 32-bit value
+	 */
+	public V4FreeList(long start, long end) throws DhcpServerConfigException
+	{
+		if ((start < 0) || (end > 0xffffffffL)) {
+			throw new DhcpServerConfigException("Failed to create V4FreeList: invalid range");
+		}
+		if (end < start) {
+			throw new DhcpServerConfigException("Failed to create V4FreeList: end < start");
+		}
+		long len = end - start + 1;
+		if (len > Integer.MAX_VALUE) {
+			throw new DhcpServerConfigException("Failed to create V4FreeList: range too large");
+		}
+		this.start = start;
+		this.end = end;
+		this.size = (int)len;
+		words = new AtomicLongArray((size + 63) >>> 6);
+		int lastBits = size & 63;
+		lastWordMask = (lastBits == 0) ? -1L : (1L << lastBits) - 1;
+	}
+	
+	/**
+	 * Instantiates a new IPv4 free list.
+	 * 
+	 * @param start the range start address
+	 * @param end the range end address
+	 */
+	public V4FreeList(InetAddress start, InetAddress end) throws DhcpServerConfigException
+	{
+		this(toLong(start), toLong(end));
+	}
+
+	/**
+	 * Convert an IPv4 address to its unsigned 32-bit value.
+	 * 
+	 * @param inetAddr the IPv4 address
+	 * @return the unsigned value of the address
+	 */
+	public static long toLong(InetAddress inetAddr)
+	{
+		byte[] b = inetAddr.getAddress();
+		return ((b[0] & 0xffL) << 24) | ((b[1] & 0xffL) << 16) |
+				((b[2] & 0xffL) << 8) | (b[3] & 0xffL);
+	}
+	
+	/**
+	 * Convert an unsigned 32-bit value to an IPv4 address.
+	 * 
+	 * @param ip the unsigned value of the address
+	 * @return the IPv4 address
+	 * @throws UnknownHostException
+	 */
+	public static InetAddress toInetAddress(long ip) throws UnknownHostException
+	{
+		return InetAddress.getByAddress(new byte[] { (byte)(ip >>> 24), (byte)(ip >>> 16),
+														(byte)(ip >>> 8), (byte)ip });
+	}
+	
+	public boolean isInList(long ip)
+	{
+		return (ip >= start) && (ip <= end);
+	}
+	
+	/**
+	 * Sets the.
+	 * 
+	 * @param ip the ip
+	 * @param used the used
+	 */
+	protected void set(long ip, boolean used)
+	{
+		if (isInList(ip)) {
+			int offset = (int)(ip - start);
+			int ndx = offset >>> 6;
+			long bit = 1L << offset;	// shift uses low six bits only
+			long word;
+			if (used) {
+				do {
+					word = words.get(ndx);
+				} while (((word & bit) == 0) && !words.compareAndSet(ndx, word, word | bit));
+			}
+			else {
+				do {
+					word = words.get(ndx);
+				} while (((word & bit) != 0) && !words.compareAndSet(ndx, word, word & ~bit));
+				// reset next free search index
+				int c;
+				while ((c = cursor.get()) > ndx) {
+					if (cursor.compareAndSet(c, ndx)) {
+						break;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sets the used.
+	 * 
+	 * @param used the new used
+	 */
+	public void setUsed(long used)
+	{
+		this.set(used, true);
+	}
+	
+	/**
+	 * Sets the free.
+	 * 
+	 * @param free the new free
+	 */
+	public void setFree(long free)
+	{
+		this.set(free, false);
+	}
+	
+	/**
+	 * Checks if is used.
+	 * 
+	 * @param used the used
+	 * 
+	 * @return true, if is used
+	 */
+	public boolean isUsed(long used)
+	{
+		if (isInList(used)) {
+			int offset = (int)(used - start);
+			return (words.get(offset >>> 6) & (1L << offset)) != 0;
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if is free.
+	 * 
+	 * @param free the free
+	 * 
+	 * @return true, if is free
+	 */
+	public boolean isFree(long free)
+	{
+		return !this.isUsed(free);
+	}
+	
+	/**
+	 * Gets the next free address, and sets it used.
+	 * 
+	 * @return the next free address as an unsigned 32-bit value,
+	 * 			or NONE if there are no free addresses in the list
+	 */
+	public long getNextFree()
+	{
+		int numWords = words.length();
+		int first = cursor.get();
+		for (int i=0; i<numWords; i++) {
+			int ndx = first + i;
+			if (ndx >= numWords) {
+				ndx -= numWords;
+			}
+			long mask = (ndx == numWords-1) ? lastWordMask : -1L;
+			long word = words.get(ndx);
+			while ((word & mask) != mask) {
+				long bit = Long.lowestOneBit(~word & mask);
+				if (words.compareAndSet(ndx, word, word | bit)) {
+					if (ndx != first) {
+						cursor.compareAndSet(first, ndx);
+					}
+					return start + ((long)ndx << 6) + Long.numberOfTrailingZeros(bit);
+				}
+				// lost the race for this bit, so try the word again
+				word = words.get(ndx);
+			}
+		}
+		return NONE;
+	}
+	
+	/**
+	 * Gets the number of used addresses in the list.
+	 * 
+	 * @return the used count
+	 */
+	public int getUsedCount()
+	{
+		int used = 0;
+		for (int i=0; i<words.length(); i++) {
+			used += Long.bitCount(words.get(i));
+		}
+		return used;
+	}
+	
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("V4FreeList:");
+		sb.append(" start=" + start);
+		sb.append(" end=" + end);
+		sb.append(" size=" + size);
+		sb.append(" used=" + getUsedCount());
+		return sb.toString();
+	}
+}
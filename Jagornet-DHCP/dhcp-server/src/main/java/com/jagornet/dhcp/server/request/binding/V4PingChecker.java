@@ -0,0 +1,295 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file V4PingChecker.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.db.IaAddress;
+import com.jagornet.dhcp.server.db.IaManager;
+import com.jagornet.dhcp.server.db.IdentityAssoc;
+
+/**
+ * Title: V4PingChecker
+ * Description: Asynchronous conflict detection for DHCPv4 offers.  Rather
+ * than blocking a request handler thread for the ping timeout, the handler
+ * submits a probe for the offered address and sends the offer when the
+ * probe completes.  Probes run on a small dedicated thread pool, the number
+ * of outstanding probes is bounded, concurrent probes for the same address
+ * share one result, and results are cached briefly so that retransmitted
+ * discovers do not probe the same address again.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class V4PingChecker
+{
+	private static Logger log = LoggerFactory.getLogger(V4PingChecker.class);
+
+	// the ping checker is built from the policies once, rather than on every
+	// discover, and is built again only after the policies are reloaded
+	private static volatile V4PingChecker instance;
+	private static volatile boolean configured;
+	
+	private final int timeout;
+	private final int maxPending;
+	private final long cacheTime;
+	private final ThreadPoolExecutor probeExecutor;
+	private final ConcurrentHashMap<InetAddress, CompletableFuture<Boolean>> pending;
+	private final ConcurrentHashMap<InetAddress, ProbeResult> results;
+	// offers sent without a ping check because a probe could not be started
+	private final AtomicLong skippedCount = new AtomicLong();
+
+	/**
+	 * Get the ping checker configured by the global policies, or null
+	 * if the <code>v4.pingCheckTimeout</code> policy is not set.
+	 * 
+	 * @return the ping checker, or null if ping checks are disabled
+	 */
+	public static V4PingChecker getInstance()
+	{
+		if (!configured) {
+			synchronized (V4PingChecker.class) {
+				if (!configured) {
+					int timeout = DhcpServerPolicies.globalPolicyAsInt(Property.V4_PINGCHECK_TIMEOUT);
+					if (timeout > 0) {
+						instance = new V4PingChecker(timeout,
+								DhcpServerPolicies.globalPolicyAsInt(Property.V4_PINGCHECK_THREADS),
+								DhcpServerPolicies.globalPolicyAsInt(Property.V4_PINGCHECK_MAX_PENDING),
+								DhcpServerPolicies.globalPolicyAsLong(Property.V4_PINGCHECK_CACHE_TIME));
+					}
+					configured = true;
+				}
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Shutdown the current ping checker, if any, so that the next call to
+	 * getInstance builds a new ping checker from the reloaded policies.
+	 */
+	public static synchronized void reset()
+	{
+		if (instance != null) {
+			instance.shutdown();
+			instance = null;
+		}
+		configured = false;
+	}
+	
+	/**
+	 * Instantiates a new ping checker.
+	 * 
+	 * @param timeout the milliseconds to wait for a ping response
+	 * @param threads the number of probe threads
+	 * @param maxPending the maximum number of outstanding probes
+	 * @param cacheTime the milliseconds to keep probe results
+	 */
+	public V4PingChecker(int timeout, int threads, int maxPending, long cacheTime)
+	{
+		this.timeout = timeout;
+		this.maxPending = maxPending;
+		this.cacheTime = cacheTime;
+		final AtomicInteger threadNum = new AtomicInteger();
+		probeExecutor = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				r -> {
+					Thread t = new Thread(r, "V4PingCheck-" + threadNum.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		probeExecutor.allowCoreThreadTimeOut(true);
+		pending = new ConcurrentHashMap<InetAddress, CompletableFuture<Boolean>>();
+		results = new ConcurrentHashMap<InetAddress, ProbeResult>();
+	}
+	
+	/**
+	 * Probe an address to determine if it is already in use.
+	 * 
+	 * @param ip the address to probe
+	 * @return a future which completes with true if the address answered
+	 * the ping, or null if the probe could not be started because too
+	 * many probes are already outstanding
+	 */
+	public CompletableFuture<Boolean> probe(final InetAddress ip)
+	{
+		ProbeResult result = results.get(ip);
+		if (result != null) {
+			if (result.expires > System.currentTimeMillis()) {
+				return CompletableFuture.completedFuture(result.reachable);
+			}
+			results.remove(ip, result);
+		}
+		CompletableFuture<Boolean> future = pending.get(ip);
+		if (future != null) {
+			return future;
+		}
+		if (pending.size() >= maxPending) {
+			long skipped = skippedCount.incrementAndGet();
+			log.warn("Too many outstanding ping checks, not probing: " + 
+					ip.getHostAddress() + " (skipped=" + skipped + ")");
+			return null;
+		}
+		future = new CompletableFuture<Boolean>();
+		CompletableFuture<Boolean> existing = pending.putIfAbsent(ip, future);
+		if (existing != null) {
+			return existing;
+		}
+		final CompletableFuture<Boolean> probeFuture = future;
+		try {
+			probeExecutor.execute(() -> runProbe(ip, probeFuture));
+		}
+		catch (RejectedExecutionException ex) {
+			pending.remove(ip, probeFuture);
+			long skipped = skippedCount.incrementAndGet();
+			log.warn("Ping check rejected, not probing: " + 
+					ip.getHostAddress() + " (skipped=" + skipped + ")");
+			return null;
+		}
+		return probeFuture;
+	}
+	
+	private void runProbe(InetAddress ip, CompletableFuture<Boolean> future)
+	{
+		boolean reachable = false;
+		try {
+			reachable = ip.isReachable(timeout);
+		}
+		catch (IOException ex) {
+			log.error("Failed to perform v4 ping check: " + ex);
+		}
+		if (results.size() >= maxPending) {
+			pruneResults();
+		}
+		results.put(ip, new ProbeResult(reachable, System.currentTimeMillis() + cacheTime));
+		pending.remove(ip, future);
+		future.complete(reachable);
+	}
+	
+	private void pruneResults()
+	{
+		long now = System.currentTimeMillis();
+		results.values().removeIf(r -> (r.expires <= now));
+	}
+	
+	/**
+	 * Handle an offered address which answered the ping check by declining
+	 * the address, so that the client is given a different address when it
+	 * retransmits the discover.  Only an address which was newly allocated
+	 * from a pool for the binding is declined, and only if it still belongs
+	 * to that binding, so a static binding, or a binding which the client
+	 * already held, is never declined.
+	 * 
+	 * @param binding the binding created for the offer
+	 * @param ip the address which is in use
+	 */
+	public void addressConflict(Binding binding, InetAddress ip)
+	{
+		log.warn("Offered address answered ping check: " + ip.getHostAddress());
+		DhcpServerConfiguration serverConfig = DhcpServerConfiguration.getInstance();
+		V4AddrBindingManager bindingMgr = serverConfig.getV4AddrBindingMgr();
+		IaManager iaMgr = serverConfig.getIaMgr();
+		if ((bindingMgr == null) || (iaMgr == null)) {
+			return;
+		}
+		IdentityAssoc ia = iaMgr.findIA(ip);
+		if ((ia == null) || (ia.getIatype() != binding.getIatype()) ||
+				!Arrays.equals(ia.getDuid(), binding.getDuid())) {
+			log.warn("Not declining address no longer bound to offered binding: " +
+					ip.getHostAddress());
+			return;
+		}
+		Collection<? extends IaAddress> iaAddrs = ia.getIaAddresses();
+		if (iaAddrs != null) {
+			for (IaAddress iaAddr : iaAddrs) {
+				if (ip.equals(iaAddr.getIpAddress()) &&
+						(iaAddr.getState() != IaAddress.RESERVED)) {
+					bindingMgr.declineIaAddress(ia, iaAddr);
+				}
+			}
+		}
+	}
+	
+	public int getPendingCount()
+	{
+		return pending.size();
+	}
+	
+	/**
+	 * Get the number of probes which could not be started, either because
+	 * too many probes were outstanding or the probe threads were shutdown.
+	 * The offers for these addresses were sent without a ping check.
+	 * 
+	 * @return the number of skipped ping checks
+	 */
+	public long getSkippedCount()
+	{
+		return skippedCount.get();
+	}
+	
+	/**
+	 * Shutdown the probe threads.  The probes which have not completed are
+	 * completed as not reachable, so that the offers waiting on them are sent.
+	 */
+	public void shutdown()
+	{
+		probeExecutor.shutdownNow();
+		for (InetAddress ip : pending.keySet()) {
+			CompletableFuture<Boolean> future = pending.remove(ip);
+			if (future != null) {
+				future.complete(false);
+			}
+		}
+	}
+	
+	static class ProbeResult
+	{
+		final boolean reachable;
+		final long expires;
+		
+		ProbeResult(boolean reachable, long expires)
+		{
+			this.reachable = reachable;
+			this.expires = expires;
+		}
+	}
+}
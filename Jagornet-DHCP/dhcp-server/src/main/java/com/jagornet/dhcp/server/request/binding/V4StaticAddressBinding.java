@@ -64,6 +64,14 @@ public class V4StaticAddressBinding extends StaticBinding implements DhcpV4Optio
 		}
 		return rc;
 	}
+	
+	@Override
+	public byte[] getIndexKey() {
+		if (addressBinding != null) {
+			return addressBinding.getChaddr();
+		}
+		return null;
+	}
 
 	@Override
 	public String getIpAddress() {
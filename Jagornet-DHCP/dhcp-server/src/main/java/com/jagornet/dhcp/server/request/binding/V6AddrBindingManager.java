@@ -193,15 +193,8 @@ public abstract class V6AddrBindingManager extends BaseAddrBindingManager
 		bp.setValidLifetime(vLifetime);
 		bp.setLinkFilter(linkFilter);
 		
-		List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
-		if ((usedIps != null) && !usedIps.isEmpty()) {
-			for (InetAddress ip : usedIps) {
-				//TODO: for the quickest startup?...
-				// set IP as used without checking if the binding has expired
-				// let the reaper thread deal with all binding cleanup activity
-				bp.setUsed(ip);
-			}
-		}
+		// the existing leases are marked used by initUsedAddresses, 
+		// in one scan for all pools
 		log.info("Built address binding pool: " + bp.getStartAddress().getHostAddress() + "-" + 
 				bp.getEndAddress().getHostAddress() + " size=" + bp.getSize());
     	return bp;
@@ -29,7 +29,6 @@ import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.text.NumberFormat;
-import java.util.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,7 +62,7 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 	protected DhcpV6ConfigOptions iaConfigOptions;
 	protected DhcpV6ConfigOptions addrConfigOptions;
 	protected LinkFilter linkFilter; 
-	protected Timer reaper;
+	protected BindingPoolLock reuseLock = new BindingPoolLock();
 	
 	/**
 	 * Instantiates a new binding pool.
@@ -85,7 +84,6 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 		freeList = 
 			new FreeList(new BigInteger(range.getStartAddress().getAddress()),
 					new BigInteger(range.getEndAddress().getAddress()));
-		reaper = new Timer(pool.getRange()+"_Reaper");
 		msgConfigOptions = new DhcpV6ConfigOptions(pool.getMsgConfigOptions());
 		iaConfigOptions = new DhcpV6ConfigOptions(pool.getIaConfigOptions());
 		addrConfigOptions = new DhcpV6ConfigOptions(pool.getAddrConfigOptions());
@@ -355,4 +353,12 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 	public BigInteger getSize() {
 		return range.size();
 	}
+
+	public BindingPoolLock getReuseLock() {
+		return reuseLock;
+	}
+
+	public void setReuseLock(BindingPoolLock reuseLock) {
+		this.reuseLock = reuseLock;
+	}
 }
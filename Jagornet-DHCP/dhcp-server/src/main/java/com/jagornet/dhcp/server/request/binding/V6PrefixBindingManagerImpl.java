@@ -32,8 +32,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +56,7 @@ import com.jagornet.dhcp.server.config.xml.V6PrefixPoolsType;
 import com.jagornet.dhcp.server.db.IaAddress;
 import com.jagornet.dhcp.server.db.IaPrefix;
 import com.jagornet.dhcp.server.db.IdentityAssoc;
+import com.jagornet.dhcp.server.util.DhcpServerScheduler;
 
 /**
  * The Class PrefixBindingManagerImpl.
@@ -86,14 +85,17 @@ public class V6PrefixBindingManagerImpl
 		long reaperRunPeriod =
 			DhcpServerPolicies.globalPolicyAsLong(Property.BINDING_MANAGER_REAPER_RUN_PERIOD);
 
-		reaper = new Timer("BindingReaper-PD");
-		reaper.schedule(new ReaperTimerTask(), reaperStartupDelay, reaperRunPeriod);
+		reaper = DhcpServerScheduler.getInstance().scheduleWithFixedDelay(
+				"BindingReaper-PD",
+				new ReaperTimerTask(), reaperStartupDelay, reaperRunPeriod);
 	}
     
 	protected void stopReaper()
 	{
-		reaper.cancel();
-		reaper.purge();
+		if (reaper != null) {
+			reaper.cancel();
+			reaper = null;
+		}
 	}
     
     /**
@@ -217,15 +219,8 @@ public class V6PrefixBindingManagerImpl
 		bp.setValidLifetime(vLifetime);
 		bp.setLinkFilter(linkFilter);
 		
-		List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
-		if ((usedIps != null) && !usedIps.isEmpty()) {
-			for (InetAddress ip : usedIps) {
-				//TODO: for the quickest startup?...
-				// set IP as used without checking if the binding has expired
-				// let the reaper thread deal with all binding cleanup activity
-				bp.setUsed(ip);
-			}
-		}
+		// the existing leases are marked used by initUsedAddresses, 
+		// in one scan for all pools
 		log.info("Built prefix binding pool: " + bp.getStartAddress().getHostAddress() + "-" + 
 				bp.getEndAddress().getHostAddress() + ", size=" + bp.getSize());
     	return bp;
@@ -683,10 +678,10 @@ public class V6PrefixBindingManagerImpl
 	/**
 	 * The Class ReaperTimerTask.
 	 */
-	class ReaperTimerTask extends TimerTask
+	class ReaperTimerTask implements Runnable
 	{		
 		/* (non-Javadoc)
-		 * @see java.util.TimerTask#run()
+		 * @see java.lang.Runnable#run()
 		 */
 		@Override
 		public void run() {
@@ -28,7 +28,6 @@ package com.jagornet.dhcp.server.request.binding;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,7 +60,7 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 	protected DhcpV6ConfigOptions iaConfigOptions;
 	protected DhcpV6ConfigOptions prefixConfigOptions;
 	protected LinkFilter linkFilter; 
-	protected Timer reaper;
+	protected BindingPoolLock reuseLock = new BindingPoolLock();
 	
 	/**
 	 * Instantiates a new binding pool.
@@ -88,7 +87,6 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 			int numPrefixes = (int) Math.pow(2,(allocPrefixLen - subnet.getPrefixLength()));
 			freeList = new FreeList(BigInteger.ZERO, 
 					BigInteger.valueOf(numPrefixes).subtract(BigInteger.ONE));
-			reaper = new Timer(pool.getRange()+"_Reaper");
 			msgConfigOptions = new DhcpV6ConfigOptions(pool.getMsgConfigOptions());
 			iaConfigOptions = new DhcpV6ConfigOptions(pool.getIaConfigOptions());
 			prefixConfigOptions = new DhcpV6ConfigOptions(pool.getPrefixConfigOptions());
@@ -343,4 +341,12 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 		return new BigInteger(subnet.getEndAddress().getAddress()).
 				subtract(new BigInteger(subnet.getSubnetAddress().getAddress()));
 	}
+
+	public BindingPoolLock getReuseLock() {
+		return reuseLock;
+	}
+
+	public void setReuseLock(BindingPoolLock reuseLock) {
+		this.reuseLock = reuseLock;
+	}
 }
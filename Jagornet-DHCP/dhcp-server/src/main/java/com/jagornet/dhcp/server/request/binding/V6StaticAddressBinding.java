@@ -75,6 +75,14 @@ public class V6StaticAddressBinding extends StaticBinding implements DhcpV6Optio
 		return rc;
 	}
 	
+	@Override
+	public byte[] getIndexKey() {
+		if ((addressBinding != null) && (addressBinding.getDuid() != null)) {
+			return addressBinding.getDuid().getHexValue();
+		}
+		return null;
+	}
+	
 	@Override
 	public String getIpAddress() {
 		return addressBinding.getIpAddress();
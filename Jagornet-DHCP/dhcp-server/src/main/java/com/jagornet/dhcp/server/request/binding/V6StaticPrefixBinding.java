@@ -74,6 +74,14 @@ public class V6StaticPrefixBinding extends StaticBinding implements DhcpV6Option
 		}
 		return rc;
 	}
+	
+	@Override
+	public byte[] getIndexKey() {
+		if ((prefixBinding != null) && (prefixBinding.getDuid() != null)) {
+			return prefixBinding.getDuid().getHexValue();
+		}
+		return null;
+	}
 
 	@Override
 	public String getIpAddress() {
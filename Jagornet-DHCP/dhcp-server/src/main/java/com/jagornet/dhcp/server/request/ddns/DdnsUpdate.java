@@ -81,6 +81,9 @@ public abstract class DdnsUpdate
 	/** The tsig key data. */
 	protected String tsigKeyData;
 	
+	/** The shared resolver, if any. */
+	protected Resolver resolver;
+	
 	/**
 	 * Instantiates a new ddns update.
 	 * 
@@ -133,6 +136,42 @@ public abstract class DdnsUpdate
 		return res;
 	}
 	
+	/**
+	 * Gets the resolver for sending this update, which is the shared
+	 * resolver if one has been set, otherwise a new resolver.
+	 * 
+	 * @return the resolver
+	 * 
+	 * @throws UnknownHostException the unknown host exception
+	 * @throws TextParseException the text parse exception
+	 */
+	protected Resolver getResolver() throws UnknownHostException, TextParseException
+	{
+		if (resolver != null) {
+			return resolver;
+		}
+		return createResolver();
+	}
+	
+	/**
+	 * Sets a shared resolver, already configured for the server and TSIG
+	 * key of this update, to avoid creating a new resolver for each update.
+	 * 
+	 * @param resolver the resolver
+	 */
+	public void setResolver(Resolver resolver) {
+		this.resolver = resolver;
+	}
+	
+	/**
+	 * Gets the name of the zone to be updated.
+	 * 
+	 * @return the zone name
+	 * 
+	 * @throws TextParseException the text parse exception
+	 */
+	public abstract Name getZoneName() throws TextParseException;
+	
 	/**
 	 * Send add.
 	 * 
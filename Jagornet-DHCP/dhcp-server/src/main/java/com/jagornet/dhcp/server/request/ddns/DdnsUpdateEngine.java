@@ -0,0 +1,566 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DdnsUpdateEngine.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.ddns;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Update;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+/**
+ * Title: DdnsUpdateEngine
+ * Description: Sends the asynchronous DDNS updates.  Updates are queued per
+ * zone, and each zone queue is drained by one thread at a time from a small
+ * shared pool, so updates for a zone are sent in order, and with a resolver
+ * and TSIG key which are created once for the zone.  The total number of
+ * queued updates is bounded, and an update which is still queued is replaced
+ * by a newer update for the same FQDN and address, as happens when a client
+ * renews several times before its update is sent.  Reverse updates have no
+ * prerequisites, so the reverse updates taken from a zone queue together are
+ * sent in a single DNS UPDATE message.  Forward updates are still sent one at
+ * a time, because their prerequisites implement the conflict resolution of
+ * RFC 4703 for each FQDN.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class DdnsUpdateEngine
+{
+	private static Logger log = LoggerFactory.getLogger(DdnsUpdateEngine.class);
+	
+	private static volatile DdnsUpdateEngine instance;
+	
+	private final int maxQueued;
+	private final int batchSize;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentHashMap<String, ZoneQueue> zoneQueues = 
+			new ConcurrentHashMap<String, ZoneQueue>();
+	
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicInteger maxQueuedCount = new AtomicInteger();
+	private final LongAdder submittedCount = new LongAdder();
+	private final LongAdder coalescedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final LongAdder failedCount = new LongAdder();
+	private final LongAdder batchCount = new LongAdder();
+	private final LongAdder batchedUpdateCount = new LongAdder();
+	
+	/**
+	 * Get the shared DDNS update engine, configured by the global policies.
+	 * 
+	 * @return the engine
+	 */
+	public static DdnsUpdateEngine getInstance()
+	{
+		DdnsUpdateEngine engine = instance;
+		if (engine == null) {
+			synchronized (DdnsUpdateEngine.class) {
+				engine = instance;
+				if (engine == null) {
+					engine = new DdnsUpdateEngine(
+							DhcpServerPolicies.globalPolicyAsInt(Property.DDNS_THREADS),
+							DhcpServerPolicies.globalPolicyAsInt(Property.DDNS_QUEUE_SIZE),
+							DhcpServerPolicies.globalPolicyAsInt(Property.DDNS_BATCH_SIZE));
+					instance = engine;
+				}
+			}
+		}
+		return engine;
+	}
+	
+	/**
+	 * Shutdown the shared DDNS update engine, if it was ever used.
+	 */
+	public static synchronized void shutdownInstance()
+	{
+		if (instance != null) {
+			instance.shutdown();
+		}
+	}
+	
+	/**
+	 * Instantiates a new DDNS update engine.
+	 * 
+	 * @param threads the number of threads for sending updates
+	 * @param maxQueued the maximum number of queued updates
+	 * @param batchSize the maximum number of updates taken from a zone queue at once
+	 */
+	public DdnsUpdateEngine(int threads, int maxQueued, int batchSize)
+	{
+		if ((threads <= 0) || (maxQueued <= 0) || (batchSize <= 0)) {
+			throw new IllegalArgumentException("DDNS threads, queue size and batch size" +
+					" must be positive: " + threads + ", " + maxQueued + ", " + batchSize);
+		}
+		this.maxQueued = maxQueued;
+		this.batchSize = batchSize;
+		final AtomicInteger threadNum = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), r -> {
+					Thread t = new Thread(r, "DdnsUpdate-" + threadNum.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Queue an update to be sent.  If the queue is full, the update is
+	 * rejected, and the callback is notified of the failure.
+	 * 
+	 * @param update the forward or reverse update
+	 * @param isDelete true to send the delete, false to send the add
+	 * @param callback the callback to notify when the update completes, may be null
+	 * @return true if the update was queued, false if it was rejected
+	 */
+	public boolean submit(DdnsUpdate update, boolean isDelete, DdnsCallback callback)
+	{
+		submittedCount.increment();
+		UpdateRequest request = new UpdateRequest(update, isDelete, callback);
+		String zoneKey = null;
+		try {
+			zoneKey = zoneKey(update);
+		}
+		catch (TextParseException ex) {
+			log.error("Invalid DDNS zone for update of " + update.fqdn + ": " + ex);
+			failedCount.increment();
+			request.complete(false);
+			return false;
+		}
+		ZoneQueue zoneQueue = zoneQueues.get(zoneKey);
+		if (zoneQueue == null) {
+			zoneQueue = zoneQueues.computeIfAbsent(zoneKey, k -> new ZoneQueue(k));
+		}
+		return zoneQueue.offer(request);
+	}
+	
+	/**
+	 * The key of the zone queue for the given update.  The key includes all
+	 * of the settings used to create the resolver for the zone queue, so that
+	 * updates sent after a configuration change, such as a new TSIG secret,
+	 * get a new zone queue and resolver, instead of the stale resolver.
+	 */
+	private static String zoneKey(DdnsUpdate update) throws TextParseException
+	{
+		return update.getServer() + "|" + update.getZoneName() + "|" + 
+				update.getTsigKeyName() + "|" + update.getTsigAlgorithm() + "|" +
+				update.getTsigKeyData();
+	}
+	
+	/**
+	 * Create the resolver for the zone of the given update, which is then
+	 * shared by all the updates sent for that zone.
+	 * 
+	 * @param update the first update for the zone
+	 * @return the resolver
+	 * @throws IOException
+	 */
+	protected Resolver createResolver(DdnsUpdate update) throws IOException
+	{
+		return update.createResolver();
+	}
+	
+	/**
+	 * @return the number of updates waiting to be sent
+	 */
+	public int getQueuedCount()
+	{
+		return queuedCount.get();
+	}
+	
+	/**
+	 * @return the largest number of updates that have been waiting to be sent
+	 */
+	public int getMaxQueuedCount()
+	{
+		return maxQueuedCount.get();
+	}
+	
+	public long getSubmittedCount()
+	{
+		return submittedCount.sum();
+	}
+	
+	/**
+	 * @return the number of queued updates replaced by a newer update
+	 */
+	public long getCoalescedCount()
+	{
+		return coalescedCount.sum();
+	}
+	
+	/**
+	 * @return the number of updates rejected because the queue was full
+	 */
+	public long getRejectedCount()
+	{
+		return rejectedCount.sum();
+	}
+	
+	public long getFailedCount()
+	{
+		return failedCount.sum();
+	}
+	
+	/**
+	 * @return the number of reverse update messages carrying more than one update
+	 */
+	public long getBatchCount()
+	{
+		return batchCount.sum();
+	}
+	
+	/**
+	 * @return the number of reverse updates sent in batches
+	 */
+	public long getBatchedUpdateCount()
+	{
+		return batchedUpdateCount.sum();
+	}
+	
+	public int getZoneCount()
+	{
+		return zoneQueues.size();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "zones=" + getZoneCount() +
+				" queued=" + getQueuedCount() +
+				" maxQueued=" + getMaxQueuedCount() +
+				" submitted=" + getSubmittedCount() +
+				" coalesced=" + getCoalescedCount() +
+				" rejected=" + getRejectedCount() +
+				" failed=" + getFailedCount() +
+				" batches=" + getBatchCount() +
+				" batchedUpdates=" + getBatchedUpdateCount();
+	}
+	
+	public void shutdown()
+	{
+		log.info("DDNS update engine shutdown: " + toString());
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * A queued update, with the callback to notify when it completes.
+	 */
+	static class UpdateRequest
+	{
+		final DdnsUpdate update;
+		final boolean isDelete;
+		final DdnsCallback callback;
+		
+		UpdateRequest(DdnsUpdate update, boolean isDelete, DdnsCallback callback)
+		{
+			this.update = update;
+			this.isDelete = isDelete;
+			this.callback = callback;
+		}
+		
+		boolean isForward()
+		{
+			return (update instanceof ForwardDdnsUpdate);
+		}
+		
+		/**
+		 * @return the key of this request, which is the same for
+		 * a newer request that should replace this one
+		 */
+		String key()
+		{
+			return (isForward() ? "F|" : "R|") + update.fqdn + "|" + 
+					update.inetAddr.getHostAddress();
+		}
+		
+		boolean send() throws IOException
+		{
+			return isDelete ? update.sendDelete() : update.sendAdd();
+		}
+		
+		void complete(boolean success)
+		{
+			if (callback == null) {
+				return;
+			}
+			try {
+				if (isForward()) {
+					if (!isDelete)
+						callback.fwdAddComplete(success);
+					else
+						callback.fwdDeleteComplete(success);
+				}
+				else {
+					if (!isDelete)
+						callback.revAddComplete(success);
+					else
+						callback.revDeleteComplete(success);
+				}
+			}
+			catch (Exception ex) {
+				log.error("DDNS update callback failed for " + update.fqdn, ex);
+			}
+		}
+	}
+	
+	/**
+	 * The queue of updates for one zone, on one server, with one TSIG key.
+	 * Zone queues are never removed, but one is only created for each
+	 * distinct DDNS configuration of a zone, so there are never many.
+	 */
+	class ZoneQueue implements Runnable
+	{
+		private final String key;
+		// pending requests by request key, in the order queued
+		private final LinkedHashMap<String, UpdateRequest> pending = 
+				new LinkedHashMap<String, UpdateRequest>();
+		private boolean scheduled;		// guarded by this
+		private Resolver resolver;		// only used by the draining thread
+		
+		ZoneQueue(String key)
+		{
+			this.key = key;
+		}
+		
+		boolean offer(UpdateRequest request)
+		{
+			UpdateRequest superseded = null;
+			boolean schedule = false;
+			synchronized (this) {
+				String requestKey = request.key();
+				superseded = pending.remove(requestKey);
+				if (superseded == null) {
+					int queued = queuedCount.incrementAndGet();
+					if (queued > maxQueued) {
+						queuedCount.decrementAndGet();
+						superseded = request;
+						request = null;
+					}
+					else {
+						maxQueuedCount.accumulateAndGet(queued, Math::max);
+					}
+				}
+				if (request != null) {
+					pending.put(requestKey, request);
+					if (!scheduled) {
+						scheduled = true;
+						schedule = true;
+					}
+				}
+			}
+			if (request == null) {
+				rejectedCount.increment();
+				log.warn("DDNS update queue is full, rejecting update of " + 
+						superseded.update.fqdn + ": " + DdnsUpdateEngine.this.toString());
+				superseded.complete(false);
+				return false;
+			}
+			if (superseded != null) {
+				coalescedCount.increment();
+				if (log.isDebugEnabled()) {
+					log.debug("Queued DDNS update replaced by newer update: " + request.key());
+				}
+				superseded.complete(false);
+			}
+			if (schedule) {
+				execute();
+			}
+			return true;
+		}
+		
+		private void execute()
+		{
+			try {
+				executor.execute(this);
+			}
+			catch (RejectedExecutionException ex) {
+				log.warn("DDNS update engine is shutdown, not sending updates for zone: " + key);
+				for (UpdateRequest request : take(Integer.MAX_VALUE)) {
+					request.complete(false);
+				}
+				synchronized (this) {
+					scheduled = false;
+				}
+			}
+		}
+		
+		private synchronized List<UpdateRequest> take(int max)
+		{
+			List<UpdateRequest> batch = new ArrayList<UpdateRequest>(Math.min(max, pending.size()));
+			Iterator<UpdateRequest> iter = pending.values().iterator();
+			while (iter.hasNext() && (batch.size() < max)) {
+				batch.add(iter.next());
+				iter.remove();
+			}
+			queuedCount.addAndGet(-batch.size());
+			return batch;
+		}
+		
+		@Override
+		public void run()
+		{
+			try {
+				send(take(batchSize));
+			}
+			catch (Throwable t) {
+				log.error("Failure sending DDNS updates for zone: " + key, t);
+			}
+			finally {
+				boolean more = false;
+				synchronized (this) {
+					if (pending.isEmpty()) {
+						scheduled = false;
+					}
+					else {
+						more = true;
+					}
+				}
+				// requeue, rather than loop, so other zones get their turn
+				if (more) {
+					execute();
+				}
+			}
+		}
+		
+		private void send(List<UpdateRequest> batch)
+		{
+			if (batch.isEmpty()) {
+				return;
+			}
+			if (resolver == null) {
+				try {
+					resolver = createResolver(batch.get(0).update);
+				}
+				catch (Exception ex) {
+					log.error("Failed to create DDNS resolver for zone: " + key, ex);
+					fail(batch);
+					return;
+				}
+			}
+			List<UpdateRequest> reverse = new ArrayList<UpdateRequest>();
+			for (UpdateRequest request : batch) {
+				request.update.setResolver(resolver);
+				if (request.isForward()) {
+					sendOne(request);
+				}
+				else {
+					reverse.add(request);
+				}
+			}
+			if (reverse.size() == 1) {
+				sendOne(reverse.get(0));
+			}
+			else if (!reverse.isEmpty()) {
+				sendReverseBatch(reverse);
+			}
+		}
+		
+		private void sendOne(UpdateRequest request)
+		{
+			boolean success = false;
+			try {
+				success = request.send();
+			}
+			catch (Exception ex) {
+				log.error("Failure performing DDNS update of " + request.update.fqdn, ex);
+			}
+			if (!success) {
+				failedCount.increment();
+			}
+			request.complete(success);
+		}
+		
+		private void sendReverseBatch(List<UpdateRequest> reverse)
+		{
+			Message response = null;
+			try {
+				Name zone = reverse.get(0).update.getZoneName();
+				Update update = new Update(zone);
+				for (UpdateRequest request : reverse) {
+					((ReverseDdnsUpdate)request.update).addRecords(update, request.isDelete);
+				}
+				if (log.isDebugEnabled()) {
+					log.debug("Sending reverse DDNS update batch to server=" + 
+							reverse.get(0).update.getServer() + ":\n" + update.toString());
+				}
+				else if (log.isInfoEnabled()) {
+					log.info("Sending reverse DDNS update batch of " + reverse.size() + 
+							" updates for zone: " + zone);
+				}
+				response = resolver.send(update);
+			}
+			catch (Exception ex) {
+				log.error("Failure performing reverse DDNS update batch for zone: " + key, ex);
+				fail(reverse);
+				return;
+			}
+			if (response.getRcode() == Rcode.NOERROR) {
+				log.info("Reverse DDNS update batch of " + reverse.size() + " updates succeeded");
+				batchCount.increment();
+				batchedUpdateCount.add(reverse.size());
+				for (UpdateRequest request : reverse) {
+					request.complete(true);
+				}
+			}
+			else {
+				// the whole message failed, so try each update on its
+				// own, so that one bad update does not fail all of them
+				log.warn("Reverse DDNS update batch failed (rcode=" + 
+						Rcode.string(response.getRcode()) + "), sending updates individually");
+				for (UpdateRequest request : reverse) {
+					sendOne(request);
+				}
+			}
+		}
+		
+		private void fail(List<UpdateRequest> requests)
+		{
+			failedCount.add(requests.size());
+			for (UpdateRequest request : requests) {
+				request.complete(false);
+			}
+		}
+	}
+}
@@ -26,8 +26,6 @@
 package com.jagornet.dhcp.server.request.ddns;
 
 import java.net.InetAddress;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,9 +47,6 @@ public class DdnsUpdater implements Runnable
 	/** The log. */
 	private static Logger log = LoggerFactory.getLogger(DdnsUpdater.class);
 
-	/** The executor. */
-	private static ExecutorService executor = Executors.newCachedThreadPool();
-	
 	/** The sync. */
 	private boolean sync;
 	
@@ -171,7 +166,8 @@ public class DdnsUpdater implements Runnable
 	}
 	
 	/**
-	 * Process updates.
+	 * Process updates.  Synchronous updates are sent now, on the calling
+	 * thread.  Asynchronous updates are queued to the DDNS update engine.
 	 */
 	public void processUpdates()
 	{
@@ -179,7 +175,17 @@ public class DdnsUpdater implements Runnable
 			run();
 		}
 		else {
-			executor.submit(this);
+			DdnsUpdateEngine engine = DdnsUpdateEngine.getInstance();
+			try {
+				if (doForwardUpdate) {
+					engine.submit(createForwardUpdate(), isDelete, callback);
+				}
+				engine.submit(createReverseUpdate(), isDelete, callback);
+			}
+			catch (Exception ex) {
+				log.error("Failure queuing DDNS updates", ex);
+				failed();
+			}
 		}
 	}
 	
@@ -190,26 +196,13 @@ public class DdnsUpdater implements Runnable
 	{
 		try {
 			if (doForwardUpdate) {
-				ForwardDdnsUpdate fwdUpdate = new ForwardDdnsUpdate(fqdn, addr, duid);
-				fwdUpdate.setServer(fwdServer);
-				fwdUpdate.setZone(fwdZone);
-				fwdUpdate.setTtl(fwdTtl);
-				fwdUpdate.setTsigKeyName(fwdTsigKeyName);
-				fwdUpdate.setTsigAlgorithm(fwdTsigAlgorithm);
-				fwdUpdate.setTsigKeyData(fwdTsigKeyData);
+				ForwardDdnsUpdate fwdUpdate = createForwardUpdate();
 				if (!isDelete)
 					callback.fwdAddComplete(fwdUpdate.sendAdd());
 				else
 					callback.fwdDeleteComplete(fwdUpdate.sendDelete());
 			}
-			ReverseDdnsUpdate revUpdate = new ReverseDdnsUpdate(fqdn, addr, duid);
-			revUpdate.setServer(revServer);
-			revUpdate.setZone(revZone);
-			revUpdate.setRevZoneBitLength(revZoneBitLength);
-			revUpdate.setTtl(revTtl);
-			revUpdate.setTsigKeyName(revTsigKeyName);
-			revUpdate.setTsigAlgorithm(revTsigAlgorithm);
-			revUpdate.setTsigKeyData(revTsigKeyData);
+			ReverseDdnsUpdate revUpdate = createReverseUpdate();
 			if (!isDelete)
 				callback.revAddComplete(revUpdate.sendAdd());
 			else
@@ -217,13 +210,53 @@ public class DdnsUpdater implements Runnable
 		}
 		catch (Exception ex) {
 			log.error("Failure performing DDNS updates", ex);
-			callback.fwdAddComplete(false);
-			callback.fwdDeleteComplete(false);
-			callback.revAddComplete(false);
-			callback.revDeleteComplete(false);
+			failed();
 		}				
 	}
 	
+	private void failed()
+	{
+		callback.fwdAddComplete(false);
+		callback.fwdDeleteComplete(false);
+		callback.revAddComplete(false);
+		callback.revDeleteComplete(false);
+	}
+	
+	/**
+	 * Creates the forward update.
+	 * 
+	 * @return the forward ddns update
+	 */
+	protected ForwardDdnsUpdate createForwardUpdate()
+	{
+		ForwardDdnsUpdate fwdUpdate = new ForwardDdnsUpdate(fqdn, addr, duid);
+		fwdUpdate.setServer(fwdServer);
+		fwdUpdate.setZone(fwdZone);
+		fwdUpdate.setTtl(fwdTtl);
+		fwdUpdate.setTsigKeyName(fwdTsigKeyName);
+		fwdUpdate.setTsigAlgorithm(fwdTsigAlgorithm);
+		fwdUpdate.setTsigKeyData(fwdTsigKeyData);
+		return fwdUpdate;
+	}
+	
+	/**
+	 * Creates the reverse update.
+	 * 
+	 * @return the reverse ddns update
+	 */
+	protected ReverseDdnsUpdate createReverseUpdate()
+	{
+		ReverseDdnsUpdate revUpdate = new ReverseDdnsUpdate(fqdn, addr, duid);
+		revUpdate.setServer(revServer);
+		revUpdate.setZone(revZone);
+		revUpdate.setRevZoneBitLength(revZoneBitLength);
+		revUpdate.setTtl(revTtl);
+		revUpdate.setTsigKeyName(revTsigKeyName);
+		revUpdate.setTsigAlgorithm(revTsigAlgorithm);
+		revUpdate.setTsigKeyData(revTsigKeyData);
+		return revUpdate;
+	}
+	
 	/**
 	 * Sets the up policies.
 	 * 
@@ -74,7 +74,7 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 	{
 		boolean rc = false;
 		
-		Resolver res = createResolver();
+		Resolver res = getResolver();
 		
 		Name owner = new Name(fqdn);
 		Record a_aaaa = null;
@@ -145,7 +145,7 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 	{
 		boolean rc = false;
 		
-		Resolver res = createResolver();
+		Resolver res = getResolver();
 		
 		Name owner = new Name(fqdn);		
 		Record a_aaaa = null;
@@ -202,6 +202,14 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 		return rc;
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcp.server.request.ddns.DdnsUpdate#getZoneName()
+	 */
+	public Name getZoneName() throws TextParseException
+	{
+		return buildZoneName(fqdn);
+	}
+	
 	/**
 	 * Builds the zone name.
 	 * 
@@ -75,18 +75,16 @@ public class ReverseDdnsUpdate extends DdnsUpdate
 	{
 		boolean rc = false;
 		
-		Resolver res = createResolver();
+		Resolver res = getResolver();
 
 		String revIp = buildReverseIpString();
 		
-		Name owner = new Name(revIp.toString());
-		PTRRecord ptr = new PTRRecord(owner, DClass.IN, ttl, new Name(fqdn));
+		PTRRecord ptr = buildPtrRecord(revIp, ttl);
 		
 		Name _zone = buildZoneName(revIp);
 		
 		Update update = new Update(_zone);
-		update.delete(owner);
-		update.add(ptr);
+		addRecords(update, false);
 
 		if (log.isDebugEnabled()) {
 			log.debug("Sending reverse DDNS update (replace) to server=" + server + ":\n" + 
@@ -115,17 +113,16 @@ public class ReverseDdnsUpdate extends DdnsUpdate
 	{
 		boolean rc = false;
 		
-		Resolver res = createResolver();
+		Resolver res = getResolver();
 
 		String revIp = buildReverseIpString();
 		
-		Name owner = new Name(revIp);
-		PTRRecord ptr = new PTRRecord(owner, DClass.IN, 0, new Name(fqdn));
+		PTRRecord ptr = buildPtrRecord(revIp, 0);
 		
 		Name _zone = buildZoneName(revIp);
 		
 		Update update = new Update(_zone);
-		update.delete(ptr);
+		addRecords(update, true);
 
 		if (log.isDebugEnabled()) {
 			log.debug("Sending reverse DDNS update (delete) to server=" + server + ":\n" + 
@@ -147,6 +144,52 @@ public class ReverseDdnsUpdate extends DdnsUpdate
 		return rc;
 	}
 	
+	/**
+	 * Adds the records of this reverse update to an update message.  The
+	 * reverse updates have no prerequisites, so the records for many
+	 * addresses in the same zone may be sent in a single update message.
+	 * 
+	 * @param update the update message
+	 * @param isDelete true to delete the PTR record, false to replace it
+	 * 
+	 * @throws TextParseException the text parse exception
+	 */
+	public void addRecords(Update update, boolean isDelete) throws TextParseException
+	{
+		String revIp = buildReverseIpString();
+		if (!isDelete) {
+			PTRRecord ptr = buildPtrRecord(revIp, ttl);
+			update.delete(ptr.getName());
+			update.add(ptr);
+		}
+		else {
+			update.delete(buildPtrRecord(revIp, 0));
+		}
+	}
+	
+	/**
+	 * Builds the PTR record.
+	 * 
+	 * @param revIp the rev ip
+	 * @param ttl the ttl
+	 * 
+	 * @return the PTR record
+	 * 
+	 * @throws TextParseException the text parse exception
+	 */
+	protected PTRRecord buildPtrRecord(String revIp, long ttl) throws TextParseException
+	{
+		return new PTRRecord(new Name(revIp), DClass.IN, ttl, new Name(fqdn));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcp.server.request.ddns.DdnsUpdate#getZoneName()
+	 */
+	public Name getZoneName() throws TextParseException
+	{
+		return buildZoneName(buildReverseIpString());
+	}
+	
 	/**
 	 * Builds the reverse ip string.
 	 * 
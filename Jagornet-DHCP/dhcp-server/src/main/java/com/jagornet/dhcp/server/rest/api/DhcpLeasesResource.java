@@ -45,6 +45,7 @@ public class DhcpLeasesResource {
 	public static final String IPADDRESS = "/{" + PATHPARAM_IPADDRESS + "}";
 	public static final String IPSTREAM = "/ipstream";
 	public static final String DHCPLEASESTREAM = "/dhcpleasestream";
+	public static final String SYNCED = "/synced";
 
 	public static final String QUERYPARAM_START = "start";
 	public static final String QUERYPARAM_END = "end";
@@ -296,6 +297,32 @@ public class DhcpLeasesResource {
 		}
     }
  
+    @PUT
+    @Secured	// registration AuthenticationFilter
+    @Path(SYNCED)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response putDhcpLeasesSynced(List<DhcpLease> dhcpLeases) {
+		try {
+			if (dhcpLeases != null) {
+	    		log.debug("putDhcpLeasesSynced: leases=" + dhcpLeases.size());
+	    		// the HA peer has stored these leases, so mark them synced
+	    		int cnt = leasesService.setDhcpLeasesSynced(dhcpLeases);
+	    		return Response.ok(String.valueOf(cnt)).build();
+			}
+			else {
+	    		return Response
+	    				.status(Response.Status.BAD_REQUEST)
+	    				.entity("PUT - dhcpLeases is null!")
+	    				.build();
+			}
+		}
+		catch (Exception ex) {
+			log.error("Exception caught in putDhcpLeasesSynced", ex);
+			return Response.serverError().entity(ex).build();
+		}
+    }
+ 
     @DELETE
     @Secured	// registration AuthenticationFilter
     @Path(IPADDRESS)
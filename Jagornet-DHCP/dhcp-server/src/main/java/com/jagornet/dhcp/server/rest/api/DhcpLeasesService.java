@@ -144,9 +144,35 @@ public class DhcpLeasesService {
 			return updateDhcpLease(dhcpLease.getIpAddress(), dhcpLease);
 		}
 	}
+
+	/**
+	 * Create or update a batch of leases, such as those received
+	 * from the HA peer during link sync.
+	 * 
+	 * @return the number of leases stored
+	 */
+	public int createOrUpdateDhcpLeases(List<DhcpLease> dhcpLeases) {
+		log.debug("Creating or updating " + dhcpLeases.size() + " DhcpLeases");
+		return leaseManager.upsertDhcpLeases(dhcpLeases);
+	}
+	
+	/**
+	 * Mark a batch of leases as synced, because the HA peer has stored them.
+	 * 
+	 * @return the number of leases marked as synced
+	 */
+	public int setDhcpLeasesSynced(List<DhcpLease> dhcpLeases) {
+		log.debug("Setting " + dhcpLeases.size() + " DhcpLeases synced");
+		return leaseManager.setLeasesSynced(dhcpLeases);
+	}
+	
 	public boolean createDhcpLease(DhcpLease dhcpLease) {
 		log.info("Creating DhcpLease: " + dhcpLease);
-		return (leaseManager.insertDhcpLease(dhcpLease) == 1);
+		if (leaseManager.insertDhcpLease(dhcpLease) == 1) {
+			leaseManager.cacheDhcpLease(dhcpLease);
+			return true;
+		}
+		return false;
 	}
 
 	public DhcpLease getDhcpLease(InetAddress ipAddress) {
@@ -168,6 +194,7 @@ public class DhcpLeasesService {
 			log.info("Updating DhcpLease for IP=" + ipStr + ": " + dhcpLease);
 			// TODO: handle error condition from update, or just bubble up?
 			if (leaseManager.updateDhcpLease(dhcpLease) == 1) {
+				leaseManager.cacheDhcpLease(dhcpLease);
 				return true;
 			}
 		}
@@ -184,6 +211,7 @@ public class DhcpLeasesService {
 		DhcpLease dhcpLease = getDhcpLease(ipAddress);
 		if (dhcpLease != null) {
 			if (leaseManager.deleteDhcpLease(dhcpLease) == 1) {
+				leaseManager.uncacheDhcpLease(ipAddress);
 				return true;
 			}
 		}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
 
@@ -13,6 +14,7 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 
 import org.apache.http.config.Registry;
@@ -242,6 +244,24 @@ public class JerseyRestClient {
 		}
 	}
 	
+	public String doPutDhcpLeases(String apiMethod, List<DhcpLease> dhcpLeases) {
+		WebTarget method = buildWebTarget(apiMethod, null);
+		Invocation.Builder invocationBuilder = method.request(MediaType.TEXT_PLAIN);
+		try {
+			log.debug("Invoking sync put on: " + method.getUri());
+			String response = invocationBuilder.put(
+					Entity.entity(new GenericEntity<List<DhcpLease>>(dhcpLeases) {}, 
+								  MediaType.APPLICATION_JSON),
+					String.class);
+			log.debug("Response: " + response);
+			return response;
+		}
+		catch (Exception ex) {
+			log.error(apiMethod + " sync put failed", ex);
+			return null;
+		}
+	}
+	
 	public Future<String> doPutAsyncString(String apiMethod, String data, 
 									 InvocationCallback<String> callback) {
 		return this.doPutAsyncString(apiMethod, data, callback, null);
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpServerScheduler.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+/**
+ * Title: DhcpServerScheduler
+ * Description: The shared scheduler for the server's background tasks, such
+ * as the binding reapers and the recent message pruners.  Tasks are timed by
+ * a single hashed wheel timer, which holds any number of pending tasks for
+ * the cost of one thread, and are run on a small worker pool so that a slow
+ * task does not delay the timing of the others.  The scheduler keeps counts
+ * of the pending and queued tasks, and of how late the tasks start.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class DhcpServerScheduler
+{
+	private static Logger log = LoggerFactory.getLogger(DhcpServerScheduler.class);
+
+	// warn when a task starts this many milliseconds after it was due
+	private static final long LAG_WARNING = 1000;
+	
+	private static DhcpServerScheduler instance;
+
+	private final HashedWheelTimer wheel;
+	private final ThreadPoolExecutor executor;
+	
+	private final LongAdder executedCount = new LongAdder();
+	private final LongAdder totalLag = new LongAdder();
+	private final AtomicLong maxLag = new AtomicLong();
+	
+	/**
+	 * Get the shared scheduler, configured by the global policies.
+	 * 
+	 * @return the scheduler
+	 */
+	public static synchronized DhcpServerScheduler getInstance()
+	{
+		if (instance == null) {
+			instance = new DhcpServerScheduler(
+					DhcpServerPolicies.globalPolicyAsLong(Property.SCHEDULER_TICK_DURATION),
+					DhcpServerPolicies.globalPolicyAsInt(Property.SCHEDULER_THREADS));
+		}
+		return instance;
+	}
+	
+	/**
+	 * Shutdown the shared scheduler, if it was ever used.
+	 */
+	public static synchronized void shutdownInstance()
+	{
+		if (instance != null) {
+			instance.shutdown();
+			instance = null;
+		}
+	}
+	
+	/**
+	 * Instantiates a new scheduler.
+	 * 
+	 * @param tickDuration the milliseconds between ticks of the timer wheel
+	 * @param threads the number of threads for running tasks
+	 */
+	public DhcpServerScheduler(long tickDuration, int threads)
+	{
+		wheel = new HashedWheelTimer(daemonThreadFactory("DhcpScheduler-Timer"), 
+				tickDuration, TimeUnit.MILLISECONDS);
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), daemonThreadFactory("DhcpScheduler"));
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	private static ThreadFactory daemonThreadFactory(final String name)
+	{
+		final AtomicInteger threadNum = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, name + "-" + threadNum.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+	
+	/**
+	 * Schedule a task to run once after the given delay.
+	 * 
+	 * @param name the name of the task, for logging
+	 * @param task the task
+	 * @param delay the delay in milliseconds
+	 * @return the scheduled task, which may be cancelled
+	 */
+	public ScheduledTask schedule(String name, Runnable task, long delay)
+	{
+		ScheduledTask scheduledTask = new ScheduledTask(name, task, 0);
+		scheduledTask.submit(delay);
+		return scheduledTask;
+	}
+	
+	/**
+	 * Schedule a task to run repeatedly, with the given delay between the
+	 * end of one run and the start of the next, like java.util.Timer.
+	 * 
+	 * @param name the name of the task, for logging
+	 * @param task the task
+	 * @param initialDelay the delay in milliseconds before the first run
+	 * @param period the delay in milliseconds between runs
+	 * @return the scheduled task, which may be cancelled
+	 */
+	public ScheduledTask scheduleWithFixedDelay(String name, Runnable task, 
+			long initialDelay, long period)
+	{
+		if (period <= 0) {
+			throw new IllegalArgumentException("Period must be positive: " + period);
+		}
+		ScheduledTask scheduledTask = new ScheduledTask(name, task, period);
+		scheduledTask.submit(initialDelay);
+		return scheduledTask;
+	}
+	
+	/**
+	 * @return the number of tasks waiting for their scheduled time
+	 */
+	public long getPendingCount()
+	{
+		return wheel.pendingTimeouts();
+	}
+	
+	/**
+	 * @return the number of tasks which are due, but waiting for a thread
+	 */
+	public int getQueuedCount()
+	{
+		return executor.getQueue().size();
+	}
+	
+	public long getExecutedCount()
+	{
+		return executedCount.sum();
+	}
+	
+	/**
+	 * @return the maximum milliseconds that a task started after it was due
+	 */
+	public long getMaxLag()
+	{
+		return maxLag.get();
+	}
+	
+	/**
+	 * @return the average milliseconds that tasks started after they were due
+	 */
+	public long getAverageLag()
+	{
+		long count = executedCount.sum();
+		return (count > 0) ? (totalLag.sum() / count) : 0;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "pending=" + getPendingCount() +
+				" queued=" + getQueuedCount() +
+				" executed=" + getExecutedCount() +
+				" averageLag=" + getAverageLag() + "ms" +
+				" maxLag=" + getMaxLag() + "ms";
+	}
+	
+	public void shutdown()
+	{
+		log.info("Scheduler shutdown: " + toString());
+		wheel.stop();
+		executor.shutdownNow();
+	}
+	
+	private void recordLag(String name, long lag)
+	{
+		executedCount.increment();
+		totalLag.add(lag);
+		maxLag.accumulateAndGet(lag, Math::max);
+		if (lag > LAG_WARNING) {
+			log.warn("Scheduled task " + name + " started " + lag + "ms late: " + toString());
+		}
+	}
+	
+	/**
+	 * A task in the scheduler, which may be cancelled.
+	 */
+	public class ScheduledTask implements TimerTask, Runnable
+	{
+		private final String name;
+		private final Runnable task;
+		private final long period;
+		private volatile long dueTime;
+		private volatile Timeout timeout;
+		private volatile boolean cancelled;
+		
+		ScheduledTask(String name, Runnable task, long period)
+		{
+			this.name = name;
+			this.task = task;
+			this.period = period;
+		}
+		
+		void submit(long delay)
+		{
+			dueTime = System.currentTimeMillis() + delay;
+			timeout = wheel.newTimeout(this, delay, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Called by the timer wheel when the task is due.
+		 */
+		@Override
+		public void run(Timeout timeout)
+		{
+			if (!cancelled) {
+				try {
+					executor.execute(this);
+				}
+				catch (RejectedExecutionException ex) {
+					log.warn("Scheduler is shutdown, not running task: " + name);
+				}
+			}
+		}
+
+		/**
+		 * Called by the worker pool to run the task.
+		 */
+		@Override
+		public void run()
+		{
+			if (cancelled) {
+				return;
+			}
+			recordLag(name, Math.max(0, System.currentTimeMillis() - dueTime));
+			try {
+				task.run();
+			}
+			catch (Throwable t) {
+				log.error("Scheduled task " + name + " failed", t);
+			}
+			finally {
+				if ((period > 0) && !cancelled) {
+					try {
+						submit(period);
+					}
+					catch (IllegalStateException ex) {
+						log.warn("Scheduler is shutdown, not rescheduling task: " + name);
+					}
+				}
+			}
+		}
+		
+		public void cancel()
+		{
+			cancelled = true;
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+		
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+		
+		public String getName()
+		{
+			return name;
+		}
+	}
+}
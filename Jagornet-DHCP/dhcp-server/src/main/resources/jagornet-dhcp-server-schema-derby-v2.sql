@@ -19,3 +19,4 @@ CREATE INDEX IATYPE_NDX ON DHCPLEASE (IATYPE);
 CREATE INDEX STATE_NDX ON DHCPLEASE (STATE);
 CREATE INDEX STARTTIME_NDX ON DHCPLEASE (STARTTIME);
 CREATE INDEX ENDTIME_NDX ON DHCPLEASE (VALIDENDTIME);
+CREATE INDEX STATE_ENDTIME_NDX ON DHCPLEASE (STATE, VALIDENDTIME);
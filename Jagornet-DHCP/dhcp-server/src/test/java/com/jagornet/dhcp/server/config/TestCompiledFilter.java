@@ -0,0 +1,163 @@
+package com.jagornet.dhcp.server.config;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import com.jagornet.dhcp.core.message.DhcpV4Message;
+import com.jagornet.dhcp.core.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4LeaseTimeOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4VendorClassOption;
+import com.jagornet.dhcp.core.util.DhcpConstants;
+import com.jagornet.dhcp.server.config.xml.ClientClassExpression;
+import com.jagornet.dhcp.server.config.xml.DhcpServerConfig;
+import com.jagornet.dhcp.server.config.xml.Filter;
+import com.jagornet.dhcp.server.config.xml.FilterExpression;
+import com.jagornet.dhcp.server.config.xml.FilterExpressionsType;
+import com.jagornet.dhcp.server.config.xml.FiltersType;
+import com.jagornet.dhcp.server.config.xml.OpaqueData;
+import com.jagornet.dhcp.server.config.xml.OpaqueDataOptionType;
+import com.jagornet.dhcp.server.config.xml.Operator;
+import com.jagornet.dhcp.server.config.xml.OptionExpression;
+import com.jagornet.dhcp.server.config.xml.StringOptionType;
+import com.jagornet.dhcp.server.config.xml.V4VendorClassOption;
+
+public class TestCompiledFilter extends TestCase
+{
+	private static DhcpV4Message createMsg(String hostname, String vendorClass, long leaseTime)
+	{
+		DhcpV4Message msg = new DhcpV4Message(new InetSocketAddress(67),
+				new InetSocketAddress(68));
+		if (hostname != null) {
+			msg.putDhcpOption(new DhcpV4HostnameOption(hostname));
+		}
+		if (vendorClass != null) {
+			BaseOpaqueData opaque = new BaseOpaqueData();
+			opaque.setAscii(vendorClass);
+			msg.putDhcpOption(new DhcpV4VendorClassOption(opaque));
+		}
+		if (leaseTime > 0) {
+			msg.putDhcpOption(new DhcpV4LeaseTimeOption(leaseTime));
+		}
+		return msg;
+	}
+
+	private static Filter createFilter(FilterExpression... expressions)
+	{
+		FilterExpressionsType filterExprs = new FilterExpressionsType();
+		for (FilterExpression expression : expressions) {
+			filterExprs.getFilterExpressionList().add(expression);
+		}
+		Filter filter = new Filter();
+		filter.setName("test");
+		filter.setFilterExpressions(filterExprs);
+		return filter;
+	}
+
+	private static FilterExpression hostnameExpression(String value, Operator op)
+	{
+		StringOptionType stringOption = new StringOptionType();
+		stringOption.setString(value);
+		OptionExpression optexpr = new OptionExpression();
+		optexpr.setCode(DhcpConstants.V4OPTION_HOSTNAME);
+		optexpr.setV4(true);
+		optexpr.setStringOption(stringOption);
+		optexpr.setOperator(op);
+		FilterExpression expression = new FilterExpression();
+		expression.setOptionExpression(optexpr);
+		return expression;
+	}
+
+	private static FilterExpression vendorClassExpression(String value, Operator op)
+	{
+		OpaqueData opaque = new OpaqueData();
+		opaque.setAsciiValue(value);
+		V4VendorClassOption vcOption = new V4VendorClassOption();
+		vcOption.setOpaqueData(opaque);
+		ClientClassExpression ccexpr = new ClientClassExpression();
+		ccexpr.setV4VendorClassOption(vcOption);
+		ccexpr.setOperator(op);
+		FilterExpression expression = new FilterExpression();
+		expression.setClientClassExpression(ccexpr);
+		return expression;
+	}
+
+	public void testRegularExpression() throws Exception
+	{
+		CompiledFilter filter = new CompiledFilter(createFilter(
+				hostnameExpression("host-[0-9]+", Operator.REG_EXP)));
+		assertEquals(1, filter.getPredicateCount());
+		assertTrue(filter.matches(createMsg("host-42", null, 0)));
+		assertFalse(filter.matches(createMsg("host-x", null, 0)));
+		assertFalse(filter.matches(createMsg(null, null, 0)));
+	}
+
+	public void testInvalidRegularExpression() throws Exception
+	{
+		CompiledFilter filter = new CompiledFilter(createFilter(
+				hostnameExpression("host-[0-9", Operator.REG_EXP)));
+		assertFalse(filter.matches(createMsg("host-[0-9", null, 0)));
+	}
+
+	public void testExpressionsAreAnded() throws Exception
+	{
+		CompiledFilter filter = new CompiledFilter(createFilter(
+				hostnameExpression("host-", Operator.STARTS_WITH),
+				vendorClassExpression("MSFT", Operator.STARTS_WITH)));
+		assertEquals(2, filter.getPredicateCount());
+		assertTrue(filter.matches(createMsg("host-1", "MSFT 5.0", 0)));
+		assertFalse(filter.matches(createMsg("host-1", "PXEClient", 0)));
+		assertFalse(filter.matches(createMsg("other", "MSFT 5.0", 0)));
+		assertFalse(filter.matches(createMsg("host-1", null, 0)));
+	}
+
+	public void testOpaqueNumber() throws Exception
+	{
+		OpaqueData opaque = new OpaqueData();
+		opaque.setHexValue(new byte[] { 0x0e, 0x10 });
+		OpaqueDataOptionType opaqueOption = new OpaqueDataOptionType();
+		opaqueOption.setOpaqueData(opaque);
+		OptionExpression optexpr = new OptionExpression();
+		optexpr.setCode(DhcpConstants.V4OPTION_LEASE_TIME);
+		optexpr.setV4(true);
+		optexpr.setOpaqueDataOption(opaqueOption);
+		FilterExpression expression = new FilterExpression();
+		expression.setOptionExpression(optexpr);
+		CompiledFilter filter = new CompiledFilter(createFilter(expression));
+		assertTrue(filter.matches(createMsg(null, null, 3600)));
+		assertFalse(filter.matches(createMsg(null, null, 7200)));
+	}
+
+	public void testEmptyFilterMatches() throws Exception
+	{
+		Filter filter = new Filter();
+		CompiledFilter compiledFilter = new CompiledFilter(filter);
+		assertEquals(0, compiledFilter.getPredicateCount());
+		assertTrue(compiledFilter.matches(createMsg(null, null, 0)));
+	}
+
+	public void testCompiledOnce() throws Exception
+	{
+		Filter filter = createFilter(hostnameExpression("host-1", Operator.EQUALS));
+		FiltersType filters = new FiltersType();
+		filters.getFilterList().add(filter);
+		DhcpServerConfig jaxbServerConfig = new DhcpServerConfig();
+		jaxbServerConfig.setFilters(filters);
+		DhcpServerConfiguration config = DhcpServerConfiguration.getInstance();
+		config.compileFilters(jaxbServerConfig);
+		CompiledFilter compiledFilter = config.getCompiledFilter(filter);
+		assertSame(compiledFilter, config.getCompiledFilter(filter));
+		assertTrue(DhcpServerConfiguration.msgMatchesFilter(createMsg("host-1", null, 0), filter));
+		assertFalse(DhcpServerConfiguration.msgMatchesFilter(createMsg("host-2", null, 0), filter));
+		
+		// a filter which is not in the configuration is compiled on each use
+		Filter other = createFilter(hostnameExpression("host-2", Operator.EQUALS));
+		assertNotSame(config.getCompiledFilter(other), config.getCompiledFilter(other));
+		assertTrue(DhcpServerConfiguration.msgMatchesFilter(createMsg("host-2", null, 0), other));
+		
+		// the filters of a new configuration replace the compiled filters
+		config.compileFilters(new DhcpServerConfig());
+		assertNotSame(compiledFilter, config.getCompiledFilter(filter));
+	}
+}
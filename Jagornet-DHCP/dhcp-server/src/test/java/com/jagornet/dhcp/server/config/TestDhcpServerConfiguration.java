@@ -42,15 +42,24 @@ import com.jagornet.dhcp.core.message.DhcpV6Message;
 import com.jagornet.dhcp.core.option.base.DhcpOption;
 import com.jagornet.dhcp.core.option.generic.GenericIpAddressListOption;
 import com.jagornet.dhcp.core.option.generic.GenericIpAddressOption;
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
 import com.jagornet.dhcp.core.option.v4.DhcpV4SubnetMaskOption;
 import com.jagornet.dhcp.core.option.v6.DhcpV6DnsServersOption;
 import com.jagornet.dhcp.core.util.DhcpConstants;
 import com.jagornet.dhcp.core.util.Subnet;
 import com.jagornet.dhcp.core.util.Util;
 import com.jagornet.dhcp.server.config.xml.DhcpServerConfig;
+import com.jagornet.dhcp.server.config.xml.Filter;
+import com.jagornet.dhcp.server.config.xml.FilterExpression;
+import com.jagornet.dhcp.server.config.xml.FilterExpressionsType;
+import com.jagornet.dhcp.server.config.xml.FiltersType;
 import com.jagornet.dhcp.server.config.xml.OpaqueData;
+import com.jagornet.dhcp.server.config.xml.OptionExpression;
 import com.jagornet.dhcp.server.config.xml.PoliciesType;
 import com.jagornet.dhcp.server.config.xml.Policy;
+import com.jagornet.dhcp.server.config.xml.StringOptionType;
+import com.jagornet.dhcp.server.config.xml.V4ConfigOptionsType;
+import com.jagornet.dhcp.server.config.xml.V4DomainNameOption;
 import com.jagornet.dhcp.server.config.xml.V6ConfigOptionsType;
 import com.jagornet.dhcp.server.config.xml.V6ServerIdOption;
 
@@ -268,4 +277,59 @@ public class TestDhcpServerConfiguration extends TestCase
         assertEquals("fd00::0001", option187ips.get(0));
         assertEquals("fd00::0002", option187ips.get(1));
     }
+    
+    public void testEffectiveOptionsCached() throws Exception {
+    	String configFilename = "file:src/test/resources/dhcpserver-test-optiondefs.xml";
+        DhcpServerConfiguration serverConfig = DhcpServerConfiguration.getInstance();
+        serverConfig.init(configFilename);
+        InetSocketAddress localAddress = new InetSocketAddress(11111);
+        InetSocketAddress remoteAddress = new InetSocketAddress(22222);
+        DhcpV4Message v4RequestMsg = new DhcpV4Message(localAddress, remoteAddress);
+        Map<Integer, DhcpOption> v4map = serverConfig.effectiveV4AddrOptions(v4RequestMsg);
+        assertSame(v4map, serverConfig.effectiveV4AddrOptions(
+        		new DhcpV4Message(localAddress, remoteAddress)));
+        try {
+        	v4map.remove(1);
+        	fail("effective options must be immutable");
+        }
+        catch (UnsupportedOperationException ex) {
+        	// expected
+        }
+        
+        // a global filter which matches by hostname
+        V4DomainNameOption domainNameOption = new V4DomainNameOption();
+        domainNameOption.setDomainName("filter.example.com");
+        V4ConfigOptionsType filterOptions = new V4ConfigOptionsType();
+        filterOptions.setV4DomainNameOption(domainNameOption);
+        StringOptionType hostname = new StringOptionType();
+        hostname.setString("host-1");
+        OptionExpression optexpr = new OptionExpression();
+        optexpr.setCode(DhcpConstants.V4OPTION_HOSTNAME);
+        optexpr.setV4(true);
+        optexpr.setStringOption(hostname);
+        FilterExpression expression = new FilterExpression();
+        expression.setOptionExpression(optexpr);
+        Filter filter = new Filter();
+        filter.setName("hostname");
+        filter.setFilterExpressions(new FilterExpressionsType());
+        filter.getFilterExpressions().getFilterExpressionList().add(expression);
+        filter.setV4ConfigOptions(filterOptions);
+        FiltersType filters = new FiltersType();
+        filters.getFilterList().add(filter);
+        long generation = serverConfig.getEffectiveOptionsCache().getGeneration();
+        serverConfig.setGlobalFilters(filters);
+        assertEquals(generation + 1, serverConfig.getEffectiveOptionsCache().getGeneration());
+        
+        Map<Integer, DhcpOption> unfiltered = serverConfig.effectiveV4AddrOptions(v4RequestMsg);
+        assertNotSame(v4map, unfiltered);
+        assertEquals(v4map.keySet(), unfiltered.keySet());
+        v4RequestMsg.putDhcpOption(new DhcpV4HostnameOption("host-1"));
+        Map<Integer, DhcpOption> filtered = serverConfig.effectiveV4AddrOptions(v4RequestMsg);
+        assertEquals(v4map.size() + 1, filtered.size());
+        assertNotNull(filtered.get(DhcpConstants.V4OPTION_DOMAIN_NAME));
+        assertSame(unfiltered, serverConfig.effectiveV4AddrOptions(
+        		new DhcpV4Message(localAddress, remoteAddress)));
+        assertEquals(2, serverConfig.getEffectiveOptionsCache().size());
+        serverConfig.setGlobalFilters(null);
+    }
 }
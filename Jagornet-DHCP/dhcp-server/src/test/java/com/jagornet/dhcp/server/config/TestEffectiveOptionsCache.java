@@ -0,0 +1,80 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestEffectiveOptionsCache.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jagornet.dhcp.core.option.base.DhcpOption;
+
+import junit.framework.TestCase;
+
+public class TestEffectiveOptionsCache extends TestCase 
+{
+	private EffectiveOptionsCache cache = new EffectiveOptionsCache();
+	private Object link = new Object();
+	
+	private EffectiveOptionsCache.Key key()
+	{
+		return new EffectiveOptionsCache.Key(1, link, null, 
+				EffectiveOptionsCache.NO_MATCH, 0, EffectiveOptionsCache.NO_MATCH);
+	}
+	
+	public void testPutAndGet() throws Exception
+	{
+		Map<Integer, DhcpOption> optionMap = Collections.emptyMap();
+		assertNull(cache.get(key()));
+		assertSame(optionMap, cache.put(key(), cache.getGeneration(), optionMap));
+		assertSame(optionMap, cache.get(key()));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+	
+	public void testPutAfterClearNotCached() throws Exception
+	{
+		// a lookup starts, and the configuration is reloaded before it is done
+		long generation = cache.getGeneration();
+		cache.clear();
+		Map<Integer, DhcpOption> optionMap = Collections.emptyMap();
+		assertSame(optionMap, cache.put(key(), generation, optionMap));
+		assertNull(cache.get(key()));
+		assertEquals(0, cache.size());
+	}
+	
+	public void testClearHidesOldEntries() throws Exception
+	{
+		Map<Integer, DhcpOption> optionMap = Collections.emptyMap();
+		cache.put(key(), cache.getGeneration(), optionMap);
+		cache.clear();
+		assertNull(cache.get(key()));
+		// the new generation replaces the entry
+		Map<Integer, DhcpOption> newMap = Collections.unmodifiableMap(
+				new TreeMap<Integer, DhcpOption>());
+		assertSame(newMap, cache.put(key(), cache.getGeneration(), newMap));
+		assertSame(newMap, cache.get(key()));
+	}
+}
@@ -2,19 +2,24 @@ package com.jagornet.dhcp.server.db;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
 
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.request.binding.Range;
 
 public class AbstractTestLeaseManager extends BaseTestCase {
 
@@ -82,7 +87,8 @@ public class AbstractTestLeaseManager extends BaseTestCase {
 
 	public void tearDown() throws Exception {
 		super.tearDown();
-		leaseManager.deleteAllLeases();
+		// and the caches, which must only hold the leases of the next test
+		leaseManager.deleteAllIAs();
 	}
 
 	public static void findUnusedLeases() throws Exception {
@@ -121,4 +127,119 @@ public class AbstractTestLeaseManager extends BaseTestCase {
 		List<DhcpLease> expired = leaseManager.findExpiredLeases(IdentityAssoc.V4_TYPE);
 		assertTrue(expired.isEmpty());
 	}
+
+	public static void reconcileLeases() throws Exception {
+		List<Range> ranges = Arrays.asList(
+				new Range("10.0.0.7-10.0.0.8"),
+				new Range("10.0.0.2-10.0.0.3"),
+				new Range("10.0.0.3-10.0.0.4"));
+		leaseManager.reconcileLeases(ranges);
+		List<InetAddress> existing = leaseManager.findExistingLeaseIPs(startIp, endIp);
+		assertEquals(Arrays.asList(
+				InetAddress.getByName("10.0.0.2"), InetAddress.getByName("10.0.0.3"),
+				InetAddress.getByName("10.0.0.4"), InetAddress.getByName("10.0.0.7"),
+				InetAddress.getByName("10.0.0.8")), existing);
+	}
+
+	public static void upsertAndSyncLeases() throws Exception {
+		// update an existing lease, and insert a new lease
+		DhcpLease existing = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		existing.setState(IaAddress.LEASED);
+		existing.setHaPeerState(IaAddress.UNKNOWN);
+		DhcpLease added = existing.clone();
+		added.setIpAddress(InetAddress.getByName("10.0.0.20"));
+		added.setDuid(BigInteger.valueOf(20).toByteArray());
+		assertEquals(2, leaseManager.upsertDhcpLeases(Arrays.asList(existing, added)));
+		assertEquals(IaAddress.LEASED, leaseManager.findDhcpLeaseForInetAddr(startIp).getState());
+		assertEquals(added, leaseManager.findDhcpLeaseForInetAddr(added.getIpAddress()));
+		// the lease cache, if any, holds the stored leases
+		LeaseCache leaseCache = leaseManager.getLeaseCache();
+		if (leaseCache != null) {
+			assertEquals(IaAddress.LEASED, leaseCache.getLease(startIp).getState());
+			assertEquals(added, leaseCache.getLease(added.getIpAddress()));
+		}
+		
+		// only the lease with the same state as stored is marked as synced
+		DhcpLease changed = leaseManager.findDhcpLeaseForInetAddr(endIp);
+		changed.setState(IaAddress.OFFERED);
+		DhcpLease missing = added.clone();
+		missing.setIpAddress(InetAddress.getByName("10.0.0.99"));
+		assertEquals(1, leaseManager.setLeasesSynced(Arrays.asList(existing, changed, missing)));
+		assertEquals(IaAddress.LEASED, 
+				leaseManager.findDhcpLeaseForInetAddr(startIp).getHaPeerState());
+		assertEquals(IaAddress.UNKNOWN, 
+				leaseManager.findDhcpLeaseForInetAddr(added.getIpAddress()).getHaPeerState());
+		assertTrue(leaseManager.findDhcpLeaseForInetAddr(endIp).getHaPeerState() != IaAddress.LEASED);
+		if (leaseCache != null) {
+			assertEquals(IaAddress.LEASED, leaseCache.getLease(startIp).getHaPeerState());
+			assertEquals(IaAddress.UNKNOWN, 
+					leaseCache.getLease(added.getIpAddress()).getHaPeerState());
+			DhcpLease cached = leaseCache.getLease(endIp);
+			assertTrue((cached == null) || (cached.getHaPeerState() != IaAddress.LEASED));
+		}
+	}
+
+	public static void findUnusedLease() throws Exception {
+		// an expired offer is not found, only an available lease
+		DhcpLease offered = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		offered.setStartTime(new Date(0));
+		assertEquals(1, leaseManager.updateDhcpLease(offered));
+		assertNull(leaseManager.findUnusedLease(startIp, endIp));
+		DhcpLease available = leaseManager.findDhcpLeaseForInetAddr(endIp);
+		available.setState(IaAddress.AVAILABLE);
+		assertEquals(1, leaseManager.updateDhcpLease(available));
+		assertEquals(endIp, leaseManager.findUnusedLease(startIp, endIp).getIpAddress());
+		assertNull(leaseManager.findUnusedLease(startIp, InetAddress.getByName("10.0.0.8")));
+		available.setState(IaAddress.LEASED);
+		assertEquals(1, leaseManager.updateDhcpLease(available));
+		assertNull(leaseManager.findUnusedLease(startIp, endIp));
+	}
+
+	public static void insertExistingLease() throws Exception {
+		DhcpLease lease = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		lease.setState(IaAddress.LEASED);
+		try {
+			leaseManager.insertDhcpLease(lease);
+			fail("Expected DuplicateKeyException");
+		}
+		catch (DuplicateKeyException ex) {
+			// expected
+		}
+		assertEquals(IaAddress.OFFERED, leaseManager.findDhcpLeaseForInetAddr(startIp).getState());
+	}
+
+	/**
+	 * Make the changes so far recoverable, i.e. snapshot or compact.
+	 */
+	protected interface Checkpoint {
+		void checkpoint() throws Exception;
+	}
+
+	/**
+	 * Copy the leases to a new lease manager, checkpoint, change the leases,
+	 * then restart the manager, which must recover both the checkpoint and
+	 * the changes.  The manager is left started for further checks.
+	 */
+	public static void recoverLeases(MemoryLeaseManager recovering, 
+			Checkpoint checkpoint) throws Exception {
+		recovering.init();
+		leaseManager.findExistingLeases(startIp, endIp, l -> recovering.insertDhcpLease(l));
+		assertEquals(10, recovering.findExistingLeaseIPs(startIp, endIp).size());
+		
+		checkpoint.checkpoint();
+		assertEquals(1, recovering.deleteIpAddress(startIp));
+		DhcpLease lease = recovering.findDhcpLeaseForInetAddr(endIp);
+		lease.setState(IaAddress.AVAILABLE);
+		assertEquals(1, recovering.updateDhcpLease(lease));
+		recovering.close();
+		
+		recovering.init();
+		List<DhcpLease> leases = recovering.findDhcpLeasesForIA(
+				lease.getDuid(), lease.getIatype(), lease.getIaid());
+		assertEquals(1, leases.size());
+		assertEquals(IaAddress.AVAILABLE, leases.get(0).getState());
+		assertNull(recovering.findDhcpLeaseForInetAddr(startIp));
+		assertEquals(9, recovering.findExistingLeaseIPs(startIp, endIp).size());
+		assertNotNull(recovering.findUnusedLease(startIp, endIp));
+	}
 }
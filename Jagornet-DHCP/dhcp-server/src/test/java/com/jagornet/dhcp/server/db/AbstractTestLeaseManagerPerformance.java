@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNotNull;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -13,6 +14,11 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +34,7 @@ public abstract class AbstractTestLeaseManagerPerformance extends BaseTestCase {
 	protected static int LEASE_TIME = 60*1000;	// one minute
 	protected static List<DhcpLease> mockLeases = null;
 	protected static Random rand = new Random();
+	protected static int THREAD_COUNT = 8;
 
 	public static void oneTimeSetUp() throws Exception
 	{
@@ -141,6 +148,79 @@ public abstract class AbstractTestLeaseManagerPerformance extends BaseTestCase {
 		return totalDuration;
 	}
 	
+	/**
+	 * Find and update IAs from several threads at once.  Each thread
+	 * owns every n-th lease, so that the threads contend on the lease
+	 * manager and its caches, but not on the leases.  The leases are
+	 * created in their own range, with fixed length DUIDs, so that 
+	 * the IAs of the other tests are left as they are.
+	 * 
+	 * @param threads the number of threads
+	 * @return the elapsed time for all threads to finish
+	 * @throws Exception
+	 */
+	public static Duration findAndUpdateIAsConcurrently(int threads) throws Exception {
+		final List<DhcpLease> concurrentLeases = 
+				createFixedDuidMockLeases(InetAddress.getByName("10.1.0.0"), LEASE_COUNT);
+		for (DhcpLease dhcpLease : concurrentLeases) {
+			leaseManager.createIA(LeaseManager.toIdentityAssoc(dhcpLease), null);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t=0; t<threads; t++) {
+			final int offset = t;
+			tasks.add(() -> {
+				Random random = ThreadLocalRandom.current();
+				int owned = (LEASE_COUNT - offset + threads - 1) / threads;
+				Date tomorrow = new Date(new Date().getTime() + (1000 * 60 * 60 * 24));
+				for (int i=0; i<LEASE_COUNT; i++) {
+					int index = offset + (threads * random.nextInt(owned));
+					DhcpLease dhcpLease = concurrentLeases.get(index);
+					IdentityAssoc found = leaseManager.findIA(dhcpLease.getDuid(), 
+															  dhcpLease.getIatype(), 
+															  dhcpLease.getIaid());
+					assertNotNull(found);
+					List<DhcpLease> leases = LeaseManager.toDhcpLeases(found, null);
+					assertEquals(1, leases.size());
+					assertEquals(dhcpLease, leases.get(0));
+					if (i % 4 == 0) {
+						// one update for every four lookups
+						DhcpLease updatedLease = dhcpLease.clone();
+						updatedLease.setStartTime(new Date());
+						updatedLease.setPreferredEndTime(tomorrow);
+						updatedLease.setValidEndTime(tomorrow);
+						leaseManager.updateIA(LeaseManager.toIdentityAssoc(updatedLease), null,
+								Arrays.asList(LeaseManager.toIaAddress(updatedLease)), null, null);
+						concurrentLeases.set(index, updatedLease);
+					}
+				}
+				return null;
+			});
+		}
+		try {
+			Instant t1 = Instant.now();
+			List<Future<Void>> futures = executor.invokeAll(tasks);
+			Instant t2 = Instant.now();
+			for (Future<Void> future : futures) {
+				// rethrows any assertion failure from the worker thread
+				future.get();
+			}
+			return Duration.between(t1, t2);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	public static void logCacheStats() {
+		if (leaseManager.getIaCache() != null) {
+			log.info("IA cache: " + leaseManager.getIaCache().getCache());
+		}
+		if (leaseManager.getLeaseCache() != null) {
+			log.info("Lease cache: " + leaseManager.getLeaseCache().getCache());
+		}
+	}
+	
 	protected static List<DhcpLease> createMockLeases(InetAddress startIp, int count) {
 		List<DhcpLease> leases = new ArrayList<DhcpLease>();
 		Date now = new Date();
@@ -167,4 +247,18 @@ public abstract class AbstractTestLeaseManagerPerformance extends BaseTestCase {
 		}
 		return leases;
 	}
+	
+	/**
+	 * Create mock leases with fixed length DUIDs, because Derby pads
+	 * shorter binary values with spaces when comparing, so that the
+	 * DUID 0x02 would match 0x0220.  The DUIDs start with 0xCA, which
+	 * no DUID of createMockLeases does.
+	 */
+	protected static List<DhcpLease> createFixedDuidMockLeases(InetAddress startIp, int count) {
+		List<DhcpLease> leases = createMockLeases(startIp, count);
+		for (int i=0; i<leases.size(); i++) {
+			leases.get(i).setDuid(ByteBuffer.allocate(4).putInt(0xCA000000 | i).array());
+		}
+		return leases;
+	}
 }
@@ -123,6 +123,14 @@ public abstract class BaseTestCase
 					FileUtils.cleanDirectory(dbFiles);
 				}
 			}
+			else if (schemaType.contains("memory")) {
+				File dbFiles = new File("db/memleases");
+				if (dbFiles.exists() && dbFiles.isDirectory()) {
+					// start with a fresh database
+					System.out.println("Cleaning " + dbFiles + "...");
+					FileUtils.cleanDirectory(dbFiles);
+				}
+			}
 			String[] appContext = JagornetDhcpServer.getAppContextFiles(schemaType, schemaVersion);
 
 			ctx = new ClassPathXmlApplicationContext(appContext);
@@ -75,6 +75,15 @@ public class TestDerbyJdbcLeaseManagerNoCachePerformance extends AbstractTestLea
 		log.info("updateIAs duration=" + duration);
 	}
 
+	@Test
+	public void testFindAndUpdateIAsConcurrently() throws Exception {
+		log.info("testFindAndUpdateIAsConcurrently...");
+		Duration duration = super.findAndUpdateIAsConcurrently(THREAD_COUNT);
+		log.info("findAndUpdateIAsConcurrently threads=" + THREAD_COUNT + 
+				" duration=" + duration);
+		logCacheStats();
+	}
+
 	/*
 	@Test
 	public void testFindUnusedIaAddresses() throws Exception {
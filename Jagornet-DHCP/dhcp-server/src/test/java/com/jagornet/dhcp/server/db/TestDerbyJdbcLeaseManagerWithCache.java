@@ -52,4 +52,9 @@ public class TestDerbyJdbcLeaseManagerWithCache extends AbstractTestLeaseManager
 	public void testFindExpiredLeases() throws Exception {
 		AbstractTestLeaseManager.findExpiredLeases();
 	}
+	
+	@Test
+	public void testUpsertAndSyncLeases() throws Exception {
+		AbstractTestLeaseManager.upsertAndSyncLeases();
+	}
 }
@@ -0,0 +1,176 @@
+package com.jagornet.dhcp.server.db;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+import com.jagornet.dhcp.core.option.v4.DhcpV4HostnameOption;
+
+public class TestFileLeaseJournal extends TestCase
+{
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		dir = Files.createTempDirectory("fileleases").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private static DhcpLease createLease(String ip, byte state) throws Exception
+	{
+		long now = new Date().getTime();
+		DhcpLease lease = new DhcpLease();
+		lease.setIpAddress(InetAddress.getByName(ip));
+		lease.setDuid(new byte[] { 1, 2, 3, 4 });
+		lease.setIatype(IdentityAssoc.V4_TYPE);
+		lease.setIaid(7);
+		lease.setState(state);
+		lease.setStartTime(new Date(now));
+		lease.setValidEndTime(new Date(now + 60000));
+		lease.setDhcpOptions(Arrays.asList(new DhcpV4HostnameOption("host-" + ip)));
+		return lease;
+	}
+
+	// replays the records into a map, like the lease manager index
+	private static class Leases implements FileLeaseJournal.RecoveryHandler
+	{
+		Map<InetAddress, DhcpLease> map = new LinkedHashMap<InetAddress, DhcpLease>();
+
+		@Override
+		public void putLease(DhcpLease lease) {
+			map.put(lease.getIpAddress(), lease);
+		}
+		@Override
+		public void deleteLease(InetAddress inetAddr) {
+			map.remove(inetAddr);
+		}
+	}
+
+	public void testEncodeDecode() throws Exception
+	{
+		DhcpLease lease = createLease("10.0.0.1", IaAddress.LEASED);
+		lease.setPreferredEndTime(null);
+		DhcpLease decoded = FileLeaseJournal.decodeLease(
+				FileLeaseJournal.encodePut(lease).position(FileLeaseJournal.HEADER_SIZE));
+		assertEquals(lease, decoded);
+		assertEquals(lease.getStartTime(), decoded.getStartTime());
+		assertNull(decoded.getPreferredEndTime());
+		assertEquals(1, decoded.getDhcpOptions().size());
+		assertNull(decoded.getIaDhcpOptions());
+	}
+
+	public void testRecoverAcrossChunks() throws Exception
+	{
+		// a small map size, so that the journal is grown several times
+		FileLeaseJournal journal = new FileLeaseJournal(dir, 1024, true, 10);
+		assertEquals(0, journal.recover(new Leases()));
+		journal.start();
+		for (int i=0; i<100; i++) {
+			journal.commit(journal.append(FileLeaseJournal.encodePut(
+					createLease("10.0.0." + i, IaAddress.LEASED))));
+		}
+		journal.commit(journal.append(FileLeaseJournal.encodeDelete(
+				InetAddress.getByName("10.0.0.5"))));
+		assertTrue(journal.getSyncCount() > 0);
+		journal.close();
+
+		Leases leases = new Leases();
+		journal = new FileLeaseJournal(dir, 1024, true, 10);
+		assertEquals(101, journal.recover(leases));
+		journal.close();
+		assertEquals(99, leases.map.size());
+		assertNull(leases.map.get(InetAddress.getByName("10.0.0.5")));
+		assertEquals(IaAddress.LEASED, leases.map.get(InetAddress.getByName("10.0.0.99")).getState());
+	}
+
+	public void testReadFileInChunks() throws Exception
+	{
+		FileLeaseJournal journal = new FileLeaseJournal(dir, 64 * 1024, false, 10);
+		journal.recover(new Leases());
+		for (int i=0; i<100; i++) {
+			journal.append(FileLeaseJournal.encodePut(
+					createLease("10.0.0." + i, IaAddress.LEASED)));
+		}
+		journal.append(FileLeaseJournal.encodeDelete(InetAddress.getByName("10.0.0.5")));
+		File file = journal.journalFile(journal.getGeneration());
+		journal.close();
+
+		// chunks smaller than a record, and chunks holding several records
+		for (int chunkSize : new int[] { FileLeaseJournal.SLOT_SIZE / 2, 1000 }) {
+			Leases leases = new Leases();
+			assertEquals(101, FileLeaseJournal.readFile(file, leases, chunkSize));
+			assertEquals(99, leases.map.size());
+			assertNull(leases.map.get(InetAddress.getByName("10.0.0.5")));
+			assertNotNull(leases.map.get(InetAddress.getByName("10.0.0.99")));
+		}
+	}
+
+	public void testIncompleteRecordIgnored() throws Exception
+	{
+		FileLeaseJournal journal = new FileLeaseJournal(dir, 4096, false, 10);
+		journal.recover(new Leases());
+		journal.append(FileLeaseJournal.encodePut(createLease("10.0.0.1", IaAddress.LEASED)));
+		journal.append(FileLeaseJournal.encodePut(createLease("10.0.0.2", IaAddress.LEASED)));
+		journal.append(FileLeaseJournal.encodePut(createLease("10.0.0.3", IaAddress.LEASED)));
+		File file = journal.journalFile(journal.getGeneration());
+		journal.close();
+
+		// corrupt the payload of the second record, as if torn by a crash
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long offset = FileLeaseJournal.SLOT_SIZE + FileLeaseJournal.HEADER_SIZE + 2;
+			raf.seek(offset);
+			int b = raf.read();
+			raf.seek(offset);
+			raf.write(b ^ 0xff);
+		}
+		Leases leases = new Leases();
+		journal = new FileLeaseJournal(dir, 4096, false, 10);
+		assertEquals(1, journal.recover(leases));
+		journal.close();
+		assertEquals(1, leases.map.size());
+		assertNotNull(leases.map.get(InetAddress.getByName("10.0.0.1")));
+	}
+
+	public void testSnapshotReplacesJournal() throws Exception
+	{
+		FileLeaseJournal journal = new FileLeaseJournal(dir, 4096, false, 10);
+		journal.recover(new Leases());
+		DhcpLease lease1 = createLease("10.0.0.1", IaAddress.OFFERED);
+		DhcpLease lease2 = createLease("10.0.0.2", IaAddress.LEASED);
+		journal.append(FileLeaseJournal.encodePut(lease1));
+		journal.append(FileLeaseJournal.encodePut(lease2));
+		lease1.setState(IaAddress.LEASED);
+		journal.append(FileLeaseJournal.encodePut(lease1));
+		long oldGen = journal.getGeneration();
+
+		long gen = journal.rotate();
+		assertEquals(0, journal.getRecordCount());
+		journal.writeSnapshot(gen, Arrays.asList(lease1, lease2));
+		assertFalse(journal.journalFile(oldGen).exists());
+		// written after the snapshot, so replayed on top of it
+		journal.append(FileLeaseJournal.encodeDelete(lease2.getIpAddress()));
+		journal.close();
+
+		Leases leases = new Leases();
+		journal = new FileLeaseJournal(dir, 4096, false, 10);
+		assertEquals(1, journal.recover(leases));
+		journal.close();
+		assertEquals(1, leases.map.size());
+		assertEquals(IaAddress.LEASED, leases.map.get(lease1.getIpAddress()).getState());
+	}
+}
@@ -0,0 +1,91 @@
+package com.jagornet.dhcp.server.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+public class TestFileLeaseManager extends AbstractTestLeaseManager {
+
+	private static Logger log = LoggerFactory.getLogger(TestFileLeaseManager.class);
+	
+	@BeforeClass
+	public static void oneTimeSetUp() throws Exception
+	{
+		AbstractTestLeaseManager.oneTimeSetUp();
+		DhcpServerPolicies.setProperty(Property.DATABASE_FILE_COMPACT_INTERVAL, "0");
+		initializeContext(DbSchemaManager.SCHEMATYPE_FILE, BaseTestCase.DEFAULT_SCHEMA_VERSION);
+		leaseManager =  (LeaseManager)config.getIaMgr();
+		log.info("oneTimeSetUp complete");
+	}
+	
+	@AfterClass	
+	public static void oneTimeTearDown() throws Exception
+	{
+		((FileLeaseManager)leaseManager).close();
+		DhcpServerPolicies.setProperty(Property.DATABASE_FILE_COMPACT_INTERVAL, "60000");
+		AbstractTestLeaseManager.oneTimeTearDown();
+		log.info("oneTimeTearDown complete");
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testFindUnusedLeases() throws Exception {
+		AbstractTestLeaseManager.findUnusedLeases();
+	}
+	
+	@Test
+	public void testFindExpiredLeases() throws Exception {
+		AbstractTestLeaseManager.findExpiredLeases();
+	}
+	
+	@Test
+	public void testFindUnusedLease() throws Exception {
+		AbstractTestLeaseManager.findUnusedLease();
+	}
+	
+	@Test
+	public void testInsertExistingLease() throws Exception {
+		AbstractTestLeaseManager.insertExistingLease();
+	}
+	
+	@Test
+	public void testRecovery() throws Exception {
+		File dir = Files.createTempDirectory("fileleases").toFile();
+		FileLeaseManager fileLeaseManager = new FileLeaseManager();
+		fileLeaseManager.setLeaseDir(dir);
+		try {
+			// changes after the snapshot are replayed from the journal
+			AbstractTestLeaseManager.recoverLeases(fileLeaseManager, fileLeaseManager::compact);
+			// the journal was compacted at startup
+			assertEquals(0, fileLeaseManager.getJournal().getRecordCount());
+			assertTrue(fileLeaseManager.getJournal().getGeneration() > 0);
+		}
+		finally {
+			fileLeaseManager.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+}
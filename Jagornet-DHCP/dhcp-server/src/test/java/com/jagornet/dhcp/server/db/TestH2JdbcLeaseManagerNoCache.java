@@ -52,4 +52,14 @@ public class TestH2JdbcLeaseManagerNoCache extends AbstractTestLeaseManager {
 	public void testFindExpiredLeases() throws Exception {
 		AbstractTestLeaseManager.findExpiredLeases();
 	}
+	
+	@Test
+	public void testReconcileLeases() throws Exception {
+		AbstractTestLeaseManager.reconcileLeases();
+	}
+	
+	@Test
+	public void testUpsertAndSyncLeases() throws Exception {
+		AbstractTestLeaseManager.upsertAndSyncLeases();
+	}
 }
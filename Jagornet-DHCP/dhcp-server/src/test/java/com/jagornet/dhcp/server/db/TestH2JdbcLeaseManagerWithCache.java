@@ -1,5 +1,13 @@
 package com.jagornet.dhcp.server.db;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -52,4 +60,35 @@ public class TestH2JdbcLeaseManagerWithCache extends AbstractTestLeaseManager {
 	public void testFindExpiredLeases() throws Exception {
 		AbstractTestLeaseManager.findExpiredLeases();
 	}
+	
+	@Test
+	public void testUpsertAndSyncLeases() throws Exception {
+		AbstractTestLeaseManager.upsertAndSyncLeases();
+	}
+	
+	@Test
+	public void testExpiredLeaseWrittenToStore() throws Exception {
+		DhcpLease lease = leaseManager.findDhcpLeaseForInetAddr(startIp).clone();
+		lease.setIpAddress(InetAddress.getByName("10.0.1.1"));
+		lease.setState(IaAddress.LEASED);
+		lease.setValidEndTime(new Date(System.currentTimeMillis() - 1000));
+		// every lease was loaded into the cache at startup
+		assertTrue(leaseManager.getLeaseCache().isComplete());
+		// written straight to the store, so the lease cache does not hold it
+		leaseManager.insertDhcpLease(lease);
+		assertNull(leaseManager.getLeaseCache().getLease(lease.getIpAddress()));
+		try {
+			// the expiry index is trusted until the store query is due
+			leaseManager.expiredStoreQueryPeriod = Long.MAX_VALUE;
+			assertTrue(leaseManager.findExpiredIAs(IdentityAssoc.V4_TYPE).isEmpty());
+			leaseManager.expiredStoreQueryPeriod = 0;
+			List<IdentityAssoc> expired = leaseManager.findExpiredIAs(IdentityAssoc.V4_TYPE);
+			assertEquals(1, expired.size());
+			assertEquals(lease.getIpAddress(), 
+					expired.get(0).getIaAddresses().iterator().next().getIpAddress());
+		}
+		finally {
+			leaseManager.expiredStoreQueryPeriod = LeaseManager.EXPIRED_STORE_QUERY_PERIOD;
+		}
+	}
 }
@@ -70,4 +70,13 @@ public class TestH2JdbcLeaseManagerWithCachePerformance extends AbstractTestLeas
 		Duration duration = super.updateIAs();
 		log.info("updateIAs duration=" + duration);
 	}
+
+	@Test
+	public void testFindAndUpdateIAsConcurrently() throws Exception {
+		log.info("testFindAndUpdateIAsConcurrently...");
+		Duration duration = super.findAndUpdateIAsConcurrently(THREAD_COUNT);
+		log.info("findAndUpdateIAsConcurrently threads=" + THREAD_COUNT + 
+				" duration=" + duration);
+		logCacheStats();
+	}
 }
@@ -0,0 +1,243 @@
+package com.jagornet.dhcp.server.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+public class TestH2JdbcLeaseManagerWriteBehind extends AbstractTestLeaseManager {
+
+	private static Logger log = LoggerFactory.getLogger(TestH2JdbcLeaseManagerWriteBehind.class);
+	
+	@BeforeClass
+	public static void oneTimeSetUp() throws Exception
+	{
+		AbstractTestLeaseManager.oneTimeSetUp();
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_IA_CACHE_SIZE, "0");
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_LEASE_CACHE_SIZE, "0");
+		// only write when a query needs it, or when flushed by the test
+		DhcpServerPolicies.setProperty(Property.DATABASE_WRITE_BEHIND, "true");
+		DhcpServerPolicies.setProperty(Property.DATABASE_WRITE_BEHIND_MAX_LATENCY, "600000");
+		initializeContext(DbSchemaManager.SCHEMATYPE_JDBC_H2, BaseTestCase.DEFAULT_SCHEMA_VERSION);
+		leaseManager =  (LeaseManager)config.getIaMgr();
+		log.info("oneTimeSetUp complete");
+	}
+	
+	@AfterClass	
+	public static void oneTimeTearDown() throws Exception
+	{
+		((JdbcLeaseManager)leaseManager).close();
+		DhcpServerPolicies.setProperty(Property.DATABASE_WRITE_BEHIND, "false");
+		DhcpServerPolicies.setProperty(Property.DATABASE_WRITE_BEHIND_MAX_LATENCY, "100");
+		AbstractTestLeaseManager.oneTimeTearDown();
+		log.info("oneTimeTearDown complete");
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testFindUnusedLeases() throws Exception {
+		AbstractTestLeaseManager.findUnusedLeases();
+	}
+	
+	@Test
+	public void testFindExpiredLeases() throws Exception {
+		AbstractTestLeaseManager.findExpiredLeases();
+	}
+	
+	@Test
+	public void testPendingLeases() throws Exception {
+		JdbcLeaseWriteBehind writeBehind = ((JdbcLeaseManager)leaseManager).writeBehind;
+		assertNotNull(writeBehind);
+		// the leases created by setUp are not yet written
+		assertEquals(10, writeBehind.size());
+		DhcpLease lease = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		assertNotNull(lease);
+		IdentityAssoc ia = leaseManager.findIA(lease.getDuid(), lease.getIatype(), lease.getIaid());
+		assertNotNull(ia);
+		assertEquals(1, ia.getIaAddresses().size());
+		
+		assertEquals(1, leaseManager.deleteIpAddress(startIp));
+		assertNull(leaseManager.findDhcpLeaseForInetAddr(startIp));
+		
+		writeBehind.flush();
+		assertEquals(0, writeBehind.size());
+		assertNull(leaseManager.findDhcpLeaseForInetAddr(startIp));
+		lease = leaseManager.findDhcpLeaseForInetAddr(endIp);
+		assertNotNull(lease);
+		assertEquals(IaAddress.LEASED, lease.getState());
+	}
+	
+	@Test
+	public void testQueriesMergePendingLeases() throws Exception {
+		JdbcLeaseWriteBehind writeBehind = ((JdbcLeaseManager)leaseManager).writeBehind;
+		assertEquals(10, writeBehind.size());
+		// expire one lease, and make another available
+		DhcpLease lease = leaseManager.findDhcpLeaseForInetAddr(endIp);
+		lease.setValidEndTime(new Date(System.currentTimeMillis() - 1000));
+		leaseManager.updateDhcpLease(lease);
+		lease = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		lease.setState(IaAddress.AVAILABLE);
+		leaseManager.updateDhcpLease(lease);
+		
+		List<DhcpLease> expired = leaseManager.findExpiredLeases(IdentityAssoc.V4_TYPE);
+		assertEquals(1, expired.size());
+		assertEquals(endIp, expired.get(0).getIpAddress());
+		List<IaAddress> unused = leaseManager.findUnusedIaAddresses(startIp, endIp);
+		assertEquals(1, unused.size());
+		assertEquals(startIp, unused.get(0).getIpAddress());
+		lease = leaseManager.findUnusedLease(startIp, endIp);
+		assertNotNull(lease);
+		assertEquals(startIp, lease.getIpAddress());
+		// none of the queries wrote the journal
+		assertEquals(10, writeBehind.size());
+	}
+	
+	@Test
+	public void testLeasesForIAMergePendingLeases() throws Exception {
+		JdbcLeaseWriteBehind writeBehind = ((JdbcLeaseManager)leaseManager).writeBehind;
+		writeBehind.flush();
+		assertEquals(0, writeBehind.size());
+		DhcpLease lease = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		byte[] oldDuid = lease.getDuid();
+		long oldIaid = lease.getIaid();
+		assertEquals(1, leaseManager.findDhcpLeasesForIA(oldDuid, lease.getIatype(), oldIaid).size());
+		
+		// the written lease moves to another IA, which is only pending
+		byte[] newDuid = new byte[] { (byte)0xca, (byte)0xfe };
+		lease.setDuid(newDuid);
+		lease.setIaid(99);
+		leaseManager.updateDhcpLease(lease);
+		assertEquals(1, writeBehind.size());
+		assertEquals(0, leaseManager.findDhcpLeasesForIA(oldDuid, lease.getIatype(), oldIaid).size());
+		List<DhcpLease> leases = leaseManager.findDhcpLeasesForIA(newDuid, lease.getIatype(), 99);
+		assertEquals(1, leases.size());
+		assertEquals(startIp, leases.get(0).getIpAddress());
+		
+		// the same after it is written
+		writeBehind.flush();
+		assertEquals(0, leaseManager.findDhcpLeasesForIA(oldDuid, lease.getIatype(), oldIaid).size());
+		assertEquals(1, leaseManager.findDhcpLeasesForIA(newDuid, lease.getIatype(), 99).size());
+	}
+	
+	@Test
+	public void testWriteOutcomes() throws Exception {
+		JdbcLeaseWriteBehind writeBehind = ((JdbcLeaseManager)leaseManager).writeBehind;
+		DhcpLease lease = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		// a pending lease is changed in the journal, without a query
+		assertEquals(1, updateState(startIp, IaAddress.AVAILABLE));
+		assertEquals(10, writeBehind.size());
+		assertEquals(IaAddress.AVAILABLE, writeBehind.getPending(startIp).getLease().getState());
+		try {
+			leaseManager.insertDhcpLease(lease);
+			fail("Expected DuplicateKeyException");
+		}
+		catch (DuplicateKeyException ex) {
+			// the lease is pending
+		}
+		
+		// a pending delete is known to be deleted
+		assertEquals(1, leaseManager.deleteDhcpLease(lease));
+		assertEquals(0, leaseManager.deleteDhcpLease(lease));
+		assertEquals(0, leaseManager.deleteIpAddress(startIp));
+		assertEquals(0, leaseManager.updateDhcpLease(lease));
+		assertEquals(0, updateState(startIp, IaAddress.LEASED));
+		assertNull(leaseManager.findDhcpLeaseForInetAddr(startIp));
+		
+		// neither pending nor cached, so the stored lease is changed
+		writeBehind.flush();
+		assertEquals(0, updateState(startIp, IaAddress.LEASED));
+		assertEquals(0, leaseManager.deleteIpAddress(startIp));
+		assertEquals(1, updateState(endIp, IaAddress.AVAILABLE));
+		assertEquals(0, writeBehind.size());
+		assertEquals(IaAddress.AVAILABLE, leaseManager.findDhcpLeaseForInetAddr(endIp).getState());
+	}
+	
+	private int updateState(InetAddress inetAddr, byte state) {
+		return leaseManager.updateIpAddress(inetAddr, state, IaAddress.UNKNOWN, (short)0,
+				new Date(), null, null, null);
+	}
+	
+	@Test
+	public void testFindUnusedLeaseOldestPending() throws Exception {
+		long now = System.currentTimeMillis();
+		DhcpLease newer = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		newer.setState(IaAddress.AVAILABLE);
+		newer.setValidEndTime(new Date(now - 1000));
+		leaseManager.updateDhcpLease(newer);
+		DhcpLease older = leaseManager.findDhcpLeaseForInetAddr(endIp);
+		older.setState(IaAddress.AVAILABLE);
+		older.setValidEndTime(new Date(now - 60000));
+		leaseManager.updateDhcpLease(older);
+		assertEquals(endIp, leaseManager.findUnusedLease(startIp, endIp).getIpAddress());
+	}
+	
+	@Test
+	public void testFailedLeaseDropped() throws Exception {
+		JdbcLeaseWriteBehind writeBehind = ((JdbcLeaseManager)leaseManager).writeBehind;
+		writeBehind.flush();
+		long dropped = writeBehind.getDroppedCount();
+		// longer than the duid column, so it can never be written
+		DhcpLease bad = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		bad.setDuid(new byte[200]);
+		assertEquals(1, leaseManager.updateDhcpLease(bad));
+		DhcpLease good = leaseManager.findDhcpLeaseForInetAddr(endIp);
+		good.setState(IaAddress.AVAILABLE);
+		assertEquals(1, leaseManager.updateDhcpLease(good));
+		
+		// the good lease is written, and the bad lease is retried
+		writeBehind.flush();
+		assertEquals(1, writeBehind.size());
+		assertNotNull(writeBehind.getPending(startIp));
+		assertEquals(IaAddress.AVAILABLE, leaseManager.findDhcpLeaseForInetAddr(endIp).getState());
+		for (int i=1; i<JdbcLeaseWriteBehind.MAX_WRITE_ATTEMPTS; i++) {
+			writeBehind.flush();
+		}
+		assertEquals(0, writeBehind.size());
+		assertEquals(dropped + 1, writeBehind.getDroppedCount());
+		// the stored lease is as it was before the bad write
+		assertEquals(1, leaseManager.findDhcpLeaseForInetAddr(startIp).getDuid().length);
+	}
+	
+	@Test
+	public void testCloseDrainsJournal() throws Exception {
+		JdbcLeaseManager jdbcLeaseManager = (JdbcLeaseManager)leaseManager;
+		jdbcLeaseManager.writeBehind.flush();
+		// a second journal, which is not started, so only close writes it
+		JdbcLeaseWriteBehind journal = new JdbcLeaseWriteBehind(jdbcLeaseManager, 100, 600000);
+		DhcpLease good = leaseManager.findDhcpLeaseForInetAddr(startIp);
+		good.setState(IaAddress.AVAILABLE);
+		journal.putLease(good);
+		DhcpLease bad = leaseManager.findDhcpLeaseForInetAddr(endIp);
+		bad.setDuid(new byte[200]);
+		journal.putLease(bad);
+		journal.close();
+		assertEquals(0, journal.size());
+		assertEquals(1, journal.getDroppedCount());
+		assertEquals(IaAddress.AVAILABLE, leaseManager.findDhcpLeaseForInetAddr(startIp).getState());
+	}
+}
@@ -0,0 +1,78 @@
+package com.jagornet.dhcp.server.db;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestLeaseExpiryIndex extends TestCase
+{
+	private static DhcpLease createLease(String ip, byte state, long validEnd) throws Exception
+	{
+		DhcpLease lease = new DhcpLease();
+		lease.setIpAddress(InetAddress.getByName(ip));
+		lease.setDuid(new byte[] { 1, 2, 3, 4 });
+		lease.setIatype(IdentityAssoc.V4_TYPE);
+		lease.setState(state);
+		lease.setStartTime(new Date(validEnd - 60000));
+		lease.setPreferredEndTime(new Date(validEnd));
+		lease.setValidEndTime(new Date(validEnd));
+		return lease;
+	}
+
+	public void testExpiredLeasesInOrder() throws Exception
+	{
+		long now = new Date().getTime();
+		LeaseCache cache = new LeaseCache(100);
+		cache.putLease(createLease("10.0.0.1", IaAddress.LEASED, now - 1000));
+		cache.putLease(createLease("10.0.0.2", IaAddress.LEASED, now - 5000));
+		cache.putLease(createLease("10.0.0.3", IaAddress.LEASED, now + 60000));
+		cache.putLease(createLease("10.0.0.4", IaAddress.OFFERED, now - 5000));
+		cache.putLease(createLease("10.0.0.5", IaAddress.RESERVED, now - 5000));
+
+		List<DhcpLease> expired = cache.expiredLeases(IdentityAssoc.V4_TYPE);
+		assertEquals(2, expired.size());
+		assertEquals(InetAddress.getByName("10.0.0.2"), expired.get(0).getIpAddress());
+		assertEquals(InetAddress.getByName("10.0.0.1"), expired.get(1).getIpAddress());
+		assertTrue(cache.expiredLeases(IdentityAssoc.NA_TYPE).isEmpty());
+	}
+
+	public void testIndexFollowsUpdates() throws Exception
+	{
+		long now = new Date().getTime();
+		LeaseCache cache = new LeaseCache(100);
+		DhcpLease lease = createLease("10.0.0.1", IaAddress.LEASED, now - 1000);
+		cache.putLease(lease);
+		cache.putLease(createLease("10.0.0.2", IaAddress.LEASED, now - 1000));
+		assertEquals(2, cache.expiredLeases(IdentityAssoc.V4_TYPE).size());
+
+		// renewed
+		lease.setValidEndTime(new Date(now + 60000));
+		cache.putLease(lease);
+		assertEquals(1, cache.expiredLeases(IdentityAssoc.V4_TYPE).size());
+
+		// expired by the reaper
+		lease.setValidEndTime(new Date(now - 1000));
+		lease.setState(IaAddress.AVAILABLE);
+		cache.putLease(lease);
+		assertEquals(1, cache.expiredLeases(IdentityAssoc.V4_TYPE).size());
+
+		cache.removeLease(InetAddress.getByName("10.0.0.2"));
+		assertTrue(cache.expiredLeases(IdentityAssoc.V4_TYPE).isEmpty());
+	}
+
+	public void testEvictionRemovesFromIndex() throws Exception
+	{
+		long now = new Date().getTime();
+		LeaseCache cache = new LeaseCache(16);
+		for (int i=0; i<1000; i++) {
+			cache.putLease(createLease("10.0." + (i / 256) + "." + (i % 256),
+					IaAddress.LEASED, now - 1000));
+		}
+		assertEquals(cache.getCache().size(),
+				cache.expiredLeases(IdentityAssoc.V4_TYPE).size());
+		cache.clear();
+		assertTrue(cache.expiredLeases(IdentityAssoc.V4_TYPE).isEmpty());
+	}
+}
@@ -0,0 +1,105 @@
+package com.jagornet.dhcp.server.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+public class TestMemoryLeaseManager extends AbstractTestLeaseManager {
+
+	private static Logger log = LoggerFactory.getLogger(TestMemoryLeaseManager.class);
+	
+	@BeforeClass
+	public static void oneTimeSetUp() throws Exception
+	{
+		AbstractTestLeaseManager.oneTimeSetUp();
+		DhcpServerPolicies.setProperty(Property.DATABASE_MEMORY_SNAPSHOT_INTERVAL, "0");
+		initializeContext(DbSchemaManager.SCHEMATYPE_MEMORY, BaseTestCase.DEFAULT_SCHEMA_VERSION);
+		leaseManager =  (LeaseManager)config.getIaMgr();
+		log.info("oneTimeSetUp complete");
+	}
+	
+	@AfterClass	
+	public static void oneTimeTearDown() throws Exception
+	{
+		((MemoryLeaseManager)leaseManager).close();
+		DhcpServerPolicies.setProperty(Property.DATABASE_MEMORY_SNAPSHOT_INTERVAL, "60000");
+		AbstractTestLeaseManager.oneTimeTearDown();
+		log.info("oneTimeTearDown complete");
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testFindUnusedLeases() throws Exception {
+		AbstractTestLeaseManager.findUnusedLeases();
+	}
+	
+	@Test
+	public void testFindExpiredLeases() throws Exception {
+		AbstractTestLeaseManager.findExpiredLeases();
+	}
+	
+	@Test
+	public void testReconcileLeases() throws Exception {
+		AbstractTestLeaseManager.reconcileLeases();
+	}
+	
+	@Test
+	public void testUpsertAndSyncLeases() throws Exception {
+		AbstractTestLeaseManager.upsertAndSyncLeases();
+	}
+	
+	@Test
+	public void testFindUnusedLease() throws Exception {
+		AbstractTestLeaseManager.findUnusedLease();
+	}
+	
+	@Test
+	public void testInsertExistingLease() throws Exception {
+		AbstractTestLeaseManager.insertExistingLease();
+	}
+	
+	@Test
+	public void testSnapshot() throws Exception {
+		File dir = Files.createTempDirectory("memleases").toFile();
+		MemoryLeaseManager memoryLeaseManager = new MemoryLeaseManager();
+		memoryLeaseManager.setLeaseDir(dir);
+		DhcpServerPolicies.setProperty(Property.DATABASE_MEMORY_SNAPSHOT_INTERVAL, "60000");
+		try {
+			// changes after the last snapshot are written when closed
+			AbstractTestLeaseManager.recoverLeases(memoryLeaseManager, memoryLeaseManager::snapshot);
+			memoryLeaseManager.close();
+			
+			// nothing is kept when snapshots are disabled
+			DhcpServerPolicies.setProperty(Property.DATABASE_MEMORY_SNAPSHOT_INTERVAL, "0");
+			memoryLeaseManager.init();
+			assertEquals(0, memoryLeaseManager.getLeaseCount());
+		}
+		finally {
+			DhcpServerPolicies.setProperty(Property.DATABASE_MEMORY_SNAPSHOT_INTERVAL, "0");
+			memoryLeaseManager.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.jagornet.dhcp.server.db;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.jagornet.dhcp.server.request.binding.Range;
+
+import junit.framework.TestCase;
+
+public class TestRangeIndex extends TestCase
+{
+	public void testContains() throws Exception
+	{
+		RangeIndex rangeIndex = new RangeIndex(Arrays.asList(
+				new Range("10.0.0.7-10.0.0.8"),
+				new Range("10.0.0.2-10.0.0.3"),
+				new Range("10.0.0.3-10.0.0.4"),
+				new Range("2001:db8::/64")));
+		for (String ip : new String[] { "10.0.0.2", "10.0.0.3", "10.0.0.4",
+				"10.0.0.7", "10.0.0.8", "2001:db8::1" }) {
+			assertTrue(ip, rangeIndex.contains(InetAddress.getByName(ip)));
+		}
+		for (String ip : new String[] { "10.0.0.1", "10.0.0.5", "10.0.0.9",
+				"2001:db8:0:1::1" }) {
+			assertFalse(ip, rangeIndex.contains(InetAddress.getByName(ip)));
+		}
+	}
+
+	public void testEmpty() throws Exception
+	{
+		RangeIndex rangeIndex = new RangeIndex(Collections.<Range>emptyList());
+		assertFalse(rangeIndex.contains(InetAddress.getByName("10.0.0.1")));
+	}
+}
@@ -0,0 +1,47 @@
+package com.jagornet.dhcp.server.db;
+
+import junit.framework.TestCase;
+
+public class TestSegmentedLruCache extends TestCase
+{
+	public void testHitsAndMisses() throws Exception
+	{
+		SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(100);
+		cache.put("a", "A");
+		assertEquals("A", cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals("A", cache.remove("a"));
+		assertNull(cache.get("a"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0, cache.size());
+	}
+
+	public void testSizeBoundedEviction() throws Exception
+	{
+		SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<Integer, Integer>(1000, 8);
+		assertEquals(8, cache.getSegmentCount());
+		for (int i=0; i<5000; i++) {
+			cache.put(i, i);
+		}
+		assertTrue(cache.size() <= 1000);
+		assertEquals(5000 - cache.size(), cache.getEvictionCount());
+		assertEquals(cache.size(), cache.values().size());
+	}
+
+	public void testLeastRecentlyUsedEvicted() throws Exception
+	{
+		// a single segment behaves as a plain LRU
+		SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<Integer, Integer>(3, 1);
+		cache.put(1, 1);
+		cache.put(2, 2);
+		cache.put(3, 3);
+		cache.get(1);
+		cache.put(4, 4);
+		assertNull(cache.get(2));
+		assertNotNull(cache.get(1));
+		assertNotNull(cache.get(3));
+		assertNotNull(cache.get(4));
+		assertEquals(1, cache.getEvictionCount());
+	}
+}
@@ -0,0 +1,297 @@
+package com.jagornet.dhcp.server.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.jagornet.dhcp.server.db.DhcpLease;
+import com.jagornet.dhcp.server.db.IaAddress;
+import com.jagornet.dhcp.server.db.IdentityAssoc;
+import com.jagornet.dhcp.server.grpc.DhcpLeaseAck;
+import com.jagornet.dhcp.server.grpc.DhcpLeaseAckBatch;
+import com.jagornet.dhcp.server.grpc.DhcpLeaseUpdateBatch;
+import com.jagornet.dhcp.server.grpc.SequencedDhcpLeaseUpdate;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+public class TestGrpcLeaseReplicator {
+
+	GrpcLeaseReplicator replicator;
+	AtomicInteger streams = new AtomicInteger();
+	AtomicInteger batches = new AtomicInteger();
+	AtomicInteger received = new AtomicInteger();
+	AtomicInteger updated = new AtomicInteger();
+	AtomicInteger updateCalls = new AtomicInteger();
+	AtomicBoolean peerDown = new AtomicBoolean();
+	AtomicBoolean peerAcks = new AtomicBoolean(true);
+	AtomicBoolean peerUnimplemented = new AtomicBoolean();
+	// milliseconds for the peer stream to take to write each batch
+	volatile long sendDelay;
+	// set if the peer stream is called by two threads at once,
+	// or written to after it was failed
+	AtomicBoolean misused = new AtomicBoolean();
+
+	@After
+	public void tearDown() throws Exception {
+		if (replicator != null) {
+			replicator.close();
+		}
+	}
+
+	private List<DhcpLease> buildLeases(int n) throws Exception {
+		List<DhcpLease> dhcpLeases = new ArrayList<DhcpLease>();
+		Date now = new Date();
+		for (int i=0; i<n; i++) {
+			DhcpLease dhcpLease = new DhcpLease();
+			dhcpLease.setIpAddress(InetAddress.getByAddress(
+					new byte[] { 10, 0, (byte)(i >> 8), (byte)i }));
+			dhcpLease.setDuid(new byte[] { (byte)0xde, (byte)0xbb, (byte)0x1e, (byte)i });
+			dhcpLease.setIaid(i);
+			dhcpLease.setIatype(IdentityAssoc.V4_TYPE);
+			dhcpLease.setState(IaAddress.LEASED);
+			dhcpLease.setHaPeerState(IaAddress.UNKNOWN);
+			dhcpLease.setStartTime(now);
+			dhcpLease.setPreferredEndTime(now);
+			dhcpLease.setValidEndTime(now);
+			dhcpLeases.add(dhcpLease);
+		}
+		return dhcpLeases;
+	}
+
+	/**
+	 * A peer which acknowledges every update, or fails the stream on
+	 * any batch while the peer is down, or ignores any batch while
+	 * the peer does not acknowledge updates
+	 */
+	private StreamObserver<DhcpLeaseUpdateBatch> openPeerStream(
+							StreamObserver<DhcpLeaseAckBatch> ackObserver) {
+		streams.incrementAndGet();
+		return new StreamObserver<DhcpLeaseUpdateBatch>() {
+			// the thread calling the stream, which is not thread-safe
+			final AtomicReference<Thread> caller = new AtomicReference<>();
+			volatile boolean failed;
+			
+			private boolean enter() {
+				if (caller.compareAndSet(null, Thread.currentThread())) {
+					return true;
+				}
+				if (caller.get() != Thread.currentThread()) {
+					misused.set(true);
+				}
+				// called back by the peer on the same thread
+				return false;
+			}
+			
+			@Override
+			public void onNext(DhcpLeaseUpdateBatch batch) {
+				boolean entered = enter();
+				try {
+					if (failed) {
+						misused.set(true);
+					}
+					if (sendDelay > 0) {
+						Thread.sleep(sendDelay);
+					}
+					receive(batch);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					if (entered) {
+						caller.set(null);
+					}
+				}
+			}
+			
+			private void receive(DhcpLeaseUpdateBatch batch) {
+				batches.incrementAndGet();
+				received.addAndGet(batch.getUpdatesCount());
+				if (peerUnimplemented.get()) {
+					ackObserver.onError(Status.UNIMPLEMENTED.asRuntimeException());
+					return;
+				}
+				if (peerDown.get()) {
+					ackObserver.onError(new Exception("peer failed"));
+					return;
+				}
+				if (!peerAcks.get()) {
+					return;
+				}
+				DhcpLeaseAckBatch.Builder acks = DhcpLeaseAckBatch.newBuilder();
+				for (SequencedDhcpLeaseUpdate update : batch.getUpdatesList()) {
+					acks.addAcks(DhcpLeaseAck.newBuilder()
+										.setSequence(update.getSequence())
+										.setSuccess(true));
+				}
+				ackObserver.onNext(acks.build());
+			}
+			@Override
+			public void onError(Throwable t) {
+				boolean entered = enter();
+				failed = true;
+				if (entered) {
+					caller.set(null);
+				}
+			}
+			@Override
+			public void onCompleted() {
+			}
+		};
+	}
+
+	private void startReplicator(boolean ack, int window, long timeout) {
+		peerAcks.set(ack);
+		replicator = new GrpcLeaseReplicator(
+				ackObserver -> openPeerStream(ackObserver),
+				dhcpLeases -> {
+					updateCalls.incrementAndGet();
+					updated.addAndGet(dhcpLeases.size());
+				},
+				window, 100, timeout);
+		replicator.start();
+	}
+
+	@Test
+	public void testSyncUpdate() throws Exception {
+		startReplicator(true, 1000, 2000);
+		List<DhcpLease> dhcpLeases = buildLeases(250);
+		assertEquals(250, replicator.updateDhcpLeases(dhcpLeases, true));
+		assertEquals(250, updated.get());
+		assertTrue(batches.get() >= 3);
+		// the peer state is stored once per ack batch
+		assertEquals(batches.get(), updateCalls.get());
+		assertEquals(1, streams.get());
+		for (DhcpLease dhcpLease : dhcpLeases) {
+			assertEquals(dhcpLease.getState(), dhcpLease.getHaPeerState());
+		}
+	}
+
+	@Test
+	public void testAsyncUpdate() throws Exception {
+		startReplicator(true, 1000, 2000);
+		List<DhcpLease> dhcpLeases = buildLeases(500);
+		assertEquals(500, replicator.updateDhcpLeases(dhcpLeases, false));
+		long end = System.currentTimeMillis() + 5000;
+		while ((updated.get() < 500) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(10);
+		}
+		assertEquals(500, updated.get());
+	}
+
+	@Test
+	public void testStreamFailure() throws Exception {
+		peerDown.set(true);
+		startReplicator(true, 1000, 2000);
+		List<DhcpLease> dhcpLeases = buildLeases(10);
+		assertEquals(0, replicator.updateDhcpLeases(dhcpLeases, true));
+		assertEquals(0, updated.get());
+		for (DhcpLease dhcpLease : dhcpLeases) {
+			assertEquals(IaAddress.UNKNOWN, dhcpLease.getHaPeerState());
+		}
+		// the next update opens a new stream
+		int failedStreams = streams.get();
+		peerDown.set(false);
+		assertEquals(10, replicator.updateDhcpLeases(dhcpLeases, true));
+		assertEquals(10, updated.get());
+		assertEquals(failedStreams + 1, streams.get());
+	}
+
+	@Test
+	public void testWindowFull() throws Exception {
+		startReplicator(false, 10, 200);
+		List<DhcpLease> dhcpLeases = buildLeases(20);
+		// the first 10 fill the window, and are not acknowledged,
+		// the last 10 time out waiting for the window, all within
+		// one timeout for the whole call
+		long start = System.currentTimeMillis();
+		assertEquals(0, replicator.updateDhcpLeases(dhcpLeases, true));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(0, updated.get());
+		// the timed out stream was failed, which released the
+		// window, and the next update opens a new stream
+		int failedStreams = streams.get();
+		peerAcks.set(true);
+		assertEquals(20, replicator.updateDhcpLeases(dhcpLeases, true));
+		assertEquals(20, updated.get());
+		assertEquals(failedStreams + 1, streams.get());
+	}
+
+	@Test
+	public void testAckTimeout() throws Exception {
+		startReplicator(false, 10, 50);
+		List<DhcpLease> dhcpLeases = buildLeases(10);
+		// asynchronous updates fill the window, and are all sent,
+		// but not acknowledged
+		assertEquals(10, replicator.updateDhcpLeases(dhcpLeases, false));
+		long end = System.currentTimeMillis() + 5000;
+		while ((received.get() < 10) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(10);
+		}
+		// the sender resets the stream when the acks time out,
+		// which releases the window for the next updates
+		peerAcks.set(true);
+		Thread.sleep(300);
+		int failedStreams = streams.get();
+		assertEquals(10, replicator.updateDhcpLeases(dhcpLeases, true));
+		assertEquals(10, updated.get());
+		assertEquals(failedStreams + 1, streams.get());
+	}
+
+	@Test
+	public void testTimeoutRacesSend() throws Exception {
+		// the peer is slow to take each batch, and does not acknowledge
+		// them, so the callers time out and fail the stream while the
+		// sender is writing to it
+		sendDelay = 5;
+		startReplicator(false, 1000, 30);
+		List<Thread> callers = new ArrayList<Thread>();
+		for (int i=0; i<4; i++) {
+			Thread caller = new Thread(() -> {
+				try {
+					for (int j=0; j<20; j++) {
+						replicator.updateDhcpLeases(buildLeases(5), true);
+					}
+				}
+				catch (Exception ex) {
+					misused.set(true);
+				}
+			});
+			callers.add(caller);
+			caller.start();
+		}
+		for (Thread caller : callers) {
+			caller.join(30000);
+		}
+		assertFalse(misused.get());
+		assertTrue(streams.get() > 1);
+		// the failed streams released the window
+		sendDelay = 0;
+		peerAcks.set(true);
+		assertEquals(10, replicator.updateDhcpLeases(buildLeases(10), true));
+	}
+
+	@Test
+	public void testPeerUnimplemented() throws Exception {
+		peerUnimplemented.set(true);
+		startReplicator(true, 1000, 2000);
+		assertFalse(replicator.isUnimplemented());
+		List<DhcpLease> dhcpLeases = buildLeases(10);
+		assertEquals(0, replicator.updateDhcpLeases(dhcpLeases, true));
+		assertEquals(0, updated.get());
+		// remembered, so the caller sends the updates one at a time
+		assertTrue(replicator.isUnimplemented());
+	}
+}
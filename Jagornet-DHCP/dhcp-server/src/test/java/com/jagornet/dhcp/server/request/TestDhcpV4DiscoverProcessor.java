@@ -27,6 +27,7 @@ package com.jagornet.dhcp.server.request;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.net.InetAddress;
 
@@ -66,6 +67,33 @@ public class TestDhcpV4DiscoverProcessor extends BaseTestDhcpV4Processor
 		checkReply(replyMsg,
 				InetAddress.getByName("192.168.0.100"),
 				InetAddress.getByName("192.168.0.199"));		
+		// a new address from the pool is subject to the ping check
+		assertNotNull(processor.getAllocatedBinding());
+	}
+	
+	/**
+	 * Test discover from a client which already has a binding.
+	 * 
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testDiscoverExistingBinding() throws Exception
+	{
+		DhcpV4Message requestMsg = buildRequestMessage(firstPoolAddr);
+		requestMsg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
+
+		DhcpV4DiscoverProcessor processor = 
+			new DhcpV4DiscoverProcessor(requestMsg, requestMsg.getRemoteAddress().getAddress());
+		DhcpV4Message replyMsg = processor.processMessage();
+		assertNotNull(replyMsg);
+		
+		processor = 
+			new DhcpV4DiscoverProcessor(requestMsg, requestMsg.getRemoteAddress().getAddress());
+		DhcpV4Message replyMsg2 = processor.processMessage();
+		assertNotNull(replyMsg2);
+		assertEquals(replyMsg.getYiAddr(), replyMsg2.getYiAddr());
+		// the client's existing binding is never ping checked
+		assertNull(processor.getAllocatedBinding());
 	}
 	
 }
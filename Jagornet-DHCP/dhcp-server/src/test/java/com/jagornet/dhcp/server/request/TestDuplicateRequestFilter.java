@@ -0,0 +1,57 @@
+package com.jagornet.dhcp.server.request;
+
+import junit.framework.TestCase;
+
+public class TestDuplicateRequestFilter extends TestCase
+{
+	private static final byte[] MAC1 = new byte[] { 0, 1, 2, 3, 4, 5 };
+	private static final byte[] MAC2 = new byte[] { 0, 1, 2, 3, 4, 6 };
+
+	public void testFingerprint() throws Exception
+	{
+		long fp = DuplicateRequestFilter.fingerprint(4, MAC1, 1234, 1);
+		assertEquals(fp, DuplicateRequestFilter.fingerprint(4, MAC1.clone(), 1234, 1));
+		assertFalse(fp == DuplicateRequestFilter.fingerprint(4, MAC2, 1234, 1));
+		assertFalse(fp == DuplicateRequestFilter.fingerprint(4, MAC1, 1235, 1));
+		assertFalse(fp == DuplicateRequestFilter.fingerprint(4, MAC1, 1234, 3));
+		assertFalse(fp == DuplicateRequestFilter.fingerprint(6, MAC1, 1234, 1));
+	}
+
+	public void testDuplicateWithinWindow() throws Exception
+	{
+		DuplicateRequestFilter filter = new DuplicateRequestFilter(1024);
+		long fp1 = DuplicateRequestFilter.fingerprint(4, MAC1, 1234, 1);
+		long fp2 = DuplicateRequestFilter.fingerprint(4, MAC2, 1234, 1);
+		assertFalse(filter.isDuplicate(fp1, 60000));
+		assertFalse(filter.isDuplicate(fp2, 60000));
+		assertTrue(filter.isDuplicate(fp1, 60000));
+		assertTrue(filter.isDuplicate(fp2, 60000));
+		assertEquals(2, filter.getAcceptedCount());
+		assertEquals(2, filter.getDroppedCount());
+		filter.clear();
+		assertFalse(filter.isDuplicate(fp1, 60000));
+	}
+
+	public void testExpiredAfterWindow() throws Exception
+	{
+		DuplicateRequestFilter filter = new DuplicateRequestFilter(1024);
+		long fp = DuplicateRequestFilter.fingerprint(6, MAC1, 1234, 1);
+		assertFalse(filter.isDuplicate(fp, 50));
+		Thread.sleep(100);
+		assertFalse(filter.isDuplicate(fp, 50));
+		assertTrue(filter.isDuplicate(fp, 50));
+	}
+
+	public void testBoundedCapacity() throws Exception
+	{
+		DuplicateRequestFilter filter = new DuplicateRequestFilter(64);
+		assertEquals(64, filter.getCapacity());
+		for (int i=0; i<10000; i++) {
+			assertFalse(filter.isDuplicate(
+					DuplicateRequestFilter.fingerprint(4, MAC1, i, 1), 60000));
+		}
+		// the most recent request is still remembered
+		assertTrue(filter.isDuplicate(
+				DuplicateRequestFilter.fingerprint(4, MAC1, 9999, 1), 60000));
+	}
+}
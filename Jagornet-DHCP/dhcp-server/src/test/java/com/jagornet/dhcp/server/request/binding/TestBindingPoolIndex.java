@@ -0,0 +1,133 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestBindingPoolIndex.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.jagornet.dhcp.server.config.xml.LinkFilter;
+import com.jagornet.dhcp.server.config.xml.V4AddressPool;
+import com.jagornet.dhcp.server.config.xml.V6PrefixPool;
+
+import junit.framework.TestCase;
+
+public class TestBindingPoolIndex extends TestCase
+{
+	private static V4AddressBindingPool v4Pool(String range) throws Exception
+	{
+		V4AddressPool pool = new V4AddressPool();
+		pool.setRange(range);
+		return new V4AddressBindingPool(pool);
+	}
+	
+	public void testFindBindingPool() throws Exception
+	{
+		List<List<? extends BindingPool>> poolLists = new ArrayList<>();
+		List<V4AddressBindingPool> link1 = new ArrayList<>();
+		for (int i=0; i<100; i++) {
+			link1.add(v4Pool("10.0." + i + ".0/24"));
+		}
+		poolLists.add(link1);
+		V6PrefixPool v6pool = new V6PrefixPool();
+		v6pool.setRange("2001:DB8:FFFF::/48");
+		v6pool.setPrefixLength(64);
+		poolLists.add(Arrays.asList(new V6PrefixBindingPool(v6pool)));
+		
+		BindingPoolIndex index = new BindingPoolIndex(poolLists);
+		assertEquals(101, index.size());
+		assertSame(link1.get(0), index.findBindingPool(InetAddress.getByName("10.0.0.0")));
+		assertSame(link1.get(42), index.findBindingPool(InetAddress.getByName("10.0.42.17")));
+		assertSame(link1.get(99), index.findBindingPool(InetAddress.getByName("10.0.99.255")));
+		assertNull(index.findBindingPool(InetAddress.getByName("10.0.100.1")));
+		assertNull(index.findBindingPool(InetAddress.getByName("9.255.255.255")));
+		assertNotNull(index.findBindingPool(InetAddress.getByName("2001:DB8:FFFF:1::")));
+		assertNull(index.findBindingPool(InetAddress.getByName("2001:DB8:FFFE::1")));
+	}
+	
+	public void testFindBindingPoolOverlapping() throws Exception
+	{
+		V4AddressBindingPool wide = v4Pool("192.168.0.0-192.168.0.255");
+		V4AddressBindingPool narrow = v4Pool("192.168.0.10-192.168.0.20");
+		List<List<? extends BindingPool>> poolLists = new ArrayList<>();
+		poolLists.add(Arrays.asList(wide, narrow));
+		BindingPoolIndex index = new BindingPoolIndex(poolLists);
+		// in both pools, so the first pool in configuration order
+		assertSame(wide, index.findBindingPool(InetAddress.getByName("192.168.0.15")));
+		// beyond the narrow pool, so must walk back to the wide pool
+		assertSame(wide, index.findBindingPool(InetAddress.getByName("192.168.0.100")));
+		assertSame(wide, index.findBindingPool(InetAddress.getByName("192.168.0.1")));
+		
+		poolLists.clear();
+		poolLists.add(Arrays.asList(narrow, wide));
+		index = new BindingPoolIndex(poolLists);
+		assertSame(narrow, index.findBindingPool(InetAddress.getByName("192.168.0.15")));
+		assertSame(wide, index.findBindingPool(InetAddress.getByName("192.168.0.100")));
+	}
+	
+	public void testFindBindingPoolSameRange() throws Exception
+	{
+		// filtered pools sharing one range, with an unfiltered pool after them
+		V4AddressBindingPool filtered1 = v4Pool("192.168.0.0-192.168.0.255");
+		filtered1.setLinkFilter(new LinkFilter());
+		V4AddressBindingPool filtered2 = v4Pool("192.168.0.0-192.168.0.255");
+		filtered2.setLinkFilter(new LinkFilter());
+		V4AddressBindingPool unfiltered = v4Pool("192.168.0.0-192.168.0.255");
+		List<List<? extends BindingPool>> poolLists = new ArrayList<>();
+		poolLists.add(Arrays.asList(filtered2, unfiltered));
+		poolLists.add(Arrays.asList(filtered1));
+		BindingPoolIndex index = new BindingPoolIndex(poolLists);
+		for (String ip : new String[] { "192.168.0.0", "192.168.0.128", "192.168.0.255" }) {
+			assertSame(filtered2, index.findBindingPool(InetAddress.getByName(ip)));
+		}
+		
+		poolLists.clear();
+		poolLists.add(Arrays.asList(unfiltered, filtered1, filtered2));
+		index = new BindingPoolIndex(poolLists);
+		assertSame(unfiltered, index.findBindingPool(InetAddress.getByName("192.168.0.128")));
+	}
+	
+	public void testForEachBindingPool() throws Exception
+	{
+		V4AddressBindingPool wide = v4Pool("192.168.0.0-192.168.0.255");
+		V4AddressBindingPool narrow = v4Pool("192.168.0.10-192.168.0.20");
+		V4AddressBindingPool other = v4Pool("192.168.2.0-192.168.2.255");
+		List<List<? extends BindingPool>> poolLists = new ArrayList<>();
+		poolLists.add(Arrays.asList(other, wide));
+		poolLists.add(Arrays.asList(narrow));
+		BindingPoolIndex index = new BindingPoolIndex(poolLists);
+		assertEquals(InetAddress.getByName("192.168.0.0"), index.getStartAddress());
+		assertEquals(InetAddress.getByName("192.168.2.255"), index.getEndAddress());
+		List<BindingPool> found = new ArrayList<>();
+		assertEquals(2, index.forEachBindingPool(InetAddress.getByName("192.168.0.15"), found::add));
+		assertTrue(found.contains(wide) && found.contains(narrow));
+		found.clear();
+		assertEquals(1, index.forEachBindingPool(InetAddress.getByName("192.168.2.1"), found::add));
+		assertSame(other, found.get(0));
+		assertEquals(0, index.forEachBindingPool(InetAddress.getByName("192.168.1.1"), found::add));
+	}
+}
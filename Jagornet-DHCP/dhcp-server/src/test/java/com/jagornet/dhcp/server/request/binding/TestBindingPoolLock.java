@@ -0,0 +1,149 @@
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.jagornet.dhcp.server.config.xml.LinkFilter;
+import com.jagornet.dhcp.server.config.xml.V4AddressPool;
+
+public class TestBindingPoolLock extends TestCase
+{
+	public void testUncontended() throws Exception
+	{
+		BindingPoolLock lock = new BindingPoolLock();
+		lock.lock();
+		lock.unlock();
+		lock.lock();
+		lock.unlock();
+		assertEquals(2, lock.getLockCount());
+		assertEquals(0, lock.getContendedCount());
+		assertEquals(0, lock.getWaitNanos());
+	}
+
+	public void testContendedWaitIsRecorded() throws Exception
+	{
+		final BindingPoolLock lock = new BindingPoolLock();
+		final CountDownLatch acquired = new CountDownLatch(1);
+		lock.lock();
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				lock.lock();
+				try {
+					acquired.countDown();
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		};
+		waiter.start();
+		while (lock.getQueueLength() == 0) {
+			Thread.sleep(1);
+		}
+		Thread.sleep(20);
+		lock.unlock();
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		waiter.join();
+		assertEquals(2, lock.getLockCount());
+		assertEquals(1, lock.getContendedCount());
+		assertTrue(lock.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+		assertEquals(lock.getWaitNanos(), lock.getMaxWaitNanos());
+	}
+
+	public void testEachPoolHasItsOwnLock() throws Exception
+	{
+		V4AddressPool pool1 = new V4AddressPool();
+		pool1.setRange("10.0.1.0-10.0.1.255");
+		V4AddressPool pool2 = new V4AddressPool();
+		pool2.setRange("10.0.2.0-10.0.2.255");
+		final V4AddressBindingPool bp1 = new V4AddressBindingPool(pool1);
+		V4AddressBindingPool bp2 = new V4AddressBindingPool(pool2);
+		assertNotSame(bp1.getReuseLock(), bp2.getReuseLock());
+
+		// holding one pool's lock does not block the other pool
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				bp1.getReuseLock().lock();
+				try {
+					locked.countDown();
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ex) {
+					// done
+				}
+				finally {
+					bp1.getReuseLock().unlock();
+				}
+			}
+		};
+		holder.start();
+		assertTrue(locked.await(5, TimeUnit.SECONDS));
+		bp2.getReuseLock().lock();
+		bp2.getReuseLock().unlock();
+		assertEquals(0, bp2.getReuseLock().getContendedCount());
+		release.countDown();
+		holder.join();
+	}
+
+	public void testFilteredPoolsOnOneRangeShareLock() throws Exception
+	{
+		V4AddressPool pool = new V4AddressPool();
+		pool.setRange("10.0.1.0-10.0.1.255");
+		final V4AddressBindingPool filtered1 = new V4AddressBindingPool(pool);
+		filtered1.setLinkFilter(new LinkFilter());
+		final V4AddressBindingPool filtered2 = new V4AddressBindingPool(pool);
+		filtered2.setLinkFilter(new LinkFilter());
+		V4AddressPool otherPool = new V4AddressPool();
+		otherPool.setRange("10.0.2.0-10.0.2.255");
+		V4AddressBindingPool other = new V4AddressBindingPool(otherPool);
+		BindingPoolLock otherLock = other.getReuseLock();
+		assertNotSame(filtered1.getReuseLock(), filtered2.getReuseLock());
+		
+		List<List<? extends BindingPool>> poolLists = new ArrayList<>();
+		poolLists.add(Arrays.asList(filtered1, other));
+		poolLists.add(Arrays.asList(filtered2));
+		new BindingPoolIndex(poolLists);
+		assertSame(filtered1.getReuseLock(), filtered2.getReuseLock());
+		assertSame(otherLock, other.getReuseLock());
+		
+		// a reuse search of one filtered pool waits for the other
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		filtered1.getReuseLock().lock();
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				filtered2.getReuseLock().lock();
+				try {
+					locked.countDown();
+				}
+				finally {
+					filtered2.getReuseLock().unlock();
+					done.countDown();
+				}
+			}
+		};
+		try {
+			waiter.start();
+			while (filtered1.getReuseLock().getQueueLength() == 0) {
+				Thread.sleep(1);
+			}
+			assertEquals(1, locked.getCount());
+		}
+		finally {
+			filtered1.getReuseLock().unlock();
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		waiter.join();
+		assertEquals(1, filtered1.getReuseLock().getContendedCount());
+	}
+}
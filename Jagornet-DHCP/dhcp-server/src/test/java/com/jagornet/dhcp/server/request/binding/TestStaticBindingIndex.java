@@ -0,0 +1,98 @@
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jagornet.dhcp.core.message.DhcpMessage;
+import com.jagornet.dhcp.server.config.xml.OpaqueData;
+import com.jagornet.dhcp.server.config.xml.PoliciesType;
+import com.jagornet.dhcp.server.config.xml.V4AddressBinding;
+import com.jagornet.dhcp.server.config.xml.V6AddressBinding;
+import com.jagornet.dhcp.server.db.IdentityAssoc;
+
+import junit.framework.TestCase;
+
+public class TestStaticBindingIndex extends TestCase
+{
+	static V4StaticAddressBinding v4Binding(byte[] chaddr, String ip)
+	{
+		V4AddressBinding binding = new V4AddressBinding();
+		binding.setChaddr(chaddr);
+		binding.setIpAddress(ip);
+		return new V4StaticAddressBinding(binding);
+	}
+	
+	static V6StaticAddressBinding v6Binding(byte[] duid, Long iaid, String ip)
+	{
+		V6AddressBinding binding = new V6AddressBinding();
+		OpaqueData opaqueData = new OpaqueData();
+		opaqueData.setHexValue(duid);
+		binding.setDuid(opaqueData);
+		binding.setIaid(iaid);
+		binding.setIpAddress(ip);
+		return new V6StaticAddressBinding(binding, IdentityAssoc.NA_TYPE);
+	}
+	
+	static byte[] mac(int i)
+	{
+		return new byte[] { 0, 0x11, (byte)(i >> 24), (byte)(i >> 16), (byte)(i >> 8), (byte)i };
+	}
+	
+	public void testFindV4() throws Exception
+	{
+		List<StaticBinding> bindings = new ArrayList<>();
+		for (int i=0; i<1000; i++) {
+			bindings.add(v4Binding(mac(i), "10.0." + (i / 256) + "." + (i % 256)));
+		}
+		StaticBindingIndex index = new StaticBindingIndex(bindings);
+		assertEquals(1000, index.size());
+		assertEquals(0, index.getUnkeyedCount());
+		assertSame(bindings.get(500), index.find(mac(500), IdentityAssoc.V4_TYPE, 0, null));
+		assertNull(index.find(mac(500), IdentityAssoc.NA_TYPE, 0, null));
+		assertNull(index.find(mac(5000), IdentityAssoc.V4_TYPE, 0, null));
+		assertNull(index.find(null, IdentityAssoc.V4_TYPE, 0, null));
+	}
+	
+	public void testFindV6ByIaid() throws Exception
+	{
+		byte[] duid = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+		List<StaticBinding> bindings = new ArrayList<>();
+		bindings.add(v6Binding(duid, 1L, "2001:db8::1"));
+		bindings.add(v6Binding(duid, 2L, "2001:db8::2"));
+		bindings.add(v6Binding(duid, null, "2001:db8::3"));
+		StaticBindingIndex index = new StaticBindingIndex(bindings);
+		assertSame(bindings.get(0), index.find(duid, IdentityAssoc.NA_TYPE, 1, null));
+		assertSame(bindings.get(1), index.find(duid, IdentityAssoc.NA_TYPE, 2, null));
+		// the binding without an IAID matches any other IAID
+		assertSame(bindings.get(2), index.find(duid, IdentityAssoc.NA_TYPE, 3, null));
+	}
+	
+	public void testConfigurationOrder() throws Exception
+	{
+		// a binding without a key, which matches every request
+		StaticBinding matchAll = new StaticBinding() {
+			@Override
+			public boolean matches(byte[] duid, byte iatype, long iaid, DhcpMessage requestMsg) {
+				return true;
+			}
+			@Override
+			public String getIpAddress() {
+				return "10.0.0.100";
+			}
+			@Override
+			public PoliciesType getPolicies() {
+				return null;
+			}
+		};
+		List<StaticBinding> bindings = new ArrayList<>();
+		bindings.add(v4Binding(mac(1), "10.0.0.1"));
+		bindings.add(matchAll);
+		bindings.add(v4Binding(mac(2), "10.0.0.2"));
+		StaticBindingIndex index = new StaticBindingIndex(bindings);
+		assertEquals(1, index.getUnkeyedCount());
+		// the first binding in the list wins, as for a linear search
+		assertSame(bindings.get(0), index.find(mac(1), IdentityAssoc.V4_TYPE, 0, null));
+		assertSame(matchAll, index.find(mac(2), IdentityAssoc.V4_TYPE, 0, null));
+		assertSame(matchAll, index.find(mac(3), IdentityAssoc.V4_TYPE, 0, null));
+	}
+}
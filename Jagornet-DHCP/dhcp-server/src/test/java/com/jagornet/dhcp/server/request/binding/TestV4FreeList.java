@@ -0,0 +1,109 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestV4FreeList.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.TestCase;
+
+public class TestV4FreeList extends TestCase
+{
+	public void testGetNextFreeAddress() throws Exception
+	{
+		V4FreeList freeList = new V4FreeList(InetAddress.getByName("192.168.0.1"),
+											InetAddress.getByName("192.168.0.3"));
+		assertEquals(InetAddress.getByName("192.168.0.1"), 
+				V4FreeList.toInetAddress(freeList.getNextFree()));
+		assertEquals(InetAddress.getByName("192.168.0.2"), 
+				V4FreeList.toInetAddress(freeList.getNextFree()));
+		assertEquals(InetAddress.getByName("192.168.0.3"), 
+				V4FreeList.toInetAddress(freeList.getNextFree()));
+		assertEquals(V4FreeList.NONE, freeList.getNextFree());
+	}
+	
+	public void testSetFreeReusesLowestAddress() throws Exception
+	{
+		V4FreeList freeList = new V4FreeList(InetAddress.getByName("10.0.0.0"),
+											InetAddress.getByName("10.0.1.255"));
+		for (int i=0; i<512; i++) {
+			assertTrue(freeList.getNextFree() != V4FreeList.NONE);
+		}
+		assertEquals(V4FreeList.NONE, freeList.getNextFree());
+		long low = V4FreeList.toLong(InetAddress.getByName("10.0.0.5"));
+		long high = V4FreeList.toLong(InetAddress.getByName("10.0.1.200"));
+		freeList.setFree(high);
+		freeList.setFree(low);
+		assertTrue(freeList.isFree(low));
+		assertEquals(low, freeList.getNextFree());
+		assertEquals(high, freeList.getNextFree());
+		assertEquals(V4FreeList.NONE, freeList.getNextFree());
+	}
+	
+	public void testSetUsedOutOfRange() throws Exception
+	{
+		V4FreeList freeList = new V4FreeList(InetAddress.getByName("10.0.0.10"),
+											InetAddress.getByName("10.0.0.20"));
+		long outside = V4FreeList.toLong(InetAddress.getByName("10.0.0.21"));
+		freeList.setUsed(outside);
+		assertFalse(freeList.isUsed(outside));
+		assertEquals(0, freeList.getUsedCount());
+	}
+	
+	public void testHighAddressRange() throws Exception
+	{
+		InetAddress high = InetAddress.getByName("255.255.255.254");
+		V4FreeList freeList = new V4FreeList(high, InetAddress.getByName("255.255.255.255"));
+		assertEquals(high, V4FreeList.toInetAddress(freeList.getNextFree()));
+		assertTrue(freeList.isUsed(V4FreeList.toLong(high)));
+	}
+	
+	public void testThreadedGetAddresses() throws Exception
+	{
+		final V4FreeList freeList = new V4FreeList(InetAddress.getByName("10.0.0.0"),
+												InetAddress.getByName("10.15.255.255"));
+		final Set<Long> allocated = ConcurrentHashMap.newKeySet();
+		Thread[] threads = new Thread[16];
+		for (int i=0; i<threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j=0; j<10000; j++) {	// 10K leases per thread
+						long next = freeList.getNextFree();
+						assertTrue(next != V4FreeList.NONE);
+						assertTrue(allocated.add(next));
+					}
+				}
+			}, "TestThread-"+i);
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(160000, allocated.size());
+		assertEquals(160000, freeList.getUsedCount());
+	}
+}
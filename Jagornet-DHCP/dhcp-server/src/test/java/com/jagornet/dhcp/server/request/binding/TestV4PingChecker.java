@@ -0,0 +1,67 @@
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestV4PingChecker extends TestCase
+{
+	public void testProbeResultCached() throws Exception
+	{
+		V4PingChecker pingChecker = new V4PingChecker(1000, 2, 10, 60000);
+		try {
+			InetAddress ip = InetAddress.getLoopbackAddress();
+			CompletableFuture<Boolean> probe = pingChecker.probe(ip);
+			assertNotNull(probe);
+			boolean reachable = probe.get(5, TimeUnit.SECONDS);
+			assertEquals(0, pingChecker.getPendingCount());
+			// the second probe is answered from the result cache
+			CompletableFuture<Boolean> cached = pingChecker.probe(ip);
+			assertTrue(cached.isDone());
+			assertEquals(reachable, cached.get().booleanValue());
+		}
+		finally {
+			pingChecker.shutdown();
+		}
+	}
+
+	public void testMaxPending() throws Exception
+	{
+		// a single thread probing an unroutable address keeps the probes pending
+		V4PingChecker pingChecker = new V4PingChecker(2000, 1, 2, 60000);
+		try {
+			CompletableFuture<Boolean> probe1 = pingChecker.probe(InetAddress.getByName("192.0.2.1"));
+			CompletableFuture<Boolean> probe2 = pingChecker.probe(InetAddress.getByName("192.0.2.2"));
+			assertNotNull(probe1);
+			assertNotNull(probe2);
+			if (!probe1.isDone() && !probe2.isDone()) {
+				// duplicate probes share the outstanding future
+				assertSame(probe2, pingChecker.probe(InetAddress.getByName("192.0.2.2")));
+				assertNull(pingChecker.probe(InetAddress.getByName("192.0.2.3")));
+			}
+		}
+		finally {
+			pingChecker.shutdown();
+		}
+	}
+
+	public void testShutdownCompletesPendingProbes() throws Exception
+	{
+		// a single thread probing unroutable addresses keeps the second probe queued
+		V4PingChecker pingChecker = new V4PingChecker(2000, 1, 10, 60000);
+		CompletableFuture<Boolean> probe1 = pingChecker.probe(InetAddress.getByName("192.0.2.1"));
+		CompletableFuture<Boolean> probe2 = pingChecker.probe(InetAddress.getByName("192.0.2.2"));
+		assertNotNull(probe1);
+		assertNotNull(probe2);
+		pingChecker.shutdown();
+		// the queued probe never runs, but the offer waiting on it is still sent
+		assertFalse(probe2.get(1, TimeUnit.SECONDS));
+		assertTrue(probe1.get(5, TimeUnit.SECONDS) != null);
+		assertEquals(0, pingChecker.getPendingCount());
+		// a probe after shutdown is rejected, and counted as skipped
+		assertNull(pingChecker.probe(InetAddress.getByName("192.0.2.3")));
+		assertEquals(1, pingChecker.getSkippedCount());
+	}
+}
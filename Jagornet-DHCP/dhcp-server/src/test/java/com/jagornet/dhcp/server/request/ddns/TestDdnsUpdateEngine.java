@@ -0,0 +1,266 @@
+package com.jagornet.dhcp.server.request.ddns;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+
+public class TestDdnsUpdateEngine extends TestCase
+{
+	private static final byte[] DUID = new byte[] { 0, 1, 2, 3, 4, 5 };
+	
+	private StandInDnsServer dnsServer;
+	private TestEngine engine;
+	
+	/**
+	 * A stand-in DNS server which records the update messages it receives,
+	 * and answers NOERROR.  The first answer can be held back, to keep the
+	 * engine busy while more updates are queued.
+	 */
+	static class StandInDnsServer extends Thread
+	{
+		final DatagramSocket socket;
+		final List<Message> updates = new CopyOnWriteArrayList<Message>();
+		final CountDownLatch holdFirst = new CountDownLatch(1);
+		
+		StandInDnsServer() throws IOException
+		{
+			socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run()
+		{
+			byte[] buf = new byte[65535];
+			try {
+				while (!socket.isClosed()) {
+					DatagramPacket packet = new DatagramPacket(buf, buf.length);
+					socket.receive(packet);
+					Message update = new Message(Arrays.copyOf(
+							packet.getData(), packet.getLength()));
+					updates.add(update);
+					if (updates.size() == 1) {
+						holdFirst.await(10, TimeUnit.SECONDS);
+					}
+					Message response = new Message(update.getHeader().getID());
+					response.getHeader().setFlag(Flags.QR);
+					response.getHeader().setOpcode(update.getHeader().getOpcode());
+					response.getHeader().setRcode(Rcode.NOERROR);
+					response.addRecord(update.getQuestion(), Section.ZONE);
+					byte[] wire = response.toWire();
+					socket.send(new DatagramPacket(wire, wire.length, 
+							packet.getSocketAddress()));
+				}
+			}
+			catch (Exception ex) {
+				// socket closed
+			}
+		}
+		
+		void awaitUpdates(int count) throws InterruptedException
+		{
+			long end = System.currentTimeMillis() + 10000;
+			while ((updates.size() < count) && (System.currentTimeMillis() < end)) {
+				Thread.sleep(10);
+			}
+			assertEquals(count, updates.size());
+		}
+	}
+	
+	/**
+	 * An engine whose resolvers send to the stand-in server's port.
+	 */
+	class TestEngine extends DdnsUpdateEngine
+	{
+		final AtomicInteger resolverCount = new AtomicInteger();
+		
+		TestEngine(int threads, int maxQueued, int batchSize)
+		{
+			super(threads, maxQueued, batchSize);
+		}
+
+		@Override
+		protected Resolver createResolver(DdnsUpdate update) throws IOException
+		{
+			resolverCount.incrementAndGet();
+			Resolver res = super.createResolver(update);
+			res.setPort(dnsServer.socket.getLocalPort());
+			res.setTimeout(Duration.ofSeconds(10));
+			return res;
+		}
+	}
+	
+	/**
+	 * A callback which counts the results.
+	 */
+	static class CountingCallback implements DdnsCallback
+	{
+		final AtomicInteger succeeded = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		
+		void complete(boolean success) {
+			if (success)
+				succeeded.incrementAndGet();
+			else
+				failed.incrementAndGet();
+		}
+		public void fwdAddComplete(boolean success) { complete(success); }
+		public void fwdDeleteComplete(boolean success) { complete(success); }
+		public void revAddComplete(boolean success) { complete(success); }
+		public void revDeleteComplete(boolean success) { complete(success); }
+		
+		void awaitCompleted(int count) throws InterruptedException
+		{
+			long end = System.currentTimeMillis() + 10000;
+			while ((succeeded.get() + failed.get() < count) && 
+					(System.currentTimeMillis() < end)) {
+				Thread.sleep(10);
+			}
+			assertEquals(count, succeeded.get() + failed.get());
+		}
+	}
+	
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		dnsServer = new StandInDnsServer();
+		dnsServer.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		if (engine != null) {
+			engine.shutdown();
+		}
+		dnsServer.socket.close();
+		super.tearDown();
+	}
+	
+	private ReverseDdnsUpdate reverseUpdate(String ip) throws Exception
+	{
+		ReverseDdnsUpdate update = new ReverseDdnsUpdate("host" + ip.replace('.', '-') + 
+				".example.com.", InetAddress.getByName(ip), DUID);
+		update.setServer("127.0.0.1");
+		update.setTtl(3600);
+		return update;
+	}
+	
+	private ForwardDdnsUpdate forwardUpdate(String host, String ip) throws Exception
+	{
+		ForwardDdnsUpdate update = new ForwardDdnsUpdate(host + ".example.com.", 
+				InetAddress.getByName(ip), DUID);
+		update.setServer("127.0.0.1");
+		update.setTtl(3600);
+		return update;
+	}
+	
+	public void testReverseUpdatesBatchedAndCoalesced() throws Exception
+	{
+		engine = new TestEngine(1, 100, 32);
+		CountingCallback callback = new CountingCallback();
+		assertTrue(engine.submit(reverseUpdate("10.0.0.1"), false, callback));
+		dnsServer.awaitUpdates(1);
+
+		// queued behind the held update
+		for (int i=2; i<=11; i++) {
+			assertTrue(engine.submit(reverseUpdate("10.0.0." + i), false, callback));
+		}
+		assertTrue(engine.submit(reverseUpdate("10.0.0.20"), false, callback));
+		assertTrue(engine.submit(reverseUpdate("10.0.0.20"), true, callback));
+		assertEquals(11, engine.getQueuedCount());
+		assertEquals(1, engine.getCoalescedCount());
+		
+		dnsServer.holdFirst.countDown();
+		callback.awaitCompleted(13);
+		dnsServer.awaitUpdates(2);
+		
+		// ten replaced PTRs, as delete and add, plus the one deleted PTR
+		Message batch = dnsServer.updates.get(1);
+		assertEquals(21, batch.getSection(Section.UPDATE).size());
+		assertEquals("0.0.10.in-addr.arpa.", batch.getQuestion().getName().toString());
+		assertEquals(12, callback.succeeded.get());
+		assertEquals(1, callback.failed.get());		// the replaced add
+		assertEquals(1, engine.getBatchCount());
+		assertEquals(11, engine.getBatchedUpdateCount());
+		assertEquals(1, engine.resolverCount.get());
+		assertEquals(0, engine.getQueuedCount());
+	}
+	
+	public void testForwardUpdatesShareResolver() throws Exception
+	{
+		engine = new TestEngine(2, 100, 32);
+		dnsServer.holdFirst.countDown();
+		CountingCallback callback = new CountingCallback();
+		assertTrue(engine.submit(forwardUpdate("host1", "10.0.0.1"), false, callback));
+		assertTrue(engine.submit(forwardUpdate("host2", "10.0.0.2"), false, callback));
+		callback.awaitCompleted(2);
+		assertEquals(2, callback.succeeded.get());
+		assertEquals(2, dnsServer.updates.size());
+		assertEquals(1, engine.resolverCount.get());
+		assertEquals(1, engine.getZoneCount());
+	}
+	
+	public void testTsigKeyChangeGetsNewResolver() throws Exception
+	{
+		engine = new TestEngine(1, 100, 32);
+		dnsServer.holdFirst.countDown();
+		CountingCallback callback = new CountingCallback();
+		ForwardDdnsUpdate update = forwardUpdate("host1", "10.0.0.1");
+		update.setTsigKeyName("key.example.com.");
+		update.setTsigAlgorithm("hmac-sha256.");
+		update.setTsigKeyData("3BE05CzQLXTm5ouGljhJeQ==");
+		assertTrue(engine.submit(update, false, callback));
+		callback.awaitCompleted(1);
+		
+		// same zone, server and key name, but a new secret, as after a reload
+		update = forwardUpdate("host1", "10.0.0.1");
+		update.setTsigKeyName("key.example.com.");
+		update.setTsigAlgorithm("hmac-sha256.");
+		update.setTsigKeyData("Zm9vYmFyYmF6cXV4cXV1eA==");
+		assertTrue(engine.submit(update, false, callback));
+		callback.awaitCompleted(2);
+		assertEquals(2, engine.getZoneCount());
+		assertEquals(2, engine.resolverCount.get());
+	}
+	
+	public void testQueueBounded() throws Exception
+	{
+		engine = new TestEngine(1, 3, 32);
+		CountingCallback callback = new CountingCallback();
+		assertTrue(engine.submit(reverseUpdate("10.0.0.1"), false, callback));
+		dnsServer.awaitUpdates(1);
+		
+		int accepted = 0;
+		for (int i=2; i<=6; i++) {
+			if (engine.submit(reverseUpdate("10.0.0." + i), false, callback)) {
+				accepted++;
+			}
+		}
+		assertEquals(3, accepted);
+		assertEquals(2, engine.getRejectedCount());
+		assertEquals(2, callback.failed.get());
+		assertEquals(3, engine.getMaxQueuedCount());
+		
+		dnsServer.holdFirst.countDown();
+		callback.awaitCompleted(6);
+		assertEquals(4, callback.succeeded.get());
+	}
+}
@@ -0,0 +1,68 @@
+package com.jagornet.dhcp.server.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jagornet.dhcp.server.util.DhcpServerScheduler.ScheduledTask;
+
+import junit.framework.TestCase;
+
+public class TestDhcpServerScheduler extends TestCase
+{
+	public void testSchedule() throws Exception
+	{
+		DhcpServerScheduler scheduler = new DhcpServerScheduler(10, 2);
+		try {
+			CountDownLatch latch = new CountDownLatch(100);
+			for (int i=0; i<100; i++) {
+				scheduler.schedule("test-" + i, latch::countDown, i);
+			}
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			assertEquals(100, scheduler.getExecutedCount());
+		}
+		finally {
+			scheduler.shutdown();
+		}
+	}
+
+	public void testFixedDelayAndCancel() throws Exception
+	{
+		DhcpServerScheduler scheduler = new DhcpServerScheduler(10, 2);
+		try {
+			AtomicInteger runs = new AtomicInteger();
+			CountDownLatch latch = new CountDownLatch(3);
+			ScheduledTask task = scheduler.scheduleWithFixedDelay("test", () -> {
+				runs.incrementAndGet();
+				latch.countDown();
+			}, 0, 20);
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			task.cancel();
+			assertTrue(task.isCancelled());
+			int count = runs.get();
+			Thread.sleep(200);
+			// at most one run may have been in progress when cancelled
+			assertTrue(runs.get() <= count + 1);
+		}
+		finally {
+			scheduler.shutdown();
+		}
+	}
+
+	public void testFailedTaskIsRescheduled() throws Exception
+	{
+		DhcpServerScheduler scheduler = new DhcpServerScheduler(10, 1);
+		try {
+			CountDownLatch latch = new CountDownLatch(2);
+			ScheduledTask task = scheduler.scheduleWithFixedDelay("test", () -> {
+				latch.countDown();
+				throw new RuntimeException("expected");
+			}, 0, 20);
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			task.cancel();
+		}
+		finally {
+			scheduler.shutdown();
+		}
+	}
+}